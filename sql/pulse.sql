@@ -51,6 +51,8 @@ create table p_tasks
 	plan_time datetime default CURRENT_TIMESTAMP null
 );
 
+create index p_tasks_state_plan_time on p_tasks (state, plan_time, id);
+
 create table p_cron_tasks
 (
 	id int auto_increment primary key,
@@ -60,6 +62,7 @@ create table p_cron_tasks
 	job_id int null comment '任务动作id',
 	state tinyint null comment '0-停止状态 1-激活状态',
 	cron_expression varchar(128) not null comment 'cron 表达式',
+	misfire_policy tinyint default 0 not null comment '错过触发时间的处理 0-立即补触发一次 1-补触发全部错过的 2-跳到下一次',
 	create_time datetime default CURRENT_TIMESTAMP not null
 );
 
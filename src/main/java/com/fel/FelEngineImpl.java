@@ -2,6 +2,7 @@ package com.fel;
 
 import com.fel.common.FelBuilder;
 import com.fel.compile.CompileService;
+import com.fel.compile.ExpressionCache;
 import com.fel.context.ArrayCtxImpl;
 import com.fel.context.FelContext;
 import com.fel.context.MapContext;
@@ -33,7 +34,15 @@ public class FelEngineImpl implements FelEngine {
 	
 	private SecurityMgr securityMgr;
 
+	/**
+	 * 编译结果缓存，-Dfel.cache.size=0 时不缓存
+	 */
+	private ExpressionCache cache;
+
 	{
+		int cacheSize = Integer.getInteger("fel.cache.size", 1024);
+		this.cache = cacheSize > 0 ? new ExpressionCache(cacheSize) : null;
+
 		this.securityMgr = FelBuilder.newSecurityMgr();
 	}
 
@@ -85,11 +94,17 @@ public class FelEngineImpl implements FelEngine {
 		return compile(exp, null, new VarVisitOpti(vars));
 	}
 
+	/**
+	 * 没有指定优化器时使用缓存的编译结果
+	 */
 	@Override
 	public Expression compile(String exp, FelContext ctx, Optimizer... opts) {
 		if (ctx == null) {
 			ctx = this.context;
 		}
+		if (cache != null && isEmpty(opts)) {
+			return cache.compile(this, exp, ctx);
+		}
 		FelNode node = parse(exp);
 		if (opts != null) {
 			for (Optimizer opt : opts) {
@@ -101,6 +116,31 @@ public class FelEngineImpl implements FelEngine {
 		return compiler.compile(ctx, node, exp);
 	}
 
+	private static boolean isEmpty(Optimizer[] opts) {
+		if (opts != null) {
+			for (Optimizer opt : opts) {
+				if (opt != null) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public ExpressionCache getCache() {
+		return cache;
+	}
+
+	public void setCache(ExpressionCache cache) {
+		this.cache = cache;
+	}
+
+	private void clearCache() {
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "FelEngine";
@@ -109,6 +149,7 @@ public class FelEngineImpl implements FelEngine {
 	@Override
 	public void addFun(Function fun) {
 		this.funMgr.add(fun);
+		clearCache();
 	}
 	
 	@Override
@@ -125,6 +166,7 @@ public class FelEngineImpl implements FelEngine {
 	@Override
 	public void setCompiler(CompileService compiler) {
 		this.compiler = compiler;
+		clearCache();
 	}
 
 
@@ -137,6 +179,7 @@ public class FelEngineImpl implements FelEngine {
 	@Override
 	public void setParser(Parser parser) {
 		this.parser = parser;
+		clearCache();
 	}
 
 
@@ -149,6 +192,7 @@ public class FelEngineImpl implements FelEngine {
 	@Override
 	public void setFunMgr(FunMgr funMgr) {
 		this.funMgr = funMgr;
+		clearCache();
 	}
 
 
@@ -357,9 +357,9 @@ public class NumberUtil {
 	public static Number parseNumber(long l) {
 		int i = (int) l;
 		if (i == l) {
-			return new Integer(i);
+			return Integer.valueOf(i);
 		}
-		return new Long(l);
+		return Long.valueOf(l);
 	}
 	
 	/**
@@ -370,7 +370,23 @@ public class NumberUtil {
 		if (f == d) {
 			return parseNumber(f);
 		}
-		return new Double(d);
+		return Double.valueOf(d);
+	}
+
+	/**
+	 * double能精确表示的整数范围：运算数和结果都在范围内时，按long运算与按double运算再parseNumber的结果相同
+	 */
+	public static final long MAX_EXACT_LONG = 1L << 53;
+
+	public static boolean isExactDouble(long l) {
+		return l >= -MAX_EXACT_LONG && l <= MAX_EXACT_LONG;
+	}
+
+	/**
+	 * Integer或Double：转换成double时不需要toDouble(Number)对Float的特殊处理
+	 */
+	public static boolean isIntOrDouble(Object val) {
+		return val instanceof Integer || val instanceof Double;
 	}
 
 	/**
@@ -0,0 +1,589 @@
+package com.fel.compile;
+
+import com.fel.Expression;
+import com.fel.common.NumberUtil;
+import com.fel.common.ObjectUtils;
+import com.fel.context.AbstractContext;
+import com.fel.context.ArrayCtx;
+import com.fel.context.FelContext;
+import com.fel.exception.CompileException;
+import com.fel.function.Function;
+import com.fel.function.operator.Add;
+import com.fel.function.operator.And;
+import com.fel.function.operator.Cond;
+import com.fel.function.operator.Div;
+import com.fel.function.operator.Equal;
+import com.fel.function.operator.GreaterThan;
+import com.fel.function.operator.GreaterThenEqual;
+import com.fel.function.operator.LessThen;
+import com.fel.function.operator.LessThenEqual;
+import com.fel.function.operator.Mod;
+import com.fel.function.operator.Mul;
+import com.fel.function.operator.NotEqual;
+import com.fel.function.operator.NotOper;
+import com.fel.function.operator.Or;
+import com.fel.function.operator.Sub;
+import com.fel.parser.ConstNode;
+import com.fel.parser.FelNode;
+import com.fel.parser.FunNode;
+import com.fel.parser.VarAstNode;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接从语法树生成字节码的编译器，不需要JDK中的javac，编译一个表达式只要几十微秒，也不需要加锁。
+ *
+ * 和SourceGeneratorImpl一样按编译时上下文中变量的类型生成代码：int/long/double/boolean变量在方法开头
+ * 读取一次并拆箱，四则运算、比较、逻辑运算和三元表达式直接生成对应的指令；其它节点(函数调用、点运算符、
+ * 自定义解释器等)生成对节点解释执行的调用。方法开头逐个检查这些变量的类型，与编译时不同或为null时整个表达式
+ * 退回解释执行；表达式本身(解释执行的子节点、函数)抛出的异常照常抛出，不会重复执行。
+ *
+ * 需要配合AstSourceGenerator使用。
+ */
+public class AsmCompiler implements FelCompiler {
+
+	private static final String EXPRESSION = Type.getInternalName(Expression.class);
+	private static final String FEL_NODE = Type.getInternalName(FelNode.class);
+	private static final String CONTEXT_DESC = Type.getDescriptor(FelContext.class);
+	private static final String EVAL_DESC = "(" + CONTEXT_DESC + ")Ljava/lang/Object;";
+
+	private final ClassLoader parent;
+
+	// 每个类加载器只定义CompileService.BATCH_SIZE个类，这一批表达式都不再被引用后可以整体卸载
+	private AsmClassLoader classLoader;
+	private int defined;
+
+	public AsmCompiler() {
+		this(AsmCompiler.class.getClassLoader());
+	}
+
+	public AsmCompiler(ClassLoader parent) {
+		this.parent = parent;
+		this.classLoader = new AsmClassLoader(parent);
+	}
+
+	private synchronized AsmClassLoader nextLoader() {
+		if (defined++ >= CompileService.BATCH_SIZE) {
+			classLoader = new AsmClassLoader(parent);
+			defined = 1;
+		}
+		return classLoader;
+	}
+
+	@Override
+	public Expression compile(JavaSource src) {
+		if (!(src instanceof AstSource)) {
+			throw new CompileException(getClass().getSimpleName() + "只能编译AstSourceGenerator生成的语法树");
+		}
+		AstSource ast = (AstSource) src;
+		List<Object> consts = new ArrayList<Object>();
+		byte[] bytes = new Generator(ast.getContext(), consts).generate(src.getName(), ast.getNode());
+		try {
+			Class<?> cls = nextLoader().define(src.getName(), bytes);
+			return (Expression) cls.getConstructor(Object[].class).newInstance(new Object[] { consts.toArray() });
+		} catch (ReflectiveOperationException e) {
+			throw new CompileException("创建表达式对象失败:" + src.getName(), e);
+		}
+	}
+
+	static final class AsmClassLoader extends ClassLoader {
+
+		static {
+			registerAsParallelCapable();
+		}
+
+		AsmClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * 节点求值后栈顶值的类型
+	 */
+	enum Kind {
+		INT(Type.INT_TYPE), LONG(Type.LONG_TYPE), DOUBLE(Type.DOUBLE_TYPE), BOOLEAN(Type.BOOLEAN_TYPE), OBJECT(Type.getType(Object.class));
+
+		final Type type;
+
+		Kind(Type type) {
+			this.type = type;
+		}
+
+		boolean isNumber() {
+			return this == INT || this == LONG || this == DOUBLE;
+		}
+
+		static Kind arithmetic(Kind left, Kind right) {
+			if (left == DOUBLE || right == DOUBLE) {
+				return DOUBLE;
+			}
+			if (left == LONG || right == LONG) {
+				return LONG;
+			}
+			return INT;
+		}
+	}
+
+	/**
+	 * 在方法开头读取并拆箱的变量
+	 */
+	private static final class Local {
+		final String name;
+		final Kind kind;
+		final int slot;
+
+		Local(String name, Kind kind, int slot) {
+			this.name = name;
+			this.kind = kind;
+			this.slot = slot;
+		}
+	}
+
+	private static final class Generator implements Opcodes {
+
+		private final FelContext ctx;
+		private final List<Object> consts;
+		private final Map<FelNode, Kind> kinds = new IdentityHashMap<FelNode, Kind>();
+		private final Map<String, Local> locals = new LinkedHashMap<String, Local>();
+		private int nextSlot = 2;
+		private String className;
+
+		Generator(FelContext ctx, List<Object> consts) {
+			this.ctx = ctx;
+			this.consts = consts;
+		}
+
+		byte[] generate(String name, FelNode root) {
+			className = name.replace('.', '/');
+			kindOf(root);
+
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+				@Override
+				protected String getCommonSuperClass(String type1, String type2) {
+					// 分支合并时的值只当作Object使用，不需要加载类
+					return type1.equals(type2) ? type1 : "java/lang/Object";
+				}
+			};
+			cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object", new String[] { EXPRESSION });
+			cw.visitField(ACC_PRIVATE | ACC_FINAL, "consts", "[Ljava/lang/Object;", null, null).visitEnd();
+
+			MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+			init.visitCode();
+			init.visitVarInsn(ALOAD, 0);
+			init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+			init.visitVarInsn(ALOAD, 0);
+			init.visitVarInsn(ALOAD, 1);
+			init.visitFieldInsn(PUTFIELD, className, "consts", "[Ljava/lang/Object;");
+			init.visitInsn(RETURN);
+			init.visitMaxs(0, 0);
+			init.visitEnd();
+
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "eval", EVAL_DESC, null, null);
+			mv.visitCode();
+			Label fallback = new Label();
+			for (Local local : locals.values()) {
+				// value instanceof Integer ? ((Integer) value).intValue() : 解释执行
+				loadVar(mv, local.name);
+				mv.visitInsn(DUP);
+				mv.visitTypeInsn(INSTANCEOF, boxOf(local.kind));
+				mv.visitJumpInsn(IFEQ, fallback);
+				unbox(mv, local.kind);
+				mv.visitVarInsn(local.kind.type.getOpcode(ISTORE), local.slot);
+			}
+			emit(mv, root, Kind.OBJECT);
+			mv.visitInsn(ARETURN);
+
+			// 变量类型与编译时不同或为null，解释执行
+			mv.visitLabel(fallback);
+			mv.visitInsn(POP);
+			loadConst(mv, root, FEL_NODE);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitMethodInsn(INVOKEINTERFACE, FEL_NODE, "eval", EVAL_DESC, true);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			cw.visitEnd();
+			return cw.toByteArray();
+		}
+
+		// ---------------------------------------------------------------- 类型推断
+
+		private Kind kindOf(FelNode node) {
+			Kind kind = kinds.get(node);
+			if (kind == null) {
+				kind = inferKind(node);
+				kinds.put(node, kind);
+			}
+			return kind;
+		}
+
+		private Kind inferKind(FelNode node) {
+			if (!node.isDefaultInterpreter()) {
+				return Kind.OBJECT;
+			}
+			if (node instanceof ConstNode) {
+				return kindOfValue(((ConstNode) node).interpret(null, null));
+			}
+			if (node instanceof VarAstNode && VarAstNode.isVar(node)) {
+				Kind kind = kindOfClass(AbstractContext.getVarType(node.getText(), ctx));
+				if (kind != Kind.OBJECT && !locals.containsKey(node.getText())) {
+					locals.put(node.getText(), new Local(node.getText(), kind, nextSlot));
+					nextSlot += kind.type.getSize();
+				}
+				return kind;
+			}
+			if (!(node instanceof FunNode)) {
+				return Kind.OBJECT;
+			}
+
+			Function fun = ((FunNode) node).getFun();
+			Class<?> type = fun.getClass();
+			if (!isArithmetic(type) && !isRelation(type) && type != Equal.class && type != NotEqual.class && type != And.class
+					&& type != Or.class && type != NotOper.class && type != Cond.class) {
+				// 其它函数整体解释执行，其中的变量不需要预先读取
+				return Kind.OBJECT;
+			}
+
+			List<FelNode> children = node.getChildren();
+			int size = children == null ? 0 : children.size();
+			List<Kind> args = new ArrayList<Kind>(size);
+			for (int i = 0; i < size; i++) {
+				args.add(kindOf(children.get(i)));
+			}
+
+			if (isArithmetic(type)) {
+				if (size == 2 && args.get(0).isNumber() && args.get(1).isNumber()) {
+					return Kind.arithmetic(args.get(0), args.get(1));
+				}
+				if (size == 1 && (type == Add.class || type == Sub.class) && args.get(0).isNumber()) {
+					return args.get(0);
+				}
+				return Kind.OBJECT;
+			}
+			if (isRelation(type) || type == Equal.class || type == NotEqual.class) {
+				return size == 2 ? Kind.BOOLEAN : Kind.OBJECT;
+			}
+			if (type == And.class || type == Or.class) {
+				return size == 2 ? Kind.BOOLEAN : Kind.OBJECT;
+			}
+			if (type == NotOper.class) {
+				return size == 1 && args.get(0) == Kind.BOOLEAN ? Kind.BOOLEAN : Kind.OBJECT;
+			}
+			if (type == Cond.class && size == 3) {
+				Kind left = args.get(1), right = args.get(2);
+				return left == right ? left : Kind.OBJECT;
+			}
+			return Kind.OBJECT;
+		}
+
+		private static boolean isArithmetic(Class<?> type) {
+			return type == Add.class || type == Sub.class || type == Mul.class || type == Div.class || type == Mod.class;
+		}
+
+		private static boolean isRelation(Class<?> type) {
+			return type == LessThen.class || type == LessThenEqual.class || type == GreaterThan.class || type == GreaterThenEqual.class;
+		}
+
+		private static Kind kindOfValue(Object value) {
+			return value == null ? Kind.OBJECT : kindOfClass(value.getClass());
+		}
+
+		private static Kind kindOfClass(Class<?> type) {
+			if (type == Integer.class) {
+				return Kind.INT;
+			}
+			if (type == Long.class) {
+				return Kind.LONG;
+			}
+			if (type == Double.class) {
+				return Kind.DOUBLE;
+			}
+			if (type == Boolean.class) {
+				return Kind.BOOLEAN;
+			}
+			return Kind.OBJECT;
+		}
+
+		// ---------------------------------------------------------------- 代码生成
+
+		/**
+		 * 计算节点的值，按target类型留在栈顶
+		 */
+		private void emit(MethodVisitor mv, FelNode node, Kind target) {
+			Kind kind = kindOf(node);
+			emitNode(mv, node, kind);
+			convert(mv, kind, target);
+		}
+
+		private void emitNode(MethodVisitor mv, FelNode node, Kind kind) {
+			if (node.isDefaultInterpreter() && node instanceof ConstNode) {
+				pushConst(mv, ((ConstNode) node).interpret(null, null));
+				return;
+			}
+			if (node.isDefaultInterpreter() && node instanceof VarAstNode && VarAstNode.isVar(node)) {
+				Local local = locals.get(node.getText());
+				if (local != null) {
+					mv.visitVarInsn(local.kind.type.getOpcode(ILOAD), local.slot);
+				} else {
+					loadVar(mv, node.getText());
+				}
+				return;
+			}
+			if (node.isDefaultInterpreter() && node instanceof FunNode && emitFun(mv, (FunNode) node, kind)) {
+				return;
+			}
+			interpret(mv, node);
+		}
+
+		private boolean emitFun(MethodVisitor mv, FunNode node, Kind kind) {
+			Function fun = node.getFun();
+			Class<?> type = fun.getClass();
+			List<FelNode> children = node.getChildren();
+
+			if (isArithmetic(type) && kind.isNumber()) {
+				if (children.size() == 1) {
+					emit(mv, children.get(0), kind);
+					if (type == Sub.class) {
+						mv.visitInsn(kind.type.getOpcode(INEG));
+					}
+					return true;
+				}
+				emit(mv, children.get(0), kind);
+				emit(mv, children.get(1), kind);
+				mv.visitInsn(kind.type.getOpcode(arithmeticOpcode(type)));
+				return true;
+			}
+			if (kind != Kind.BOOLEAN && type != Cond.class) {
+				return false;
+			}
+
+			if (isRelation(type) || type == Equal.class || type == NotEqual.class) {
+				emitRelation(mv, fun, children.get(0), children.get(1));
+				return true;
+			}
+			if (type == And.class || type == Or.class) {
+				boolean isOr = type == Or.class;
+				Label shortcut = new Label(), done = new Label();
+				emitBoolean(mv, children.get(0));
+				mv.visitJumpInsn(isOr ? IFNE : IFEQ, shortcut);
+				emitBoolean(mv, children.get(1));
+				mv.visitJumpInsn(isOr ? IFNE : IFEQ, shortcut);
+				mv.visitInsn(isOr ? ICONST_0 : ICONST_1);
+				mv.visitJumpInsn(GOTO, done);
+				mv.visitLabel(shortcut);
+				mv.visitInsn(isOr ? ICONST_1 : ICONST_0);
+				mv.visitLabel(done);
+				return true;
+			}
+			if (type == NotOper.class) {
+				emit(mv, children.get(0), Kind.BOOLEAN);
+				mv.visitInsn(ICONST_1);
+				mv.visitInsn(IXOR);
+				return true;
+			}
+			if (type == Cond.class) {
+				// 和Cond.call一样，条件的值只有Boolean.TRUE才算成立
+				Label otherwise = new Label(), done = new Label();
+				FelNode cond = children.get(0);
+				Kind condKind = kindOf(cond);
+				if (condKind == Kind.BOOLEAN) {
+					emit(mv, cond, Kind.BOOLEAN);
+				} else {
+					mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+					emit(mv, cond, Kind.OBJECT);
+					mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "equals", "(Ljava/lang/Object;)Z", false);
+				}
+				mv.visitJumpInsn(IFEQ, otherwise);
+				emit(mv, children.get(1), kind);
+				mv.visitJumpInsn(GOTO, done);
+				mv.visitLabel(otherwise);
+				emit(mv, children.get(2), kind);
+				mv.visitLabel(done);
+				return true;
+			}
+			return false;
+		}
+
+		private static int arithmeticOpcode(Class<?> type) {
+			if (type == Add.class) {
+				return IADD;
+			}
+			if (type == Sub.class) {
+				return ISUB;
+			}
+			if (type == Mul.class) {
+				return IMUL;
+			}
+			if (type == Div.class) {
+				return IDIV;
+			}
+			return IREM;
+		}
+
+		private void emitRelation(MethodVisitor mv, Function fun, FelNode left, FelNode right) {
+			Class<?> type = fun.getClass();
+			Kind leftKind = kindOf(left), rightKind = kindOf(right);
+
+			if (!leftKind.isNumber() || !rightKind.isNumber()) {
+				// 非数值：与生成的java源码一样使用ObjectUtils.equals，大小比较调用运算符的compare
+				if (type == Equal.class || type == NotEqual.class) {
+					emit(mv, left, Kind.OBJECT);
+					emit(mv, right, Kind.OBJECT);
+					String method = type == Equal.class ? "equals" : "notEqual";
+					mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(ObjectUtils.class), method, "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+				} else {
+					loadConst(mv, fun, Type.getInternalName(LessThen.class));
+					emit(mv, left, Kind.OBJECT);
+					emit(mv, right, Kind.OBJECT);
+					mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(LessThen.class), "compare", "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+				}
+				return;
+			}
+
+			Kind kind = Kind.arithmetic(leftKind, rightKind);
+			emit(mv, left, kind);
+			emit(mv, right, kind);
+
+			Label yes = new Label(), done = new Label();
+			int jump;
+			if (kind == Kind.INT) {
+				jump = type == LessThen.class ? IF_ICMPLT : type == LessThenEqual.class ? IF_ICMPLE : type == GreaterThan.class ? IF_ICMPGT
+						: type == GreaterThenEqual.class ? IF_ICMPGE : type == Equal.class ? IF_ICMPEQ : IF_ICMPNE;
+			} else {
+				if (kind == Kind.LONG) {
+					mv.visitInsn(LCMP);
+				} else {
+					// NaN参与比较时结果为false
+					mv.visitInsn(type == LessThen.class || type == LessThenEqual.class ? DCMPG : DCMPL);
+				}
+				jump = type == LessThen.class ? IFLT : type == LessThenEqual.class ? IFLE : type == GreaterThan.class ? IFGT
+						: type == GreaterThenEqual.class ? IFGE : type == Equal.class ? IFEQ : IFNE;
+			}
+			mv.visitJumpInsn(jump, yes);
+			mv.visitInsn(ICONST_0);
+			mv.visitJumpInsn(GOTO, done);
+			mv.visitLabel(yes);
+			mv.visitInsn(ICONST_1);
+			mv.visitLabel(done);
+		}
+
+		/**
+		 * 逻辑运算的操作数：Boolean直接使用，其它对象按NumberUtil.toBoolean转换，数值为false
+		 */
+		private void emitBoolean(MethodVisitor mv, FelNode node) {
+			Kind kind = kindOf(node);
+			if (kind == Kind.BOOLEAN) {
+				emit(mv, node, Kind.BOOLEAN);
+			} else if (kind == Kind.OBJECT) {
+				emit(mv, node, Kind.OBJECT);
+				mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(NumberUtil.class), "toBoolean", "(Ljava/lang/Object;)Z", false);
+			} else {
+				emit(mv, node, kind);
+				mv.visitInsn(kind.type.getSize() == 2 ? POP2 : POP);
+				mv.visitInsn(ICONST_0);
+			}
+		}
+
+		/**
+		 * 解释执行节点
+		 */
+		private void interpret(MethodVisitor mv, FelNode node) {
+			loadConst(mv, node, FEL_NODE);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitMethodInsn(INVOKEINTERFACE, FEL_NODE, "eval", EVAL_DESC, true);
+		}
+
+		private void loadVar(MethodVisitor mv, String name) {
+			mv.visitVarInsn(ALOAD, 1);
+			String arrayCtx = Type.getInternalName(ArrayCtx.class);
+			if (ctx instanceof ArrayCtx) {
+				// (context instanceof ArrayCtx) ? ((ArrayCtx) context).get(index) : context.get(name)
+				Label byName = new Label(), done = new Label();
+				mv.visitTypeInsn(INSTANCEOF, arrayCtx);
+				mv.visitJumpInsn(IFEQ, byName);
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitTypeInsn(CHECKCAST, arrayCtx);
+				mv.visitLdcInsn(((ArrayCtx) ctx).getIndex(name));
+				mv.visitMethodInsn(INVOKEINTERFACE, arrayCtx, "get", "(I)Ljava/lang/Object;", true);
+				mv.visitJumpInsn(GOTO, done);
+				mv.visitLabel(byName);
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitLdcInsn(name);
+				mv.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(FelContext.class), "get", "(Ljava/lang/String;)Ljava/lang/Object;", true);
+				mv.visitLabel(done);
+			} else {
+				mv.visitLdcInsn(name);
+				mv.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(FelContext.class), "get", "(Ljava/lang/String;)Ljava/lang/Object;", true);
+			}
+		}
+
+		private void loadConst(MethodVisitor mv, Object value, String type) {
+			int index = consts.size();
+			consts.add(value);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "consts", "[Ljava/lang/Object;");
+			mv.visitLdcInsn(index);
+			mv.visitInsn(AALOAD);
+			mv.visitTypeInsn(CHECKCAST, type);
+		}
+
+		private void pushConst(MethodVisitor mv, Object value) {
+			Kind kind = kindOfValue(value);
+			if (value == null) {
+				mv.visitInsn(ACONST_NULL);
+			} else if (kind == Kind.BOOLEAN) {
+				mv.visitInsn((Boolean) value ? ICONST_1 : ICONST_0);
+			} else if (kind != Kind.OBJECT || value instanceof String) {
+				mv.visitLdcInsn(value);
+			} else {
+				loadConst(mv, value, "java/lang/Object");
+			}
+		}
+
+		private static String boxOf(Kind kind) {
+			return kind == Kind.INT ? "java/lang/Integer" : kind == Kind.LONG ? "java/lang/Long" : kind == Kind.DOUBLE ? "java/lang/Double" : "java/lang/Boolean";
+		}
+
+		private static void unbox(MethodVisitor mv, Kind kind) {
+			String owner = boxOf(kind);
+			mv.visitTypeInsn(CHECKCAST, owner);
+			mv.visitMethodInsn(INVOKEVIRTUAL, owner, kind.type.getClassName() + "Value", "()" + kind.type.getDescriptor(), false);
+		}
+
+		private static void convert(MethodVisitor mv, Kind from, Kind to) {
+			if (from == to) {
+				return;
+			}
+			if (to == Kind.OBJECT) {
+				String owner = boxOf(from);
+				mv.visitMethodInsn(INVOKESTATIC, owner, "valueOf", "(" + from.type.getDescriptor() + ")L" + owner + ";", false);
+			} else if (from == Kind.INT && to == Kind.LONG) {
+				mv.visitInsn(I2L);
+			} else if (from == Kind.INT && to == Kind.DOUBLE) {
+				mv.visitInsn(I2D);
+			} else if (from == Kind.LONG && to == Kind.DOUBLE) {
+				mv.visitInsn(L2D);
+			} else if (from == Kind.OBJECT) {
+				// 解释执行的子节点，按需要的类型拆箱
+				unbox(mv, to);
+			} else {
+				throw new CompileException("不能把" + from + "转换成" + to);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.fel.compile;
+
+import com.fel.context.FelContext;
+import com.fel.parser.FelNode;
+
+/**
+ * 字节码编译的输入: 不生成java源码，直接保存优化后的语法树和编译时的上下文(用于推断变量类型)
+ */
+public class AstSource extends JavaSource {
+
+	private final FelContext context;
+
+	private final FelNode node;
+
+	public AstSource(FelContext context, FelNode node) {
+		this.context = context;
+		this.node = node;
+	}
+
+	public FelContext getContext() {
+		return context;
+	}
+
+	public FelNode getNode() {
+		return node;
+	}
+
+}
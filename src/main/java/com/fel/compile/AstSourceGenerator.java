@@ -0,0 +1,47 @@
+package com.fel.compile;
+
+import com.fel.context.FelContext;
+import com.fel.optimizer.ConstOpti;
+import com.fel.optimizer.Optimizer;
+import com.fel.parser.ConstNode;
+import com.fel.parser.FelNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 配合AsmCompiler使用：只做常量优化，然后把语法树原样交给编译器
+ */
+public class AstSourceGenerator implements SourceGenerator {
+
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private final List<Optimizer> opt = new ArrayList<Optimizer>();
+
+	{
+		// 进行常量优化(计算表达式中的常量节点)
+		addOpti(new ConstOpti());
+	}
+
+	@Override
+	public JavaSource getSource(FelContext ctx, FelNode node) {
+		for (Optimizer o : opt) {
+			node = o.call(ctx, node);
+		}
+		if (node instanceof ConstNode) {
+			return new ConstExpSrc(((ConstNode) node).interpret(null, null));
+		}
+		AstSource src = new AstSource(ctx, node);
+		src.setPackageName(SourceGeneratorImpl.PACKAGE);
+		src.setSimpleName("FelAsm_" + count.getAndIncrement());
+		src.setSource("");
+		return src;
+	}
+
+	@Override
+	public void addOpti(Optimizer opti) {
+		this.opt.add(opti);
+	}
+
+}
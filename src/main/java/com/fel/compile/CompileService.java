@@ -4,6 +4,7 @@ import com.fel.Expression;
 import com.fel.context.FelContext;
 import com.fel.parser.FelNode;
 
+import javax.tools.ToolProvider;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -12,6 +13,11 @@ import java.util.Enumeration;
 import java.util.List;
 
 public class CompileService {
+
+	/**
+	 * 编译器每个类加载器定义的类数，整批表达式被ExpressionCache淘汰后这些类随类加载器一起卸载
+	 */
+	static final int BATCH_SIZE = Integer.getInteger("fel.classloader.batch", 64);
 	
 	private SourceGenerator srcGen;
 	private FelCompiler complier;
@@ -32,11 +38,22 @@ public class CompileService {
 		this.complier = complier;
 	}
 
-	{
-		srcGen = new SourceGeneratorImpl();
-		String name = getCompilerClassName();
-		FelCompiler comp = newCompiler(name);
-		complier = comp;
+	/**
+	 * 运行环境没有javac(只有JRE)或者设置了-Dfel.compiler=asm时，使用AsmCompiler直接生成字节码
+	 */
+	public CompileService() {
+		if ("asm".equals(System.getProperty("fel.compiler")) || ToolProvider.getSystemJavaCompiler() == null) {
+			srcGen = new AstSourceGenerator();
+			complier = new AsmCompiler();
+		} else {
+			srcGen = new SourceGeneratorImpl();
+			complier = newCompiler(getCompilerClassName());
+		}
+	}
+
+	public CompileService(SourceGenerator srcGen, FelCompiler complier) {
+		this.srcGen = srcGen;
+		this.complier = complier;
 	}
 
 	public static List<String> getClassPath(ClassLoader cl) {
@@ -104,7 +121,12 @@ public class CompileService {
 			}
 			src.setSource("// 表达式:" + originalExp + "\n" + src.getSource());
 			// System.out.println("****************\n" + src.getSource());
-			return complier.compile(src);
+			Expression exp = complier.compile(src);
+			// AsmCompiler生成的代码自己处理类型不符
+			if (exp != null && !(src instanceof AstSource)) {
+				exp = new TypeGuardExp(exp, node, ctx);
+			}
+			return exp;
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
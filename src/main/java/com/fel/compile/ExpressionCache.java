@@ -0,0 +1,186 @@
+package com.fel.compile;
+
+import com.fel.Expression;
+import com.fel.FelEngine;
+import com.fel.context.AbstractContext;
+import com.fel.context.ArrayCtx;
+import com.fel.context.FelContext;
+import com.fel.parser.FelNode;
+import com.fel.parser.VarAstNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 引擎级的编译结果缓存
+ *
+ * 编译生成的代码依赖编译时变量的类型(ArrayCtx还依赖变量的索引)，所以同一个表达式按变量类型组合保存多个编译结果。
+ * 表达式条数超过maxSize时淘汰最久未使用的1/8；编译器按批次使用类加载器，一批表达式都被淘汰后生成的类可以被卸载。
+ * 同一表达式同时未命中时只编译一次。
+ */
+public final class ExpressionCache {
+
+	private static final int MAX_VARIANTS = 8;
+
+	private final ConcurrentHashMap<String, Entry> entryMap = new ConcurrentHashMap<String, Entry>(256);
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	private final int maxSize;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public ExpressionCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive!");
+		}
+		this.maxSize = maxSize;
+	}
+
+	public Expression compile(FelEngine engine, String exp, FelContext ctx) {
+		Entry entry = entryMap.get(exp);
+		if (entry == null) {
+			entry = entryMap.computeIfAbsent(exp, Entry::new);
+			if (entryMap.size() > maxSize) {
+				evict();
+			}
+		}
+		entry.lastAccess = System.nanoTime();
+
+		Expression expression = entry.find(ctx);
+		if (expression != null) {
+			hits.increment();
+			return expression;
+		}
+		return entry.compile(engine, ctx);
+	}
+
+	public int size() {
+		return entryMap.size();
+	}
+
+	public void clear() {
+		entryMap.clear();
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		long hit = hits.sum(), miss = misses.sum();
+		result.put("size", entryMap.size());
+		result.put("maxSize", maxSize);
+		result.put("hits", hit);
+		result.put("misses", miss);
+		result.put("hitRate", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+		result.put("evictions", evictions.sum());
+		return result;
+	}
+
+	/**
+	 * 只有一个线程做淘汰，其余线程不等待
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			List<Entry> entries = new ArrayList<Entry>(entryMap.values());
+			int target = maxSize - maxSize / 8;
+			if (entries.size() <= target) {
+				return;
+			}
+			entries.sort(Comparator.comparingLong((Entry e) -> e.lastAccess));
+			for (int i = 0; i < entries.size() - target; ++i) {
+				if (entryMap.remove(entries.get(i).text, entries.get(i))) {
+					evictions.increment();
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private final class Entry {
+		private final String text;
+		private volatile long lastAccess;
+
+		// 顶层变量名，第一次编译时收集
+		private String[] names;
+
+		// 写时复制，读取不加锁
+		private volatile Variant[] variants = new Variant[0];
+
+		private Entry(String text) {
+			this.text = text;
+		}
+
+		private Expression find(FelContext ctx) {
+			for (Variant variant : variants) {
+				if (variant.matches(names, ctx)) {
+					return variant.expression;
+				}
+			}
+			return null;
+		}
+
+		private synchronized Expression compile(FelEngine engine, FelContext ctx) {
+			Expression expression = find(ctx);
+			if (expression != null) {
+				hits.increment();
+				return expression;
+			}
+			misses.increment();
+
+			FelNode node = engine.parse(text);
+			if (names == null) {
+				List<String> list = VarAstNode.getVarNames(node);
+				names = list.toArray(new String[list.size()]);
+			}
+			expression = engine.getCompiler().compile(ctx, node, text);
+			// 编译失败不缓存；类型组合过多时不再缓存新组合
+			if (expression == null || variants.length >= MAX_VARIANTS) {
+				return expression;
+			}
+
+			Variant[] next = new Variant[variants.length + 1];
+			System.arraycopy(variants, 0, next, 0, variants.length);
+			next[variants.length] = new Variant(names, ctx, expression);
+			variants = next;
+			return expression;
+		}
+	}
+
+	private static final class Variant {
+		private final Class<?>[] types;
+		private final int[] indexes;
+		private final Expression expression;
+
+		private Variant(String[] names, FelContext ctx, Expression expression) {
+			this.types = new Class<?>[names.length];
+			this.indexes = new int[names.length];
+			for (int i = 0; i < names.length; ++i) {
+				types[i] = AbstractContext.getVarType(names[i], ctx);
+				indexes[i] = indexOf(names[i], ctx);
+			}
+			this.expression = expression;
+		}
+
+		private boolean matches(String[] names, FelContext ctx) {
+			for (int i = 0; i < types.length; ++i) {
+				if (types[i] != AbstractContext.getVarType(names[i], ctx) || indexes[i] != indexOf(names[i], ctx)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int indexOf(String name, FelContext ctx) {
+			return ctx instanceof ArrayCtx ? ((ArrayCtx) ctx).getIndex(name) : -1;
+		}
+	}
+}
@@ -14,7 +14,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class FelCompiler16<T> implements FelCompiler {
-	private final FelCompilerClassloader classLoader;
+	private final ClassLoader parent;
+
+	// 按批次更换类加载器，见CompileService.BATCH_SIZE
+	private FelCompilerClassloader classLoader;
+	private int defined;
 
 	private final JavaCompiler compiler;
 
@@ -33,13 +37,13 @@ public class FelCompiler16<T> implements FelCompiler {
 							+ "Check that your class path includes tools.jar");
 		}
 
-		this.classLoader = new FelCompilerClassloader(this.getClass()
-				.getClassLoader());
+		this.parent = this.getClass().getClassLoader();
+		this.classLoader = new FelCompilerClassloader(parent);
 		diagnostics = new DiagnosticCollector<JavaFileObject>();
 		final StandardJavaFileManager fileManager = compiler
 				.getStandardFileManager(diagnostics, null, null);
 
-		ClassLoader loader = this.classLoader.getParent();
+		ClassLoader loader = parent;
 		List<String> paths = CompileService.getClassPath(loader);
 		List<File> cpFiles = new ArrayList<File>();
 		if (paths != null && (!paths.isEmpty())) {
@@ -120,6 +124,10 @@ public class FelCompiler16<T> implements FelCompiler {
 
 
 	public synchronized Class<T> compileToClass(final JavaSource src) {
+		if (defined++ >= CompileService.BATCH_SIZE) {
+			classLoader = new FelCompilerClassloader(parent);
+			defined = 1;
+		}
 		List<JavaFileObject> compileSrcs = new ArrayList<JavaFileObject>();
 		String className = src.getSimpleName();
 		final FelJavaFileObject compileSrc = new FelJavaFileObject(className,
@@ -0,0 +1,55 @@
+package com.fel.compile;
+
+import com.fel.Expression;
+import com.fel.context.AbstractContext;
+import com.fel.context.ArrayCtx;
+import com.fel.context.FelContext;
+import com.fel.parser.FelNode;
+import com.fel.parser.VarAstNode;
+
+import java.util.List;
+
+/**
+ * javac生成的代码按编译时变量的类型(ArrayCtx还有变量的索引)强制转型、拆箱。
+ * 求值前先比较变量类型，与编译时不同则解释执行语法树，与AsmCompiler生成的代码开头的类型检查相同；
+ * 表达式本身抛出的异常照常抛出。
+ */
+final class TypeGuardExp implements Expression {
+
+	private final Expression compiled;
+
+	private final FelNode node;
+
+	private final String[] names;
+
+	private final Class<?>[] types;
+
+	private final int[] indexes;
+
+	TypeGuardExp(Expression compiled, FelNode node, FelContext ctx) {
+		this.compiled = compiled;
+		this.node = node;
+		List<String> list = VarAstNode.getVarNames(node);
+		this.names = list.toArray(new String[list.size()]);
+		this.types = new Class<?>[names.length];
+		this.indexes = new int[names.length];
+		for (int i = 0; i < names.length; ++i) {
+			types[i] = AbstractContext.getVarType(names[i], ctx);
+			indexes[i] = indexOf(names[i], ctx);
+		}
+	}
+
+	@Override
+	public Object eval(FelContext context) {
+		for (int i = 0; i < names.length; ++i) {
+			if (types[i] != AbstractContext.getVarType(names[i], context) || indexes[i] != indexOf(names[i], context)) {
+				return node.eval(context);
+			}
+		}
+		return compiled.eval(context);
+	}
+
+	private static int indexOf(String name, FelContext ctx) {
+		return ctx instanceof ArrayCtx ? ((ArrayCtx) ctx).getIndex(name) : -1;
+	}
+}
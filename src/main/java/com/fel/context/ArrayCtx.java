@@ -16,4 +16,13 @@ public interface ArrayCtx extends FelContext {
 	 */
 	int getIndex(String name);
 
+	/**
+	 * 变量索引的布局：布局相同的上下文中同名变量的索引相同，解释执行时据此在变量节点上缓存索引。
+	 * 变量节点随语法树缓存，会一直引用返回的对象，所以只能返回不可变的布局描述(如Slots)，不能返回上下文本身或其中的数据
+	 * @return 为null时不缓存索引
+	 */
+	default Object layout() {
+		return null;
+	}
+
 }
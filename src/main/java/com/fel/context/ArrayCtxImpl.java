@@ -13,6 +13,9 @@ public class ArrayCtxImpl implements ArrayCtx
 
 	private Map<String,Integer> indexMap = new HashMap<String,Integer>();
 
+	// 布局的标识，不引用变量和indexMap
+	private final Object layout = new Object();
+
 	public ArrayCtxImpl()
 	{
 	}
@@ -33,6 +36,15 @@ public class ArrayCtxImpl implements ArrayCtx
 		return vars[i].getValue();
 	}
 
+	/**
+	 * 变量的索引一旦分配就不再改变，同一个上下文的布局不变
+	 */
+	@Override
+	public Object layout()
+	{
+		return layout;
+	}
+
 	@Override
 	public int getIndex(String name)
 	{
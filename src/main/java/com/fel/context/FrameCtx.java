@@ -0,0 +1,87 @@
+package com.fel.context;
+
+/**
+ * 按槽位读取变量的上下文：变量值保存在调用方提供的Object[]中，下标由Slots决定
+ *
+ * 读取变量不查找Map也不创建Var；每次求值前替换或改写frame即可复用，frame不是线程安全的，每个线程使用自己的FrameCtx
+ */
+public final class FrameCtx implements ArrayCtx {
+
+	private final Slots slots;
+
+	private Object[] frame;
+
+	public FrameCtx(Slots slots, Object[] frame) {
+		if (frame.length < slots.size()) {
+			throw new IllegalArgumentException("frame长度不能小于变量数:" + slots.size());
+		}
+		this.slots = slots;
+		this.frame = frame;
+	}
+
+	public Slots getSlots() {
+		return slots;
+	}
+
+	public Object[] getFrame() {
+		return frame;
+	}
+
+	/**
+	 * 换一组变量值
+	 */
+	public FrameCtx frame(Object[] frame) {
+		if (frame.length < slots.size()) {
+			throw new IllegalArgumentException("frame长度不能小于变量数:" + slots.size());
+		}
+		this.frame = frame;
+		return this;
+	}
+
+	public void set(int index, Object value) {
+		frame[index] = value;
+	}
+
+	@Override
+	public Object get(int i) {
+		return i >= 0 ? frame[i] : null;
+	}
+
+	@Override
+	public int getIndex(String name) {
+		return slots.indexOf(name);
+	}
+
+	@Override
+	public Object layout() {
+		return slots;
+	}
+
+	@Override
+	public Object get(String name) {
+		return get(slots.indexOf(name));
+	}
+
+	@Override
+	public void set(String name, Object value) {
+		int index = slots.indexOf(name);
+		if (index < 0) {
+			throw new IllegalArgumentException("没有为变量[" + name + "]分配槽位");
+		}
+		frame[index] = value;
+	}
+
+	/**
+	 * 只在编译时用来判断变量类型
+	 */
+	@Override
+	public Var getVar(String name) {
+		int index = slots.indexOf(name);
+		return index < 0 ? null : new Var(name, frame[index]);
+	}
+
+	@Override
+	public void setVar(Var var) {
+		set(var.getName(), var.getValue());
+	}
+}
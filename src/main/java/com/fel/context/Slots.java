@@ -0,0 +1,63 @@
+package com.fel.context;
+
+import com.fel.parser.FelNode;
+import com.fel.parser.VarAstNode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 变量名到槽位(数组下标)的绑定，创建后不再改变
+ *
+ * 编译或第一次解释执行时按名称解析一次槽位，之后FrameCtx中的变量读取都是数组下标访问
+ */
+public final class Slots {
+
+	private final String[] names;
+
+	private final Map<String, Integer> indexMap;
+
+	private Slots(String[] names) {
+		this.names = names;
+		this.indexMap = new HashMap<String, Integer>(names.length * 2);
+		for (int i = 0; i < names.length; i++) {
+			if (indexMap.put(names[i], i) != null) {
+				throw new IllegalArgumentException("变量名重复:" + names[i]);
+			}
+		}
+	}
+
+	public static Slots of(String... names) {
+		return new Slots(names.clone());
+	}
+
+	/**
+	 * 按表达式中变量出现的顺序分配槽位
+	 */
+	public static Slots of(FelNode node) {
+		List<String> names = VarAstNode.getVarNames(node);
+		return new Slots(names.toArray(new String[names.size()]));
+	}
+
+	public int indexOf(String name) {
+		Integer i = indexMap.get(name);
+		return i != null ? i : -1;
+	}
+
+	public String name(int index) {
+		return names[index];
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public Object[] newFrame() {
+		return new Object[names.length];
+	}
+
+	public FrameCtx newContext() {
+		return new FrameCtx(this, newFrame());
+	}
+}
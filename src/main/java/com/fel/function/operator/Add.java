@@ -33,33 +33,53 @@ public class Add extends StableFunction {
 	 */
 	@Override
 	public Object call(FelNode node, FelContext context) {
+		List<FelNode> children = node.getChildren();
+		if (children.size() == 2) {
+			Object left = TolerantFunction.eval(context, children.get(0));
+			Object right = TolerantFunction.eval(context, children.get(1));
+			// 两个int相加不会超出double的精确范围，直接用long计算
+			if (left instanceof Integer && right instanceof Integer) {
+				return NumberUtil.parseNumber((long) (Integer) left + (Integer) right);
+			}
+			if (NumberUtil.isIntOrDouble(left) && NumberUtil.isIntOrDouble(right)) {
+				return NumberUtil.parseNumber(((Number) left).doubleValue() + ((Number) right).doubleValue());
+			}
+			return result(plus(plus(null, left), right));
+		}
 		Object returnMe = null;
-		for (Iterator<FelNode> iterator = node.getChildren().iterator(); iterator
-				.hasNext();) {
-			Object child = iterator.next();
-			child = TolerantFunction.eval(context, child);
-			if (child instanceof String) {
-				if (returnMe == null) {
-					returnMe = child;
-					continue;
-				}
-					returnMe = returnMe + (String) child;
+		for (Iterator<FelNode> iterator = children.iterator(); iterator.hasNext();) {
+			returnMe = plus(returnMe, TolerantFunction.eval(context, iterator.next()));
+		}
+		return result(returnMe);
+	}
+
+	/**
+	 * 逐个累加：有字符串时拼接，数值按double相加
+	 */
+	private static Object plus(Object returnMe, Object child) {
+		if (child instanceof String) {
+			if (returnMe == null) {
+				return child;
+			}
+			returnMe = returnMe + (String) child;
+		}
+		if (child instanceof Number) {
+			if (returnMe == null) {
+				return child;
 			}
-			if (child instanceof Number) {
-				if (returnMe == null) {
-					returnMe = child;
-					continue;
-				}
-				Number value = (Number) child;
-				if (returnMe instanceof Number) {
-					Number r = (Number) returnMe;
-					returnMe = toDouble(r) + toDouble(value);
-				}else if(returnMe instanceof String){
-					String r = (String) returnMe;
-					returnMe=r+value;
-				}
+			Number value = (Number) child;
+			if (returnMe instanceof Number) {
+				Number r = (Number) returnMe;
+				returnMe = toDouble(r) + toDouble(value);
+			} else if (returnMe instanceof String) {
+				String r = (String) returnMe;
+				returnMe = r + value;
 			}
 		}
+		return returnMe;
+	}
+
+	private static Object result(Object returnMe) {
 		if(returnMe instanceof Number){
 			return NumberUtil.parseNumber(returnMe.toString());
 		}
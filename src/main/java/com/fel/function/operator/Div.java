@@ -8,6 +8,11 @@ public class Div extends Mul {
 	Object calc(double l, double r) {
 		return NumberUtil.parseNumber(l / r);
 	}
+
+	@Override
+	Object calc(int l, int r) {
+		return calc((double) l, (double) r);
+	}
 	
 	@Override
 	public String getName() {
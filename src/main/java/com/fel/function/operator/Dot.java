@@ -1,7 +1,6 @@
 package com.fel.function.operator;
 
 import com.fel.Expression;
-import com.fel.common.ArrayUtils;
 import com.fel.common.Null;
 import com.fel.common.ReflectUtil;
 import com.fel.compile.FelMethod;
@@ -10,25 +9,51 @@ import com.fel.context.FelContext;
 import com.fel.function.CommonFunction;
 import com.fel.function.Function;
 import com.fel.parser.FelNode;
+import com.fel.parser.FunNode;
 import com.fel.security.SecurityMgr;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Dot implements Function {
 
-	private SecurityMgr securityMgr;
+	/**
+	 * 每个调用点最多缓存的接收者类型(和参数类型)组合，超过后不再缓存，每次查找方法
+	 */
+	static final int POLYMORPHIC_LIMIT = 4;
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	private volatile SecurityMgr securityMgr;
+
+	// 更换安全管理器后调用点缓存失效
+	private volatile int version;
+
+	// 安全检查的结果，每个方法只检查一次
+	private final Map<Method, Boolean> callableMap = new ConcurrentHashMap<Method, Boolean>();
 
 	public SecurityMgr getSecurityMgr() {
 		return securityMgr;
 	}
 
 	public void setSecurityMgr(SecurityMgr securityMgr) {
-		this.securityMgr = securityMgr;
+		if (this.securityMgr != securityMgr) {
+			this.securityMgr = securityMgr;
+			callableMap.clear();
+			version++;
+		}
 	}
 
 	static final Map<Class<?>, Class<?>> PRIMITIVE_TYPES;
@@ -50,6 +75,9 @@ public class Dot implements Function {
 		return DOT;
 	}
 
+	/**
+	 * 按接收者类型和参数类型在调用点(FunNode)上缓存查找到的方法，命中时不再查找方法和做安全检查
+	 */
 	@Override
 	public Object call(FelNode node, FelContext context) {
 		List<FelNode> children = node.getChildren();
@@ -59,33 +87,51 @@ public class Dot implements Function {
 			left = exp.eval(context);
 		}
 		FelNode right = children.get(1);
-		FelNode exp = right;
-		Class<?>[] argsType = new Class<?>[0];
 		Object[] args = CommonFunction.evalArgs(right, context);
-		if (!ArrayUtils.isEmpty(args)) {
-			argsType = new Class[args.length];
-			for (int i = 0; i < args.length; i++) {
-				if (args[i] == null) {
-					argsType[i] = Null.class;
-					continue;
+		if (args == null) {
+			args = NO_ARGS;
+		}
+		Class<?> cls = left instanceof Class<?> ? (Class<?>) left : left.getClass();
+
+		if (!(node instanceof FunNode)) {
+			return lookup(cls, right.getText(), args).invoke(left, args);
+		}
+		FunNode site = (FunNode) node;
+		CallSite cached = site.getCallSite() instanceof CallSite ? (CallSite) site.getCallSite() : null;
+		if (cached != null && cached.version == version) {
+			for (Target target : cached.targets) {
+				if (target.matches(cls, args)) {
+					return target.invoke(left, args);
 				}
-				argsType[i] = args[i].getClass();
 			}
+		} else {
+			cached = null;
 		}
-		Method method = null;
-		Class<?> cls = left instanceof Class<?> ? (Class<?>) left : left.getClass();
 
-		String methodName = right.getText();
-		method = findMethod(cls, methodName, argsType);
-		if (method == null) {
-			String getMethod = "get";
-			method = findMethod(cls, getMethod, new Class<?>[] { String.class });
-			args = new Object[] { exp.getText() };
+		Target target = lookup(cls, right.getText(), args);
+		if (cached == null) {
+			site.setCallSite(new CallSite(version, new Target[] { target }));
+		} else if (cached.targets.length < POLYMORPHIC_LIMIT) {
+			Target[] targets = Arrays.copyOf(cached.targets, cached.targets.length + 1);
+			targets[cached.targets.length] = target;
+			site.setCallSite(new CallSite(cached.version, targets));
 		}
-		if (method != null) {
-			return invoke(left, method, args);
+		return target.invoke(left, args);
+	}
+
+	private Target lookup(Class<?> cls, String methodName, Object[] args) {
+		Class<?>[] argsType = new Class<?>[args.length];
+		for (int i = 0; i < args.length; i++) {
+			argsType[i] = args[i] == null ? Null.class : args[i].getClass();
 		}
-		return null;
+		Method method = findMethod(cls, methodName, argsType);
+		Object[] fixedArgs = null;
+		if (method == null) {
+			// 当没有找到方法 ，直接使用get方法来获取属性
+			method = findMethod(cls, "get", new Class<?>[] { String.class });
+			fixedArgs = new Object[] { methodName };
+		}
+		return new Target(cls, argsType, method, fixedArgs);
 	}
 
 	private Method findMethod(Class<?> cls, String methodName, Class<?>[] argsType) {
@@ -99,12 +145,95 @@ public class Dot implements Function {
 	}
 
 	private Method getCallableMethod(Method m) {
-		if (m == null || securityMgr.isCallable(m)) {
+		if (m == null) {
+			return null;
+		}
+		Boolean callable = callableMap.get(m);
+		if (callable == null) {
+			callable = securityMgr.isCallable(m);
+			callableMap.put(m, callable);
+		}
+		if (callable) {
 			return m;
 		}
 		throw new SecurityException("安全管理器[" + securityMgr.getClass().getSimpleName() + "]禁止调用方法[" + m.toString() + "]");
 	}
 
+	private static final class CallSite {
+		private final int version;
+		private final Target[] targets;
+
+		private CallSite(int version, Target[] targets) {
+			this.version = version;
+			this.targets = targets;
+		}
+	}
+
+	/**
+	 * 已通过安全检查的方法；能访问时转换成(Object, Object[])Object的MethodHandle，否则用Method.invoke
+	 */
+	private static final class Target {
+		private final Class<?> receiver;
+		private final Class<?>[] argsType;
+		private final Method method;
+		private final Object[] fixedArgs;
+		private final MethodHandle handle;
+
+		private Target(Class<?> receiver, Class<?>[] argsType, Method method, Object[] fixedArgs) {
+			this.receiver = receiver;
+			this.argsType = argsType;
+			this.method = method;
+			this.fixedArgs = fixedArgs;
+			this.handle = method == null ? null : toHandle(method);
+		}
+
+		private static MethodHandle toHandle(Method method) {
+			try {
+				MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+				if (Modifier.isStatic(method.getModifiers())) {
+					handle = MethodHandles.dropArguments(handle, 0, Object.class);
+				}
+				return handle.asSpreader(Object[].class, method.getParameterTypes().length).asType(INVOKER_TYPE);
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+		}
+
+		private boolean matches(Class<?> cls, Object[] args) {
+			if (cls != receiver || args.length != argsType.length) {
+				return false;
+			}
+			for (int i = 0; i < args.length; i++) {
+				Class<?> type = args[i] == null ? Null.class : args[i].getClass();
+				if (type != argsType[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private Object invoke(Object obj, Object[] args) {
+			if (method == null) {
+				return null;
+			}
+			if (fixedArgs != null) {
+				args = fixedArgs;
+			}
+			if (handle == null) {
+				return Dot.invoke(obj, method, args);
+			}
+			try {
+				return handle.invokeExact(obj, args);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				// 与Method.invoke一样，调用出错时返回null
+				e.printStackTrace();
+				return null;
+			}
+		}
+	}
+
 	/**
 	 * 调用方法
 	 * 
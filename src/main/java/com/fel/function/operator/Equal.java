@@ -39,6 +39,9 @@ public class Equal extends StableFunction {
 			return false;
 		} else if (left.getClass().equals(right.getClass())) {
 			return left.equals(right);
+		} else if (NumberUtil.isIntOrDouble(left) && NumberUtil.isIntOrDouble(right)) {
+			// Integer与Double比较
+			return ((Number) left).doubleValue() == ((Number) right).doubleValue();
 		} else if (left instanceof Number && right instanceof Number) {
 			return compareNumber(left, right);
 		}
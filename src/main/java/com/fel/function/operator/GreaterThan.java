@@ -30,6 +30,13 @@ public class GreaterThan extends LessThen {
 			return false;
 		}
 		
+		if (left instanceof Integer && right instanceof Integer) {
+			return ((Integer) left).intValue() > ((Integer) right).intValue();
+		}
+		if (NumberUtil.isIntOrDouble(left) && NumberUtil.isIntOrDouble(right)) {
+			return ((Number) left).doubleValue() > ((Number) right).doubleValue();
+		}
+
 		if(left instanceof Number && right instanceof Number){
 			return NumberUtil.toDouble((Number)left)> NumberUtil.toDouble((Number)right);
 		}
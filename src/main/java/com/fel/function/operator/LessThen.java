@@ -91,6 +91,13 @@ public class LessThen implements Stable, Function {
 			return false;
 		}
 
+		if (left instanceof Integer && right instanceof Integer) {
+			return ((Integer) left).intValue() < ((Integer) right).intValue();
+		}
+		if (NumberUtil.isIntOrDouble(left) && NumberUtil.isIntOrDouble(right)) {
+			return ((Number) left).doubleValue() < ((Number) right).doubleValue();
+		}
+
 		if (left instanceof Number && right instanceof Number) {
 			return NumberUtil.toDouble((Number) left) < NumberUtil.toDouble((Number) right);
 		}
@@ -26,6 +26,13 @@ public class LessThenEqual extends LessThen {
 			return false;
 		}
 		
+		if (left instanceof Integer && right instanceof Integer) {
+			return ((Integer) left).intValue() <= ((Integer) right).intValue();
+		}
+		if (NumberUtil.isIntOrDouble(left) && NumberUtil.isIntOrDouble(right)) {
+			return ((Number) left).doubleValue() <= ((Number) right).doubleValue();
+		}
+
 		if(left instanceof Number && right instanceof Number){
 			return NumberUtil.toDouble((Number)left)<= NumberUtil.toDouble((Number)right);
 		}
@@ -8,6 +8,14 @@ public class Mod extends Mul {
 	Object calc(double l, double r) {
 		return NumberUtil.parseNumber(l % r);
 	}
+
+	/**
+	 * 除数为0时按double计算(结果为NaN)
+	 */
+	@Override
+	Object calc(int l, int r) {
+		return r == 0 ? calc((double) l, (double) r) : NumberUtil.parseNumber((long) l % r);
+	}
 	
 	@Override
 	public String getName() {
@@ -70,6 +70,12 @@ public class Mul  extends StableFunction {
 			Object leftValue = left.eval(context);
 			FelNode right = children.get(1);
 			Object rightValue = right.eval(context);
+			if (leftValue instanceof Integer && rightValue instanceof Integer) {
+				return calc(((Integer) leftValue).intValue(), ((Integer) rightValue).intValue());
+			}
+			if (NumberUtil.isIntOrDouble(leftValue) && NumberUtil.isIntOrDouble(rightValue)) {
+				return calc(((Number) leftValue).doubleValue(), ((Number) rightValue).doubleValue());
+			}
 			if (leftValue instanceof Number && rightValue instanceof Number) {
 				double l = NumberUtil.toDouble(leftValue);
 				double r = NumberUtil.toDouble(rightValue);
@@ -86,6 +92,14 @@ public class Mul  extends StableFunction {
 			return NumberUtil.parseNumber(l * r);
 	}
 
+	/**
+	 * 两个int的运算，结果超出double的精确范围时按double计算，与原来的结果保持一致
+	 */
+	Object calc(int l, int r) {
+		long result = (long) l * r;
+		return NumberUtil.isExactDouble(result) ? NumberUtil.parseNumber(result) : calc((double) l, (double) r);
+	}
+
 	/**
 	 * 乘法
 	 * @param left
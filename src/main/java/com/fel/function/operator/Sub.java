@@ -81,6 +81,13 @@ public class Sub extends StableFunction {
 			Object leftValue = left.eval(context);
 			FelNode right = children.get(1);
 			Object rightValue = right.eval(context);
+			// 两个int相减不会超出double的精确范围，直接用long计算
+			if (leftValue instanceof Integer && rightValue instanceof Integer) {
+				return NumberUtil.parseNumber((long) (Integer) leftValue - (Integer) rightValue);
+			}
+			if (NumberUtil.isIntOrDouble(leftValue) && NumberUtil.isIntOrDouble(rightValue)) {
+				return NumberUtil.parseNumber(((Number) leftValue).doubleValue() - ((Number) rightValue).doubleValue());
+			}
 			if (leftValue instanceof Number && rightValue instanceof Number) {
 				double l = NumberUtil.toDouble(leftValue);
 				double r = NumberUtil.toDouble(rightValue);
@@ -19,10 +19,23 @@ import org.antlr.runtime.tree.CommonTree;
 public  class FunNode extends AbstFelNode {
 	private Function fun;
 
+	/**
+	 * 函数在这个调用点上缓存的数据(例如Dot缓存的方法)，由函数自己维护
+	 */
+	private volatile Object callSite;
+
 	public Function getFun() {
 		return fun;
 	}
 
+	public Object getCallSite() {
+		return callSite;
+	}
+
+	public void setCallSite(Object callSite) {
+		this.callSite = callSite;
+	}
+
 	private static final Function NOT_FOUND_FUN = new Function() {
 
 		@Override
@@ -61,6 +74,7 @@ public  class FunNode extends AbstFelNode {
 
 
 	public void initFun(FunMgr funMgr) {
+		callSite = null;
 		fun = funMgr.getFun(getText());
 		if (fun == null) {
 			fun = NOT_FOUND_FUN;
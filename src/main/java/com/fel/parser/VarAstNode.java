@@ -10,9 +10,15 @@ import com.fel.function.operator.Dot;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.tree.CommonTree;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class VarAstNode extends AbstFelNode {
 	private final String text;
 
+	// 上次在ArrayCtx中求值时变量的索引，只引用布局描述，不引用上下文
+	private volatile Slot slot;
+
 	public VarAstNode(Token token) {
 		super(token);
 		this.text = token.getText();
@@ -23,11 +29,63 @@ public class VarAstNode extends AbstFelNode {
 		return this.text;
 	}
 
+	/**
+	 * ArrayCtx的布局与上次相同时直接按索引读取，不再按名称查找
+	 */
 	@Override
 	public Object interpret(FelContext context, FelNode node) {
+		if (context instanceof ArrayCtx) {
+			ArrayCtx ctx = (ArrayCtx) context;
+			Object layout = ctx.layout();
+			if (layout != null) {
+				Slot s = slot;
+				if (s != null && s.layout == layout) {
+					return ctx.get(s.index);
+				}
+				int index = ctx.getIndex(text);
+				if (index >= 0) {
+					slot = new Slot(layout, index);
+					return ctx.get(index);
+				}
+			}
+		}
 		return context.get(text);
 	}
 
+	private static final class Slot {
+		private final Object layout;
+		private final int index;
+
+		private Slot(Object layout, int index) {
+			this.layout = layout;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * 表达式中的变量名(不包括点运算符右边的节点)，按出现的顺序
+	 */
+	public static List<String> getVarNames(FelNode node) {
+		List<String> names = new ArrayList<String>(4);
+		collectVarNames(node, names);
+		return names;
+	}
+
+	private static void collectVarNames(FelNode node, List<String> names) {
+		if (isVar(node)) {
+			if (!names.contains(node.getText())) {
+				names.add(node.getText());
+			}
+			return;
+		}
+		List<FelNode> children = node.getChildren();
+		if (children != null) {
+			for (FelNode child : children) {
+				collectVarNames(child, names);
+			}
+		}
+	}
+
 	public static boolean isVar(FelNode n) {
 		if (n == null) {
 			return false;
@@ -97,7 +97,7 @@ public class AccessObject
 
         if ( value == null )
         {
-            methodAccess.invoke(self, setMethodNames[index], null);
+            methodAccess.invoke(self, setMethodNames[index], new Object[]{ null });
         }
         else if ( parameterTypes[0].getName().equals(value.getClass().getName()) )
         {
@@ -67,7 +67,8 @@ public class HttpAsyncClient
         try
         {
             this.asyncHttpClient = createAsyncClient(false);
-            this.proxyAsyncHttpClient = createAsyncClient(true);
+            // 未配置代理时不创建代理客户端
+            if ( host.length() > 0 ) this.proxyAsyncHttpClient = createAsyncClient(true);
         }
         catch (Exception e)
         {
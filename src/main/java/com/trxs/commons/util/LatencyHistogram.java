@@ -0,0 +1,103 @@
+package com.trxs.commons.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定桶的延迟直方图(毫秒), record 无锁、不分配对象, 多线程写入安全
+ */
+public class LatencyHistogram
+{
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 60000 };
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+    }
+
+    public void record(long millis)
+    {
+        if ( millis < 0 ) millis = 0;
+
+        int index = 0;
+        while ( index < BOUNDS.length && millis >= BOUNDS[index] ) ++index;
+
+        counts.incrementAndGet(index);
+        total.incrementAndGet();
+        sum.addAndGet(millis);
+
+        long m;
+        while ( millis > (m = max.get()) && !max.compareAndSet(m, millis) );
+    }
+
+    public long getCount()
+    {
+        return total.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * @param percent 0~100
+     * @return 所在桶的上界(毫秒), 落在最后一个桶时返回 max
+     */
+    public long percentile(double percent)
+    {
+        long count = total.get();
+        if ( count == 0 ) return 0;
+
+        long threshold = (long) Math.ceil(count * percent / 100.0);
+        long accumulated = 0;
+        for ( int i = 0; i < BOUNDS.length; ++i )
+        {
+            accumulated += counts.get(i);
+            if ( accumulated >= threshold ) return BOUNDS[i];
+        }
+        return max.get();
+    }
+
+    public void reset()
+    {
+        for ( int i = 0; i < counts.length(); ++i ) counts.set(i, 0);
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("count", getCount());
+        result.put("mean", getMean());
+        result.put("max", getMax());
+        result.put("p50", percentile(50));
+        result.put("p99", percentile(99));
+        result.put("p999", percentile(99.9));
+
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for ( int i = 0; i < counts.length(); ++i )
+        {
+            buckets.put(i < BOUNDS.length ? "<" + BOUNDS[i] : ">=" + BOUNDS[BOUNDS.length - 1], counts.get(i));
+        }
+        result.put("buckets", buckets);
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package com.trxs.commons.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单写单读的 long 序列, 前后各填充 7 个 long 避免与相邻字段伪共享
+ *
+ * 写线程 publish 新值并唤醒读线程, 读线程在值变化前 park, 全程不装箱、不分配对象
+ * 只保证读到最新值, 中间被覆盖的值会跳过
+ */
+public class PaddedSequence extends PaddedSequenceRhs
+{
+    public PaddedSequence(long initialValue)
+    {
+        value = initialValue;
+    }
+
+    public long get()
+    {
+        return value;
+    }
+
+    public void publish(long newValue)
+    {
+        value = newValue;
+        Thread thread = waiter;
+        if ( thread != null ) LockSupport.unpark(thread);
+    }
+
+    /**
+     * 等待序列值不再等于 last
+     *
+     * @param last 上次读到的值
+     * @param timeoutNanos 最长等待时间
+     * @return 当前值, 超时或被 wakeup 时可能仍等于 last
+     */
+    public long waitFor(long last, long timeoutNanos)
+    {
+        long current = value;
+        if ( current != last ) return current;
+
+        waiter = Thread.currentThread();
+        try
+        {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while ( (current = value) == last && !woken )
+            {
+                long remain = deadline - System.nanoTime();
+                if ( remain <= 0 ) break;
+                LockSupport.parkNanos(this, remain);
+            }
+        }
+        finally
+        {
+            waiter = null;
+            woken = false;
+        }
+        return current;
+    }
+
+    // 不改变序列值, 只让等待中的读线程返回(例如关闭时)
+    public void wakeup()
+    {
+        woken = true;
+        Thread thread = waiter;
+        if ( thread != null ) LockSupport.unpark(thread);
+    }
+}
+
+abstract class PaddedSequenceLhs
+{
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedSequenceValue extends PaddedSequenceLhs
+{
+    protected volatile long value;
+    protected volatile Thread waiter;
+    protected volatile boolean woken;
+}
+
+abstract class PaddedSequenceRhs extends PaddedSequenceValue
+{
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
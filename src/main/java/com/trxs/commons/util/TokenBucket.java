@@ -0,0 +1,62 @@
+package com.trxs.commons.util;
+
+/**
+ * 令牌桶限流: 每秒补充 rate 个令牌, 最多积攒 burst 个
+ */
+public class TokenBucket
+{
+    private final double rate;
+    private final double burst;
+
+    private double tokens;
+    private long lastTime;
+
+    public TokenBucket(double ratePerSecond, double burst)
+    {
+        if ( ratePerSecond <= 0 || burst < 1 ) throw new IllegalArgumentException("Illegal token bucket rate or burst!");
+
+        this.rate = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @param now 当前时间(毫秒)
+     * @return true 取得一个令牌
+     */
+    public synchronized boolean tryAcquire(long now)
+    {
+        refill(now);
+        if ( tokens < 1 ) return false;
+
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double available(long now)
+    {
+        refill(now);
+        return tokens;
+    }
+
+    /**
+     * @param now 当前时间(毫秒)
+     * @return 距离下一个令牌可用还要等待的毫秒数, 已有令牌时返回 0
+     */
+    public synchronized long waitMillis(long now)
+    {
+        refill(now);
+        if ( tokens >= 1 ) return 0;
+
+        return (long) Math.ceil((1 - tokens) * 1000.0 / rate);
+    }
+
+    private void refill(long now)
+    {
+        if ( now <= lastTime ) return;
+
+        tokens = Math.min(burst, tokens + (now - lastTime) * rate / 1000.0);
+        lastTime = now;
+    }
+}
@@ -1,5 +1,6 @@
 package com.trxs.pulse;
 
+import com.trxs.pulse.data.CronPattern;
 import org.joda.time.DateTime;
 
 import java.util.Arrays;
@@ -96,48 +97,18 @@ public class CronChecker
 
     public boolean canRunning(String[]expItems, long time)
     {
-        final DateTime dateTime = new DateTime(time);
-        for ( int i = expItems.length -1; i >= 0; i-- )
-        {
-            if ( 0 == checkItem(dateTime, i, expItems[i]) ) return false;
-        }
-        return true;
-    }
-
-    private int checkItem( DateTime time, int index, final String item)
-    {
-        switch (index)
-        {
-            case 0: return check(time.getSecondOfMinute(),item);// 秒
-            case 1: return check(time.getMinuteOfHour(),item);  // 分
-            case 2: return check(time.getHourOfDay(),item);     // 时
-            case 3: return checkWithLast(time.getDayOfMonth(),item); // 日 支持 L(last)
-            case 4: return check(time.getMonthOfYear(),item);        // 月
-            case 5: return check(time.getDayOfWeek(),item);          // 周
-            case 6: return check(time.getYear(),item);               // 年
-        }
-        return 0;
+        return CronPattern.compile(String.join(" ", expItems)).matches(time);
     }
 
-    private int check(int value, String item)
+    // 表达式只在第一次使用时编译, 之后复用 CronPattern 缓存
+    public boolean canRunning(String expression, long time)
     {
-        if ( item.equals("*") ) return 1;
-        if ( item.matches("\\d+") )         return checkOneValue( Integer.valueOf(item).intValue(), value );
-        if ( item.matches("\\d+-\\d+") )    return checkInRange( item, value );
-        if ( item.matches("\\d+(,\\d+)+") ) return checkInAssemble( item, value );
-        if ( item.matches("\\d+/\\d") )     return checkValueInRepeat( item, value );
-        return 0;
+        return CronPattern.compile(expression).matches(time);
     }
 
-    private int checkWithLast(int day, String item)
+    public long nextFireTime(String expression, long after)
     {
-        if ( item.equals("*") ) return 1;
-        if ( item.matches("\\d+") )         return checkOneValue( Integer.valueOf(item).intValue(), day );
-        if ( item.matches("\\d+-\\d+") )    return checkInRange( item, day );
-        if ( item.matches("\\d+(,\\d+)+") ) return checkInAssemble( item, day );
-        if ( item.matches("\\d+/\\d") )     return checkValueInRepeat( item, day );
-        if ( item.equals("L") && day == DateTime.now().getDayOfMonth() ) return 1;
-        return 0;
+        return CronPattern.compile(expression).nextFireTime(after);
     }
 
     public int checkInRange(String range, int value)
@@ -0,0 +1,481 @@
+package com.trxs.pulse;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.trxs.commons.net.HttpClientFactory;
+import com.trxs.commons.util.LatencyHistogram;
+import com.trxs.pulse.data.HttpJob;
+import com.trxs.pulse.data.TaskJob;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Scope;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 非阻塞执行 job_type=0 的 p_tasks: 通过 HttpAsyncClient 发出 p_http_jobs 请求,
+ * 任务状态与返回内容交给 StateJournal 批量写入 p_tasks 和 p_http_job_responses
+ *
+ * TimerServer 触发时只把任务放进 submitted 队列; 单个分发线程批量查询 p_http_jobs,
+ * 按 host_id 排队, 在全局和单个主机的并发上限内发出请求; 请求完成由 IO reactor 线程回调, 不占用工作线程
+ *
+ * 每个任务发出前都用 state 1 -> 2 的比较并设置同步认领, 只执行本实例设置成功的行, 集群成员变化时同一行不会被两个实例执行;
+ * 状态日志积压达到上限时暂停发出新请求, 回调中写日志不会阻塞
+ */
+@Scope("singleton")
+@Component
+public class HttpJobExecutor
+{
+    private static Logger logger = LoggerFactory.getLogger(HttpJobExecutor.class.getSimpleName());
+
+    public static final int JOB_TYPE_HTTP = 0;
+
+    private static final String JOB_SQL =
+        "SELECT j.id, j.protocol, j.method, j.url, j.host_id, d.domain, p.headers, p.text_body FROM p_http_jobs j" +
+        " LEFT JOIN p_domains d ON d.id = j.host_id LEFT JOIN p_parameters p ON p.id = j.id WHERE j.id IN ( %s )";
+    private static final String CLAIM_SQL = "UPDATE p_tasks SET state = 2 WHERE id = ? AND state = 1";
+
+    private static final int CONTENT_LENGTH = 1024;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TimerServer timerServer;
+
+    @Autowired
+    private StateJournal stateJournal;
+
+    @Value("${pulse.http.max-in-flight:4096}")
+    private int maxInFlight;
+
+    @Value("${pulse.http.max-per-host:256}")
+    private int maxPerHost;
+
+    @Value("${pulse.http.max-queued:100000}")
+    private int maxQueued;
+
+    @Value("${pulse.http.batch-size:500}")
+    private int batchSize;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    private final ConcurrentLinkedQueue<TaskJob> submitted = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, HostSlot> hosts = new HashMap<>();
+    private final Map<Integer, Integer> hostLimits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram("http");
+
+    private volatile boolean interrupted;
+    private volatile Thread dispatchThread;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public HttpJobExecutor() {}
+
+    public HttpJobExecutor(JdbcTemplate jdbcTemplate, TimerServer timerServer, StateJournal stateJournal, CloseableHttpAsyncClient httpClient, int maxInFlight, int maxPerHost, int maxQueued, int batchSize)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timerServer = timerServer;
+        this.stateJournal = stateJournal;
+        this.httpClient = httpClient;
+        this.maxInFlight = maxInFlight;
+        this.maxPerHost = maxPerHost;
+        this.maxQueued = maxQueued;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        httpClient = HttpClientFactory.getInstance().getHttpAsyncClientPool().getAsyncHttpClient();
+        timerServer.registerHandler(JOB_TYPE_HTTP, this::submit);
+    }
+
+    /**
+     * 单独设置某个 p_domains 主机的并发上限
+     */
+    public void setHostLimit(int hostId, int limit)
+    {
+        hostLimits.put(hostId, limit);
+    }
+
+    /**
+     * 由 TimerServer 触发线程调用, 不阻塞
+     *
+     * 排队数包括 submitted 和各主机等待发出的任务, 发出后才减少, 某个主机变慢时总量仍受 maxQueued 限制
+     *
+     * @return false 排队的任务已达上限, 任务交回 TimerServer 放回 state=0 稍后重新加载
+     */
+    public boolean submit(TaskJob job)
+    {
+        if ( queued.incrementAndGet() > maxQueued )
+        {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            timerServer.handBack(job);
+            logger.warn("http queue is full, hand back task -> {}", job.getId());
+            return false;
+        }
+
+        submitted.add(job);
+        wakeup();
+        return true;
+    }
+
+    @Async("timerLoopExecutor")
+    public void dispatchRunnable()
+    {
+        if ( !running.compareAndSet(false, true) )
+        {
+            logger.warn("DispatchRunnable startup {} failed!", this.toString());
+            return;
+        }
+
+        logger.info("doHttpDispatch, go go go ...");
+        dispatchThread = Thread.currentThread();
+        interrupted = false;
+        try
+        {
+            if ( !httpClient.isRunning() ) httpClient.start();
+            do
+            {
+                if ( dispatchOnce() == 0 ) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            } while ( interrupted == false );
+        }
+        finally
+        {
+            dispatchThread = null;
+            running.set(false);
+        }
+        logger.info("doHttpDispatch exit.");
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        interrupted = true;
+        wakeup();
+    }
+
+    /**
+     * 分发线程的一次循环: 读取新任务, 发出请求
+     *
+     * @return 本次处理的数量, 为 0 时调用方可以 park
+     */
+    public int dispatchOnce()
+    {
+        int count = 0;
+        try
+        {
+            count += resolve();
+        }
+        catch (Exception e)
+        {
+            logger.warn("load p_http_jobs <- {}", e.getMessage());
+        }
+        count += send();
+        return count;
+    }
+
+    // 批量查询 p_http_jobs, 按主机排队
+    private int resolve()
+    {
+        List<TaskJob> jobs = new ArrayList<>();
+        TaskJob job;
+        while ( jobs.size() < batchSize && (job = submitted.poll()) != null ) jobs.add(job);
+        if ( jobs.isEmpty() ) return 0;
+
+        StringBuilder ids = new StringBuilder(jobs.size() * 8);
+        for ( TaskJob taskJob : jobs )
+        {
+            if ( ids.length() > 0 ) ids.append(',');
+            ids.append(taskJob.getJobId());
+        }
+
+        Map<Integer, HttpJob> definitions = new HashMap<>(jobs.size() * 2);
+        try
+        {
+            jdbcTemplate.query(String.format(JOB_SQL, ids), rs ->
+            {
+                int id = rs.getInt(1);
+                int hostId = rs.getInt(5);
+                String url = fullUrl(rs.getInt(2), rs.getString(6), rs.getString(4));
+                definitions.put(id, new HttpJob(id, 0, hostId, rs.getInt(3), url, rs.getString(7), rs.getString(8)));
+            });
+        }
+        catch (RuntimeException e)
+        {
+            // 查询失败时放回, 下一轮再试
+            submitted.addAll(jobs);
+            throw e;
+        }
+
+        for ( TaskJob taskJob : jobs )
+        {
+            HttpJob definition = definitions.get(taskJob.getJobId());
+            if ( definition == null || definition.getUrl() == null )
+            {
+                queued.decrementAndGet();
+                failed.incrementAndGet();
+                stateJournal.record(taskJob.getId(), StateJournal.ERROR);
+                logger.warn("task {} -> http job {} has no url.", taskJob.getId(), taskJob.getJobId());
+                continue;
+            }
+
+            HttpJob httpJob = new HttpJob(definition.getId(), taskJob.getId(), definition.getHostId(), definition.getMethod(), definition.getUrl(),
+                                          definition.getHeaders(), definition.getBody());
+            hosts.computeIfAbsent(httpJob.getHostId(), HostSlot::new).waiting.add(httpJob);
+        }
+        return jobs.size();
+    }
+
+    // 在并发上限内取出一批请求, 认领成功的发出
+    private int send()
+    {
+        // 状态日志写不过来时先不发新请求, 已发出的请求照常回调
+        if ( stateJournal.isBackedUp() ) return 0;
+
+        List<HttpJob> batch = new ArrayList<>();
+        for ( HostSlot host : hosts.values() )
+        {
+            int limit = hostLimits.getOrDefault(host.hostId, maxPerHost);
+            while ( !host.waiting.isEmpty() && host.inFlight.get() < limit && inFlight.get() < maxInFlight )
+            {
+                host.inFlight.incrementAndGet();
+                inFlight.incrementAndGet();
+                batch.add(host.waiting.poll());
+            }
+        }
+        if ( batch.isEmpty() ) return 0;
+
+        boolean[] claimed;
+        try
+        {
+            claimed = claim(batch);
+        }
+        catch (Exception e)
+        {
+            // 认领失败时放回队首, 下一轮再试
+            for ( int i = batch.size() - 1; i >= 0; --i )
+            {
+                HostSlot host = hosts.get(batch.get(i).getHostId());
+                release(host);
+                host.waiting.addFirst(batch.get(i));
+            }
+            logger.warn("claim p_tasks <- {}", e.getMessage());
+            return 0;
+        }
+
+        queued.addAndGet(-batch.size());
+        for ( int i = 0; i < batch.size(); ++i )
+        {
+            HttpJob job = batch.get(i);
+            HostSlot host = hosts.get(job.getHostId());
+            if ( claimed[i] )
+            {
+                execute(host, job);
+                continue;
+            }
+            release(host);
+            logger.warn("task {} is taken by other instance.", job.getTaskId());
+        }
+        return batch.size();
+    }
+
+    // 批量 UPDATE 返回每一行的更新数, 为 1 才是本实例认领成功; cron 任务的单次触发没有 p_tasks 行, 归属已在 TimerServer 触发时确认
+    private boolean[] claim(List<HttpJob> batch)
+    {
+        boolean[] claimed = new boolean[batch.size()];
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for ( int i = 0; i < batch.size(); ++i )
+        {
+            if ( batch.get(i).getTaskId() > 0 ) args.add(new Object[]{ batch.get(i).getTaskId() }); else claimed[i] = true;
+        }
+        if ( args.isEmpty() ) return claimed;
+
+        int[] rows = jdbcTemplate.batchUpdate(CLAIM_SQL, args);
+        for ( int i = 0, j = 0; i < batch.size(); ++i )
+        {
+            if ( batch.get(i).getTaskId() > 0 ) claimed[i] = rows[j++] == 1;
+        }
+        return claimed;
+    }
+
+    private void release(HostSlot host)
+    {
+        host.inFlight.decrementAndGet();
+        inFlight.decrementAndGet();
+    }
+
+    // host.inFlight 与 inFlight 已由 send 计入
+    private void execute(HostSlot host, HttpJob job)
+    {
+        long begin = System.currentTimeMillis();
+
+        try
+        {
+            httpClient.execute(newRequest(job), new FutureCallback<HttpResponse>()
+            {
+                @Override
+                public void completed(HttpResponse response)
+                {
+                    String content;
+                    try
+                    {
+                        content = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), "UTF-8");
+                    }
+                    catch (Exception e)
+                    {
+                        content = e.getMessage();
+                    }
+                    int status = response.getStatusLine().getStatusCode();
+                    done(status >= 200 && status < 300 ? StateJournal.DONE : StateJournal.ERROR, status + " " + content);
+                }
+
+                @Override
+                public void failed(Exception e)
+                {
+                    // 连接失败时请求一定没有发出, 其它异常(如读超时)无法确定对方是否已执行
+                    done(e instanceof ConnectException ? StateJournal.ERROR : StateJournal.UNKNOWN, "ERROR " + e.getMessage());
+                }
+
+                @Override
+                public void cancelled()
+                {
+                    done(StateJournal.UNKNOWN, "CANCELLED");
+                }
+
+                private void done(int state, String content)
+                {
+                    latency.record(System.currentTimeMillis() - begin);
+                    release(host);
+                    (state == StateJournal.DONE ? completed : failed).incrementAndGet();
+
+                    stateJournal.record(job.getTaskId(), state);
+                    stateJournal.recordResponse(job.getId(), truncate(content));
+                    wakeup();
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            release(host);
+            failed.incrementAndGet();
+            stateJournal.record(job.getTaskId(), StateJournal.ERROR);
+            logger.warn("http job {} -> {} <- {}", job.getId(), job.getUrl(), e.getMessage());
+        }
+    }
+
+    private void wakeup()
+    {
+        Thread thread = dispatchThread;
+        if ( thread != null ) LockSupport.unpark(thread);
+    }
+
+    // p_parameters.headers 逐项加到请求头, text_body 作为 POST/PUT 的正文
+    private static HttpRequestBase newRequest(HttpJob job)
+    {
+        HttpRequestBase request;
+        switch ( job.getMethod() )
+        {
+            case HttpJob.POST:   request = withBody(new HttpPost(job.getUrl()), job.getBody()); break;
+            case HttpJob.PUT:    request = withBody(new HttpPut(job.getUrl()), job.getBody());  break;
+            case HttpJob.DELETE: request = new HttpDelete(job.getUrl()); break;
+            default:             request = new HttpGet(job.getUrl());    break;
+        }
+
+        if ( job.getHeaders() != null && !job.getHeaders().trim().isEmpty() )
+        {
+            JSONObject headers = JSON.parseObject(job.getHeaders());
+            for ( Map.Entry<String, Object> header : headers.entrySet() )
+            {
+                if ( header.getValue() != null ) request.setHeader(header.getKey(), header.getValue().toString());
+            }
+        }
+        return request;
+    }
+
+    private static HttpRequestBase withBody(HttpEntityEnclosingRequestBase request, String body)
+    {
+        if ( body != null ) request.setEntity(new StringEntity(body, StandardCharsets.UTF_8));
+        return request;
+    }
+
+    // url 为相对路径时用 p_domains.domain 和 protocol 拼出完整地址
+    private static String fullUrl(int protocol, String domain, String url)
+    {
+        if ( url == null ) return null;
+        if ( url.startsWith("http://") || url.startsWith("https://") ) return url;
+        if ( domain == null ) return null;
+
+        String scheme = protocol == 1 ? "https://" : "http://";
+        return url.startsWith("/") ? scheme + domain + url : scheme + domain + "/" + url;
+    }
+
+    private static String truncate(String content)
+    {
+        return content.length() <= CONTENT_LENGTH ? content : content.substring(0, CONTENT_LENGTH);
+    }
+
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("queued", queued.get());
+        result.put("inFlight", inFlight.get());
+        result.put("completed", completed.get());
+        result.put("failed", failed.get());
+        result.put("rejected", rejected.get());
+        result.put("latency", latency.snapshot());
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static final class HostSlot
+    {
+        private final int hostId;
+        private final ArrayDeque<HttpJob> waiting = new ArrayDeque<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        HostSlot(int hostId)
+        {
+            this.hostId = hostId;
+        }
+    }
+}
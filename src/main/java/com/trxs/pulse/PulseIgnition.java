@@ -1,5 +1,6 @@
 package com.trxs.pulse;
 
+import com.trxs.pulse.cluster.ClusterMembership;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,11 +16,27 @@ public class PulseIgnition implements ApplicationRunner
     @Autowired
     private TimerServer timerServer;
 
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private TaskLoader taskLoader;
+
+    @Autowired
+    private HttpJobExecutor httpJobExecutor;
+
+    @Autowired
+    private StateJournal stateJournal;
+
     @Override
     public void run(ApplicationArguments args) throws Exception
     {
         logger.debug("startup ...");
+        clusterMembership.heartbeatRunnable();
+        stateJournal.flushRunnable();
         timerServer.ticktockRunnable();
         timerServer.jobWatchRunnable();
+        taskLoader.loadRunnable();
+        httpJobExecutor.dispatchRunnable();
     }
 }
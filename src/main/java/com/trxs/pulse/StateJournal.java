@@ -0,0 +1,256 @@
+package com.trxs.pulse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Scope;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * p_tasks.state 与 p_http_job_responses 的延迟批量写入
+ *
+ * 同一任务的多次状态变化在内存中合并, 只保留最大的状态(0-等待加载 1-等待执行 2-执行中 3/4/5-结束),
+ * 写库时带 state < ? 条件, 乱序到达的旧状态不会覆盖新状态
+ * 累计条数达到 flushSize 或距上次写入超过 flushInterval 时用 JDBC batch 写入;
+ * record 从不阻塞, 可以在 IO 回调中调用; 未写入的条数达到 maxPending 时 isBackedUp 返回 true, 由提交方暂停产生新记录
+ */
+@Scope("singleton")
+@Component
+public class StateJournal
+{
+    private static Logger logger = LoggerFactory.getLogger(StateJournal.class.getSimpleName());
+
+    public static final int LOADED  = 1;
+    public static final int RUNNING = 2;
+    public static final int DONE    = 3;
+    public static final int ERROR   = 4;
+    public static final int UNKNOWN = 5;
+
+    private static final String STATE_SQL    = "UPDATE p_tasks SET state = ? WHERE id = ? AND state < ?";
+    private static final String RESPONSE_SQL = "REPLACE INTO p_http_job_responses ( id, create_time, content ) VALUES ( ?, ?, ? )";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${pulse.journal.flush-size:1000}")
+    private int flushSize;
+
+    @Value("${pulse.journal.flush-interval:200}")
+    private long flushInterval;
+
+    @Value("${pulse.journal.max-pending:50000}")
+    private int maxPending;
+
+    private final Map<Integer, Integer>  states    = new ConcurrentHashMap<>(1024);
+    private final Map<Integer, Object[]> responses = new ConcurrentHashMap<>(1024);
+
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushCount  = new AtomicLong();
+    private final AtomicLong backedUpTimes = new AtomicLong();
+
+    private volatile boolean interrupted;
+    private volatile Thread flushThread;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public StateJournal() {}
+
+    public StateJournal(JdbcTemplate jdbcTemplate, int flushSize, long flushInterval, int maxPending)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * 记录任务状态, 同一任务只保留最大的状态
+     */
+    public void record(int taskId, int state)
+    {
+        // cron 任务的单次触发没有对应的 p_tasks 行
+        if ( taskId <= 0 ) return;
+
+        states.merge(taskId, state, Math::max);
+        if ( states.size() >= flushSize ) wakeup();
+    }
+
+    /**
+     * 记录 http 任务的返回内容, 同一 p_http_jobs.id 只保留最后一次
+     */
+    public void recordResponse(int httpJobId, String content)
+    {
+        responses.put(httpJobId, new Object[]{ httpJobId, new Timestamp(System.currentTimeMillis()), content });
+        if ( responses.size() >= flushSize ) wakeup();
+    }
+
+    /**
+     * 背压: 积压达到 maxPending 时返回 true 并唤醒写入线程, 调用方应暂停提交会产生新记录的工作
+     */
+    public boolean isBackedUp()
+    {
+        if ( getPendingCount() < maxPending ) return false;
+
+        backedUpTimes.incrementAndGet();
+        wakeup();
+        return true;
+    }
+
+    public int getPendingCount()
+    {
+        return states.size() + responses.size();
+    }
+
+    @Async("timerLoopExecutor")
+    public void flushRunnable()
+    {
+        if ( !running.compareAndSet(false, true) )
+        {
+            logger.warn("FlushRunnable startup {} failed!", this.toString());
+            return;
+        }
+
+        logger.info("doJournalFlush, go go go ...");
+        flushThread = Thread.currentThread();
+        interrupted = false;
+        try
+        {
+            do
+            {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushInterval));
+                flush();
+            } while ( interrupted == false );
+        }
+        finally
+        {
+            flushThread = null;
+            running.set(false);
+        }
+        logger.info("doJournalFlush exit.");
+    }
+
+    /**
+     * 停止写入线程并把剩余记录全部写入, 应用关闭时调用
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        interrupted = true;
+        wakeup();
+
+        int rows;
+        do
+        {
+            rows = flush();
+        } while ( rows > 0 && getPendingCount() > 0 );
+
+        if ( getPendingCount() > 0 ) logger.error("journal shutdown with {} records unsaved!", getPendingCount());
+    }
+
+    /**
+     * 写入当前积压的全部记录; 写入失败的记录保留到下一次
+     *
+     * @return 写入的条数
+     */
+    public int flush()
+    {
+        int rows = 0;
+        try
+        {
+            rows += flushStates();
+            rows += flushResponses();
+        }
+        catch (Exception e)
+        {
+            logger.warn("flush journal <- {}", e.getMessage());
+        }
+
+        if ( rows > 0 )
+        {
+            flushedRows.addAndGet(rows);
+            flushCount.incrementAndGet();
+        }
+        return rows;
+    }
+
+    private int flushStates()
+    {
+        int rows = 0;
+        List<Object[]> batch = new ArrayList<>(Math.min(flushSize, states.size()));
+        for ( Map.Entry<Integer, Integer> entry : states.entrySet() )
+        {
+            batch.add(new Object[]{ entry.getValue(), entry.getKey(), entry.getValue() });
+            if ( batch.size() >= flushSize )
+            {
+                rows += writeStates(batch);
+                batch.clear();
+            }
+        }
+        if ( batch.size() > 0 ) rows += writeStates(batch);
+        return rows;
+    }
+
+    private int writeStates(List<Object[]> batch)
+    {
+        jdbcTemplate.batchUpdate(STATE_SQL, batch);
+        // 写入期间又有更新的状态时保留, 等下一次写入
+        batch.forEach(args -> states.remove(args[1], args[0]));
+        return batch.size();
+    }
+
+    private int flushResponses()
+    {
+        int rows = 0;
+        List<Object[]> batch = new ArrayList<>(Math.min(flushSize, responses.size()));
+        for ( Object[] response : responses.values() )
+        {
+            batch.add(response);
+            if ( batch.size() >= flushSize )
+            {
+                rows += writeResponses(batch);
+                batch.clear();
+            }
+        }
+        if ( batch.size() > 0 ) rows += writeResponses(batch);
+        return rows;
+    }
+
+    private int writeResponses(List<Object[]> batch)
+    {
+        jdbcTemplate.batchUpdate(RESPONSE_SQL, batch);
+        batch.forEach(args -> responses.remove(args[0], args));
+        return batch.size();
+    }
+
+    private void wakeup()
+    {
+        Thread thread = flushThread;
+        if ( thread != null ) LockSupport.unpark(thread);
+    }
+
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pendingStates", states.size());
+        result.put("pendingResponses", responses.size());
+        result.put("flushedRows", flushedRows.get());
+        result.put("flushCount", flushCount.get());
+        result.put("backedUpTimes", backedUpTimes.get());
+        return Collections.unmodifiableMap(result);
+    }
+}
@@ -0,0 +1,418 @@
+package com.trxs.pulse;
+
+import com.trxs.commons.util.LatencyHistogram;
+import com.trxs.pulse.cluster.ClusterMembership;
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.MisfirePolicy;
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.data.TimerJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Scope;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把 p_tasks 中即将到期的任务分批加载到 TimerServer
+ *
+ * 每轮只读取 state=0 且 plan_time 在 [.., now + lookAhead] 内的行, 按 (plan_time, id) 做 keyset 分页,
+ * 本实例负责的行批量逐行标记为 state=1, 只有更新成功的行放入调度引擎
+ * 内存占用只与窗口内的任务数有关, 调度引擎中待触发任务超过 maxPending 时本轮停止加载;
+ * 已错过触发时间的行最多加载补触发队列剩余的容量, 其余留在 p_tasks 中等之后的轮次
+ *
+ * p_cron_tasks 中激活的任务在启动、集群成员变化时以及每隔 cronReloadInterval 按归属重新排期,
+ * 新增、修改、停用或删除的行在下一次重新排期时生效
+ */
+@Scope("singleton")
+@Component
+public class TaskLoader
+{
+    private static Logger logger = LoggerFactory.getLogger(TaskLoader.class.getSimpleName());
+
+    private static final String PAGE_SQL =
+        "SELECT id, job_type, job_id, plan_time FROM p_tasks WHERE state = 0 AND plan_time <= ?" +
+        " AND ( plan_time > ? OR ( plan_time = ? AND id > ? ) ) ORDER BY plan_time, id LIMIT ?";
+    private static final String CLAIM_SQL = "UPDATE p_tasks SET state = 1 WHERE id = ? AND state = 0";
+    private static final String CRON_SQL = "SELECT id, job_type, job_id, cron_expression, misfire_policy FROM p_cron_tasks WHERE state = 1";
+    private static final String RECOVER_SQL = "UPDATE p_tasks SET state = 0 WHERE state = 1 AND plan_time < ?";
+    private static final String LOADED_SQL  = "SELECT id FROM p_tasks WHERE state = 1 AND id IN ( %s )";
+    private static final String RELEASE_SQL = "UPDATE p_tasks SET state = 0 WHERE state = 1 AND id IN ( %s )";
+
+    private static final Timestamp BEGIN_OF_TIME = new Timestamp(0);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TimerServer timerServer;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Value("${pulse.loader.interval:1000}")
+    private long interval;
+
+    @Value("${pulse.loader.look-ahead:300000}")
+    private long lookAhead;
+
+    @Value("${pulse.loader.page-size:500}")
+    private int pageSize;
+
+    @Value("${pulse.loader.max-pending:200000}")
+    private int maxPending;
+
+    // 过了 plan_time 这么久仍是 state=1 的行, 视为加载它的实例已经退出, 放回 state=0 重新分配
+    @Value("${pulse.loader.recover-after:600000}")
+    private long recoverAfter;
+
+    @Value("${pulse.loader.cron-reload-interval:60000}")
+    private long cronReloadInterval;
+
+    private volatile boolean interrupted;
+    private volatile boolean cronChanged = true;
+    private long lastCronLoadTime;
+
+    // 本实例排期过的 cron 任务定义, 按 p_cron_tasks.id 索引; 只由加载线程访问
+    private final Map<Integer, CronJob> cronJobs = new HashMap<>();
+    private boolean cronJobsVerified;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 统计: 加载总行数, 每秒加载行数, 行从 plan_time 到进入内存的延迟(只统计已过期才加载的行)
+    private final AtomicLong loadedRows = new AtomicLong();
+    private final AtomicLong scannedRows = new AtomicLong();
+    private final LatencyHistogram loadLag = new LatencyHistogram("load-lag");
+    private volatile double rowsPerSecond;
+    private volatile long lastPassTime;
+    private volatile long lastPassMillis;
+
+    public TaskLoader() {}
+
+    public TaskLoader(JdbcTemplate jdbcTemplate, TimerServer timerServer, ClusterMembership clusterMembership, long lookAhead, int pageSize, int maxPending)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timerServer = timerServer;
+        this.clusterMembership = clusterMembership;
+        this.lookAhead = lookAhead;
+        this.pageSize = pageSize;
+        this.maxPending = maxPending;
+        this.recoverAfter = 600_000;
+        this.cronReloadInterval = 60_000;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        clusterMembership.addListener(ring -> cronChanged = true);
+    }
+
+    @Async("timerLoopExecutor")
+    public void loadRunnable()
+    {
+        if ( !running.compareAndSet(false, true) )
+        {
+            logger.warn("LoadRunnable startup {} failed!", this.toString());
+            return;
+        }
+
+        logger.info("doTaskLoad, go go go ...");
+        interrupted = false;
+        try
+        {
+            do
+            {
+                try
+                {
+                    long now = System.currentTimeMillis();
+                    if ( cronChanged || now - lastCronLoadTime >= cronReloadInterval ) loadCronTasks();
+                    reconcile();
+                    recover(now);
+                    load(now);
+                    // 放回的行下一轮才会重新加载
+                    release(timerServer.takeHandedBack());
+                }
+                catch (Exception e)
+                {
+                    logger.warn("load p_tasks <- {}", e.getMessage());
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(interval));
+            } while ( interrupted == false );
+        }
+        finally
+        {
+            running.set(false);
+        }
+        logger.info("doTaskLoad exit.");
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        interrupted = true;
+    }
+
+    /**
+     * 加载一轮
+     *
+     * @param now 当前时间(毫秒)
+     * @return 本轮放入调度引擎的任务数
+     */
+    public int load(long now)
+    {
+        Timestamp windowEnd = new Timestamp(now + lookAhead);
+        Timestamp lastPlanTime = BEGIN_OF_TIME;
+        int lastId = 0;
+        int loaded = 0;
+
+        long misfireTime = now - timerServer.getMisfireThreshold();
+        int catchUpRoom = timerServer.getCatchUpRoom();
+
+        long begin = System.nanoTime();
+        while ( interrupted == false )
+        {
+            int room = maxPending - timerServer.getPendingCount();
+            if ( room <= 0 )
+            {
+                logger.warn("pending jobs reach {}, stop loading.", maxPending);
+                break;
+            }
+
+            int limit = Math.min(pageSize, room);
+            if ( lastPlanTime.getTime() < misfireTime )
+            {
+                // 补触发队列已满, 跳过已错过的行
+                if ( catchUpRoom <= 0 )
+                {
+                    lastPlanTime = new Timestamp(misfireTime);
+                    lastId = 0;
+                    continue;
+                }
+                limit = Math.min(limit, catchUpRoom);
+            }
+
+            List<TaskJob> page = jdbcTemplate.query(PAGE_SQL, (rs, i) ->
+                new TaskJob(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getTimestamp(4)),
+                windowEnd, lastPlanTime, lastPlanTime, lastId, limit);
+            if ( page.isEmpty() ) break;
+
+            TaskJob last = page.get(page.size() - 1);
+            lastPlanTime = (Timestamp) last.getExpectTime();
+            lastId = last.getId();
+            scannedRows.addAndGet(page.size());
+            for ( TaskJob job : page ) if ( job.getExpectTime().getTime() < misfireTime ) --catchUpRoom;
+
+            loaded += claim(page, now);
+            if ( page.size() < limit ) break;
+        }
+
+        updateRate(now, loaded);
+        lastPassMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        if ( loaded > 0 ) logger.debug("load {} jobs in {}ms", loaded, lastPassMillis);
+        return loaded;
+    }
+
+    /**
+     * 排期本实例负责的 cron 任务, 取消不再负责的; 定义(表达式、任务、策略)有变化的重新排期, 停用或删除的取消
+     * 首次执行时同时校对从预写日志恢复的任务. 自身心跳成功之前不处理, 以免按空的成员列表取消全部任务
+     *
+     * @return 新排期的任务数
+     */
+    public int loadCronTasks()
+    {
+        if ( !clusterMembership.isActive() ) return 0;
+
+        cronChanged = false;
+        lastCronLoadTime = System.currentTimeMillis();
+        if ( !cronJobsVerified )
+        {
+            timerServer.getCronJobs().forEach(job -> cronJobs.put(job.getCronTaskId(), job));
+            cronJobsVerified = true;
+        }
+
+        int[] count = new int[1];
+        Set<Integer> active = new HashSet<>();
+        jdbcTemplate.query(CRON_SQL, rs ->
+        {
+            int id = rs.getInt(1);
+            active.add(id);
+            if ( !clusterMembership.owns(id) )
+            {
+                cancelCron(id);
+                return;
+            }
+
+            CronJob current = cronJobs.get(id);
+            String expression = rs.getString(4);
+            MisfirePolicy policy = MisfirePolicy.valueOf(rs.getInt(5));
+            if ( current != null && timerServer.containsJob(-id) && current.getPattern().getText().equals(expression)
+                && current.getJobType() == rs.getInt(2) && current.getJobId() == rs.getInt(3) && current.getMisfirePolicy() == policy ) return;
+
+            // 修改过的行先取消旧的排期, 新表达式无效或已没有后续触发时间时不再触发
+            if ( current != null ) cancelCron(id);
+            try
+            {
+                CronJob cronJob = new CronJob(id, expression, rs.getInt(2), rs.getInt(3), policy);
+                if ( timerServer.scheduleCron(cronJob) )
+                {
+                    cronJobs.put(id, cronJob);
+                    ++count[0];
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                logger.warn("cron task {} <- {}", id, e.getMessage());
+            }
+        });
+
+        List<Integer> inactive = new ArrayList<>();
+        for ( Integer id : cronJobs.keySet() ) if ( !active.contains(id) ) inactive.add(id);
+        inactive.forEach(this::cancelCron);
+
+        if ( count[0] > 0 ) logger.info("schedule {} cron tasks.", count[0]);
+        if ( inactive.size() > 0 ) logger.info("cancel {} disabled cron tasks.", inactive.size());
+        return count[0];
+    }
+
+    private void cancelCron(int id)
+    {
+        cronJobs.remove(id);
+        timerServer.cancelCron(id);
+    }
+
+    /**
+     * 把长时间停留在 state=1 的行放回 state=0
+     *
+     * @return 恢复的行数
+     */
+    public int recover(long now)
+    {
+        int rows = jdbcTemplate.update(RECOVER_SQL, new Timestamp(now - recoverAfter));
+        if ( rows > 0 ) logger.warn("recover {} jobs stuck in state 1.", rows);
+        return rows;
+    }
+
+    /**
+     * 确认从预写日志回放的任务: 仍是 state=1 且归本实例负责的放回调度引擎; state=1 但已归其它实例的放回 state=0 由负责的实例加载;
+     * 其余(已被恢复为 state=0 或已执行)丢弃. 自身心跳成功之前不处理
+     *
+     * @return 放回调度引擎的任务数
+     */
+    public int reconcile()
+    {
+        if ( !timerServer.hasRecoveredJobs() || !clusterMembership.isActive() ) return 0;
+
+        List<TaskJob> jobs = timerServer.takeRecoveredJobs();
+        List<TimerJob> owned = new ArrayList<>();
+        List<Integer> released = new ArrayList<>();
+        for ( int from = 0; from < jobs.size(); from += pageSize )
+        {
+            List<TaskJob> page = jobs.subList(from, Math.min(from + pageSize, jobs.size()));
+            List<Integer> ids = new ArrayList<>(page.size());
+            page.forEach(job -> ids.add(job.getId()));
+
+            Set<Integer> loaded = new HashSet<>(jdbcTemplate.queryForList(String.format(LOADED_SQL, joinIds(ids)), Integer.class));
+            for ( TaskJob job : page )
+            {
+                if ( !loaded.contains(job.getId()) ) continue;
+                if ( clusterMembership.owns(job.getId()) ) owned.add(job); else released.add(job.getId());
+            }
+        }
+
+        if ( owned.size() > 0 ) timerServer.addJobs(owned);
+        release(released);
+        logger.info("reconcile {} tasks from wal: {} kept, {} handed over, {} dropped.", jobs.size(), owned.size(), released.size(), jobs.size() - owned.size() - released.size());
+        return owned.size();
+    }
+
+    /**
+     * 把本实例不再执行的 state=1 行放回 state=0, 由负责的实例重新加载
+     *
+     * @return 放回的行数
+     */
+    public int release(List<Integer> ids)
+    {
+        int rows = 0;
+        for ( int from = 0; from < ids.size(); from += pageSize )
+        {
+            rows += jdbcTemplate.update(String.format(RELEASE_SQL, joinIds(ids.subList(from, Math.min(from + pageSize, ids.size())))));
+        }
+        return rows;
+    }
+
+    private static String joinIds(List<Integer> ids)
+    {
+        StringBuilder text = new StringBuilder(ids.size() * 8);
+        for ( Integer id : ids )
+        {
+            if ( text.length() > 0 ) text.append(',');
+            text.append(id);
+        }
+        return text.toString();
+    }
+
+    private int claim(List<TaskJob> page, long now)
+    {
+        List<TaskJob> owned = new ArrayList<>(page.size());
+        List<Object[]> args = new ArrayList<>(page.size());
+        for ( TaskJob job : page )
+        {
+            if ( !clusterMembership.owns(job.getId()) ) continue;
+
+            owned.add(job);
+            args.add(new Object[]{ job.getId() });
+        }
+        if ( owned.isEmpty() ) return 0;
+
+        // 成员变化期间其它实例可能抢先加载了部分行, 只排期本次从 state 0 -> 1 更新成功的行
+        int[] rows = jdbcTemplate.batchUpdate(CLAIM_SQL, args);
+        List<TimerJob> claimed = new ArrayList<>(owned.size());
+        for ( int i = 0; i < owned.size(); ++i ) if ( rows[i] == 1 ) claimed.add(owned.get(i));
+        if ( claimed.size() != owned.size() ) logger.warn("claim {} of {} jobs, others were taken.", claimed.size(), owned.size());
+        if ( claimed.isEmpty() ) return 0;
+
+        timerServer.addJobs(claimed);
+        claimed.forEach(job -> loadLag.record(now - job.getExpectTime().getTime()));
+        loadedRows.addAndGet(claimed.size());
+        return claimed.size();
+    }
+
+    private void updateRate(long now, int loaded)
+    {
+        long previous = lastPassTime;
+        lastPassTime = now;
+        if ( previous == 0 || now <= previous ) return;
+
+        double rate = loaded * 1000.0 / (now - previous);
+        rowsPerSecond = rowsPerSecond == 0 ? rate : rowsPerSecond * 0.8 + rate * 0.2;
+    }
+
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("loadedRows", loadedRows.get());
+        result.put("scannedRows", scannedRows.get());
+        result.put("rowsPerSecond", rowsPerSecond);
+        result.put("lastPassMillis", lastPassMillis);
+        result.put("pending", timerServer.getPendingCount());
+        result.put("lag", loadLag.snapshot());
+        return Collections.unmodifiableMap(result);
+    }
+}
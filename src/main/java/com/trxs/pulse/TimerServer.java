@@ -1,21 +1,43 @@
 package com.trxs.pulse;
 
+import com.trxs.commons.util.LatencyHistogram;
+import com.trxs.commons.util.PaddedSequence;
+import com.trxs.commons.util.TokenBucket;
+import com.trxs.pulse.cluster.ClusterMembership;
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.MisfirePolicy;
+import com.trxs.pulse.data.TaskJob;
 import com.trxs.pulse.data.TimerJob;
-import org.joda.time.DateTime;
+import com.trxs.pulse.engine.JobWal;
+import com.trxs.pulse.engine.PrimitiveWheelEngine;
+import com.trxs.pulse.engine.PriorityQueueEngine;
+import com.trxs.pulse.engine.ScheduleEngine;
+import com.trxs.pulse.engine.TimingWheelEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 import static com.trxs.commons.util.LangUtils.SLEEP;
 
@@ -45,13 +67,76 @@ public class TimerServer
     public static final byte       COMMA = 0X7D; // ,
     public static final byte       SLANT = 0X7E; // /
 
-    private static Queue<Long> ticktockQueue = new ConcurrentLinkedDeque<>();
-    private static Map<Integer, TimerJob> timerMessageMap = new ConcurrentHashMap<>(1024);
-    private static PriorityQueue<TimerJob> timerMessageQueue;
+    // 秒针线程写入整秒时间戳, 任务扫描线程读取; 没有新的时间戳时扫描线程 park
+    private static final PaddedSequence ticktockSequence = new PaddedSequence(0);
+    private static final LatencyHistogram dispatchLatency = new LatencyHistogram("dispatch");
+    private static Map<Integer, Consumer<TaskJob>> jobHandlers = new ConcurrentHashMap<>(8);
+    private static ScheduleEngine timerMessageQueue;
+    private static JobWal jobWal;
+    private static long lastWalSyncTime;
 
     private static AtomicBoolean timerMessageQueueAtomic;
     private static long maxTimestamp;
 
+    // 触发 cron 任务前确认仍由本实例负责; 为空时(单机测试)不检查
+    @Autowired(required = false)
+    private ClusterMembership clusterMembership;
+
+    // wheel: 分层时间轮; primitive: 按列存储字段的分层时间轮; queue: 优先队列
+    @Value("${pulse.engine:wheel}")
+    private String engineName;
+
+    // 本地预写日志目录(绝对路径), 为空时不启用
+    @Value("${pulse.wal.dir:}")
+    private String walDir;
+
+    @Value("${pulse.wal.segment-size:67108864}")
+    private int walSegmentSize;
+
+    @Value("${pulse.wal.sync-interval:1000}")
+    private long walSyncInterval;
+
+    // 触发时已晚于 expectTime 超过该值(毫秒)视为错过, 按补触发限流执行
+    @Value("${pulse.misfire.threshold:5000}")
+    private long misfireThreshold;
+
+    @Value("${pulse.misfire.catch-up-rate:1000}")
+    private double catchUpRate;
+
+    @Value("${pulse.misfire.catch-up-burst:1000}")
+    private double catchUpBurst;
+
+    // FIRE_ALL_MISSED 时每个 cron 任务一次最多补触发的次数
+    @Value("${pulse.misfire.max-catch-up:1000}")
+    private int maxCatchUp;
+
+    // 补触发队列上限, 超出的 p_tasks 任务放回 state=0 由 TaskLoader 稍后重新加载
+    @Value("${pulse.misfire.max-backlog:100000}")
+    private int maxBacklog;
+
+    // 错过触发时间的任务在这里排队, 在调度锁内放入, 锁外按令牌桶速度取出执行
+    private ArrayBlockingQueue<TaskJob> catchUpQueue;
+    private TokenBucket catchUpBucket;
+    private final AtomicLong misfiredCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong catchUpCount = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final AtomicLong fencedCount = new AtomicLong();
+
+    // 从预写日志回放的 p_tasks 任务, 由 TaskLoader 对照 p_tasks.state 和归属确认后再放入调度引擎
+    private List<TaskJob> recoveredJobs = new ArrayList<>();
+
+    // 本实例放弃执行的 p_tasks 任务, 由 TaskLoader 放回 state=0 稍后重新加载, 不用等 recover-after
+    private final ConcurrentLinkedQueue<TaskJob> handedBack = new ConcurrentLinkedQueue<>();
+
+    public TimerServer() {}
+
+    public TimerServer(String engineName, String walDir)
+    {
+        this.engineName = engineName;
+        this.walDir = walDir;
+    }
+
     @PostConstruct()
     public void init()
     {
@@ -63,45 +148,253 @@ public class TimerServer
         ticktockRunning = new AtomicBoolean(Boolean.valueOf(false));
         jobWatchRunning = new AtomicBoolean(Boolean.valueOf(false));
 
-        timerMessageQueue = new PriorityQueue<>(1024);
+        timerMessageQueue = newScheduleEngine(engineName);
         timerMessageQueueAtomic = new AtomicBoolean(false);
+
+        if ( misfireThreshold <= 0 ) misfireThreshold = 5000;
+        if ( maxCatchUp <= 0 ) maxCatchUp = 1000;
+        if ( maxBacklog <= 0 ) maxBacklog = 100000;
+        catchUpQueue = new ArrayBlockingQueue<>(maxBacklog);
+        if ( walSegmentSize <= 0 ) walSegmentSize = 64 * 1024 * 1024;
+        if ( walSyncInterval <= 0 ) walSyncInterval = 1000;
+        catchUpBucket = new TokenBucket(catchUpRate > 0 ? catchUpRate : 1000, catchUpBurst >= 1 ? catchUpBurst : 1000);
+
+        logger.info("Schedule engine -> {}", timerMessageQueue.getName());
+
+        jobWal = null;
+        if ( walDir != null && walDir.length() > 0 ) openWal();
+    }
+
+    /**
+     * 回放预写日志恢复待触发任务, 再写一次检查点作为后续追加的起点
+     *
+     * cron 任务直接恢复, 归属由 TaskLoader.loadCronTasks 校正; p_tasks 任务停机期间可能已被放回 state=0 并由其它实例执行,
+     * 或者已归其它实例负责, 先放在 recoveredJobs 中等 TaskLoader 确认
+     */
+    private void openWal()
+    {
+        File dir = new File(walDir);
+        if ( !dir.isAbsolute() )
+        {
+            logger.error("pulse.wal.dir must be an absolute path, run without wal -> {}", walDir);
+            return;
+        }
+
+        long begin = System.currentTimeMillis();
+        JobWal wal = new JobWal(dir, walSegmentSize);
+        try
+        {
+            Map<Integer, TimerJob> jobs = wal.replay();
+            List<TaskJob> tasks = new ArrayList<>();
+            for ( TimerJob job : jobs.values() )
+            {
+                if ( job instanceof TaskJob )
+                {
+                    tasks.add((TaskJob) job);
+                    continue;
+                }
+                // cron 任务保留日志中的 expectTime, 停机期间错过的触发按各自的策略处理
+                if ( job instanceof CronJob && job.getExpectTime() == null && !((CronJob) job).next(begin) ) continue;
+                timerMessageQueue.schedule(job);
+            }
+            wal.checkpoint(timerMessageQueue);
+
+            jobWal = wal;
+            lastWalSyncTime = begin;
+            recoveredJobs = tasks;
+            logger.info("Recover {} cron jobs and {} tasks from wal {} in {}ms", timerMessageQueue.size(), tasks.size(), walDir, System.currentTimeMillis() - begin);
+        }
+        catch (Exception e)
+        {
+            logger.error("Open wal {} failed, run without wal <- {}", walDir, e.getMessage());
+        }
+    }
+
+    // 在调度锁内调用
+    private void maintainWal(long now)
+    {
+        if ( jobWal == null ) return;
+        try
+        {
+            if ( jobWal.getAppendedBytes() > walSegmentSize ) jobWal.checkpoint(timerMessageQueue);
+            if ( now - lastWalSyncTime >= walSyncInterval )
+            {
+                jobWal.sync();
+                lastWalSyncTime = now;
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("wal checkpoint <- {}", e.getMessage());
+        }
+    }
+
+    public static ScheduleEngine newScheduleEngine(String name)
+    {
+        if ( "queue".equalsIgnoreCase(name) ) return new PriorityQueueEngine(1024);
+        if ( "primitive".equalsIgnoreCase(name) ) return new PrimitiveWheelEngine(System.currentTimeMillis(), 1024);
+        return new TimingWheelEngine(System.currentTimeMillis(), 1024);
     }
 
     private boolean delMessages(TimerJob message)
     {
-        if ( timerMessageQueue.contains(message))
-            return timerMessageQueue.remove(message);
-        else
-            return true;
+        try
+        {
+            lock(timerMessageQueueAtomic);
+            if ( timerMessageQueue.cancel(message.getId()) != null && jobWal != null ) jobWal.cancel(message.getId());
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
+        return true;
     }
 
     private int addMessages(List<TimerJob> messageList)
     {
-        messageList.forEach( timerMessage ->
+        try
+        {
+            lock(timerMessageQueueAtomic);
+            messageList.forEach( timerMessage ->
+            {
+                timerMessageQueue.schedule(timerMessage);
+                if ( jobWal != null ) jobWal.schedule(timerMessage);
+                long t = timerMessage.getExpectTime().getTime();
+                if ( t > maxTimestamp ) maxTimestamp = t;
+            });
+            return timerMessageQueue.size();
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
+    }
+
+    /**
+     * 批量放入调度引擎, 相同 id 的任务会被替换
+     *
+     * @return 引擎中的任务数
+     */
+    public int addJobs(List<TimerJob> jobs)
+    {
+        return addMessages(jobs);
+    }
+
+    /**
+     * 取走从预写日志回放、尚未确认的 p_tasks 任务, 只能取一次
+     */
+    public synchronized List<TaskJob> takeRecoveredJobs()
+    {
+        List<TaskJob> jobs = recoveredJobs;
+        recoveredJobs = Collections.emptyList();
+        return jobs;
+    }
+
+    public synchronized boolean hasRecoveredJobs()
+    {
+        return !recoveredJobs.isEmpty();
+    }
+
+    /**
+     * 放弃执行已加载的任务, 不阻塞; cron 任务的单次触发没有 p_tasks 行, 直接丢弃
+     */
+    public void handBack(TaskJob job)
+    {
+        if ( job.getId() > 0 ) handedBack.add(job);
+    }
+
+    /**
+     * 取走全部放弃执行的任务 id
+     */
+    public List<Integer> takeHandedBack()
+    {
+        List<Integer> ids = new ArrayList<>();
+        TaskJob job;
+        while ( (job = handedBack.poll()) != null ) ids.add(job.getId());
+        return ids;
+    }
+
+    public int getPendingCount()
+    {
+        try
         {
-            if ( timerMessageQueue.contains(timerMessage) ) return;
-            timerMessageQueue.add(timerMessage);
-            long t = timerMessageQueue.peek().getExpectTime().getTime();
-            if ( t > maxTimestamp ) maxTimestamp = t;
-        });
+            lock(timerMessageQueueAtomic);
+            return timerMessageQueue.size();
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
+    }
+
+    /**
+     * 注册 p_tasks.job_type 对应的执行器, 回调在调度锁内执行, 不能阻塞
+     */
+    public void registerHandler(int jobType, Consumer<TaskJob> handler)
+    {
+        jobHandlers.put(jobType, handler);
+    }
 
-        return timerMessageQueue.size();
+    /**
+     * 按 cron 表达式排期, 引擎只在下一次触发时间到达时才会处理该任务
+     *
+     * @return false 表达式已没有后续触发时间
+     */
+    public boolean scheduleCron(int cronTaskId, String expression)
+    {
+        return scheduleCron(new CronJob(cronTaskId, expression));
     }
 
-    private boolean timeIsUp( long timestamp )
+    public boolean scheduleCron(CronJob cronJob)
     {
-        if ( timerMessageQueue.size() < 1 ) return false;
+        if ( !cronJob.next(System.currentTimeMillis()) ) return false;
 
-        return timerMessageQueue.peek().getExpectTime().getTime() <= timestamp;
+        addMessages(Collections.singletonList(cronJob));
+        return true;
     }
 
-    @Async("timerTaskExecutor")
-    public void jobLoad()
+    public boolean containsJob(int jobId)
     {
-        timerMessageMap.keySet();
+        try
+        {
+            lock(timerMessageQueueAtomic);
+            return timerMessageQueue.contains(jobId);
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
     }
 
-    @Async("timerTaskExecutor")
+    /**
+     * 遍历调度引擎取出全部 cron 任务, 用于校对从预写日志恢复的任务
+     */
+    public List<CronJob> getCronJobs()
+    {
+        List<CronJob> cronJobs = new ArrayList<>();
+        try
+        {
+            lock(timerMessageQueueAtomic);
+            timerMessageQueue.forEach(job ->
+            {
+                if ( job instanceof CronJob ) cronJobs.add((CronJob) job);
+            });
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
+        return cronJobs;
+    }
+
+    public boolean cancelCron(int cronTaskId)
+    {
+        TimerJob timerJob = new TimerJob();
+        timerJob.setId(-cronTaskId);
+        return delMessages(timerJob);
+    }
+
+    @Async("timerLoopExecutor")
     public void jobWatchRunnable()
     {
         boolean result = false;
@@ -130,20 +423,24 @@ public class TimerServer
 
     public void jobWatchProcLoop()
     {
-        Long currentTime;
+        long lastTime = ticktockSequence.get();
+        long currentTime;
 
         ticktockInterrupted = false;
 
         do
         {
-            currentTime = getTimestamp();
-            if (currentTime == null)
+            // 补触发排队时只等到下一个令牌, 在两次整秒之间逐个发出, 而不是每秒开头一次发一批
+            long timeout = catchUpQueue.isEmpty() ? TimeUnit.SECONDS.toMillis(5) : Math.max(1, catchUpBucket.waitMillis(System.currentTimeMillis()));
+            currentTime = ticktockSequence.waitFor(lastTime, TimeUnit.MILLISECONDS.toNanos(timeout));
+            if ( currentTime == lastTime )
             {
-                SLEEP(5000);
+                drainCatchUp(System.currentTimeMillis());
                 continue;
             }
 
-            scanTimerMessageQueue(currentTime.longValue());
+            lastTime = currentTime;
+            scanTimerMessageQueue(currentTime);
 
         } while ( ticktockInterrupted == false );
 
@@ -151,31 +448,185 @@ public class TimerServer
 
     }
 
-    public Long getTimestamp()
+    public long getTimestamp()
     {
-        return ticktockQueue.poll();
+        return ticktockSequence.get();
     }
 
-    private void scanTimerMessageQueue( long timestamp )
+    public LatencyHistogram getDispatchLatency()
     {
-        DateTime dateTime;
-        do
+        return dispatchLatency;
+    }
+
+    void scanTimerMessageQueue( long timestamp )
+    {
+        try
         {
-            try
-            {
-                lock(timerMessageQueueAtomic);
+            lock(timerMessageQueueAtomic);
+            timerMessageQueue.expire(timestamp, this::fire);
+            maintainWal(timestamp);
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
+        drainCatchUp(System.currentTimeMillis());
+    }
 
-                dateTime = new DateTime( timestamp );
-                // logger.debug("doTicktockProc -> {}.", dateTime.toString("yyyy-MM-dd  HH:mm:ss.SSS"));
-            }
-            finally
+    // 在 timerMessageQueueAtomic 锁内回调
+    private void fire(TimerJob job)
+    {
+        long now = System.currentTimeMillis();
+        long expectTime = job.getExpectTime().getTime();
+        boolean misfired = now - expectTime > misfireThreshold;
+
+        dispatchLatency.record(now - expectTime);
+        logger.debug("fire job -> {}, expectTime:{}", job.getId(), expectTime);
+        if ( jobWal != null ) jobWal.fire(job);
+        if ( misfired ) misfiredCount.incrementAndGet();
+
+        if ( job instanceof TaskJob )
+        {
+            // 一次性任务只有一次触发, 各策略下都补触发一次
+            submit((TaskJob) job, misfired);
+        }
+        else if ( job instanceof CronJob )
+        {
+            fireCron((CronJob) job, now, misfired);
+        }
+    }
+
+    /**
+     * cron 的单次触发没有 p_tasks 行, 不经过执行器的 state 1 -> 2 认领; 自身心跳中断或已不负责时只推进到下一次, 不触发,
+     * 避免与接管的实例同时触发. 心跳恢复且仍负责时照常触发, 归属变化后由 TaskLoader.loadCronTasks 取消
+     */
+    private void fireCron(CronJob job, long now, boolean misfired)
+    {
+        long after = job.getExpectTime().getTime();
+        MisfirePolicy policy = misfired ? job.getMisfirePolicy() : null;
+        boolean fenced = clusterMembership != null && !clusterMembership.owns(job.getCronTaskId());
+
+        if ( fenced )
+        {
+            fencedCount.incrementAndGet();
+            after = now;
+        }
+        else if ( policy == MisfirePolicy.SKIP_TO_NEXT )
+        {
+            skippedCount.incrementAndGet();
+            after = now;
+        }
+        else
+        {
+            submit(job.newInstance(), misfired);
+            if ( policy == MisfirePolicy.FIRE_ONCE_NOW ) after = now;
+        }
+
+        boolean hasNext = job.next(after);
+        if ( !fenced && policy == MisfirePolicy.FIRE_ALL_MISSED )
+        {
+            // 一次补齐到当前时间为止错过的全部次数, 超过 maxCatchUp 的部分丢弃
+            int count = 1;
+            while ( hasNext && job.getExpectTime().getTime() <= now )
             {
-                unLock(timerMessageQueueAtomic);
+                if ( count++ < maxCatchUp ) submit(job.newInstance(), true); else skippedCount.incrementAndGet();
+                hasNext = job.next(job.getExpectTime().getTime());
             }
-        } while(timeIsUp(timestamp) );
+        }
+
+        if ( !hasNext )
+        {
+            // 已没有后续触发时间, 记一条取消, 否则回放日志时又会恢复这个任务
+            if ( jobWal != null ) jobWal.cancel(job.getId());
+            return;
+        }
+        timerMessageQueue.schedule(job);
+        if ( jobWal != null ) jobWal.schedule(job);
+    }
+
+    // 正常触发直接执行; 错过的任务, 或已有任务在补触发排队时, 进入补触发队列
+    private void submit(TaskJob job, boolean misfired)
+    {
+        if ( job.getJobType() < 0 ) return;
+
+        if ( misfired || !catchUpQueue.isEmpty() )
+        {
+            if ( !catchUpQueue.offer(job) ) defer(job);
+            return;
+        }
+        dispatch(job);
+    }
+
+    // 补触发队列已满: p_tasks 任务留在表中等重新加载, cron 的单次触发没有对应的行, 丢弃
+    private void defer(TaskJob job)
+    {
+        if ( job.getId() > 0 )
+        {
+            deferredCount.incrementAndGet();
+            handBack(job);
+        }
+        else
+        {
+            skippedCount.incrementAndGet();
+        }
+    }
+
+    // 只由任务扫描线程在调度锁外调用
+    private void drainCatchUp(long now)
+    {
+        while ( !catchUpQueue.isEmpty() && catchUpBucket.tryAcquire(now) )
+        {
+            dispatch(catchUpQueue.poll());
+            catchUpCount.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getMisfireStats()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("threshold", misfireThreshold);
+        result.put("misfired", misfiredCount.get());
+        result.put("skipped", skippedCount.get());
+        result.put("catchUpDispatched", catchUpCount.get());
+        result.put("catchUpBacklog", catchUpQueue.size());
+        result.put("catchUpDeferred", deferredCount.get());
+        result.put("cronFenced", fencedCount.get());
+        return result;
+    }
+
+    public long getMisfireThreshold()
+    {
+        return misfireThreshold;
+    }
+
+    /**
+     * @return 补触发队列还能放入的任务数
+     */
+    public int getCatchUpRoom()
+    {
+        return catchUpQueue.remainingCapacity();
+    }
+
+    private void dispatch(TaskJob job)
+    {
+        Consumer<TaskJob> handler = jobHandlers.get(job.getJobType());
+        if ( handler == null )
+        {
+            logger.warn("No handler for job type {}, task -> {}", job.getJobType(), job.getId());
+            return;
+        }
+
+        try
+        {
+            handler.accept(job);
+        }
+        catch (Exception e)
+        {
+            logger.warn("dispatch task {} <- {}", job.getId(), e.getMessage());
+        }
     }
 
-    @Async("timerTaskExecutor")
+    @Async("timerLoopExecutor")
     public void ticktockRunnable()
     {
         boolean result = ticktockRunning.compareAndSet(false,true);
@@ -205,20 +656,23 @@ public class TimerServer
 
     public void ticktockProcLoop()
     {
-        int  millis, dt;
-        long currentTime;
+        long now, nextTime;
 
         jobWatchInterrupted = false;
 
         do
         {
-            currentTime = System.currentTimeMillis();
-            millis = Math.toIntExact(currentTime % 1000);
-            dt = 1000 - millis;
-            currentTime += dt;
+            now = System.currentTimeMillis();
+            nextTime = now - now % 1000 + 1000;
+
+            // parkNanos 可能提前返回, 直到真正跨过整秒再发布
+            while ( (now = System.currentTimeMillis()) < nextTime && jobWatchInterrupted == false )
+            {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(nextTime - now));
+            }
+            if ( jobWatchInterrupted ) break;
 
-            SLEEP(dt);
-            addTimestamp(currentTime);
+            addTimestamp(nextTime);
         } while (jobWatchInterrupted == false);
 
         logger.info("doTicktockProc exit.");
@@ -226,25 +680,49 @@ public class TimerServer
 
     public void addTimestamp(long t)
     {
-        ticktockQueue.add(Long.valueOf(t));
-        if ( jobWatchThread !=null && jobWatchThread.getState() == Thread.State.TIMED_WAITING )
-        {
-            jobWatchThread.interrupt();
-        }
+        ticktockSequence.publish(t);
     }
 
 
-    @Async("timerTaskExecutor")
+    @Async("timerLoopExecutor")
     public void startup()
     {
         jobWatchRunnable();
         ticktockRunnable();
     }
 
+    /**
+     * 停止计时和扫描线程并关闭预写日志, 应用关闭时调用
+     */
+    @PreDestroy
     public void shutdown()
     {
         ticktockInterrupted = true;
         jobWatchInterrupted = true;
+
+        ticktockSequence.wakeup();
+        if ( ticktockThread != null ) LockSupport.unpark(ticktockThread);
+
+        closeWal();
+    }
+
+    private void closeWal()
+    {
+        if ( jobWal == null ) return;
+        try
+        {
+            lock(timerMessageQueueAtomic);
+            jobWal.close();
+            jobWal = null;
+        }
+        catch (IOException e)
+        {
+            logger.warn("close wal <- {}", e.getMessage());
+        }
+        finally
+        {
+            unLock(timerMessageQueueAtomic);
+        }
     }
 
     public void lock( AtomicBoolean atomicRef )
@@ -0,0 +1,227 @@
+package com.trxs.pulse.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Scope;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 基于 p_instances 心跳的集群成员管理
+ *
+ * 每个实例定期刷新自己的 last_access_time, 并把 timeout 内有心跳的实例组成一致性哈希环,
+ * p_tasks / p_cron_tasks 的 id 按环分配给唯一的实例; 某个实例停止心跳超过 timeout 后, 其余实例重新分配
+ *
+ * 自身心跳连续失败超过 timeout 时不再认领任何任务, 避免与其它实例同时触发
+ */
+@Scope("singleton")
+@Component
+public class ClusterMembership
+{
+    private static Logger logger = LoggerFactory.getLogger(ClusterMembership.class.getSimpleName());
+
+    private static final String UPDATE_SQL = "UPDATE p_instances SET last_access_time = ? WHERE host_name = ?";
+    private static final String INSERT_SQL = "INSERT INTO p_instances ( host_name, last_access_time ) VALUES ( ?, ? )";
+    private static final String LIVE_SQL   = "SELECT host_name FROM p_instances WHERE last_access_time >= ?";
+    private static final String DELETE_SQL = "DELETE FROM p_instances WHERE last_access_time < ?";
+    private static final String LEAVE_SQL  = "DELETE FROM p_instances WHERE host_name = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${pulse.cluster.host:}")
+    private String hostName;
+
+    @Value("${server.port:80}")
+    private String serverPort;
+
+    @Value("${pulse.cluster.heartbeat-interval:3000}")
+    private long heartbeatInterval;
+
+    @Value("${pulse.cluster.timeout:10000}")
+    private long timeout;
+
+    @Value("${pulse.cluster.virtual-nodes:160}")
+    private int virtualNodes;
+
+    private volatile ConsistentHashRing ring = ConsistentHashRing.EMPTY;
+    private volatile long lastHeartbeatTime;
+    private volatile boolean interrupted;
+    private volatile Thread heartbeatThread;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final List<Consumer<ConsistentHashRing>> listeners = new CopyOnWriteArrayList<>();
+
+    public ClusterMembership() {}
+
+    public ClusterMembership(JdbcTemplate jdbcTemplate, String hostName, long heartbeatInterval, long timeout, int virtualNodes)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hostName = hostName;
+        this.heartbeatInterval = heartbeatInterval;
+        this.timeout = timeout;
+        this.virtualNodes = virtualNodes;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( hostName == null || hostName.length() == 0 ) hostName = String.join(":", localHostName(), serverPort);
+        logger.info("Cluster member -> {}", hostName);
+    }
+
+    @Async("timerLoopExecutor")
+    public void heartbeatRunnable()
+    {
+        if ( !running.compareAndSet(false, true) )
+        {
+            logger.warn("HeartbeatRunnable startup {} failed!", hostName);
+            return;
+        }
+
+        heartbeatThread = Thread.currentThread();
+        try
+        {
+            while ( interrupted == false )
+            {
+                heartbeat(System.currentTimeMillis());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(heartbeatInterval));
+            }
+        }
+        finally
+        {
+            heartbeatThread = null;
+            running.set(false);
+        }
+        logger.info("heartbeat exit.");
+    }
+
+    /**
+     * 停止心跳并删除自身的 p_instances 行, 其余实例下一次心跳即接管, 不必等 timeout; 应用关闭时调用
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        interrupted = true;
+        Thread thread = heartbeatThread;
+        if ( thread != null ) LockSupport.unpark(thread);
+
+        leave();
+    }
+
+    /**
+     * 刷新自身心跳并重建哈希环
+     *
+     * @param now 当前时间(毫秒)
+     */
+    public synchronized void heartbeat(long now)
+    {
+        // 已经退出集群, 不再写回自身的行
+        if ( interrupted ) return;
+
+        try
+        {
+            Timestamp timestamp = new Timestamp(now);
+            if ( jdbcTemplate.update(UPDATE_SQL, timestamp, hostName) == 0 )
+            {
+                jdbcTemplate.update(INSERT_SQL, hostName, timestamp);
+            }
+            lastHeartbeatTime = now;
+
+            Timestamp expired = new Timestamp(now - timeout);
+            List<String> hosts = jdbcTemplate.queryForList(LIVE_SQL, String.class, expired);
+            jdbcTemplate.update(DELETE_SQL, expired);
+
+            Collections.sort(hosts);
+            if ( !hosts.equals(ring.getMembers()) ) updateRing(hosts);
+        }
+        catch (Exception e)
+        {
+            logger.warn("heartbeat {} <- {}", hostName, e.getMessage());
+        }
+    }
+
+    public synchronized void leave()
+    {
+        try
+        {
+            jdbcTemplate.update(LEAVE_SQL, hostName);
+        }
+        catch (Exception e)
+        {
+            logger.warn("leave {} <- {}", hostName, e.getMessage());
+        }
+        lastHeartbeatTime = 0;
+        updateRing(Collections.emptyList());
+    }
+
+    private void updateRing(List<String> hosts)
+    {
+        ConsistentHashRing newRing = new ConsistentHashRing(hosts, virtualNodes);
+        if ( newRing.getMembers().equals(ring.getMembers()) ) return;
+
+        logger.info("cluster members changed: [{}] -> [{}]", ring, newRing);
+        ring = newRing;
+        listeners.forEach(listener -> listener.accept(newRing));
+    }
+
+    /**
+     * @return 自身心跳在 timeout 内成功过, 可以认领任务
+     */
+    public boolean isActive()
+    {
+        return System.currentTimeMillis() - lastHeartbeatTime <= timeout;
+    }
+
+    /**
+     * @return 当前实例是否负责该任务 id
+     */
+    public boolean owns(int id)
+    {
+        if ( !isActive() ) return false;
+        return ring.isOwner(hostName, id);
+    }
+
+    public void addListener(Consumer<ConsistentHashRing> listener)
+    {
+        listeners.add(listener);
+    }
+
+    public ConsistentHashRing getRing()
+    {
+        return ring;
+    }
+
+    public String getHostName()
+    {
+        return hostName;
+    }
+
+    private static String localHostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException e)
+        {
+            return "127.0.0.1";
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.trxs.pulse.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 不可变的一致性哈希环, 每个实例映射为若干虚拟节点
+ *
+ * 虚拟节点位置用 MD5(host#i) 计算(每个摘要切成 4 个 int), 任务 id 用 32 位混淆函数打散
+ * 查询为有序数组上的二分查找, 不分配对象
+ */
+public final class ConsistentHashRing
+{
+    public static final ConsistentHashRing EMPTY = new ConsistentHashRing(Collections.emptyList(), 1);
+
+    private final List<String> members;
+    private final int[]    points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> hosts, int virtualNodes)
+    {
+        members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(hosts)));
+
+        int size = members.size() * ((virtualNodes + 3) / 4) * 4;
+        long[] entries = new long[size];
+        int count = 0;
+
+        for ( int m = 0; m < members.size(); ++m )
+        {
+            for ( int i = 0; count < size && i < (virtualNodes + 3) / 4; ++i )
+            {
+                byte[] digest = md5(members.get(m) + "#" + i);
+                for ( int k = 0; k < 4; ++k )
+                {
+                    int point = (digest[k * 4] & 0xFF) << 24 | (digest[k * 4 + 1] & 0xFF) << 16 | (digest[k * 4 + 2] & 0xFF) << 8 | (digest[k * 4 + 3] & 0xFF);
+                    // 高 32 位放位置, 低 32 位放成员序号, 排序后位置相同时按成员名稳定排列
+                    entries[count++] = ((long) point << 32) | m;
+                }
+            }
+        }
+
+        Arrays.sort(entries, 0, count);
+        points = new int[count];
+        owners = new String[count];
+        for ( int i = 0; i < count; ++i )
+        {
+            points[i] = (int) (entries[i] >> 32);
+            owners[i] = members.get((int) entries[i]);
+        }
+    }
+
+    public List<String> getMembers()
+    {
+        return members;
+    }
+
+    public boolean isEmpty()
+    {
+        return points.length == 0;
+    }
+
+    /**
+     * @return 负责该 id 的实例, 环为空时返回 null
+     */
+    public String ownerOf(int id)
+    {
+        if ( points.length == 0 ) return null;
+
+        int hash = mix(id);
+        int index = Arrays.binarySearch(points, hash);
+        if ( index < 0 ) index = -index - 1;
+        if ( index == points.length ) index = 0;
+        return owners[index];
+    }
+
+    public boolean isOwner(String host, int id)
+    {
+        return host.equals(ownerOf(id));
+    }
+
+    // murmur3 fmix32
+    private static int mix(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static byte[] md5(String text)
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5").digest(text.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.join(",", members);
+    }
+}
@@ -23,4 +23,22 @@ public class AsyncTimerTaskConfig
 
         return taskExecutor;
     }
-}
\ No newline at end of file
+
+    /**
+     * 心跳、状态日志写入、计时、扫描、加载、http 分发 6 个常驻循环各占一个线程, 与执行任务的 timerTaskExecutor 分开,
+     * 任务执行再多也不会让调度循环排队等线程
+     */
+    @Bean("timerLoopExecutor")
+    public Executor loopExecutor()
+    {
+        ThreadPoolTaskExecutor loopExecutor = new ThreadPoolTaskExecutor();
+        loopExecutor.setCorePoolSize(8);// 6 个循环, 留出余量
+        loopExecutor.setMaxPoolSize(8);
+        loopExecutor.setQueueCapacity(0);// 不排队, 线程不够时直接拒绝
+        loopExecutor.setThreadNamePrefix("pulse-loop-");
+
+        loopExecutor.initialize();
+
+        return loopExecutor;
+    }
+}
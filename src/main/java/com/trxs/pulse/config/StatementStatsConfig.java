@@ -0,0 +1,28 @@
+package com.trxs.pulse.config;
+
+import com.trxs.pulse.jdbc.StatsJdbcTemplate;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 把容器中的 JdbcTemplate 换成 StatsJdbcTemplate, 注入它的 BaseService、TaskLoader、StateJournal、ClusterMembership、HttpJobExecutor
+ * 执行的语句都按指纹记录统计, 见 /metrics/statements
+ */
+@Configuration
+public class StatementStatsConfig
+{
+    @Bean
+    public static BeanPostProcessor statsJdbcTemplatePostProcessor()
+    {
+        return new BeanPostProcessor()
+        {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName)
+            {
+                return bean instanceof JdbcTemplate ? StatsJdbcTemplate.wrap((JdbcTemplate) bean) : bean;
+            }
+        };
+    }
+}
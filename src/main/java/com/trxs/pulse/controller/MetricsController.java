@@ -0,0 +1,95 @@
+package com.trxs.pulse.controller;
+
+import com.trxs.pulse.HttpJobExecutor;
+import com.trxs.pulse.StateJournal;
+import com.trxs.pulse.TaskLoader;
+import com.trxs.pulse.TimerServer;
+import com.trxs.pulse.jdbc.PredicateCache;
+import com.trxs.pulse.jdbc.QueryCache;
+import com.trxs.pulse.jdbc.StatementStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class MetricsController
+{
+    @Autowired
+    private TimerServer timerServer;
+
+    @Autowired
+    private TaskLoader taskLoader;
+
+    @Autowired
+    private HttpJobExecutor httpJobExecutor;
+
+    @Autowired
+    private StateJournal stateJournal;
+
+    // 任务实际触发时间与 expectTime 的差值分布
+    @RequestMapping(value = "/metrics/dispatch", method = RequestMethod.GET)
+    public Map<String, Object> dispatch()
+    {
+        return timerServer.getDispatchLatency().snapshot();
+    }
+
+    // p_tasks 加载速度与延迟
+    @RequestMapping(value = "/metrics/loader", method = RequestMethod.GET)
+    public Map<String, Object> loader()
+    {
+        return taskLoader.snapshot();
+    }
+
+    // http 任务排队、并发与耗时
+    @RequestMapping(value = "/metrics/http", method = RequestMethod.GET)
+    public Map<String, Object> http()
+    {
+        return httpJobExecutor.snapshot();
+    }
+
+    // 状态写入积压与批量写入次数
+    @RequestMapping(value = "/metrics/journal", method = RequestMethod.GET)
+    public Map<String, Object> journal()
+    {
+        return stateJournal.snapshot();
+    }
+
+    // 错过触发时间的任务数与补触发排队
+    @RequestMapping(value = "/metrics/misfire", method = RequestMethod.GET)
+    public Map<String, Object> misfire()
+    {
+        return timerServer.getMisfireStats();
+    }
+
+    // 动态 SQL test 表达式编译缓存命中率
+    @RequestMapping(value = "/metrics/predicates", method = RequestMethod.GET)
+    public Map<String, Object> predicates()
+    {
+        return PredicateCache.getInstance().snapshot();
+    }
+
+    // BaseService 查询结果缓存命中率
+    @RequestMapping(value = "/metrics/query-cache", method = RequestMethod.GET)
+    public Map<String, Object> queryCache()
+    {
+        return QueryCache.getInstance().snapshot();
+    }
+
+    // BaseService 执行的语句按指纹统计, 按累计耗时排序
+    @RequestMapping(value = "/metrics/statements", method = RequestMethod.GET)
+    public List<Map<String, Object>> statements(@RequestParam(value = "top", defaultValue = "50") int top)
+    {
+        return StatementStats.getInstance().snapshot(top);
+    }
+
+    @RequestMapping(value = "/metrics/statements", method = RequestMethod.DELETE)
+    public void resetStatements()
+    {
+        StatementStats.getInstance().reset();
+    }
+}
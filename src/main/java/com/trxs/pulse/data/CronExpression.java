@@ -3,7 +3,6 @@ package com.trxs.pulse.data;
 import org.joda.time.DateTime;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class CronExpression
@@ -18,6 +17,8 @@ public class CronExpression
 
     private String text;
     private String[] items = new String[7];
+    private CronPattern pattern;
+
     public CronExpression(){}
 
     public CronExpression(String exp)
@@ -32,124 +33,43 @@ public class CronExpression
         items[5] = "?";
         String []options = text.split("( )+");
         for ( int i = 0; i < options.length && i < items.length; ++i ) items[i] = options[i];
+        pattern = CronPattern.compile(String.join(" ", items));
     }
 
     private List<Long> getTimestamps(long beginTime, long duration)
     {
         List<Long> timestamps = new ArrayList<>();
-        DateTime     dateTime = new DateTime(beginTime);
-        long          endTime = beginTime + duration;
+        long endTime = beginTime + duration;
 
-        do
+        // 从 beginTime 所在秒开始(含)
+        long timestamp = getPattern().nextFireTime(beginTime - 1000);
+        while ( timestamp >= 0 && timestamp < endTime )
         {
-            if ( checkTime(dateTime ) ) timestamps.add( dateTime.getMillis() );
-            dateTime.plusMillis(1000);
-        } while (dateTime.getMillis() < endTime);
+            timestamps.add(timestamp);
+            timestamp = pattern.nextFireTime(timestamp);
+        }
 
         return timestamps;
     }
 
     public boolean checkTime( final DateTime dateTime )
     {
-        for ( int i = 0; i < items.length; ++i )
-        {
-            switch (i)
-            {
-                case SECOND:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getSecondOfMinute(), 60) ) return false;
-                    break;
-                case MINUTE:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getMinuteOfHour(), 60) ) return false;
-                    break;
-                case HOUR:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getHourOfDay(), 24) ) return false;
-                    break;
-                case DAY:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getDayOfMonth(), dateTime.dayOfMonth().getMaximumValue()) ) return false;
-                    break;
-                case MONTH:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getMonthOfYear(), 12) ) return false;
-                    break;
-                case DAYOFWEEK:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getDayOfWeek(), 7) ) return false;
-                    break;
-                case YEAR:
-                    if ( ! checkItem(i, dateTime, items[i], dateTime.getYear(), 3000) ) return false;
-                    break;
-            }
-        }
-        return true;
-    }
-
-    private boolean checkItem(final int fieldIndex, final DateTime dateTime, final String item, final int value, final int maxValue )
-    {
-        String []options;
-        switch (getItemType(item))
-        {
-            case 0:
-                return value == Integer.valueOf(item).intValue();
-            case 1:
-                return Arrays.asList(item.split(",")).stream().anyMatch( v-> Integer.valueOf(v).intValue() == value);
-            case 2:
-                options = item.split("-");
-                if ( options.length != 2 ) return false;
-                return Integer.valueOf(options[0]).intValue() <= value && value <= Integer.valueOf(options[1]).intValue();
-            case 3:
-                options = item.split("/");
-                if ( options.length != 2 ) return false;
-                int startValue = Integer.valueOf(options[0]).intValue();
-                int  stepValue = Integer.valueOf(options[1]).intValue();
-                do
-                {
-                    if ( startValue == value ) return true;
-                }while ( (startValue += stepValue) <= maxValue);
-                break;
-            case 4: // *
-                return true;
-            case 5: // ?
-                if ( fieldIndex == DAY || fieldIndex == DAYOFWEEK )
-                    return true;
-                else
-                    return false;
-            case 6: // L
-                if ( fieldIndex == DAY )
-                    return dateTime.dayOfMonth().getMaximumValue() == value;
-                else  if ( fieldIndex == DAYOFWEEK )
-                    return dateTime.dayOfMonth().getMaximumValue() - 7 < dateTime.getDayOfMonth();
-        }
-        return false;
+        return getPattern().matches(dateTime);
     }
 
     /**
-     *
-     * @param item
-     * @return
-     *
-     * 0 xx
-     * 1 xx,xx
-     * 2 xx-xx
-     * 3 xx/xx
-     * 4 *
-     * 5 ?
-     * 6 L  Todo ...
-     *
+     * @param after 毫秒时间戳
+     * @return after 之后的下一次触发时间, 没有时返回 -1
      */
-    private int getItemType(String item)
+    public long nextFireTime(long after)
     {
-        if ( item.equals("*") ) return 4;
-        if ( item.equals("?") ) return 5;
-        if ( item.equals("L") ) return 6;
-
-        int index = item.indexOf(",");
-        if ( index >= 0 ) return 1;
-
-        index = item.indexOf("-");
-        if ( index >= 0 ) return 2;
-
-        index = item.indexOf("/");
-        if ( index >= 0 ) return 3;
+        return getPattern().nextFireTime(after);
+    }
 
-        return 0;
+    public CronPattern getPattern()
+    {
+        if ( pattern == null ) pattern = CronPattern.compile(String.join(" ", items));
+        return pattern;
     }
 
     public String getText()
@@ -171,5 +91,6 @@ public class CronExpression
     public void setItems(String[] items)
     {
         this.items = items;
+        this.pattern = null;
     }
 }
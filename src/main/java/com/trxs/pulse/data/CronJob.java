@@ -0,0 +1,80 @@
+package com.trxs.pulse.data;
+
+import java.util.Date;
+
+/**
+ * p_cron_tasks 在调度引擎中的任务, 触发后按 cron 表达式重新排期
+ *
+ * 调度引擎按 id 索引任务, 为避免与 p_tasks 的 id 冲突, 这里使用 p_cron_tasks.id 的相反数
+ */
+public class CronJob extends TimerJob
+{
+    private int cronTaskId;
+    private CronPattern pattern;
+
+    private int jobType;
+    private int jobId;
+    private MisfirePolicy misfirePolicy;
+
+    public CronJob(int cronTaskId, String expression)
+    {
+        this(cronTaskId, expression, -1, 0, MisfirePolicy.FIRE_ONCE_NOW);
+    }
+
+    public CronJob(int cronTaskId, String expression, int jobType, int jobId, MisfirePolicy misfirePolicy)
+    {
+        this.cronTaskId = cronTaskId;
+        this.pattern = CronPattern.compile(expression);
+        this.jobType = jobType;
+        this.jobId = jobId;
+        this.misfirePolicy = misfirePolicy;
+        setId(-cronTaskId);
+    }
+
+    /**
+     * 计算 after 之后的下一次触发时间并写入 expectTime
+     *
+     * @return false 表达式已没有后续触发时间
+     */
+    public boolean next(long after)
+    {
+        long fireTime = pattern.nextFireTime(after);
+        if ( fireTime < 0 ) return false;
+
+        setExpectTime(new Date(fireTime));
+        return true;
+    }
+
+    /**
+     * 本次触发要执行的任务, id 为负数, 没有对应的 p_tasks 行
+     */
+    public TaskJob newInstance()
+    {
+        return new TaskJob(getId(), jobType, jobId, getExpectTime());
+    }
+
+    public int getCronTaskId()
+    {
+        return cronTaskId;
+    }
+
+    public CronPattern getPattern()
+    {
+        return pattern;
+    }
+
+    public int getJobType()
+    {
+        return jobType;
+    }
+
+    public int getJobId()
+    {
+        return jobId;
+    }
+
+    public MisfirePolicy getMisfirePolicy()
+    {
+        return misfirePolicy;
+    }
+}
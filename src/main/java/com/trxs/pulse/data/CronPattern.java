@@ -0,0 +1,335 @@
+package com.trxs.pulse.data;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预编译的 cron 表达式: 秒 分 时 日 月 周 年
+ *
+ * 每个字段在编译时展开成位图, 判断与计算下次触发时间都不再解析字符串
+ *   秒/分 60 位, 时 24 位, 日 31 位, 月 12 位, 周 7 位(1-周一 ... 7-周日), 年 1970~2199
+ *
+ * 字段语法与 CronExpression 一致并允许组合:
+ *   *  所有值
+ *   ?  不指定, 只用于日和周
+ *   L  日: 当月最后一天; 周: 当月最后 7 天
+ *   a  a-b  a/step  a-b/step  *&#47;step  以及用 , 连接的以上各项
+ *
+ * 日和周同时生效(与 CronExpression.checkTime 相同), 缺省的尾部字段按 "*" 处理, 周缺省为 "?"
+ */
+public final class CronPattern
+{
+    public static final int MIN_YEAR = 1970;
+    public static final int MAX_YEAR = 2199;
+
+    // 表达式来自 p_cron_tasks 和接口参数, 缓存超过上限时整体清空, 已编译的 pattern 由 CronJob 等各自持有
+    private static final int MAX_CACHED = 4096;
+    private static final Map<String, CronPattern> patternCache = new ConcurrentHashMap<>(64);
+
+    private final String text;
+
+    private final long seconds;
+    private final long minutes;
+    private final int  hours;
+    private final int  days;     // bit 1~31
+    private final int  months;   // bit 1~12
+    private final int  weekdays; // bit 1~7
+    private final boolean lastDayOfMonth;
+    private final boolean lastWeekOfMonth;
+
+    private final BitSet years;
+    private final int minYear;
+    private final int maxYear;
+
+    private CronPattern(String expression)
+    {
+        text = expression;
+
+        String[] items = { "*", "*", "*", "*", "*", "?", "*" };
+        String[] options = expression.trim().split("(\t| )+");
+        if ( options.length > items.length ) throw new IllegalArgumentException("Too many fields in cron expression: " + expression);
+        System.arraycopy(options, 0, items, 0, options.length);
+
+        seconds = parse(items[0], 0, 59, false);
+        minutes = parse(items[1], 0, 59, false);
+        hours   = (int) parse(items[2], 0, 23, false);
+        months  = (int) parse(items[4], 1, 12, false);
+
+        lastDayOfMonth  = items[3].equals("L");
+        days            = lastDayOfMonth ? 0 : (int) parse(items[3], 1, 31, true);
+
+        lastWeekOfMonth = items[5].equals("L");
+        weekdays        = lastWeekOfMonth ? 0 : (int) parse(items[5], 1, 7, true);
+
+        years   = parseYears(items[6]);
+        minYear = years.nextSetBit(0) + MIN_YEAR;
+        maxYear = years.length() - 1 + MIN_YEAR;
+
+        if ( seconds == 0 || minutes == 0 || hours == 0 || months == 0 || years.isEmpty()
+            || (days == 0 && !lastDayOfMonth) || (weekdays == 0 && !lastWeekOfMonth) )
+        {
+            throw new IllegalArgumentException("Cron expression never matches: " + expression);
+        }
+    }
+
+    /**
+     * 编译并缓存表达式, 相同文本在缓存清空前只编译一次
+     */
+    public static CronPattern compile(String expression)
+    {
+        if ( expression == null ) throw new IllegalArgumentException("Cron expression is null!");
+
+        CronPattern pattern = patternCache.get(expression);
+        if ( pattern != null ) return pattern;
+
+        pattern = new CronPattern(expression);
+        if ( patternCache.size() >= MAX_CACHED ) patternCache.clear();
+        patternCache.putIfAbsent(expression, pattern);
+        return pattern;
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public boolean matches(long time)
+    {
+        return matches(new DateTime(time).toLocalDateTime());
+    }
+
+    public boolean matches(DateTime dateTime)
+    {
+        return matches(dateTime.toLocalDateTime());
+    }
+
+    private boolean matches(LocalDateTime t)
+    {
+        return hasYear(t.getYear())
+            && (months & (1 << t.getMonthOfYear())) != 0
+            && matchDay(t.toLocalDate())
+            && (hours & (1 << t.getHourOfDay())) != 0
+            && (minutes & (1L << t.getMinuteOfHour())) != 0
+            && (seconds & (1L << t.getSecondOfMinute())) != 0;
+    }
+
+    /**
+     * 计算 after 之后(不含)的第一个触发时间, 逐字段跳跃而不是逐秒检查
+     *
+     * @param after 毫秒时间戳
+     * @return 下一次触发时间(毫秒), 年份范围内再无匹配时返回 -1
+     */
+    public long nextFireTime(long after)
+    {
+        LocalDateTime t = new DateTime(after).toLocalDateTime().withMillisOfSecond(0).plusSeconds(1);
+
+        while ( t.getYear() <= maxYear )
+        {
+            int year = t.getYear();
+            if ( !hasYear(year) )
+            {
+                int next = nextYear(year);
+                if ( next < 0 ) return -1;
+                t = new LocalDateTime(next, 1, 1, 0, 0, 0);
+                continue;
+            }
+
+            int month = nextBit(months, t.getMonthOfYear(), 12);
+            if ( month < 0 )
+            {
+                t = new LocalDateTime(year + 1, 1, 1, 0, 0, 0);
+                continue;
+            }
+            if ( month != t.getMonthOfYear() )
+            {
+                t = new LocalDateTime(year, month, 1, 0, 0, 0);
+            }
+
+            LocalDate date = t.toLocalDate();
+            int lastDay = date.dayOfMonth().getMaximumValue();
+            int day = t.getDayOfMonth();
+            while ( day <= lastDay && !matchDay(date.withDayOfMonth(day)) ) ++day;
+            if ( day > lastDay )
+            {
+                t = new LocalDateTime(year, month, 1, 0, 0, 0).plusMonths(1);
+                continue;
+            }
+            if ( day != t.getDayOfMonth() )
+            {
+                t = new LocalDateTime(year, month, day, 0, 0, 0);
+            }
+
+            int hour = nextBit(hours, t.getHourOfDay(), 23);
+            if ( hour < 0 )
+            {
+                t = new LocalDateTime(year, month, day, 0, 0, 0).plusDays(1);
+                continue;
+            }
+            if ( hour != t.getHourOfDay() )
+            {
+                t = new LocalDateTime(year, month, day, hour, 0, 0);
+            }
+
+            int minute = nextBit(minutes, t.getMinuteOfHour(), 59);
+            if ( minute < 0 )
+            {
+                t = new LocalDateTime(year, month, day, hour, 0, 0).plusHours(1);
+                continue;
+            }
+            if ( minute != t.getMinuteOfHour() )
+            {
+                t = new LocalDateTime(year, month, day, hour, minute, 0);
+            }
+
+            int second = nextBit(seconds, t.getSecondOfMinute(), 59);
+            if ( second < 0 )
+            {
+                t = new LocalDateTime(year, month, day, hour, minute, 0).plusMinutes(1);
+                continue;
+            }
+
+            LocalDateTime fireTime = new LocalDateTime(year, month, day, hour, minute, second);
+            try
+            {
+                return fireTime.toDateTime().getMillis();
+            }
+            catch (IllegalArgumentException e)
+            {
+                // 夏令时跳过的本地时间不存在, 从下一分钟继续找
+                t = fireTime.withSecondOfMinute(0).plusMinutes(1);
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean matchDay(LocalDate date)
+    {
+        int day = date.getDayOfMonth();
+        int lastDay = date.dayOfMonth().getMaximumValue();
+
+        boolean dayMatched = lastDayOfMonth ? day == lastDay : (days & (1 << day)) != 0;
+        if ( !dayMatched ) return false;
+
+        if ( lastWeekOfMonth ) return lastDay - 7 < day;
+        return (weekdays & (1 << date.getDayOfWeek())) != 0;
+    }
+
+    private boolean hasYear(int year)
+    {
+        return year >= minYear && year <= maxYear && years.get(year - MIN_YEAR);
+    }
+
+    private int nextYear(int year)
+    {
+        if ( year < minYear ) return minYear;
+        int next = years.nextSetBit(year - MIN_YEAR + 1);
+        return next < 0 ? -1 : next + MIN_YEAR;
+    }
+
+    private static int nextBit(long bits, int from, int max)
+    {
+        long remain = bits & (-1L << from);
+        if ( remain == 0 ) return -1;
+        int bit = Long.numberOfTrailingZeros(remain);
+        return bit > max ? -1 : bit;
+    }
+
+    private static long parse(String item, int min, int max, boolean allowQuestion)
+    {
+        if ( item.equals("?") )
+        {
+            if ( !allowQuestion ) throw new IllegalArgumentException("'?' is only allowed in day or week field!");
+            return range(min, max, 1);
+        }
+
+        long bits = 0;
+        for ( String part : item.split(",") )
+        {
+            int[] r = parsePart(part, min, max);
+            bits |= range(r[0], r[1], r[2]);
+        }
+        return bits;
+    }
+
+    private static BitSet parseYears(String item)
+    {
+        BitSet bits = new BitSet(MAX_YEAR - MIN_YEAR + 1);
+        for ( String part : item.split(",") )
+        {
+            int[] r = parsePart(part, MIN_YEAR, MAX_YEAR);
+            for ( int v = r[0]; v <= r[1]; v += r[2] ) bits.set(v - MIN_YEAR);
+        }
+        return bits;
+    }
+
+    // 返回 { 起始, 结束, 步长 }
+    private static int[] parsePart(String part, int min, int max)
+    {
+        int step = 1;
+        int slash = part.indexOf('/');
+        if ( slash >= 0 )
+        {
+            step = toInt(part.substring(slash + 1), part);
+            if ( step <= 0 ) throw new IllegalArgumentException("Illegal step in cron field: " + part);
+            part = part.substring(0, slash);
+        }
+
+        int begin, end;
+        if ( part.equals("*") )
+        {
+            begin = min;
+            end   = max;
+        }
+        else
+        {
+            int minus = part.indexOf('-');
+            if ( minus > 0 )
+            {
+                begin = toInt(part.substring(0, minus), part);
+                end   = toInt(part.substring(minus + 1), part);
+            }
+            else
+            {
+                begin = toInt(part, part);
+                end   = slash >= 0 ? max : begin;
+            }
+        }
+
+        if ( begin < min || end > max || begin > end )
+        {
+            throw new IllegalArgumentException(String.format("Cron field %s out of range [%d, %d]", part, min, max));
+        }
+        return new int[]{ begin, end, step };
+    }
+
+    private static long range(int begin, int end, int step)
+    {
+        long bits = 0;
+        for ( int v = begin; v <= end; v += step ) bits |= 1L << v;
+        return bits;
+    }
+
+    private static int toInt(String value, String part)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Illegal cron field: " + part);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+}
@@ -0,0 +1,75 @@
+package com.trxs.pulse.data;
+
+/**
+ * 一次待发出的 p_http_jobs 请求
+ */
+public class HttpJob
+{
+    public static final int POST   = 0;
+    public static final int PUT    = 1;
+    public static final int GET    = 2;
+    public static final int DELETE = 3;
+
+    private int id;
+    private int taskId;
+    private int hostId;
+    private int method;
+    private String url;
+    private String headers;
+    private String body;
+
+    public HttpJob(int id, int taskId, int hostId, int method, String url)
+    {
+        this(id, taskId, hostId, method, url, null, null);
+    }
+
+    /**
+     * @param headers p_parameters.headers, JSON 对象, 如 {"Content-Type":"application/json"}
+     * @param body    p_parameters.text_body, POST/PUT 的请求正文
+     */
+    public HttpJob(int id, int taskId, int hostId, int method, String url, String headers, String body)
+    {
+        this.id = id;
+        this.taskId = taskId;
+        this.hostId = hostId;
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public int getTaskId()
+    {
+        return taskId;
+    }
+
+    public int getHostId()
+    {
+        return hostId;
+    }
+
+    public int getMethod()
+    {
+        return method;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public String getHeaders()
+    {
+        return headers;
+    }
+
+    public String getBody()
+    {
+        return body;
+    }
+}
@@ -0,0 +1,17 @@
+package com.trxs.pulse.data;
+
+/**
+ * 任务错过触发时间(超过 pulse.misfire.threshold)后的处理方式, 对应 p_cron_tasks.misfire_policy
+ */
+public enum MisfirePolicy
+{
+    FIRE_ONCE_NOW,   // 0-立即补触发一次, 之后从当前时间起计算下一次
+    FIRE_ALL_MISSED, // 1-补触发全部错过的次数
+    SKIP_TO_NEXT;    // 2-不补触发, 直接等待下一次
+
+    public static MisfirePolicy valueOf(int code)
+    {
+        MisfirePolicy[] values = values();
+        return code >= 0 && code < values.length ? values[code] : FIRE_ONCE_NOW;
+    }
+}
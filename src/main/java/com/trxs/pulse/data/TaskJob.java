@@ -0,0 +1,30 @@
+package com.trxs.pulse.data;
+
+import java.util.Date;
+
+/**
+ * p_tasks 在调度引擎中的任务, id 即 p_tasks.id
+ */
+public class TaskJob extends TimerJob
+{
+    private int jobType;
+    private int jobId;
+
+    public TaskJob(int id, int jobType, int jobId, Date planTime)
+    {
+        setId(id);
+        setExpectTime(planTime);
+        this.jobType = jobType;
+        this.jobId = jobId;
+    }
+
+    public int getJobType()
+    {
+        return jobType;
+    }
+
+    public int getJobId()
+    {
+        return jobId;
+    }
+}
@@ -71,11 +71,18 @@ public class TimerJob implements Comparable<TimerJob>
         return 0;
     }
 
+    // 同一任务以 id 标识, 调度引擎按 id 去重和取消
     public boolean equals( Object o )
     {
         if ( o == null ) return false;
         if ( this == o ) return true;
-        if ( o instanceof TimerJob) return this.getExpectTime().getTime() == ((TimerJob) o).getExpectTime().getTime();
+        if ( o instanceof TimerJob) return this.id == ((TimerJob) o).id;
         return false;
     }
+
+    @Override
+    public int hashCode()
+    {
+        return id;
+    }
 }
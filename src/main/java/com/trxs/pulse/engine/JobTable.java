@@ -0,0 +1,339 @@
+package com.trxs.pulse.engine;
+
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.data.TimerJob;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.function.IntConsumer;
+
+/**
+ * 按列存放任务的热字段, 代替每个任务一个 TimerJob 对象(对象头 + 装箱 + 三个 Date)
+ *
+ * 每个任务占用一个槽位, 各字段分别存放在 int[] / long[] 列中, 时间为毫秒时间戳, 0 表示未设置
+ * id -> 槽位 使用开放寻址(线性探测)的 int 哈希表, 删除时向后移位, 不留墓碑
+ * 槽位释放后放入空闲栈复用; 只有 CronJob 这类带额外状态的任务才在 attachments 列中保留对象
+ *
+ * 不保证线程安全
+ */
+public class JobTable
+{
+    private static final int NONE = -1;
+
+    // 列, 下标为槽位
+    private int[]  ids;
+    private int[]  status;
+    private int[]  results;
+    private int[]  jobTypes;
+    private int[]  jobIds;
+    private long[] expectTimes;
+    private long[] beginTimes;
+    private long[] endTimes;
+    private TimerJob[] attachments;
+
+    // 空闲槽位栈
+    private int[] freeSlots;
+    private int freeCount;
+    private int usedSlots;
+
+    // id -> 槽位 + 1, 0 表示空
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public JobTable(int initialCapacity)
+    {
+        int capacity = Math.max(16, initialCapacity);
+        resizeColumns(capacity);
+        freeSlots = new int[capacity];
+
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        keys   = new int[tableSize];
+        values = new int[tableSize];
+        mask   = tableSize - 1;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return 列的容量, 槽位号都小于该值
+     */
+    public int capacity()
+    {
+        return ids.length;
+    }
+
+    /**
+     * @return id 所在槽位, 不存在时返回 -1
+     */
+    public int slotOf(int id)
+    {
+        for ( int i = hash(id) & mask; ; i = (i + 1) & mask )
+        {
+            int value = values[i];
+            if ( value == 0 ) return NONE;
+            if ( keys[i] == id ) return value - 1;
+        }
+    }
+
+    /**
+     * 写入任务的字段, id 已存在时覆盖原槽位
+     *
+     * @return 槽位
+     */
+    public int put(TimerJob job)
+    {
+        int id = job.getId();
+        int slot = slotOf(id);
+        if ( slot == NONE )
+        {
+            slot = allocate();
+            insert(id, slot);
+        }
+
+        ids[slot]         = id;
+        status[slot]      = job.getStatus();
+        results[slot]     = job.getResult();
+        expectTimes[slot] = millis(job.getExpectTime());
+        beginTimes[slot]  = millis(job.getBeginTime());
+        endTimes[slot]    = millis(job.getEndTime());
+
+        if ( job instanceof TaskJob )
+        {
+            jobTypes[slot] = ((TaskJob) job).getJobType();
+            jobIds[slot]   = ((TaskJob) job).getJobId();
+            attachments[slot] = null;
+        }
+        else
+        {
+            jobTypes[slot] = NONE;
+            jobIds[slot]   = 0;
+            attachments[slot] = job instanceof CronJob ? job : null;
+        }
+        return slot;
+    }
+
+    /**
+     * 删除 id 并释放槽位
+     *
+     * @return 被释放的槽位, 不存在时返回 -1
+     */
+    public int remove(int id)
+    {
+        int i = hash(id) & mask;
+        while ( true )
+        {
+            if ( values[i] == 0 ) return NONE;
+            if ( keys[i] == id ) break;
+            i = (i + 1) & mask;
+        }
+
+        int slot = values[i] - 1;
+        shiftBack(i);
+        --size;
+
+        attachments[slot] = null;
+        freeSlots[freeCount++] = slot;
+        return slot;
+    }
+
+    /**
+     * 按槽位生成 TimerJob, 只在任务触发或写检查点时调用
+     */
+    public TimerJob materialize(int slot)
+    {
+        TimerJob job = attachments[slot];
+        if ( job == null )
+        {
+            job = jobTypes[slot] == NONE ? new TimerJob() : new TaskJob(ids[slot], jobTypes[slot], jobIds[slot], null);
+            job.setId(ids[slot]);
+            job.setStatus(status[slot]);
+            job.setResult(results[slot]);
+            job.setExpectTime(date(expectTimes[slot]));
+            job.setBeginTime(date(beginTimes[slot]));
+            job.setEndTime(date(endTimes[slot]));
+        }
+        return job;
+    }
+
+    /**
+     * 遍历所有在用的槽位
+     */
+    public void forEachSlot(IntConsumer action)
+    {
+        for ( int i = 0; i < values.length; ++i )
+        {
+            if ( values[i] != 0 ) action.accept(values[i] - 1);
+        }
+    }
+
+    public int getId(int slot)
+    {
+        return ids[slot];
+    }
+
+    public long getExpectTime(int slot)
+    {
+        return expectTimes[slot];
+    }
+
+    public int getStatus(int slot)
+    {
+        return status[slot];
+    }
+
+    public void setStatus(int slot, int value)
+    {
+        status[slot] = value;
+    }
+
+    public int getResult(int slot)
+    {
+        return results[slot];
+    }
+
+    public void setResult(int slot, int value)
+    {
+        results[slot] = value;
+    }
+
+    public long getBeginTime(int slot)
+    {
+        return beginTimes[slot];
+    }
+
+    public void setBeginTime(int slot, long time)
+    {
+        beginTimes[slot] = time;
+    }
+
+    public long getEndTime(int slot)
+    {
+        return endTimes[slot];
+    }
+
+    public void setEndTime(int slot, long time)
+    {
+        endTimes[slot] = time;
+    }
+
+    private int allocate()
+    {
+        if ( freeCount > 0 ) return freeSlots[--freeCount];
+
+        if ( usedSlots == ids.length )
+        {
+            resizeColumns(ids.length * 2);
+            freeSlots = Arrays.copyOf(freeSlots, ids.length);
+        }
+        return usedSlots++;
+    }
+
+    private void insert(int id, int slot)
+    {
+        if ( (size + 1) * 2 > keys.length ) rehash(keys.length * 2);
+
+        int i = hash(id) & mask;
+        while ( values[i] != 0 ) i = (i + 1) & mask;
+
+        keys[i]   = id;
+        values[i] = slot + 1;
+        ++size;
+    }
+
+    // 线性探测的删除: 把后面探测链上的元素前移, 保证查找不会提前遇到空位
+    private void shiftBack(int hole)
+    {
+        int i = hole;
+        while ( true )
+        {
+            i = (i + 1) & mask;
+            if ( values[i] == 0 ) break;
+
+            int home = hash(keys[i]) & mask;
+            // home 不在 (hole, i] 区间内时, 该元素可以移到 hole
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if ( movable )
+            {
+                keys[hole]   = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole]   = 0;
+        values[hole] = 0;
+    }
+
+    private void rehash(int tableSize)
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys   = new int[tableSize];
+        values = new int[tableSize];
+        mask   = tableSize - 1;
+
+        for ( int j = 0; j < oldValues.length; ++j )
+        {
+            if ( oldValues[j] == 0 ) continue;
+
+            int i = hash(oldKeys[j]) & mask;
+            while ( values[i] != 0 ) i = (i + 1) & mask;
+            keys[i]   = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void resizeColumns(int capacity)
+    {
+        if ( ids == null )
+        {
+            ids = new int[capacity];
+            status = new int[capacity];
+            results = new int[capacity];
+            jobTypes = new int[capacity];
+            jobIds = new int[capacity];
+            expectTimes = new long[capacity];
+            beginTimes = new long[capacity];
+            endTimes = new long[capacity];
+            attachments = new TimerJob[capacity];
+            return;
+        }
+
+        ids = Arrays.copyOf(ids, capacity);
+        status = Arrays.copyOf(status, capacity);
+        results = Arrays.copyOf(results, capacity);
+        jobTypes = Arrays.copyOf(jobTypes, capacity);
+        jobIds = Arrays.copyOf(jobIds, capacity);
+        expectTimes = Arrays.copyOf(expectTimes, capacity);
+        beginTimes = Arrays.copyOf(beginTimes, capacity);
+        endTimes = Arrays.copyOf(endTimes, capacity);
+        attachments = Arrays.copyOf(attachments, capacity);
+    }
+
+    // murmur3 fmix32
+    private static int hash(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static long millis(Date date)
+    {
+        return date == null ? 0 : date.getTime();
+    }
+
+    private static Date date(long millis)
+    {
+        return millis == 0 ? null : new Date(millis);
+    }
+}
@@ -0,0 +1,342 @@
+package com.trxs.pulse.engine;
+
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.MisfirePolicy;
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.data.TimerJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 调度引擎的本地预写日志(WAL), 记录 schedule / cancel / fire 事件, 重启时不必从数据库重新加载
+ *
+ * 日志按段存放在 dir 下, 文件名为段序号, 每段用 MappedByteBuffer 顺序追加:
+ *   [int 长度][int CRC32][byte 类型 ...内容]
+ * 长度为 0 表示段内数据结束; CRC 不符表示写入时进程退出, 该记录及之后的内容丢弃
+ *
+ * 检查点: 在新的段中写入 BEGIN, 全部待触发任务, END, 再把该段序号写入 checkpoint 文件,
+ * 之后删除更早的段(压缩). 回放从 checkpoint 指向的段开始, 依次读到最后一段
+ *
+ * 与 ScheduleEngine 一样不保证线程安全, 由 TimerServer 在调度锁内调用;
+ * 写入只落到 page cache, 进程崩溃不丢数据, 操作系统崩溃时丢失最近一次 sync 之后的记录
+ */
+public class JobWal implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(JobWal.class.getSimpleName());
+
+    private static final byte TASK   = 1; // id, jobType, jobId, expectTime
+    private static final byte TIMER  = 2; // id, expectTime
+    private static final byte CRON   = 3; // cronTaskId, jobType, jobId, misfirePolicy, expectTime, expression
+    private static final byte CANCEL = 4; // id
+    private static final byte FIRE   = 5; // id
+    private static final byte BEGIN  = 6;
+    private static final byte END    = 7;
+
+    private static final String SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final File dir;
+    private final int segmentSize;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+
+    private long segmentSeq;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    private long appendedBytes;
+    private boolean dirty;
+
+    public JobWal(File dir, int segmentSize)
+    {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        if ( !dir.isDirectory() && !dir.mkdirs() ) throw new IllegalArgumentException("Can't create wal dir: " + dir);
+    }
+
+    /**
+     * 从最近的检查点回放, 返回回放后仍待触发的任务; 回放后需要调用 checkpoint 才能继续写入
+     */
+    public Map<Integer, TimerJob> replay() throws IOException
+    {
+        Map<Integer, TimerJob> jobs = new LinkedHashMap<>(1024);
+        long[] segments = listSegments();
+        long start = readCheckpoint();
+
+        int records = 0;
+        for ( long seq : segments )
+        {
+            if ( seq < start ) continue;
+            records += replaySegment(seq, jobs);
+        }
+
+        logger.info("replay {} records from {} segments, pending jobs:{}", records, segments.length, jobs.size());
+        return jobs;
+    }
+
+    private int replaySegment(long seq, Map<Integer, TimerJob> jobs) throws IOException
+    {
+        int records = 0;
+        try ( FileChannel in = FileChannel.open(segmentFile(seq).toPath()) )
+        {
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            while ( data.remaining() >= 8 )
+            {
+                int length = data.getInt();
+                if ( length <= 0 || length > data.remaining() - 4 ) break;
+
+                int checksum = data.getInt();
+                ByteBuffer payload = data.slice();
+                payload.limit(length);
+                if ( checksum(payload) != checksum )
+                {
+                    logger.warn("wal segment {} broken at {}", seq, data.position() - 8);
+                    break;
+                }
+
+                apply(payload, jobs);
+                data.position(data.position() + length);
+                ++records;
+            }
+        }
+        return records;
+    }
+
+    private static void apply(ByteBuffer payload, Map<Integer, TimerJob> jobs)
+    {
+        byte type = payload.get();
+        switch ( type )
+        {
+            case TASK:
+            {
+                int id = payload.getInt();
+                int jobType = payload.getInt();
+                int jobId = payload.getInt();
+                jobs.put(id, new TaskJob(id, jobType, jobId, new Date(payload.getLong())));
+                break;
+            }
+            case TIMER:
+            {
+                TimerJob job = new TimerJob();
+                job.setId(payload.getInt());
+                job.setExpectTime(new Date(payload.getLong()));
+                jobs.put(job.getId(), job);
+                break;
+            }
+            case CRON:
+            {
+                int cronTaskId = payload.getInt();
+                int jobType = payload.getInt();
+                int jobId = payload.getInt();
+                MisfirePolicy policy = MisfirePolicy.valueOf(payload.get());
+                long expectTime = payload.getLong();
+                byte[] expression = new byte[payload.getShort()];
+                payload.get(expression);
+
+                CronJob job = new CronJob(cronTaskId, new String(expression, StandardCharsets.UTF_8), jobType, jobId, policy);
+                job.setExpectTime(new Date(expectTime));
+                jobs.put(job.getId(), job);
+                break;
+            }
+            case CANCEL:
+            case FIRE:
+                jobs.remove(payload.getInt());
+                break;
+            default:
+                // BEGIN / END: 未完成的检查点中的记录与当时的状态一致, 重复回放无影响
+                break;
+        }
+    }
+
+    public void schedule(TimerJob job)
+    {
+        record.clear();
+        if ( job instanceof TaskJob )
+        {
+            TaskJob taskJob = (TaskJob) job;
+            record.put(TASK).putInt(taskJob.getId()).putInt(taskJob.getJobType()).putInt(taskJob.getJobId()).putLong(taskJob.getExpectTime().getTime());
+        }
+        else if ( job instanceof CronJob )
+        {
+            CronJob cronJob = (CronJob) job;
+            byte[] expression = cronJob.getPattern().getText().getBytes(StandardCharsets.UTF_8);
+            record.put(CRON).putInt(cronJob.getCronTaskId()).putInt(cronJob.getJobType()).putInt(cronJob.getJobId())
+                  .put((byte) cronJob.getMisfirePolicy().ordinal()).putLong(cronJob.getExpectTime().getTime())
+                  .putShort((short) expression.length).put(expression);
+        }
+        else
+        {
+            record.put(TIMER).putInt(job.getId()).putLong(job.getExpectTime().getTime());
+        }
+        append();
+    }
+
+    public void cancel(int jobId)
+    {
+        record.clear();
+        record.put(CANCEL).putInt(jobId);
+        append();
+    }
+
+    /**
+     * 任务已触发; cron 任务触发后由调用方用 schedule 记录新的 expectTime
+     */
+    public void fire(TimerJob job)
+    {
+        if ( job instanceof CronJob ) return;
+
+        record.clear();
+        record.put(FIRE).putInt(job.getId());
+        append();
+    }
+
+    /**
+     * 在新段中写入全部待触发任务, 完成后删除更早的段
+     */
+    public void checkpoint(ScheduleEngine engine) throws IOException
+    {
+        long begin = System.currentTimeMillis();
+        roll();
+        long checkpointSeq = segmentSeq;
+
+        record.clear();
+        record.put(BEGIN);
+        append();
+
+        engine.forEach(this::schedule);
+
+        record.clear();
+        record.put(END);
+        append();
+        sync();
+
+        writeCheckpoint(checkpointSeq);
+        for ( long seq : listSegments() )
+        {
+            if ( seq < checkpointSeq && !segmentFile(seq).delete() ) logger.warn("Can't delete wal segment {}", seq);
+        }
+
+        appendedBytes = 0;
+        logger.info("wal checkpoint {} with {} jobs in {}ms", checkpointSeq, engine.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * @return 上次检查点之后追加的字节数, 调用方据此决定何时做检查点
+     */
+    public long getAppendedBytes()
+    {
+        return appendedBytes;
+    }
+
+    public void sync()
+    {
+        if ( dirty && buffer != null )
+        {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        sync();
+        if ( channel != null ) channel.close();
+        channel = null;
+        buffer = null;
+    }
+
+    private void append()
+    {
+        if ( buffer == null ) throw new IllegalStateException("wal is not ready, replay and checkpoint first!");
+
+        record.flip();
+        int length = record.remaining();
+        if ( buffer.remaining() < length + 12 )
+        {
+            try
+            {
+                roll();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("roll wal segment <- " + e.getMessage(), e);
+            }
+        }
+
+        int checksum = checksum(record.duplicate());
+        buffer.putInt(length).putInt(checksum).put(record);
+        appendedBytes += length + 8;
+        dirty = true;
+    }
+
+    private void roll() throws IOException
+    {
+        if ( buffer != null && buffer.remaining() >= 4 ) buffer.putInt(0);
+        close();
+
+        long[] segments = listSegments();
+        segmentSeq = segments.length == 0 ? 1 : segments[segments.length - 1] + 1;
+        try ( RandomAccessFile file = new RandomAccessFile(segmentFile(segmentSeq), "rw") )
+        {
+            file.setLength(segmentSize);
+        }
+        channel = FileChannel.open(segmentFile(segmentSeq).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private int checksum(ByteBuffer payload)
+    {
+        crc.reset();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private long readCheckpoint() throws IOException
+    {
+        File file = new File(dir, CHECKPOINT_FILE);
+        if ( !file.exists() ) return 0;
+        return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    // 先写临时文件再改名, 保证 checkpoint 文件完整
+    private void writeCheckpoint(long seq) throws IOException
+    {
+        File temp = new File(dir, CHECKPOINT_FILE + ".tmp");
+        Files.write(temp.toPath(), String.valueOf(seq).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), new File(dir, CHECKPOINT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long[] listSegments()
+    {
+        String[] names = dir.list((d, name) -> name.endsWith(SUFFIX));
+        if ( names == null ) return new long[0];
+
+        long[] segments = new long[names.length];
+        for ( int i = 0; i < names.length; ++i ) segments[i] = Long.parseLong(names[i].substring(0, names[i].length() - SUFFIX.length()));
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long seq)
+    {
+        return new File(dir, String.format("%016d%s", seq, SUFFIX));
+    }
+}
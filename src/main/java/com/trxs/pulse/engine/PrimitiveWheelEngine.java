@@ -0,0 +1,261 @@
+package com.trxs.pulse.engine;
+
+import com.trxs.pulse.data.TimerJob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 与 TimingWheelEngine 相同的分层时间轮, 任务字段存放在 JobTable 的列中
+ *
+ * 桶内链表用 int[] prev / next 按槽位串联, 待触发任务不再持有 TimerJob 对象,
+ * 只有到期时才由 JobTable.materialize 生成; 百万级任务时堆占用约为对象方案的几分之一
+ */
+public class PrimitiveWheelEngine implements ScheduleEngine
+{
+    private static final int[]  WHEEL_SIZE = { 60, 60, 24, 366 };
+    private static final long[] SLOT_SPAN  = { 1, 60, 3600, 86400 };
+
+    private static final int LEVELS = WHEEL_SIZE.length;
+    private static final int NIL = -1;
+
+    private final int[] offsets = new int[LEVELS];
+    private final int overflowBucket;
+    private final int pendingBucket;
+
+    private final int[] heads;
+    private final JobTable table;
+    private final List<TimerJob> firing = new ArrayList<>();
+
+    // 按槽位: 到期秒, 所在桶, 链表前后节点
+    private long[] expireSeconds;
+    private int[]  bucketOf;
+    private int[]  prev;
+    private int[]  next;
+
+    private long currentSecond;
+
+    public PrimitiveWheelEngine(long startTime, int initialCapacity)
+    {
+        int total = 0;
+        for ( int i = 0; i < LEVELS; ++i )
+        {
+            offsets[i] = total;
+            total += WHEEL_SIZE[i];
+        }
+        overflowBucket = total++;
+        pendingBucket  = total++;
+
+        heads = new int[total];
+        Arrays.fill(heads, NIL);
+
+        table = new JobTable(initialCapacity);
+        expireSeconds = new long[table.capacity()];
+        bucketOf = new int[table.capacity()];
+        prev = new int[table.capacity()];
+        next = new int[table.capacity()];
+        currentSecond = startTime / 1000;
+    }
+
+    @Override
+    public boolean schedule(TimerJob job)
+    {
+        int slot = table.slotOf(job.getId());
+        boolean isNew = slot == NIL;
+
+        if ( isNew )
+        {
+            slot = table.put(job);
+            ensureCapacity();
+        }
+        else
+        {
+            unlink(slot);
+            table.put(job);
+        }
+
+        expireSeconds[slot] = ceilSecond(job.getExpectTime().getTime());
+        place(slot);
+        return isNew;
+    }
+
+    @Override
+    public TimerJob cancel(int jobId)
+    {
+        int slot = table.slotOf(jobId);
+        if ( slot == NIL ) return null;
+
+        unlink(slot);
+        TimerJob job = table.materialize(slot);
+        table.remove(jobId);
+        return job;
+    }
+
+    @Override
+    public int expire(long timestamp, Consumer<TimerJob> action)
+    {
+        long targetSecond = timestamp / 1000;
+
+        int count = fire(pendingBucket, action);
+
+        while ( currentSecond < targetSecond )
+        {
+            if ( table.size() == 0 )
+            {
+                currentSecond = targetSecond;
+                break;
+            }
+
+            ++currentSecond;
+            cascade();
+            count += fire(pendingBucket, action);
+            count += fire(offsets[0] + (int) (currentSecond % WHEEL_SIZE[0]), action);
+        }
+
+        return count;
+    }
+
+    @Override
+    public boolean contains(int jobId)
+    {
+        return table.slotOf(jobId) != NIL;
+    }
+
+    @Override
+    public void forEach(Consumer<TimerJob> action)
+    {
+        table.forEachSlot(slot -> action.accept(table.materialize(slot)));
+    }
+
+    @Override
+    public int size()
+    {
+        return table.size();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "primitive";
+    }
+
+    public JobTable getTable()
+    {
+        return table;
+    }
+
+    private void cascade()
+    {
+        if ( currentSecond % SLOT_SPAN[LEVELS - 1] == 0 ) replace(overflowBucket);
+
+        for ( int level = LEVELS - 1; level > 0; --level )
+        {
+            if ( currentSecond % SLOT_SPAN[level] != 0 ) continue;
+            replace( offsets[level] + (int) ((currentSecond / SLOT_SPAN[level]) % WHEEL_SIZE[level]) );
+        }
+    }
+
+    private void replace(int bucket)
+    {
+        int slot = heads[bucket];
+        heads[bucket] = NIL;
+        while ( slot != NIL )
+        {
+            int following = next[slot];
+            place(slot);
+            slot = following;
+        }
+    }
+
+    // 先整桶摘下、生成对象并释放槽位, 再逐个回调; 回调中 schedule / cancel 不会影响遍历
+    private int fire(int bucket, Consumer<TimerJob> action)
+    {
+        int slot = heads[bucket];
+        heads[bucket] = NIL;
+        while ( slot != NIL )
+        {
+            int following = next[slot];
+            prev[slot] = next[slot] = NIL;
+            bucketOf[slot] = NIL;
+
+            TimerJob job = table.materialize(slot);
+            table.remove(job.getId());
+            firing.add(job);
+            slot = following;
+        }
+
+        int count = firing.size();
+        try
+        {
+            for ( int i = 0; i < count; ++i ) action.accept(firing.get(i));
+        }
+        finally
+        {
+            firing.clear();
+        }
+        return count;
+    }
+
+    private void place(int slot)
+    {
+        long expireSecond = expireSeconds[slot];
+        long delta = expireSecond - currentSecond;
+
+        if ( delta <= 0 )
+        {
+            link(slot, pendingBucket);
+            return;
+        }
+
+        for ( int level = 0; level < LEVELS; ++level )
+        {
+            if ( delta < SLOT_SPAN[level] * WHEEL_SIZE[level] )
+            {
+                link(slot, offsets[level] + (int) ((expireSecond / SLOT_SPAN[level]) % WHEEL_SIZE[level]));
+                return;
+            }
+        }
+
+        link(slot, overflowBucket);
+    }
+
+    private void link(int slot, int bucket)
+    {
+        int head = heads[bucket];
+        bucketOf[slot] = bucket;
+        prev[slot] = NIL;
+        next[slot] = head;
+        if ( head != NIL ) prev[head] = slot;
+        heads[bucket] = slot;
+    }
+
+    private void unlink(int slot)
+    {
+        int bucket = bucketOf[slot];
+        if ( bucket == NIL ) return;
+
+        if ( prev[slot] != NIL ) next[prev[slot]] = next[slot]; else heads[bucket] = next[slot];
+        if ( next[slot] != NIL ) prev[next[slot]] = prev[slot];
+
+        prev[slot] = next[slot] = NIL;
+        bucketOf[slot] = NIL;
+    }
+
+    private void ensureCapacity()
+    {
+        int capacity = table.capacity();
+        if ( capacity == prev.length ) return;
+
+        expireSeconds = Arrays.copyOf(expireSeconds, capacity);
+        bucketOf = Arrays.copyOf(bucketOf, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+
+    private static long ceilSecond(long millis)
+    {
+        return Math.floorDiv(millis + 999, 1000);
+    }
+}
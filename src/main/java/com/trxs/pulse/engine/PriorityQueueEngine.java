@@ -0,0 +1,84 @@
+package com.trxs.pulse.engine;
+
+import com.trxs.pulse.data.TimerJob;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * 原 TimerServer 使用的优先队列方案, 插入 O(log n), 取消 O(n)
+ * 任务量较小时可用, 也作为 TimingWheelEngine 的对照
+ */
+public class PriorityQueueEngine implements ScheduleEngine
+{
+    private final PriorityQueue<TimerJob> queue;
+    private final Map<Integer, TimerJob> jobMap;
+
+    public PriorityQueueEngine()
+    {
+        this(1024);
+    }
+
+    public PriorityQueueEngine(int initialCapacity)
+    {
+        queue = new PriorityQueue<>(initialCapacity);
+        jobMap = new HashMap<>(initialCapacity);
+    }
+
+    @Override
+    public boolean schedule(TimerJob job)
+    {
+        TimerJob previous = jobMap.put(job.getId(), job);
+        if ( previous != null ) queue.remove(previous);
+        queue.add(job);
+        return previous == null;
+    }
+
+    @Override
+    public TimerJob cancel(int jobId)
+    {
+        TimerJob job = jobMap.remove(jobId);
+        if ( job != null ) queue.remove(job);
+        return job;
+    }
+
+    @Override
+    public int expire(long timestamp, Consumer<TimerJob> action)
+    {
+        int count = 0;
+        while ( queue.size() > 0 && queue.peek().getExpectTime().getTime() <= timestamp )
+        {
+            TimerJob job = queue.poll();
+            jobMap.remove(job.getId());
+            action.accept(job);
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean contains(int jobId)
+    {
+        return jobMap.containsKey(jobId);
+    }
+
+    @Override
+    public void forEach(Consumer<TimerJob> action)
+    {
+        jobMap.values().forEach(action);
+    }
+
+    @Override
+    public int size()
+    {
+        return jobMap.size();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "queue";
+    }
+}
@@ -0,0 +1,49 @@
+package com.trxs.pulse.engine;
+
+import com.trxs.pulse.data.TimerJob;
+
+import java.util.function.Consumer;
+
+/**
+ * TimerServer 背后的调度引擎, 按任务 id 管理待触发的 TimerJob
+ *
+ * 实现类不保证线程安全, 由调用方(TimerServer)负责加锁
+ */
+public interface ScheduleEngine
+{
+    /**
+     * 加入一个待触发任务, 同一 id 已存在时按新的 expectTime 重新排期
+     *
+     * @param job 待触发任务
+     * @return true 新任务, false 替换了已有任务
+     */
+    boolean schedule(TimerJob job);
+
+    /**
+     * 按 id 取消任务
+     *
+     * @param jobId 任务 id
+     * @return 被取消的任务, 不存在时返回 null
+     */
+    TimerJob cancel(int jobId);
+
+    /**
+     * 取出所有 expectTime <= timestamp 的任务并交给 action 处理
+     *
+     * @param timestamp 当前时间(毫秒)
+     * @param action 到期任务处理
+     * @return 本次到期的任务数
+     */
+    int expire(long timestamp, Consumer<TimerJob> action);
+
+    boolean contains(int jobId);
+
+    /**
+     * 遍历所有待触发任务, 用于写入检查点
+     */
+    void forEach(Consumer<TimerJob> action);
+
+    int size();
+
+    String getName();
+}
@@ -0,0 +1,259 @@
+package com.trxs.pulse.engine;
+
+import com.trxs.pulse.data.TimerJob;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮: 秒(60) 分(60) 时(24) 天(366) 四层, 超出一年的任务放入溢出链表
+ *
+ * 每个桶是一个双向链表, 配合 id -> 节点 的索引, schedule / cancel 均为 O(1)
+ * 时间轮每走一秒触发秒轮当前桶; 走到整分/整时/整天时, 先把上层对应桶里的任务降级(cascade)到下层
+ *
+ * 精度为秒: expectTime 向上取整到秒, 保证任务不会提前触发
+ */
+public class TimingWheelEngine implements ScheduleEngine
+{
+    private static final int[]  WHEEL_SIZE = { 60, 60, 24, 366 };
+    private static final long[] SLOT_SPAN  = { 1, 60, 3600, 86400 };
+
+    private static final int LEVELS = WHEEL_SIZE.length;
+
+    private final int[] offsets = new int[LEVELS];
+    private final int overflowBucket;
+    private final int pendingBucket;
+
+    private final Node[] buckets;
+    private final Map<Integer, Node> nodeMap;
+    private final List<TimerJob> firing = new ArrayList<>();
+
+    private long currentSecond;
+
+    public TimingWheelEngine()
+    {
+        this(System.currentTimeMillis(), 1024);
+    }
+
+    public TimingWheelEngine(long startTime, int initialCapacity)
+    {
+        int total = 0;
+        for ( int i = 0; i < LEVELS; ++i )
+        {
+            offsets[i] = total;
+            total += WHEEL_SIZE[i];
+        }
+        overflowBucket = total++;
+        pendingBucket  = total++;
+
+        buckets = new Node[total];
+        nodeMap = new HashMap<>(initialCapacity);
+        currentSecond = startTime / 1000;
+    }
+
+    @Override
+    public boolean schedule(TimerJob job)
+    {
+        Node node = nodeMap.get(job.getId());
+        boolean isNew = node == null;
+
+        if ( isNew )
+        {
+            node = new Node(job);
+            nodeMap.put(job.getId(), node);
+        }
+        else
+        {
+            unlink(node);
+            node.job = job;
+        }
+
+        node.expireSecond = ceilSecond(job.getExpectTime().getTime());
+        place(node);
+        return isNew;
+    }
+
+    @Override
+    public TimerJob cancel(int jobId)
+    {
+        Node node = nodeMap.remove(jobId);
+        if ( node == null ) return null;
+
+        unlink(node);
+        return node.job;
+    }
+
+    @Override
+    public int expire(long timestamp, Consumer<TimerJob> action)
+    {
+        long targetSecond = timestamp / 1000;
+
+        int count = fire(pendingBucket, action);
+
+        while ( currentSecond < targetSecond )
+        {
+            if ( nodeMap.isEmpty() )
+            {
+                currentSecond = targetSecond;
+                break;
+            }
+
+            ++currentSecond;
+            cascade();
+            count += fire(pendingBucket, action);
+            count += fire(offsets[0] + (int) (currentSecond % WHEEL_SIZE[0]), action);
+        }
+
+        return count;
+    }
+
+    @Override
+    public boolean contains(int jobId)
+    {
+        return nodeMap.containsKey(jobId);
+    }
+
+    @Override
+    public void forEach(Consumer<TimerJob> action)
+    {
+        nodeMap.values().forEach(node -> action.accept(node.job));
+    }
+
+    @Override
+    public int size()
+    {
+        return nodeMap.size();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "wheel";
+    }
+
+    public long getCurrentSecond()
+    {
+        return currentSecond;
+    }
+
+    // 从高层到低层降级, 保证同一秒内降级下来的任务还能被下一层继续处理
+    private void cascade()
+    {
+        if ( currentSecond % SLOT_SPAN[LEVELS - 1] == 0 ) replace(overflowBucket);
+
+        for ( int level = LEVELS - 1; level > 0; --level )
+        {
+            if ( currentSecond % SLOT_SPAN[level] != 0 ) continue;
+            replace( offsets[level] + (int) ((currentSecond / SLOT_SPAN[level]) % WHEEL_SIZE[level]) );
+        }
+    }
+
+    private void replace(int bucket)
+    {
+        Node node = detach(bucket);
+        while ( node != null )
+        {
+            Node next = node.next;
+            place(node);
+            node = next;
+        }
+    }
+
+    // 先整桶摘下并移出索引, 再逐个回调; 回调中 schedule / cancel 不会破坏正在遍历的链表
+    private int fire(int bucket, Consumer<TimerJob> action)
+    {
+        Node node = detach(bucket);
+        while ( node != null )
+        {
+            Node next = node.next;
+            node.prev = node.next = null;
+            node.bucket = -1;
+            nodeMap.remove(node.job.getId());
+            firing.add(node.job);
+            node = next;
+        }
+
+        int count = firing.size();
+        try
+        {
+            for ( int i = 0; i < count; ++i ) action.accept(firing.get(i));
+        }
+        finally
+        {
+            firing.clear();
+        }
+        return count;
+    }
+
+    private void place(Node node)
+    {
+        long delta = node.expireSecond - currentSecond;
+
+        if ( delta <= 0 )
+        {
+            link(node, pendingBucket);
+            return;
+        }
+
+        for ( int level = 0; level < LEVELS; ++level )
+        {
+            if ( delta < SLOT_SPAN[level] * WHEEL_SIZE[level] )
+            {
+                link(node, offsets[level] + (int) ((node.expireSecond / SLOT_SPAN[level]) % WHEEL_SIZE[level]));
+                return;
+            }
+        }
+
+        link(node, overflowBucket);
+    }
+
+    private void link(Node node, int bucket)
+    {
+        Node head = buckets[bucket];
+        node.bucket = bucket;
+        node.prev = null;
+        node.next = head;
+        if ( head != null ) head.prev = node;
+        buckets[bucket] = node;
+    }
+
+    private void unlink(Node node)
+    {
+        if ( node.bucket < 0 ) return;
+
+        if ( node.prev != null ) node.prev.next = node.next; else buckets[node.bucket] = node.next;
+        if ( node.next != null ) node.next.prev = node.prev;
+
+        node.prev = node.next = null;
+        node.bucket = -1;
+    }
+
+    private Node detach(int bucket)
+    {
+        Node head = buckets[bucket];
+        buckets[bucket] = null;
+        return head;
+    }
+
+    private static long ceilSecond(long millis)
+    {
+        return Math.floorDiv(millis + 999, 1000);
+    }
+
+    private static final class Node
+    {
+        private TimerJob job;
+        private long expireSecond;
+        private int  bucket = -1;
+        private Node prev;
+        private Node next;
+
+        Node(TimerJob job)
+        {
+            this.job = job;
+        }
+    }
+}
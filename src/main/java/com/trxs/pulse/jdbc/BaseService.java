@@ -5,24 +5,39 @@ import com.trxs.commons.util.TextFormatTools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlProvider;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static com.trxs.pulse.jdbc.SnakeToCamelParameterUtil.camelToSnake;
 
@@ -36,6 +51,29 @@ public class BaseService
     @Autowired
     protected JdbcTemplate jdbcTemplate;
 
+    // 游标查询每批读取的行数, -1 表示 MySQL 逐行流式读取、其它数据库每批 1000 行
+    @Value("${pulse.jdbc.fetch-size:-1}")
+    protected int fetchSize = RowCursor.AUTO_FETCH_SIZE;
+
+    // 键集分页总数的缓存时间(毫秒)
+    @Value("${pulse.page.count-ttl:60000}")
+    protected long countTtl = 60_000L;
+
+    // 查询结果缓存的有效期(毫秒)
+    @Value("${pulse.query-cache.ttl:60000}")
+    protected long cacheTtl = 60_000L;
+
+    protected QueryCache queryCache = QueryCache.getInstance();
+
+    // saveAll 每条多行 insert 的最大行数
+    @Value("${pulse.jdbc.insert-batch-size:500}")
+    protected int insertBatchSize = 500;
+
+    private final static int MAX_PARAMETERS = 65535;
+
+    private final static int MAX_COUNT_CACHE = 1024;
+    private final Map<String, long[]> countCache = new ConcurrentHashMap<>();
+
     public BaseService() {}
 
     @PostConstruct
@@ -142,6 +180,66 @@ public class BaseService
         return jdbcTemplate.queryForObject(sqlProvider.getSqlByKey(sqlKey), args, new ObjectRowMapper(sqlKey));
     }
 
+    /**
+     * 按列名映射到 type 的 setter, 列计划按 sqlKey 缓存
+     */
+    public <T> T queryForBean(String sqlKey, Class<T> type, Object... args)
+    {
+        return jdbcTemplate.queryForObject(sqlProvider.getSqlByKey(sqlKey), args, new CompiledRowMapper<>(sqlKey, type));
+    }
+
+    public <T> List<T> queryForBeans(String sqlKey, Class<T> type, Object... args)
+    {
+        return jdbcTemplate.query(sqlProvider.getSqlByKey(sqlKey), args, new CompiledRowMapper<>(sqlKey, type));
+    }
+
+    /**
+     * 带缓存的 queryValueForObject, 结果在 cacheTtl 内有效, 所读的表经 update / save / modify / delRecordById 写入后失效
+     */
+    public <T> T cachedValueForObject(String sqlKey, Class<T> requiredType, Object... args)
+    {
+        return cached(sqlKey, requiredType, args, () -> queryValueForObject(sqlKey, requiredType, args));
+    }
+
+    /**
+     * 带缓存的 queryForBeans, 返回的列表和对象被共享, 不要修改
+     */
+    public <T> List<T> cachedBeans(String sqlKey, Class<T> type, Object... args)
+    {
+        // 以 [List, type] 作为结果类型, 与同一语句的单值结果分开缓存
+        return cached(sqlKey, Arrays.asList(List.class, type), args, () -> Collections.unmodifiableList(queryForBeans(sqlKey, type, args)));
+    }
+
+    /**
+     * @param resultType 结果类型, 与 sqlKey、参数一起作为缓存键; loader 返回不同类型的结果时必须不同
+     */
+    public <T> T cached(String sqlKey, Object resultType, Object[] args, Supplier<T> loader)
+    {
+        return queryCache.get(sqlKey, resultType, sqlProvider.getSqlByKey(sqlKey), args, cacheTtl, loader);
+    }
+
+    public Map<String, Object> getCacheStats()
+    {
+        return queryCache.snapshot();
+    }
+
+    // 事务中的写入在提交后再失效一次, 避免提交前读到旧数据的查询被缓存
+    protected void invalidate(String... tables)
+    {
+        queryCache.invalidate(tables);
+        if ( TransactionSynchronizationManager.isSynchronizationActive() )
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    queryCache.invalidate(tables);
+                }
+            });
+        }
+    }
+
     /**
      * 返回单个dto
      * @param sql 查询sql
@@ -170,10 +268,50 @@ public class BaseService
         return jdbcTemplate.query(sql, queryArgs, rowMapper);
     }
 
+    /**
+     * 打开逐行读取的游标, 结果不会整体加载到内存; 调用方负责关闭
+     * @param sql 查询sql
+     * @param queryArgs 查询参数
+     * @param rowMapper dto mapper
+     * @param <T> dto
+     * @return 游标
+     */
+    public <T> RowCursor<T> cursor(String sql, Object[] queryArgs, RowMapper<T> rowMapper)
+    {
+        logger.info(sql);
+        return RowCursor.open(jdbcTemplate, sql, queryArgs, rowMapper, fetchSize);
+    }
+
+    /**
+     * 以流的方式返回查询结果, 必须在 try-with-resources 中使用以释放连接
+     */
+    public <T> Stream<T> stream(String sql, Object[] queryArgs, RowMapper<T> rowMapper)
+    {
+        return cursor(sql, queryArgs, rowMapper).stream();
+    }
+
+    /**
+     * 逐行处理查询结果, action 返回 false 时提前结束并取消查询
+     * @return 处理的行数
+     */
+    public <T> int forEach(String sql, Object[] queryArgs, RowMapper<T> rowMapper, Predicate<? super T> action)
+    {
+        try ( RowCursor<T> cursor = cursor(sql, queryArgs, rowMapper) )
+        {
+            while ( cursor.hasNext() )
+            {
+                if ( !action.test(cursor.next()) ) break;
+            }
+            return cursor.getRowCount();
+        }
+    }
 
     public int update( String sqlKey, Object... args)
     {
-        return jdbcTemplate.update(sqlProvider.getSqlByKey(sqlKey), args);
+        String sql = sqlProvider.getSqlByKey(sqlKey);
+        int rows = jdbcTemplate.update(sql, args);
+        invalidate(queryCache.tablesOf(sql));
+        return rows;
     }
 
     public int insert(String sqlKey, Map<String, Object> parameters, boolean requireKey)
@@ -188,16 +326,21 @@ public class BaseService
             KeyHolder keyholder=new GeneratedKeyHolder();
             rows = nameParamJdbcTemp.update(sqlProvider.getSqlByKey(sqlKey), sqlParameterSource, keyholder);
             parameters.put("lastId", keyholder.getKey());
+            invalidate(queryCache.tablesOf(sqlProvider.getSqlByKey(sqlKey)));
             return rows;
         }
 
         rows = nameParamJdbcTemp.update(sqlProvider.getSqlByKey(sqlKey), sqlParameterSource);
+        invalidate(queryCache.tablesOf(sqlProvider.getSqlByKey(sqlKey)));
         return rows;
     }
 
     public <T> int[][] insertObjects(String sqlKey, List<T> objects, final ParameterizedPreparedStatementSetter<T> pss)
     {
-        return jdbcTemplate.batchUpdate( sqlProvider.getSqlByKey(sqlKey), objects, objects.size(), pss );
+        String sql = sqlProvider.getSqlByKey(sqlKey);
+        int[][] rows = jdbcTemplate.batchUpdate( sql, objects, objects.size(), pss );
+        invalidate(queryCache.tablesOf(sql));
+        return rows;
     }
 
     public void test()
@@ -289,14 +432,74 @@ public class BaseService
         int totalPage = totalSize%size == 0 ? totalSize/size : totalSize/size + 1;
         //开始位置
         int offset = (page -1)*size;
-        //结束位置
-        int limit = offset + size;
-        sql = sql +" limit "+ limit +" offset "+offset;
+        sql = sql +" limit "+ size +" offset "+offset;
         logger.info(sql);
         List<T> elements = jdbcTemplate.query(sql,queryArgs,rowMapper);
         return PageBean.<T>build(elements, totalSize, totalPage, page, size);
     }
 
+    /**
+     * 键集分页: 从 cursor 指向的行之后取 size 行, 深分页与第一页代价相同
+     *
+     * @param sql 不含 order by / limit 的查询sql
+     * @param countSql 统计总数的sql, 为 null 时不统计(totalSize = -1); 结果按 countTtl 缓存
+     * @param cursor 上一页返回的 nextCursor, 第一页传 null
+     * @param orderColumns 唯一且非空的排序列, 例如 "plan_time", "id"; 可以带 DESC
+     * @return 结果页, 没有下一页时 nextCursor 为 null
+     */
+    public <T> PageBean<T> queryDataForPage
+    (
+        String sql, Object[] queryArgs, RowMapper<T> rowMapper, String countSql, Object[] countArgs, String cursor, int size, String... orderColumns
+    )
+    {
+        if (size <= 0)
+            throw new RuntimeException("每页大小必须大于1");
+
+        KeysetCursor keyset = new KeysetCursor(orderColumns);
+        Object[] keys = cursor == null || cursor.isEmpty() ? null : keyset.decode(cursor);
+        String pageSql = keyset.pageSql(sql, keys != null, size + 1);
+        logger.info(pageSql);
+
+        // 多取一行判断是否还有下一页, 只读取本页最后一行的排序列
+        Object[][] last = new Object[1][];
+        List<T> elements = jdbcTemplate.query(pageSql, keyset.pageArgs(queryArgs, keys), (rs, rowNum) ->
+        {
+            if ( rowNum == size - 1 ) last[0] = keyset.readKeys(rs);
+            return rowNum < size ? rowMapper.mapRow(rs, rowNum) : null;
+        });
+
+        boolean hasMore = elements.size() > size;
+        if ( hasMore ) elements.remove(size);
+
+        int totalSize = countSql == null ? -1 : cachedCount(countSql, countArgs);
+        int totalPage = totalSize < 0 ? -1 : (totalSize + size - 1) / size;
+        PageBean<T> pageBean = PageBean.<T>build(elements, totalSize, totalPage, 0, size);
+        pageBean.setNextCursor(hasMore ? keyset.encode(last[0]) : null);
+        return pageBean;
+    }
+
+    private int cachedCount(String countSql, Object[] countArgs)
+    {
+        String key = countSql + Arrays.toString(countArgs);
+        long now = System.currentTimeMillis();
+        long[] cached = countCache.get(key);
+        if ( cached != null && cached[1] > now ) return (int) cached[0];
+
+        Integer count;
+        try
+        {
+            count = jdbcTemplate.queryForObject(countSql, countArgs, Integer.class);
+        }
+        catch (EmptyResultDataAccessException e)
+        {
+            count = 0;
+        }
+
+        if ( countCache.size() >= MAX_COUNT_CACHE ) countCache.clear();
+        countCache.put(key, new long[]{ count == null ? 0 : count, now + countTtl });
+        return count == null ? 0 : count;
+    }
+
     public Record save(Record record)
     {
         if ( record == null ) return null;
@@ -304,19 +507,65 @@ public class BaseService
         SQLAction insertAction = record.insertAction();
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
-        int rows = jdbcTemplate.update(connection ->
+        int rows = jdbcTemplate.update(new InsertStatementCreator(insertAction, true), keyHolder);
+
+        if ( rows > 0 ) record.setField( "id", keyHolder.getKey().intValue() );
+        invalidate(record.getTableName());
+        return record;
+    }
+
+    /**
+     * 批量保存: 同一张表、非空字段相同的记录合并为多行 INSERT ... VALUES ( ... ), ( ... ),
+     * 每条语句最多 insertBatchSize 行; 未设置 id 的记录按顺序写回自增主键
+     *
+     * @return 插入的行数
+     */
+    public int saveAll(List<Record> records)
+    {
+        if ( records == null || records.isEmpty() ) return 0;
+
+        Map<Object, List<Record>> groups = new LinkedHashMap<>();
+        for ( Record record : records ) groups.computeIfAbsent(record.insertGroup(), key -> new ArrayList<>()).add(record);
+
+        int rows = 0;
+        Set<String> tables = new HashSet<>();
+        for ( List<Record> group : groups.values() )
         {
-            PreparedStatement ps  = connection.prepareStatement(insertAction.getSqlText(), Statement.RETURN_GENERATED_KEYS);
-            Object[] parameters = insertAction.getParameters();
-            for ( int i = 0, max = parameters.length; i < max; ++i )
+            // MySQL 一条语句最多 65535 个占位符
+            int chunk = Math.max(1, Math.min(insertBatchSize, MAX_PARAMETERS / Math.max(1, group.get(0).insertWidth())));
+            for ( int from = 0; from < group.size(); from += chunk )
             {
-                ps.setObject(i+1, parameters[i] );
+                rows += insertRows(group.subList(from, Math.min(group.size(), from + chunk)));
             }
-            return ps;
-        }, keyHolder);
+            tables.add(group.get(0).getTableName());
+        }
 
-        if ( rows > 0 ) record.setField( "id", keyHolder.getKey().intValue() );
-        return record;
+        invalidate(tables.toArray(new String[0]));
+        return rows;
+    }
+
+    private int insertRows(List<Record> records)
+    {
+        SQLAction insertAction = Record.insertAction(records);
+
+        int idIndex = records.get(0).indexOf("id");
+        boolean requireKeys = idIndex >= 0 && records.get(0).getField(idIndex) == null;
+        PreparedStatementCreator creator = new InsertStatementCreator(insertAction, requireKeys);
+
+        if ( !requireKeys ) return jdbcTemplate.update(creator);
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        int rows = jdbcTemplate.update(creator, keyHolder);
+
+        // 多行 insert 的自增主键按行的顺序返回
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if ( keys.size() != records.size() ) logger.warn("{} rows inserted into {}, but {} keys returned!", records.size(), records.get(0).getTableName(), keys.size());
+        for ( int i = 0, max = Math.min(keys.size(), records.size()); i < max; ++i )
+        {
+            Iterator<Object> values = keys.get(i).values().iterator();
+            if ( values.hasNext() ) records.get(i).setField(idIndex, values.next());
+        }
+        return rows;
     }
 
     public Record modify(Record record)
@@ -326,6 +575,7 @@ public class BaseService
         SQLAction modifyAction = record.modifyAction();
 
         jdbcTemplate.update(modifyAction.getSqlText(), modifyAction.getParameters());
+        invalidate(record.getTableName());
 
         return record;
     }
@@ -335,7 +585,9 @@ public class BaseService
         TextFormatTools textFormat = TextFormatTools.getInstance();
         final String tableName = objectName.indexOf('_') >= 0 ? objectName : camelToSnake(objectName);
         final String sqlText = textFormat.render("delete from {0} where id = ?;", tableName);
-        return jdbcTemplate.update(sqlText, Integer.valueOf(id));
+        int rows = jdbcTemplate.update(sqlText, Integer.valueOf(id));
+        invalidate(tableName);
+        return rows;
     }
 
     public int getRecordById( final String objectName, int id)
@@ -343,4 +595,35 @@ public class BaseService
         return 0;
     }
 
+    // 实现 SqlProvider, 语句统计才能取到 sql
+    private static final class InsertStatementCreator implements PreparedStatementCreator, SqlProvider
+    {
+        private final SQLAction action;
+        private final boolean returnKeys;
+
+        private InsertStatementCreator(SQLAction action, boolean returnKeys)
+        {
+            this.action = action;
+            this.returnKeys = returnKeys;
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection connection) throws SQLException
+        {
+            PreparedStatement ps = returnKeys ? connection.prepareStatement(action.getSqlText(), Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(action.getSqlText());
+            Object[] parameters = action.getParameters();
+            for ( int i = 0, max = parameters.length; i < max; ++i )
+            {
+                ps.setObject(i+1, parameters[i] );
+            }
+            return ps;
+        }
+
+        @Override
+        public String getSql()
+        {
+            return action.getSqlText();
+        }
+    }
+
 }
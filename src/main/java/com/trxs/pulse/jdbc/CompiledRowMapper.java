@@ -0,0 +1,263 @@
+package com.trxs.pulse.jdbc;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+import static com.trxs.pulse.jdbc.SnakeToCamelParameterUtil.snakeToCamel;
+
+/**
+ * 按 sqlKey 缓存列计划的 RowMapper, 每行返回一个新对象
+ *
+ * 第一次映射时根据 ResultSetMetaData 确定 "第 i 列 -> 哪个 setter、用哪个 getXxx 读取", 之后每行只按计划读列、调用 setter;
+ * setter 通过 LambdaMetafactory 生成 ObjIntConsumer / ObjLongConsumer 等, int、long、double 列读写都不装箱
+ *
+ * 每次查询的第一行会核对列标签, 同一个 sqlKey 的列变化后重新生成计划
+ */
+public class CompiledRowMapper<T> implements RowMapper<T>
+{
+    private static Logger logger = LoggerFactory.getLogger(CompiledRowMapper.class.getSimpleName());
+
+    private final static Map<String, Plan<?>> planMap = new ConcurrentHashMap<>();
+    private final static Map<Class<?>, MethodAccess> accessMap = new ConcurrentHashMap<>();
+
+    private final String planKey;
+    private final Class<T> type;
+    private Plan<T> plan;
+
+    @SuppressWarnings("unchecked")
+    public CompiledRowMapper(String sqlKey, Class<T> type)
+    {
+        this.planKey = sqlKey + '@' + type.getName();
+        this.type = type;
+        this.plan = (Plan<T>) planMap.get(planKey);
+    }
+
+    @Override
+    public T mapRow(ResultSet resultSet, int rowNum) throws SQLException
+    {
+        Plan<T> current = plan;
+        if ( current == null || (rowNum == 0 && !current.matches(resultSet.getMetaData())) )
+        {
+            plan = current = new Plan<>(type, resultSet.getMetaData());
+            planMap.put(planKey, current);
+        }
+
+        T object = current.constructor.get();
+        for ( Column<T> column : current.columns ) column.read(resultSet, object);
+        return object;
+    }
+
+    static void clear()
+    {
+        planMap.clear();
+    }
+
+    private static final class Plan<T>
+    {
+        private final String[] labels;
+        private final Supplier<T> constructor;
+        private final Column<T>[] columns;
+
+        @SuppressWarnings("unchecked")
+        private Plan(Class<T> type, ResultSetMetaData metaData) throws SQLException
+        {
+            Map<String, Method> setters = new HashMap<>();
+            for ( Method method : type.getMethods() )
+            {
+                if ( method.getParameterCount() != 1 || Modifier.isStatic(method.getModifiers()) ) continue;
+                if ( method.getName().length() > 3 && method.getName().startsWith("set") ) setters.putIfAbsent(method.getName().substring(3).toLowerCase(), method);
+            }
+
+            labels = new String[metaData.getColumnCount()];
+            List<Column<T>> list = new ArrayList<>(labels.length);
+            for ( int i = 1; i <= labels.length; ++i )
+            {
+                labels[i - 1] = metaData.getColumnLabel(i);
+                String property = labels[i - 1].indexOf('_') >= 0 ? snakeToCamel(labels[i - 1]) : labels[i - 1];
+                Method setter = setters.get(property.toLowerCase());
+                if ( setter == null )
+                {
+                    logger.debug("{} has no setter for column {}", type.getName(), labels[i - 1]);
+                    continue;
+                }
+                list.add(column(type, setter, i));
+            }
+
+            constructor = constructor(type);
+            columns = list.toArray(new Column[list.size()]);
+        }
+
+        private boolean matches(ResultSetMetaData metaData) throws SQLException
+        {
+            if ( metaData.getColumnCount() != labels.length ) return false;
+            for ( int i = 0; i < labels.length; ++i )
+            {
+                if ( !labels[i].equals(metaData.getColumnLabel(i + 1)) ) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 读取一列并写入对象
+     */
+    private interface Column<T>
+    {
+        void read(ResultSet resultSet, T target) throws SQLException;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Column<T> column(Class<T> type, Method setter, int index)
+    {
+        Class<?> parameter = setter.getParameterTypes()[0];
+
+        if ( parameter == int.class )
+        {
+            ObjIntConsumer<T> set = setter(type, setter, ObjIntConsumer.class);
+            return (rs, target) -> set.accept(target, rs.getInt(index));
+        }
+        if ( parameter == long.class )
+        {
+            ObjLongConsumer<T> set = setter(type, setter, ObjLongConsumer.class);
+            return (rs, target) -> set.accept(target, rs.getLong(index));
+        }
+        if ( parameter == double.class )
+        {
+            ObjDoubleConsumer<T> set = setter(type, setter, ObjDoubleConsumer.class);
+            return (rs, target) -> set.accept(target, rs.getDouble(index));
+        }
+
+        BiConsumer<T, Object> set = setter(type, setter, BiConsumer.class);
+        if ( parameter == boolean.class ) return (rs, target) -> set.accept(target, rs.getBoolean(index));
+        if ( parameter == Integer.class )
+        {
+            return (rs, target) ->
+            {
+                int value = rs.getInt(index);
+                set.accept(target, rs.wasNull() ? null : value);
+            };
+        }
+        if ( parameter == Long.class )
+        {
+            return (rs, target) ->
+            {
+                long value = rs.getLong(index);
+                set.accept(target, rs.wasNull() ? null : value);
+            };
+        }
+        if ( parameter == String.class )     return (rs, target) -> set.accept(target, rs.getString(index));
+        if ( parameter == Timestamp.class || parameter == java.util.Date.class ) return (rs, target) -> set.accept(target, rs.getTimestamp(index));
+        if ( parameter == BigDecimal.class ) return (rs, target) -> set.accept(target, rs.getBigDecimal(index));
+        if ( parameter == Object.class )     return (rs, target) -> set.accept(target, rs.getObject(index));
+
+        // 其它基本类型列为空时保持默认值
+        Class<?> required = MethodType.methodType(parameter).wrap().returnType();
+        return (rs, target) ->
+        {
+            Object value = rs.getObject(index, required);
+            if ( value != null || !parameter.isPrimitive() ) set.accept(target, value);
+        };
+    }
+
+    /**
+     * 为 setter 生成函数接口实现; 目标类对本类的类加载器不可见时(例如其它加载器生成的类), 退回 reflectasm 调用
+     */
+    @SuppressWarnings("unchecked")
+    private static <F> F setter(Class<?> type, Method setter, Class<?> function)
+    {
+        Class<?> parameter = setter.getParameterTypes()[0];
+        boolean boxed = function == BiConsumer.class;
+
+        if ( isVisible(type) )
+        {
+            try
+            {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle target = lookup.unreflect(setter);
+                MethodType instantiated = MethodType.methodType(void.class, type, boxed ? MethodType.methodType(parameter).wrap().returnType() : parameter);
+                return (F) LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(function),
+                    MethodType.methodType(void.class, Object.class, boxed ? Object.class : parameter), target, instantiated).getTarget().invoke();
+            }
+            catch (Throwable e)
+            {
+                logger.debug("metafactory {}.{} <- {}", type.getName(), setter.getName(), e.getMessage());
+            }
+        }
+
+        MethodAccess access = accessMap.computeIfAbsent(type, MethodAccess::get);
+        int index = access.getIndex(setter.getName(), parameter);
+        if ( function == ObjIntConsumer.class )    return (F) (ObjIntConsumer<Object>) (target, value) -> access.invoke(target, index, value);
+        if ( function == ObjLongConsumer.class )   return (F) (ObjLongConsumer<Object>) (target, value) -> access.invoke(target, index, value);
+        if ( function == ObjDoubleConsumer.class ) return (F) (ObjDoubleConsumer<Object>) (target, value) -> access.invoke(target, index, value);
+        return (F) (BiConsumer<Object, Object>) (target, value) -> access.invoke(target, index, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> constructor(Class<T> type)
+    {
+        if ( isVisible(type) )
+        {
+            try
+            {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle target = lookup.findConstructor(type, MethodType.methodType(void.class));
+                return (Supplier<T>) LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), target, MethodType.methodType(type)).getTarget().invoke();
+            }
+            catch (Throwable e)
+            {
+                logger.debug("metafactory {}.<init> <- {}", type.getName(), e.getMessage());
+            }
+        }
+
+        return () ->
+        {
+            try
+            {
+                return type.newInstance();
+            }
+            catch (InstantiationException | IllegalAccessException e)
+            {
+                throw new IllegalStateException("Can't create " + type.getName(), e);
+            }
+        };
+    }
+
+    // 生成的 lambda 类按本类的类加载器解析目标类, 不可见的类只能反射调用
+    private static boolean isVisible(Class<?> type)
+    {
+        if ( !Modifier.isPublic(type.getModifiers()) ) return false;
+        try
+        {
+            return Class.forName(type.getName(), false, CompiledRowMapper.class.getClassLoader()) == type;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.trxs.pulse.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 键集(seek)分页: 按排序列记住上一页最后一行的值, 下一页从该值之后开始, 不再使用 OFFSET
+ *
+ * 排序列的组合必须唯一且非空(通常以 id 结尾), 例如 "plan_time", "id" 或 "id DESC", 列名要能直接用在原查询的 where 中;
+ * 第 N 页与第 1 页一样只读取 size + 1 行, 前提是排序列上有索引
+ */
+public final class KeysetCursor
+{
+    private final String[] columns;
+    private final boolean[] descending;
+    private final String orderBy;
+
+    public KeysetCursor(String... orderColumns)
+    {
+        if ( orderColumns == null || orderColumns.length == 0 ) throw new IllegalArgumentException("Keyset pagination needs at least one order column!");
+
+        columns = new String[orderColumns.length];
+        descending = new boolean[orderColumns.length];
+        StringBuilder order = new StringBuilder();
+        for ( int i = 0; i < orderColumns.length; ++i )
+        {
+            String[] parts = orderColumns[i].trim().split("\\s+");
+            columns[i] = parts[0];
+            descending[i] = parts.length > 1 && "DESC".equalsIgnoreCase(parts[1]);
+
+            if ( i > 0 ) order.append(", ");
+            order.append(columns[i]).append(descending[i] ? " DESC" : " ASC");
+        }
+        orderBy = order.toString();
+    }
+
+    public int size()
+    {
+        return columns.length;
+    }
+
+    /**
+     * 在原查询的 where 上追加 seek 条件、排序和 limit
+     *
+     * 条件写成 k1 >= ? AND ( (k1 > ?) OR (k1 = ? AND k2 > ?) ... ), 第一项让数据库在排序列的索引上做范围扫描;
+     * 原查询顶层带 group by / order by / limit / union 时包装为派生表, 结果正确但可能无法使用索引
+     *
+     * @param seek 是否从游标位置开始
+     */
+    public String pageSql(String sql, boolean seek, int limit)
+    {
+        String text = sql.trim().replaceAll(";+$", "");
+        StringBuilder builder = new StringBuilder(text.length() + 128);
+
+        // 顶层 where 关键字之后的位置, 原条件加括号后再追加 seek 条件, 避免与其中的 OR 混在一起
+        int where = -1;
+        boolean simple = true;
+        for ( int[] keyword : topLevelWords(text) )
+        {
+            String word = text.substring(keyword[0], keyword[1]).toUpperCase();
+            if ( word.equals("WHERE") ) where = keyword[1];
+            if ( word.equals("GROUP") || word.equals("ORDER") || word.equals("LIMIT") || word.equals("UNION") || word.equals("HAVING") ) simple = false;
+        }
+
+        boolean hasWhere = simple && where >= 0;
+        if ( !simple )
+            builder.append("SELECT * FROM ( ").append(text).append(" ) keyset_page");
+        else if ( hasWhere && seek )
+            builder.append(text, 0, where).append(" (").append(text, where, text.length()).append(" )");
+        else
+            builder.append(text);
+
+        if ( seek )
+        {
+            builder.append(hasWhere ? " AND " : " WHERE ");
+            builder.append(columns[0]).append(descending[0] ? " <= ?" : " >= ?").append(" AND ( ");
+            for ( int i = 0; i < columns.length; ++i )
+            {
+                if ( i > 0 ) builder.append(" OR ");
+                builder.append("( ");
+                for ( int j = 0; j < i; ++j ) builder.append(columns[j]).append(" = ? AND ");
+                builder.append(columns[i]).append(descending[i] ? " < ?" : " > ?").append(" )");
+            }
+            builder.append(" )");
+        }
+
+        return builder.append(" ORDER BY ").append(orderBy).append(" LIMIT ").append(limit).toString();
+    }
+
+    // 括号和引号之外的单词位置 [开始, 结束)
+    private static List<int[]> topLevelWords(String sql)
+    {
+        List<int[]> keywords = new ArrayList<>();
+        int depth = 0;
+        for ( int i = 0, length = sql.length(); i < length; ++i )
+        {
+            char ch = sql.charAt(i);
+            if ( ch == '\'' || ch == '"' || ch == '`' )
+            {
+                int end = sql.indexOf(ch, i + 1);
+                i = end < 0 ? length : end;
+            }
+            else if ( ch == '(' ) ++depth;
+            else if ( ch == ')' ) --depth;
+            else if ( depth == 0 && Character.isLetter(ch) && (i == 0 || !Character.isLetterOrDigit(sql.charAt(i - 1)) && sql.charAt(i - 1) != '_') )
+            {
+                int end = i;
+                while ( end < length && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_') ) ++end;
+                keywords.add(new int[]{ i, end });
+                i = end - 1;
+            }
+        }
+        return keywords;
+    }
+
+    /**
+     * 按 pageSql 中占位符的顺序拼接参数
+     */
+    public Object[] pageArgs(Object[] queryArgs, Object[] keys)
+    {
+        int count = queryArgs == null ? 0 : queryArgs.length;
+        if ( keys == null ) return count == 0 ? new Object[0] : queryArgs.clone();
+
+        Object[] args = new Object[count + 1 + columns.length * (columns.length + 1) / 2];
+        if ( count > 0 ) System.arraycopy(queryArgs, 0, args, 0, count);
+        args[count++] = keys[0];
+        for ( int i = 0; i < columns.length; ++i )
+        {
+            for ( int j = 0; j <= i; ++j ) args[count++] = keys[j];
+        }
+        return args;
+    }
+
+    public Object[] readKeys(ResultSet resultSet) throws SQLException
+    {
+        Object[] keys = new Object[columns.length];
+        for ( int i = 0; i < columns.length; ++i )
+        {
+            keys[i] = resultSet.getObject(columns[i]);
+            if ( keys[i] == null ) throw new IllegalStateException("Keyset column " + columns[i] + " can't be null!");
+        }
+        return keys;
+    }
+
+    /**
+     * @return 不透明的游标串, 可以放在 URL 中
+     */
+    public String encode(Object[] keys)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(keys.length);
+            for ( Object key : keys )
+            {
+                if ( key instanceof Integer || key instanceof Short || key instanceof Byte )
+                {
+                    output.writeByte('I');
+                    output.writeInt(((Number) key).intValue());
+                }
+                else if ( key instanceof Long )
+                {
+                    output.writeByte('L');
+                    output.writeLong((Long) key);
+                }
+                else if ( key instanceof Timestamp )
+                {
+                    output.writeByte('T');
+                    output.writeLong(((Timestamp) key).getTime());
+                    output.writeInt(((Timestamp) key).getNanos());
+                }
+                else if ( key instanceof BigDecimal )
+                {
+                    output.writeByte('D');
+                    output.writeUTF(key.toString());
+                }
+                else if ( key instanceof String )
+                {
+                    output.writeByte('S');
+                    output.writeUTF((String) key);
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Unsupported keyset type: " + (key == null ? "null" : key.getClass().getName()));
+                }
+            }
+            output.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Object[] decode(String token)
+    {
+        try
+        {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+            int count = input.readByte();
+            if ( count != columns.length ) throw new IllegalArgumentException("The cursor doesn't match the order columns!");
+
+            Object[] keys = new Object[count];
+            for ( int i = 0; i < count; ++i )
+            {
+                int type = input.readByte();
+                switch ( type )
+                {
+                    case 'I': keys[i] = input.readInt(); break;
+                    case 'L': keys[i] = input.readLong(); break;
+                    case 'T':
+                        Timestamp timestamp = new Timestamp(input.readLong());
+                        timestamp.setNanos(input.readInt());
+                        keys[i] = timestamp;
+                        break;
+                    case 'D': keys[i] = new BigDecimal(input.readUTF()); break;
+                    case 'S': keys[i] = input.readUTF(); break;
+                    default: throw new IllegalArgumentException("Invalid cursor: " + token);
+                }
+            }
+            return keys;
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.trxs.pulse.jdbc;
 
-import com.trxs.commons.bean.GeneralBeanTools;
+import net.sf.cglib.beans.BeanGenerator;
 import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -13,33 +14,40 @@ import static com.trxs.pulse.jdbc.SnakeToCamelParameterUtil.snakeToCamel;
 
 /**
  * @author zengshengwen 2019 19-1-17 下午11:43
+ *
+ * 按查询结果的列生成 bean 类, 每个 sqlKey 只生成一次; 行映射交给 CompiledRowMapper, 每行返回新的 bean
  */
 public class ObjectRowMapper implements RowMapper<Object>
 {
-    private final static Map<String, Map<String, Class<?>>> propertyClassMap = new ConcurrentHashMap<>();
+    private final static Map<String, Class<?>> beanClassMap = new ConcurrentHashMap<>();
 
     private String sqlId;
-    private Map<String, Class<?>> classMap;
-    private GeneralBeanTools generalBeanTools = new GeneralBeanTools(propertyClassMap);
+    private RowMapper<?> rowMapper;
 
     public ObjectRowMapper(String sqlKey)
     {
         sqlId = sqlKey;
-        classMap = propertyClassMap.get(sqlId);
+        Class<?> beanClass = beanClassMap.get(sqlId);
+        if ( beanClass != null ) rowMapper = new CompiledRowMapper<>(sqlId, beanClass);
     }
 
     @Override
     public Object mapRow(ResultSet resultSet, int rowNum) throws SQLException
     {
-        if ( classMap == null )
+        if ( rowMapper == null )
         {
-            Map<String, Class<?>> map = new ConcurrentHashMap<>();
+            Map<String, Class<?>> map = new LinkedHashMap<>();
             getClassInfo(map , resultSet.getMetaData());
-            generalBeanTools = new GeneralBeanTools(map);
-            propertyClassMap.put(sqlId, map); classMap = map;
+
+            BeanGenerator generator = new BeanGenerator();
+            map.forEach(generator::addProperty);
+            Class<?> beanClass = (Class<?>) generator.createClass();
+
+            beanClassMap.put(sqlId, beanClass);
+            rowMapper = new CompiledRowMapper<>(sqlId, beanClass);
         }
 
-        return newObject(resultSet);
+        return rowMapper.mapRow(resultSet, rowNum);
     }
 
     public void getClassInfo(Map<String, Class<?>> propertyMap, ResultSetMetaData metaData)
@@ -59,24 +67,4 @@ public class ObjectRowMapper implements RowMapper<Object>
         }
         return;
     }
-
-    public Object newObject( ResultSet resultSet )
-    {
-        try
-        {
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            for ( int i = 1, count = metaData.getColumnCount(); i <= count; ++i )
-            {
-                String columnLabel = metaData.getColumnLabel(i);
-                generalBeanTools.setValue(columnLabel.indexOf('_') >= 0 ? snakeToCamel(columnLabel): columnLabel, resultSet.getObject(i));
-            }
-            return generalBeanTools.getObject();
-        }
-        catch (SQLException e)
-        {
-            e.printStackTrace();
-        }
-
-        return null;
-    }
 }
@@ -10,6 +10,7 @@ public class PageBean<T>
     private int    totalPage; //总的页数
     private int    totalSize; //总共的数量
     private int  elementSize; //list中元素有多少个
+    private String nextCursor; //键集分页的下一页游标, 没有下一页时为 null
 
     public PageBean()
     {
@@ -22,24 +23,8 @@ public class PageBean<T>
 
     public static <T> PageBean<T> build( List<T> data, int totalSize, int totalPage, int page, int size )
     {
-        PageBean<T> pageBean = new PageBean<>();;
-        try
-        {
-            if ( data != null && data.size() > 0 )
-            {
-                Class<T> clz = (Class<T>) data.get(0).getClass();
-                pageBean = (PageBean<T>) clz.newInstance();
-                pageBean.init(data,totalPage,totalPage,page,size);
-            }
-        }
-        catch (InstantiationException e)
-        {
-            e.printStackTrace();
-        }
-        catch (IllegalAccessException e)
-        {
-            e.printStackTrace();
-        }
+        PageBean<T> pageBean = new PageBean<>();
+        if ( data != null ) pageBean.init(data, totalSize, totalPage, page, size);
         return pageBean;
     }
 
@@ -100,4 +85,12 @@ public class PageBean<T>
     public void setTotalSize(int totalSize) {
         this.totalSize = totalSize;
     }
-}
\ No newline at end of file
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,326 @@
+package com.trxs.pulse.jdbc;
+
+import com.fel.Expression;
+import com.fel.FelEngine;
+import com.fel.FelEngineImpl;
+import com.fel.context.AbstractContext;
+import com.fel.context.ArrayCtx;
+import com.fel.parser.FelNode;
+import com.fel.parser.VarAstNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 动态 SQL 中 test 表达式的并发缓存
+ *
+ * FEL 编译出的 Java 代码依赖编译时顶层变量的类型, 因此同一个表达式按顶层变量的类型组合保存多个编译结果
+ * 求值时用一个只包装调用方 Map / 对象的轻量上下文, 不复制参数, 也不共享可变状态, 可以被多个线程同时调用
+ *
+ * 每条表达式记录最近一次访问的时间, 命中时不加锁; 条数超过 maxSize 时由一个线程按访问时间淘汰最久未使用的 1/8,
+ * 与 ExpressionCache 相同. 编译失败或类型组合过多时退回解释执行语法树
+ */
+public final class PredicateCache
+{
+    private static Logger logger = LoggerFactory.getLogger(PredicateCache.class.getSimpleName());
+
+    private static final int MAX_VARIANTS = 8;
+
+    private static final PredicateCache instance = new PredicateCache(1024);
+
+    private final FelEngine engine = new FelEngineImpl();
+    private final ConcurrentHashMap<String, Entry> entryMap = new ConcurrentHashMap<>(256);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder interpreted = new LongAdder();
+
+    public PredicateCache(int maxSize)
+    {
+        if ( maxSize <= 0 ) throw new IllegalArgumentException("maxSize must be positive!");
+        this.maxSize = maxSize;
+    }
+
+    public static PredicateCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * @param expression FEL 表达式, 例如 question.id != null
+     * @param root       变量来源, Map 按键取值, 其它对象按 getter 取值
+     * @return 表达式结果是否为 true
+     */
+    public boolean test(String expression, Object root)
+    {
+        return Boolean.TRUE.equals(eval(expression, root));
+    }
+
+    public Object eval(String expression, Object root)
+    {
+        Entry entry = entryMap.get(expression);
+        if ( entry == null ) entry = createEntry(expression);
+        entry.lastAccess = System.nanoTime();
+
+        RootContext context = new RootContext(root, entry.readers);
+        Expression compiled = entry.find(context);
+        if ( compiled != null )
+            hits.increment();
+        else
+            compiled = entry.compile(context);
+        return compiled.eval(context);
+    }
+
+    public int size()
+    {
+        return entryMap.size();
+    }
+
+    public void clear()
+    {
+        entryMap.clear();
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long hit = hits.sum(), miss = misses.sum();
+        result.put("size", entryMap.size());
+        result.put("maxSize", maxSize);
+        result.put("hits", hit);
+        result.put("misses", miss);
+        result.put("hitRate", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        result.put("evictions", evictions.sum());
+        result.put("interpreted", interpreted.sum());
+        return result;
+    }
+
+    private Entry createEntry(String expression)
+    {
+        Entry entry = entryMap.computeIfAbsent(expression, text ->
+        {
+            FelNode node;
+            synchronized ( engine )
+            {
+                node = engine.parse(text);
+            }
+            return new Entry(text, node);
+        });
+
+        if ( entryMap.size() > maxSize ) evict(entry);
+        return entry;
+    }
+
+    // 只有一个线程做淘汰, 其余线程不等待; 刚放入的表达式不淘汰
+    private void evict(Entry current)
+    {
+        if ( !evicting.compareAndSet(false, true) ) return;
+        try
+        {
+            List<Entry> entries = new ArrayList<>(entryMap.values());
+            int target = maxSize - maxSize / 8;
+            if ( entries.size() <= target ) return;
+
+            entries.remove(current);
+            entries.sort(Comparator.comparingLong((Entry e) -> e.lastAccess));
+            for ( int i = 0; i < entries.size() && entryMap.size() > target; ++i )
+            {
+                if ( entryMap.remove(entries.get(i).text, entries.get(i)) ) evictions.increment();
+            }
+        }
+        finally
+        {
+            evicting.set(false);
+        }
+    }
+
+    private final class Entry
+    {
+        private final String text;
+        private final FelNode node;
+        private final PropertyReader[] readers;
+        private volatile long lastAccess = System.nanoTime();
+
+        // 写时复制, 读取不加锁
+        private volatile Variant[] variants = new Variant[0];
+
+        private Entry(String text, FelNode node)
+        {
+            this.text = text;
+            this.node = node;
+
+            List<String> names = new ArrayList<>(4);
+            collectRoots(node, names);
+            readers = new PropertyReader[names.size()];
+            for ( int i = 0; i < readers.length; ++i ) readers[i] = new PropertyReader(names.get(i));
+        }
+
+        private Expression find(RootContext context)
+        {
+            Variant[] current = variants;
+            for ( Variant variant : current )
+            {
+                if ( variant.matches(context) ) return variant.expression;
+            }
+            return null;
+        }
+
+        // 同一表达式同时未命中时只编译一次, 其余线程等待后直接使用
+        private synchronized Expression compile(RootContext context)
+        {
+            Expression expression = find(context);
+            if ( expression != null )
+            {
+                hits.increment();
+                return expression;
+            }
+
+            misses.increment();
+
+            if ( variants.length >= MAX_VARIANTS )
+            {
+                interpreted.increment();
+                return node;
+            }
+
+            synchronized ( engine )
+            {
+                try
+                {
+                    expression = engine.compile(text, context);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.warn("compile \"{}\" <- {}", text, e.getMessage());
+                }
+            }
+            if ( expression == null )
+            {
+                interpreted.increment();
+                expression = node;
+            }
+
+            Variant[] next = new Variant[variants.length + 1];
+            System.arraycopy(variants, 0, next, 0, variants.length);
+            next[variants.length] = new Variant(context.types(), expression);
+            variants = next;
+            return expression;
+        }
+    }
+
+    private static final class Variant
+    {
+        private final Class<?>[] types;
+        private final Expression expression;
+
+        private Variant(Class<?>[] types, Expression expression)
+        {
+            this.types = types;
+            this.expression = expression;
+        }
+
+        private boolean matches(RootContext context)
+        {
+            for ( int i = 0; i < types.length; ++i )
+            {
+                if ( types[i] != context.typeOf(i) ) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单次求值的上下文, 只读调用方的参数; 顶层变量按 readers 的下标读取, 编译后的代码和变量节点不再按名称查找
+     */
+    private static final class RootContext extends AbstractContext implements ArrayCtx
+    {
+        private final Object root;
+        private final PropertyReader[] readers;
+
+        private RootContext(Object root, PropertyReader[] readers)
+        {
+            this.root = root;
+            this.readers = readers;
+        }
+
+        @Override
+        public Object get(String name)
+        {
+            int index = getIndex(name);
+            if ( index >= 0 ) return readers[index].get(root);
+            return root instanceof Map ? ((Map<?, ?>) root).get(name) : null;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            return index >= 0 ? readers[index].get(root) : null;
+        }
+
+        @Override
+        public int getIndex(String name)
+        {
+            for ( int i = 0; i < readers.length; ++i )
+            {
+                if ( readers[i].getName().equals(name) ) return i;
+            }
+            return -1;
+        }
+
+        // 同一表达式的 readers 不变
+        @Override
+        public Object layout()
+        {
+            return readers;
+        }
+
+        private Class<?> typeOf(int index)
+        {
+            Object value = readers[index].get(root);
+            return value == null ? null : value.getClass();
+        }
+
+        private Class<?>[] types()
+        {
+            Class<?>[] types = new Class<?>[readers.length];
+            for ( int i = 0; i < types.length; ++i ) types[i] = typeOf(i);
+            return types;
+        }
+    }
+
+    // 顶层变量: 不是 "." 右侧的变量节点
+    private static void collectRoots(FelNode node, List<String> names)
+    {
+        if ( node instanceof VarAstNode )
+        {
+            if ( !names.contains(node.getText()) ) names.add(node.getText());
+            return;
+        }
+
+        List<FelNode> children = node.getChildren();
+        if ( children == null ) return;
+        int count = ".".equals(node.getText()) ? Math.min(1, children.size()) : children.size();
+        for ( int i = 0; i < count; ++i ) collectRoots(children.get(i), names);
+    }
+}
@@ -0,0 +1,63 @@
+package com.trxs.pulse.jdbc;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按名字读取 Map 的键或对象的 getter, 供渲染计划和谓词求值共用
+ */
+final class PropertyReader
+{
+    private static final Map<Class<?>, MethodAccess> accessMap = new ConcurrentHashMap<>(64);
+
+    private final String name;
+
+    // 单态缓存: 同一位置几乎总是同一种对象, 命中时不再按名字查找 getter
+    private volatile Getter cached;
+
+    PropertyReader(String name)
+    {
+        this.name = name;
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    Object get(Object bean)
+    {
+        if ( bean == null ) return null;
+        if ( bean instanceof Map ) return ((Map<?, ?>) bean).get(name);
+
+        Getter getter = cached;
+        if ( getter == null || getter.type != bean.getClass() ) cached = getter = new Getter(bean.getClass(), name);
+        return getter.access.invoke(bean, getter.index);
+    }
+
+    private static final class Getter
+    {
+        private final Class<?> type;
+        private final MethodAccess access;
+        private final int index;
+
+        private Getter(Class<?> type, String name)
+        {
+            this.type = type;
+            this.access = accessMap.computeIfAbsent(type, MethodAccess::get);
+
+            String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            int found = -1;
+            String[] methodNames = access.getMethodNames();
+            for ( int i = 0; i < methodNames.length && found < 0; ++i )
+            {
+                if ( access.getParameterTypes()[i].length > 0 ) continue;
+                if ( methodNames[i].equals("get" + suffix) || methodNames[i].equals("is" + suffix) ) found = i;
+            }
+            if ( found < 0 ) throw new IllegalArgumentException("No property " + name + " in " + type.getName());
+            index = found;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.trxs.pulse.jdbc;
+
+import com.trxs.sql.Tokenizer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 查询结果缓存, 按 sqlKey + 参数保存, 超过有效期或所读的表被写过后失效
+ *
+ * 每张表有一个版本号, 写操作只把版本号加一; 缓存项记录查询前各表的版本号, 读取时版本不一致即视为失效,
+ * 因此与写操作并发的查询不会把旧数据当成新数据缓存。只能感知本进程的写入, 其它实例的写入靠有效期兜底
+ *
+ * 缓存的对象被多个调用方共享, 不要修改
+ */
+public final class QueryCache
+{
+    private static final QueryCache instance = new QueryCache(4096);
+
+    private final ConcurrentHashMap<Key, Entry> entryMap = new ConcurrentHashMap<>(256);
+    private final ConcurrentHashMap<String, AtomicLong> versionMap = new ConcurrentHashMap<>(64);
+    private final ConcurrentHashMap<String, String[]> tableMap = new ConcurrentHashMap<>(256);
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryCache(int maxSize)
+    {
+        if ( maxSize <= 0 ) throw new IllegalArgumentException("maxSize must be positive!");
+        this.maxSize = maxSize;
+    }
+
+    public static QueryCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * 读取缓存, 未命中或已失效时调用 loader 并缓存结果
+     *
+     * @param sqlKey     语句的键
+     * @param resultType 结果类型(如 String.class), 与 sqlKey、参数一起作为缓存键, 同一语句按不同类型读取时分开缓存
+     * @param sql        语句, 用于找出所读的表
+     * @param ttl        有效期(毫秒)
+     */
+    public <T> T get(String sqlKey, Object resultType, String sql, Object[] args, long ttl, Supplier<T> loader)
+    {
+        Key key = new Key(sqlKey, resultType, args);
+        long now = System.currentTimeMillis();
+
+        Entry entry = entryMap.get(key);
+        if ( entry != null && entry.isValid(now) )
+        {
+            hits.increment();
+            @SuppressWarnings("unchecked")
+            T value = (T) entry.value;
+            return value;
+        }
+
+        misses.increment();
+        if ( entry != null ) entryMap.remove(key, entry);
+
+        // 先取版本再查询
+        String[] tables = tablesOf(sql);
+        AtomicLong[] versions = new AtomicLong[tables.length];
+        long[] loaded = new long[tables.length];
+        for ( int i = 0; i < tables.length; ++i )
+        {
+            versions[i] = versionOf(tables[i]);
+            loaded[i] = versions[i].get();
+        }
+
+        T value = loader.get();
+        entryMap.put(key, new Entry(value, now + ttl, versions, loaded));
+        if ( entryMap.size() > maxSize ) evict(now);
+        return value;
+    }
+
+    /**
+     * 写操作之后调用, 使读过 sql 中各表的缓存失效
+     */
+    public void invalidateSql(String sql)
+    {
+        invalidate(tablesOf(sql));
+    }
+
+    public void invalidate(String... tables)
+    {
+        for ( String table : tables )
+        {
+            versionOf(table.toLowerCase()).incrementAndGet();
+            invalidations.increment();
+        }
+    }
+
+    public String[] tablesOf(String sql)
+    {
+        String[] tables = tableMap.get(sql);
+        if ( tables != null ) return tables;
+
+        tables = new Tokenizer().tables(sql).toArray(new String[0]);
+        if ( tableMap.size() < maxSize ) tableMap.put(sql, tables);
+        return tables;
+    }
+
+    public int size()
+    {
+        return entryMap.size();
+    }
+
+    public void clear()
+    {
+        entryMap.clear();
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public Map<String, Object> snapshot()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long hit = hits.sum(), miss = misses.sum();
+        result.put("size", entryMap.size());
+        result.put("maxSize", maxSize);
+        result.put("hits", hit);
+        result.put("misses", miss);
+        result.put("hitRate", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        result.put("evictions", evictions.sum());
+        result.put("invalidations", invalidations.sum());
+        return result;
+    }
+
+    private AtomicLong versionOf(String table)
+    {
+        AtomicLong version = versionMap.get(table);
+        return version != null ? version : versionMap.computeIfAbsent(table, name -> new AtomicLong());
+    }
+
+    // 先清掉失效的项, 仍然超出时随机淘汰
+    private void evict(long now)
+    {
+        entryMap.entrySet().removeIf(item ->
+        {
+            if ( item.getValue().isValid(now) ) return false;
+            evictions.increment();
+            return true;
+        });
+
+        Iterator<Key> iterator = entryMap.keySet().iterator();
+        while ( entryMap.size() > maxSize && iterator.hasNext() )
+        {
+            if ( entryMap.remove(iterator.next()) != null ) evictions.increment();
+        }
+    }
+
+    private static final class Key
+    {
+        private final String sqlKey;
+        private final Object resultType;
+        private final Object[] args;
+        private final int hash;
+
+        private Key(String sqlKey, Object resultType, Object[] args)
+        {
+            this.sqlKey = sqlKey;
+            this.resultType = resultType;
+            this.args = args == null ? new Object[0] : args.clone();
+            this.hash = (sqlKey.hashCode() * 31 + Objects.hashCode(resultType)) * 31 + Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if ( !(o instanceof Key) ) return false;
+            Key other = (Key) o;
+            return hash == other.hash && sqlKey.equals(other.sqlKey) && Objects.equals(resultType, other.resultType) && Arrays.deepEquals(args, other.args);
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Object value;
+        private final long expireAt;
+        private final AtomicLong[] versions;
+        private final long[] loaded;
+
+        private Entry(Object value, long expireAt, AtomicLong[] versions, long[] loaded)
+        {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.versions = versions;
+            this.loaded = loaded;
+        }
+
+        private boolean isValid(long now)
+        {
+            if ( now >= expireAt ) return false;
+            for ( int i = 0; i < versions.length; ++i )
+            {
+                if ( versions[i].get() != loaded[i] ) return false;
+            }
+            return true;
+        }
+    }
+}
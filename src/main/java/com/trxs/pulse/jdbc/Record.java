@@ -1,43 +1,36 @@
 package com.trxs.pulse.jdbc;
 
-import com.trxs.commons.bean.AccessObject;
-import com.trxs.commons.util.TextFormatTools;
-import net.sf.cglib.beans.BeanGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
-import static com.trxs.pulse.jdbc.SnakeToCamelParameterUtil.camelToSnake;
 import static com.trxs.pulse.jdbc.SnakeToCamelParameterUtil.snakeToCamel;
 
+/**
+ * 一行表数据, 字段值按 RecordLayout 的槽位保存在 Object[] 中
+ *
+ * 布局在元数据加载后按表创建一次, newInstance 只分配槽位数组, 不加锁
+ */
 final public class Record
 {
     protected static Logger logger = LoggerFactory.getLogger(Record.class.getName());
-    private final static BeanGenerator generator = new BeanGenerator();
-    private final static AtomicInteger generatorMutex = new AtomicInteger(Integer.valueOf(0));
     private final static Map<String, Map<String, Class>> tablePropertyMap = new ConcurrentHashMap<>();
     private final static Map<String, Map<String, Integer>> tablePropertySortMap = new ConcurrentHashMap<>();
+    private final static Map<String, RecordLayout> tableLayoutMap = new ConcurrentHashMap<>();
 
     private final static String primaryKeyName = "id";
 
-    private String tableName;
+    private final RecordLayout layout;
+    private final Object[] slots;
     private List<String> emptyFields = null;
-    private Object data = null;
-    private AccessObject accessData = null;
 
-    private Record(String table)
+    private Record(RecordLayout layout)
     {
-        if ( table == null )
-        {
-            logger.warn("The name of table can't be null!");
-            throw new RuntimeException("Table name is null!!!");
-        }
-        tableName = table;
+        this.layout = layout;
+        this.slots = new Object[layout.size()];
     }
 
     protected static void addField(String table, String propertyName, String className, Integer index)
@@ -60,6 +53,7 @@ final public class Record
 
             propertyMap.put(propertyName, Class.forName(className));
             propertySortMap.put(propertyName, index);
+            tableLayoutMap.remove(table);
         }
         catch (ClassNotFoundException e)
         {
@@ -69,18 +63,7 @@ final public class Record
 
     public static Record newInstance(String tableName)
     {
-        Record record;
-        try
-        {
-            record = new Record(tableName);
-            while ( false == generatorMutex.compareAndSet(0,1) ) Thread.yield();
-            record.create();
-        }
-        finally
-        {
-            generatorMutex.set(0);
-        }
-        return record;
+        return new Record(layoutOf(tableName));
     }
 
     /**
@@ -97,108 +80,103 @@ final public class Record
         Record.addField( tableName, propertyName, (String)metaMap.get("CLASS_NAME"), (Integer)metaMap.get("ORDINAL_POSITION") );
     }
 
-    protected Record create()
+    // 元数据按列逐个加入, 布局在第一次使用时创建, 列变化后重建
+    private static RecordLayout layoutOf(String tableName)
     {
+        if ( tableName == null )
+        {
+            logger.warn("The name of table can't be null!");
+            throw new RuntimeException("Table name is null!!!");
+        }
+
+        RecordLayout layout = tableLayoutMap.get(tableName);
+        if ( layout != null ) return layout;
+
         Map<String, Class> propertyMap = tablePropertyMap.get(tableName);
         if ( propertyMap == null )
         {
             logger.warn("Pls create the table -> {} in database!", tableName);
             throw new RuntimeException(MessageFormat.format("The table[{0}] is not exists in databases!", tableName));
         }
-
-        propertyMap.forEach( (key,value) -> generator.addProperty(key, propertyMap.get(key)) );
-        data = generator.create();
-        accessData = new AccessObject(data);
-
-        return this;
+        return tableLayoutMap.computeIfAbsent(tableName, table -> new RecordLayout(table, propertyMap, tablePropertySortMap.get(table), primaryKeyName));
     }
 
     public String getTableName()
     {
-        return tableName;
+        return layout.getTableName();
     }
 
-    public Object getField(String fieldName)
+    /**
+     * @return 字段的槽位, 可用于 getField(int) / setField(int, Object), 不存在时返回 -1
+     */
+    public int indexOf(String fieldName)
     {
-        return accessData.getProperty(fieldName);
+        return layout.slotOf(fieldName);
     }
 
-    public Record setField(String fieldName, Object value)
+    public Object getField(int index)
     {
-        accessData.setProperty(fieldName, value);
-        return this;
+        return slots[index];
     }
 
-    public SQLAction insertAction()
+    public Record setField(int index, Object value)
     {
-        StringBuilder sqlBuilder = new StringBuilder();
-
-        Map<String, Integer> propertySortMap = tablePropertySortMap.get(tableName);
-
-        List<String> fieldList = new ArrayList<>();
-        List<Object> valueList = new ArrayList<>();
-
-        sqlBuilder.append("INSERT INTO ").append(tableName).append(" ( ");
-
-        propertySortMap.entrySet().stream().sorted( Map.Entry.comparingByValue()).forEachOrdered(property ->
-        {
-            Object value = accessData.getProperty(property.getKey());
-
-            if ( value != null ) fieldList.add(camelToSnake(property.getKey()));
-        });
-
-        sqlBuilder.append(String.join(", ", fieldList));
+        Object converted = layout.convert(index, value);
+        if ( converted != RecordLayout.NO_VALUE ) slots[index] = converted;
+        return this;
+    }
 
-        sqlBuilder.append(" ) VALUE ( ");
+    public Object getField(String fieldName)
+    {
+        int index = layout.slotOf(fieldName);
+        if ( index < 0 ) throw new IllegalArgumentException(MessageFormat.format("The field[{0}] is not exists in table[{1}]!", fieldName, getTableName()));
+        return slots[index];
+    }
 
-        propertySortMap.entrySet().stream().sorted( Map.Entry.comparingByValue()).forEachOrdered(property ->
+    public Record setField(String fieldName, Object value)
+    {
+        int index = layout.slotOf(fieldName);
+        if ( index < 0 )
         {
-            Object value = accessData.getProperty(property.getKey());
-            if ( value != null ) valueList.add(value);
-        });
-
-        sqlBuilder.append(String.join(", ", fieldList.stream().map( f -> "?").collect(Collectors.toList())));
-
-        sqlBuilder.append(" );");
+            logger.warn("Can't found the {}->{} !!!", getTableName(), fieldName );
+            return this;
+        }
+        return setField(index, value);
+    }
 
-        return new SQLAction(SQLEnum.INSERT, sqlBuilder.toString(), valueList.toArray());
+    public SQLAction insertAction()
+    {
+        return layout.getStatements().insert(slots);
     }
 
     public SQLAction modifyAction()
     {
-        TextFormatTools textFormat = TextFormatTools.getInstance();
-
-        StringBuilder sqlBuilder = new StringBuilder();
-
-        Map<String, Integer> propertySortMap = tablePropertySortMap.get(tableName);
-
-        List<String> fieldItems = new ArrayList<>();
-        List<Object> valueList = new ArrayList<>();
-
-        sqlBuilder.append("UPDATE ").append(tableName).append(" SET ");
-
-        propertySortMap.entrySet().stream().sorted( Map.Entry.comparingByValue()).forEachOrdered(property ->
-        {
-            final String key = property.getKey();
-            if ( key.equalsIgnoreCase(primaryKeyName) ) return;
-            Object value = accessData.getProperty(key);
-            if ( value != null )
-            {
-                valueList.add(value);
-                fieldItems.add( textFormat.render("{0} = ?", camelToSnake(key) ) );
-            }
-            else if ( emptyFields != null && emptyFields.contains(key) )
-            {
-                fieldItems.add( textFormat.render("{0} = null", camelToSnake(key) ) );
-            }
-        });
-        valueList.add(accessData.getProperty(primaryKeyName));
+        return layout.getStatements().update(slots, emptyFields);
+    }
 
-        sqlBuilder.append(String.join(", ", fieldItems));
+    /**
+     * 批量插入时的分组键: 同一张表、非空字段相同的记录可以合并为一条多行 insert
+     */
+    Object insertGroup()
+    {
+        return layout.getStatements().insertPlan(slots);
+    }
 
-        sqlBuilder.append(" WHERE ").append(primaryKeyName).append(" = ?;");
+    int insertWidth()
+    {
+        return layout.getStatements().insertPlan(slots).width();
+    }
 
-        return new SQLAction(SQLEnum.UPDATE, sqlBuilder.toString(), valueList.toArray());
+    /**
+     * @param records 同一 insertGroup 的记录
+     */
+    static SQLAction insertAction(List<Record> records)
+    {
+        Record first = records.get(0);
+        RecordStatements statements = first.layout.getStatements();
+        List<Object[]> rows = new ArrayList<>(records.size());
+        for ( Record record : records ) rows.add(record.slots);
+        return statements.insertRows(statements.insertPlan(first.slots), rows);
     }
 
     /**
@@ -214,10 +192,16 @@ final public class Record
 
         Arrays.asList(fields).forEach( field ->
         {
-            if ( emptyFields.contains(field) ) return;
+            int index = layout.slotOf(field);
+            if ( index < 0 )
+            {
+                logger.warn("Can't found the {}->{} !!!", getTableName(), field );
+                return;
+            }
 
-            emptyFields.add(field);
-            accessData.setProperty(field, null);
+            slots[index] = null;
+            String property = layout.getProperty(index);
+            if ( !emptyFields.contains(property) ) emptyFields.add(property);
         } );
 
         return this;
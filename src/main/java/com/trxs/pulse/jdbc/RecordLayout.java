@@ -0,0 +1,118 @@
+package com.trxs.pulse.jdbc;
+
+import com.trxs.commons.util.DateConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一张表的字段布局: 字段按 ORDINAL_POSITION 排列成槽位, 字段名到槽位的映射在元数据加载后只计算一次
+ *
+ * Record 只持有一个按该布局排列的 Object[], 读写字段就是数组下标访问, 创建 Record 不再需要生成 bean 类
+ */
+final class RecordLayout
+{
+    private static Logger logger = LoggerFactory.getLogger(RecordLayout.class.getSimpleName());
+
+    static final Object NO_VALUE = new Object();
+
+    private final String tableName;
+    private final String[] properties;
+    private final Class<?>[] types;
+    private final Map<String, Integer> slotMap;
+    private final Map<String, Integer> lowerCaseSlotMap;
+    private final RecordStatements statements;
+
+    RecordLayout(String tableName, Map<String, Class> propertyMap, Map<String, Integer> propertySortMap, String primaryKeyName)
+    {
+        this.tableName = tableName;
+
+        properties = propertySortMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).map(Map.Entry::getKey).toArray(String[]::new);
+        types = new Class<?>[properties.length];
+        slotMap = new HashMap<>(properties.length * 2);
+        lowerCaseSlotMap = new HashMap<>(properties.length * 2);
+        for ( int i = 0; i < properties.length; ++i )
+        {
+            Class<?> type = propertyMap.get(properties[i]);
+            types[i] = type == null ? Object.class : type;
+            slotMap.put(properties[i], i);
+            lowerCaseSlotMap.put(properties[i].toLowerCase(), i);
+        }
+
+        statements = new RecordStatements(tableName, properties, primaryKeyName);
+    }
+
+    String getTableName()
+    {
+        return tableName;
+    }
+
+    int size()
+    {
+        return properties.length;
+    }
+
+    String getProperty(int slot)
+    {
+        return properties[slot];
+    }
+
+    RecordStatements getStatements()
+    {
+        return statements;
+    }
+
+    /**
+     * @return 字段所在槽位, 字段名首字母大小写不敏感(与原 AccessObject 一致), 不存在时返回 -1
+     */
+    int slotOf(String property)
+    {
+        Integer slot = slotMap.get(property);
+        if ( slot == null ) slot = lowerCaseSlotMap.get(property.toLowerCase());
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * 按字段类型转换写入的值, 无法转换时返回 NO_VALUE
+     */
+    Object convert(int slot, Object value)
+    {
+        Class<?> type = types[slot];
+        if ( value == null || type.isInstance(value) ) return value;
+
+        if ( value instanceof Number )
+        {
+            Number number = (Number) value;
+            if ( type == Integer.class )
+            {
+                long longValue = number.longValue();
+                if ( longValue == (int) longValue ) return (int) longValue;
+                logger.warn("The value[{}] of {} is out of range for propertyType[{}]!!!", value, properties[slot], type.getName());
+                return NO_VALUE;
+            }
+            if ( type == Long.class )       return number.longValue();
+            if ( type == Short.class )      return number.shortValue();
+            if ( type == Byte.class )       return number.byteValue();
+            if ( type == Double.class )     return number.doubleValue();
+            if ( type == Float.class )      return number.floatValue();
+            if ( type == BigDecimal.class ) return value instanceof BigInteger ? new BigDecimal((BigInteger) value) : new BigDecimal(number.toString());
+        }
+
+        if ( value instanceof Date )
+        {
+            long time = ((Date) value).getTime();
+            if ( type == java.sql.Timestamp.class ) return new java.sql.Timestamp(time);
+            if ( type == java.sql.Date.class )      return new java.sql.Date(time);
+            if ( type == java.sql.Time.class )      return new java.sql.Time(time);
+            if ( type == String.class )             return DateConverter.dateFormat((Date) value, "yyyy-MM-dd HH:mm:ss");
+        }
+
+        logger.warn("The propertyType[{}]->{} is not equals valueType[{}]!!!", type.getName(), properties[slot], value.getClass().getName());
+        return NO_VALUE;
+    }
+}
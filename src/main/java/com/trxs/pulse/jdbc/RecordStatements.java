@@ -0,0 +1,244 @@
+package com.trxs.pulse.jdbc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static com.trxs.pulse.jdbc.SnakeToCamelParameterUtil.camelToSnake;
+
+/**
+ * 一张表的 insert / update 语句缓存
+ *
+ * 列顺序与 RecordLayout 的槽位一致、列名转换一次; 语句按 "哪些列为空" 的位图缓存,
+ * 同一形状的记录再次保存时只需要把槽位里的值拷贝到参数数组
+ */
+final class RecordStatements
+{
+    private final String tableName;
+    private final String[] properties;
+    private final String[] columns;
+    private final int primaryKey;
+    private final int words;
+
+    private final Map<Shape, Plan> insertPlans = new ConcurrentHashMap<>();
+    private final Map<Shape, Plan> updatePlans = new ConcurrentHashMap<>();
+
+    RecordStatements(String tableName, String[] properties, String primaryKeyName)
+    {
+        this.tableName = tableName;
+        this.properties = properties;
+
+        columns = new String[properties.length];
+        int pk = -1;
+        for ( int i = 0; i < properties.length; ++i )
+        {
+            columns[i] = camelToSnake(properties[i]);
+            if ( properties[i].equalsIgnoreCase(primaryKeyName) ) pk = i;
+        }
+        primaryKey = pk;
+        words = (properties.length + 63) >>> 6;
+    }
+
+    /**
+     * @param values 按列顺序排列的字段值, 即 Record 的槽位数组
+     */
+    SQLAction insert(Object[] values)
+    {
+        Plan plan = insertPlan(values);
+        return new SQLAction(SQLEnum.INSERT, plan.sql, plan.bind(values));
+    }
+
+    /**
+     * @return 插入计划, 同一张表中非空列相同的记录得到同一个对象, 可以作为分组的键
+     */
+    Plan insertPlan(Object[] values)
+    {
+        long[] bits = new long[words];
+        for ( int i = 0; i < properties.length; ++i )
+        {
+            if ( values[i] != null ) bits[i >>> 6] |= 1L << i;
+        }
+        return plan(insertPlans, new Shape(bits), this::buildInsert);
+    }
+
+    /**
+     * 同一插入计划的多条记录合并为一条 INSERT ... VALUES ( ... ), ( ... )
+     */
+    SQLAction insertRows(Plan plan, List<Object[]> rows)
+    {
+        int width = plan.indexes.length;
+        Object[] args = new Object[rows.size() * width];
+        for ( int r = 0, offset = 0; r < rows.size(); ++r, offset += width )
+        {
+            Object[] values = rows.get(r);
+            for ( int i = 0; i < width; ++i ) args[offset + i] = values[plan.indexes[i]];
+        }
+        return new SQLAction(SQLEnum.INSERT, plan.multiRowSql(rows.size()), args);
+    }
+
+    /**
+     * @return 主键所在槽位, 没有主键时返回 -1
+     */
+    int getPrimaryKey()
+    {
+        return primaryKey;
+    }
+
+    SQLAction update(Object[] values, List<String> emptyFields)
+    {
+        // 前半部分: 有值的列, 后半部分: 需要置空的列
+        long[] bits = new long[words * 2];
+        for ( int i = 0; i < properties.length; ++i )
+        {
+            if ( i == primaryKey ) continue;
+            if ( values[i] != null )
+                bits[i >>> 6] |= 1L << i;
+            else if ( emptyFields != null && emptyFields.contains(properties[i]) )
+                bits[words + (i >>> 6)] |= 1L << i;
+        }
+
+        Plan plan = plan(updatePlans, new Shape(bits), this::buildUpdate);
+        return new SQLAction(SQLEnum.UPDATE, plan.sql, plan.bind(values));
+    }
+
+    private static Plan plan(Map<Shape, Plan> plans, Shape shape, Function<Shape, Plan> builder)
+    {
+        Plan plan = plans.get(shape);
+        return plan != null ? plan : plans.computeIfAbsent(shape, builder);
+    }
+
+    private Plan buildInsert(Shape shape)
+    {
+        int[] indexes = new int[properties.length];
+        int count = 0;
+
+        StringBuilder names = new StringBuilder(), marks = new StringBuilder();
+        for ( int i = 0; i < properties.length; ++i )
+        {
+            if ( !shape.has(i) ) continue;
+            if ( count > 0 )
+            {
+                names.append(", ");
+                marks.append(", ");
+            }
+            names.append(columns[i]);
+            marks.append('?');
+            indexes[count++] = i;
+        }
+
+        String sql = "INSERT INTO " + tableName + " ( " + names + " ) VALUE ( " + marks + " );";
+        return new Plan(sql, Arrays.copyOf(indexes, count), "INSERT INTO " + tableName + " ( " + names + " ) VALUES ", "( " + marks + " )");
+    }
+
+    private Plan buildUpdate(Shape shape)
+    {
+        int[] indexes = new int[properties.length + 1];
+        int count = 0;
+
+        StringBuilder items = new StringBuilder();
+        for ( int i = 0; i < properties.length; ++i )
+        {
+            boolean assign = shape.has(i), empty = shape.has(words * 64 + i);
+            if ( !assign && !empty ) continue;
+
+            if ( items.length() > 0 ) items.append(", ");
+            items.append(columns[i]).append(assign ? " = ?" : " = null");
+            if ( assign ) indexes[count++] = i;
+        }
+        indexes[count++] = primaryKey;
+
+        String sql = "UPDATE " + tableName + " SET " + items + " WHERE " + (primaryKey < 0 ? "id" : columns[primaryKey]) + " = ?;";
+        return new Plan(sql, Arrays.copyOf(indexes, count), null, null);
+    }
+
+    static final class Plan
+    {
+        private final String sql;
+        private final int[] indexes;
+
+        // 多行插入: 语句头和每行的占位符, 最近一次的行数和语句
+        private final String head;
+        private final String tuple;
+        private volatile MultiRow multiRow;
+
+        private Plan(String sql, int[] indexes, String head, String tuple)
+        {
+            this.sql = sql;
+            this.indexes = indexes;
+            this.head = head;
+            this.tuple = tuple;
+        }
+
+        int width()
+        {
+            return indexes.length;
+        }
+
+        private String multiRowSql(int rows)
+        {
+            MultiRow cached = multiRow;
+            if ( cached != null && cached.rows == rows ) return cached.sql;
+
+            StringBuilder builder = new StringBuilder(head.length() + (tuple.length() + 2) * rows + 1);
+            builder.append(head);
+            for ( int i = 0; i < rows; ++i )
+            {
+                if ( i > 0 ) builder.append(", ");
+                builder.append(tuple);
+            }
+            String text = builder.append(';').toString();
+            multiRow = new MultiRow(rows, text);
+            return text;
+        }
+
+        private Object[] bind(Object[] values)
+        {
+            Object[] args = new Object[indexes.length];
+            for ( int i = 0; i < indexes.length; ++i ) args[i] = indexes[i] < 0 ? null : values[indexes[i]];
+            return args;
+        }
+    }
+
+    private static final class MultiRow
+    {
+        private final int rows;
+        private final String sql;
+
+        private MultiRow(int rows, String sql)
+        {
+            this.rows = rows;
+            this.sql = sql;
+        }
+    }
+
+    private static final class Shape
+    {
+        private final long[] bits;
+        private final int hash;
+
+        private Shape(long[] bits)
+        {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        private boolean has(int index)
+        {
+            return (bits[index >>> 6] & (1L << index)) != 0;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Shape && Arrays.equals(bits, ((Shape) o).bits);
+        }
+    }
+}
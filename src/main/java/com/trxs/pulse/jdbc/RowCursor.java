@@ -0,0 +1,189 @@
+package com.trxs.pulse.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 逐行读取查询结果的游标, 内存中最多只有驱动的一批行(fetchSize), 用于导出、全表扫描等大结果集
+ *
+ * 游标占用一个连接直到 close; MySQL 流式读取期间同一连接上不能执行其它语句。
+ * 未读完就关闭时先取消语句, 避免驱动在 close 时把剩余的行全部读完
+ */
+public final class RowCursor<T> implements Iterator<T>, AutoCloseable
+{
+    private static Logger logger = LoggerFactory.getLogger(RowCursor.class.getSimpleName());
+
+    /**
+     * 按数据库选择的默认值: MySQL 逐行流式读取, 其它数据库每批 DEFAULT_FETCH_SIZE 行
+     */
+    public static final int AUTO_FETCH_SIZE = -1;
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String sql;
+    private final RowMapper<T> rowMapper;
+    private final DataSource dataSource;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+
+    private final long startTime = System.nanoTime();
+    private int rowNum = 0;
+    private boolean failed = false;
+    private boolean fetched = false;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    private RowCursor(JdbcTemplate jdbcTemplate, String sql, RowMapper<T> rowMapper)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sql = sql;
+        this.rowMapper = rowMapper;
+        this.dataSource = jdbcTemplate.getDataSource();
+    }
+
+    /**
+     * 执行查询并返回游标, 调用方必须关闭(try-with-resources)
+     *
+     * @param fetchSize 每批从数据库取的行数, AUTO_FETCH_SIZE 按数据库选择
+     */
+    public static <T> RowCursor<T> open(JdbcTemplate jdbcTemplate, String sql, Object[] args, RowMapper<T> rowMapper, int fetchSize)
+    {
+        RowCursor<T> cursor = new RowCursor<>(jdbcTemplate, sql, rowMapper);
+        try
+        {
+            cursor.connection = DataSourceUtils.getConnection(cursor.dataSource);
+            cursor.statement = cursor.connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            cursor.statement.setFetchSize(resolveFetchSize(cursor.connection, fetchSize));
+            new ArgumentPreparedStatementSetter(args).setValues(cursor.statement);
+            cursor.resultSet = cursor.statement.executeQuery();
+            return cursor;
+        }
+        catch (SQLException e)
+        {
+            cursor.failed = true;
+            cursor.close();
+            throw jdbcTemplate.getExceptionTranslator().translate("RowCursor", sql, e);
+        }
+    }
+
+    private static int resolveFetchSize(Connection connection, int fetchSize) throws SQLException
+    {
+        if ( fetchSize > 0 ) return fetchSize;
+
+        // Connector/J 只有 fetchSize == Integer.MIN_VALUE 时才逐行读取, 否则把整个结果集读进内存
+        String product = connection.getMetaData().getDatabaseProductName();
+        return product != null && product.toLowerCase().contains("mysql") ? Integer.MIN_VALUE : DEFAULT_FETCH_SIZE;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if ( closed || exhausted ) return false;
+        if ( fetched ) return true;
+
+        try
+        {
+            fetched = resultSet.next();
+        }
+        catch (SQLException e)
+        {
+            failed = true;
+            close();
+            throw jdbcTemplate.getExceptionTranslator().translate("RowCursor", sql, e);
+        }
+
+        if ( !fetched )
+        {
+            exhausted = true;
+            close();
+        }
+        return fetched;
+    }
+
+    @Override
+    public T next()
+    {
+        if ( !hasNext() ) throw new NoSuchElementException();
+
+        fetched = false;
+        try
+        {
+            return rowMapper.mapRow(resultSet, rowNum++);
+        }
+        catch (SQLException e)
+        {
+            failed = true;
+            close();
+            throw jdbcTemplate.getExceptionTranslator().translate("RowCursor", sql, e);
+        }
+    }
+
+    /**
+     * @return 已读取的行数
+     */
+    public int getRowCount()
+    {
+        return rowNum;
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * 转成顺序流, 关闭流即关闭游标
+     */
+    public Stream<T> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false).onClose(this::close);
+    }
+
+    @Override
+    public void close()
+    {
+        if ( closed ) return;
+        closed = true;
+
+        if ( statement != null && !exhausted )
+        {
+            try
+            {
+                statement.cancel();
+            }
+            catch (SQLException e)
+            {
+                logger.debug("cancel {} <- {}", sql, e.getMessage());
+            }
+        }
+
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        DataSourceUtils.releaseConnection(connection, dataSource);
+        resultSet = null;
+        statement = null;
+        connection = null;
+
+        // 游标的耗时从执行查询算到关闭, 包括调用方处理每行的时间
+        if ( jdbcTemplate instanceof StatsJdbcTemplate ) ((StatsJdbcTemplate) jdbcTemplate).getStats().record(sql, System.nanoTime() - startTime, rowNum, failed);
+    }
+}
@@ -0,0 +1,565 @@
+package com.trxs.pulse.jdbc;
+
+import com.trxs.commons.xml.Element;
+import com.trxs.commons.xml.Node;
+import com.trxs.commons.xml.XmlText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 模板编译后的不可变渲染计划
+ *
+ * 编译时: 静态文本和 #{..} 占位符合并成带 ? 的片段, trim 的 prefixOverrides / suffixOverrides 预先拆分,
+ *        include 直接内联, if / when 的 test 预编译成 Condition
+ * 调用时: 只求值谓词、绑定参数, 不再遍历 Element 树, 也不按标签名反射分派
+ *
+ * test 为 "路径 ==/!= 常量" 形式时(模板里绝大多数是 xxx != null)直接比较, 不经过 FEL;
+ * 其它表达式交给 PredicateCache, 按参数的实际类型编译并缓存
+ *
+ * 占位符: #{name} 或 {name}, name 可以是 a.b.c 的属性路径(Map 取键, 其它对象调用 getter);
+ *        foreach 内 {.name} 取当前元素的属性, 元素名由 item 属性指定时 {item} 取当前元素本身
+ */
+public final class SQLPlan
+{
+    private static final PredicateCache predicates = PredicateCache.getInstance();
+    private static final Pattern COMPARE = Pattern.compile("\\s*([A-Za-z_][\\w.]*)\\s*(==|!=)\\s*(null|true|false|-?\\d+(?:\\.\\d+)?|'[^']*'|\"[^\"]*\")\\s*");
+
+    // 渲染中的缓冲区按线程复用, 计划本身不保存任何调用状态
+    private static final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+
+    private final String id;
+    private final Part[] parts;
+
+    private SQLPlan(String id, Part[] parts)
+    {
+        this.id = id;
+        this.parts = parts;
+    }
+
+    /**
+     * 编译一个带 id 的语句节点
+     *
+     * @param element    query / select / update / insert / delete / sql 节点
+     * @param elementMap 同一文件中按 id 索引的节点, 用于内联 include
+     */
+    public static SQLPlan compile(Element element, Map<String, Element> elementMap)
+    {
+        Compiler compiler = new Compiler(element.getId(), elementMap);
+        return new SQLPlan(element.getId(), compiler.compileContents(element));
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public SQLAction render(Map<String, Object> context)
+    {
+        Frame frame = frames.get();
+        frame.begin(context);
+        try
+        {
+            for ( Part part : parts ) part.render(frame);
+            return new SQLAction(SQLEnum.QUERY, frame.sql.toString(), frame.args.toArray());
+        }
+        finally
+        {
+            frame.end();
+        }
+    }
+
+    private static final class Frame
+    {
+        private final StringBuilder sql = new StringBuilder(256);
+        private final ArrayList<Object> args = new ArrayList<>(16);
+
+        private Map<String, Object> context;
+        private String itemName;
+        private Object item;
+
+        private void begin(Map<String, Object> context)
+        {
+            this.context = context == null ? Collections.emptyMap() : context;
+        }
+
+        private void end()
+        {
+            sql.setLength(0);
+            args.clear();
+            context = null;
+            itemName = null;
+            item = null;
+        }
+
+        private Object lookup(String name)
+        {
+            if ( itemName != null && itemName.equals(name) ) return item;
+            return context.get(name);
+        }
+    }
+
+    private interface Part
+    {
+        void render(Frame frame);
+    }
+
+    private static final class Text implements Part
+    {
+        private final String sql;
+        private final Binding[] bindings;
+
+        private Text(String sql, Binding[] bindings)
+        {
+            this.sql = sql;
+            this.bindings = bindings;
+        }
+
+        @Override
+        public void render(Frame frame)
+        {
+            frame.sql.append(sql);
+            for ( Binding binding : bindings ) frame.args.add(binding.resolve(frame));
+        }
+
+        private Text merge(Text next)
+        {
+            Binding[] merged = new Binding[bindings.length + next.bindings.length];
+            System.arraycopy(bindings, 0, merged, 0, bindings.length);
+            System.arraycopy(next.bindings, 0, merged, bindings.length, next.bindings.length);
+            return new Text(sql + next.sql, merged);
+        }
+    }
+
+    private static final class Where implements Part
+    {
+        private final Part[] parts;
+
+        private Where(Part[] parts)
+        {
+            this.parts = parts;
+        }
+
+        @Override
+        public void render(Frame frame)
+        {
+            int start = frame.sql.length();
+            for ( Part part : parts ) part.render(frame);
+            if ( strip(frame.sql, start) ) frame.sql.insert(start, "WHERE ");
+        }
+    }
+
+    private static final class Trim implements Part
+    {
+        private final String prefix;
+        private final String suffix;
+        private final String[] prefixOverrides;
+        private final String[] suffixOverrides;
+        private final Part[] parts;
+
+        private Trim(String prefix, String suffix, String[] prefixOverrides, String[] suffixOverrides, Part[] parts)
+        {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.prefixOverrides = prefixOverrides;
+            this.suffixOverrides = suffixOverrides;
+            this.parts = parts;
+        }
+
+        @Override
+        public void render(Frame frame)
+        {
+            StringBuilder sb = frame.sql;
+            int start = sb.length();
+            for ( Part part : parts ) part.render(frame);
+            if ( !strip(sb, start) ) return;
+
+            for ( String override : prefixOverrides )
+            {
+                if ( regionMatches(sb, start, override) )
+                {
+                    sb.delete(start, start + override.length());
+                    break;
+                }
+            }
+            for ( String override : suffixOverrides )
+            {
+                int from = sb.length() - override.length();
+                if ( from >= start && regionMatches(sb, from, override) )
+                {
+                    sb.setLength(from);
+                    break;
+                }
+            }
+            if ( !strip(sb, start) ) return;
+
+            if ( prefix != null ) sb.insert(start, prefix);
+            if ( suffix != null ) sb.append(suffix);
+        }
+    }
+
+    private static final class If implements Part
+    {
+        private final Condition test;
+        private final Part[] parts;
+
+        private If(Condition test, Part[] parts)
+        {
+            this.test = test;
+            this.parts = parts;
+        }
+
+        @Override
+        public void render(Frame frame)
+        {
+            if ( !test.test(frame) ) return;
+            for ( Part part : parts ) part.render(frame);
+        }
+    }
+
+    private static final class Choose implements Part
+    {
+        private final Condition[] tests;
+        private final Part[][] whens;
+        private final Part[] otherwise;
+
+        private Choose(Condition[] tests, Part[][] whens, Part[] otherwise)
+        {
+            this.tests = tests;
+            this.whens = whens;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public void render(Frame frame)
+        {
+            Part[] matched = otherwise;
+            for ( int i = 0; i < tests.length; ++i )
+            {
+                if ( tests[i].test(frame) )
+                {
+                    matched = whens[i];
+                    break;
+                }
+            }
+            for ( Part part : matched ) part.render(frame);
+        }
+    }
+
+    private static final class Foreach implements Part
+    {
+        private final String collection;
+        private final String itemName;
+        private final String separator;
+        private final String prefix;
+        private final String suffix;
+        private final Part[] parts;
+
+        private Foreach(String collection, String itemName, String separator, String prefix, String suffix, Part[] parts)
+        {
+            this.collection = collection;
+            this.itemName = itemName;
+            this.separator = separator;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.parts = parts;
+        }
+
+        @Override
+        public void render(Frame frame)
+        {
+            Object items = frame.lookup(collection);
+            if ( items == null ) return;
+            if ( items instanceof Object[] ) items = Arrays.asList((Object[]) items);
+            if ( !(items instanceof Iterable) ) throw new IllegalArgumentException("Foreach collection " + collection + " is not iterable!");
+
+            StringBuilder sb = frame.sql;
+            String outerName = frame.itemName;
+            Object outerItem = frame.item;
+            int begin = sb.length();
+            try
+            {
+                frame.itemName = itemName;
+                for ( Object item : (Iterable<?>) items )
+                {
+                    frame.item = item;
+                    int start = sb.length();
+                    for ( Part part : parts ) part.render(frame);
+                    if ( strip(sb, start) && start > begin ) sb.insert(start, separator);
+                }
+            }
+            finally
+            {
+                frame.itemName = outerName;
+                frame.item = outerItem;
+            }
+
+            if ( sb.length() == begin ) return;
+            if ( prefix != null ) sb.insert(begin, prefix);
+            if ( suffix != null ) sb.append(suffix);
+        }
+    }
+
+    private interface Condition
+    {
+        boolean test(Frame frame);
+    }
+
+    private static final class Compare implements Condition
+    {
+        private final Binding binding;
+        private final Object literal;
+        private final boolean negate;
+
+        private Compare(Binding binding, Object literal, boolean negate)
+        {
+            this.binding = binding;
+            this.literal = literal;
+            this.negate = negate;
+        }
+
+        @Override
+        public boolean test(Frame frame)
+        {
+            Object value = binding.resolve(frame);
+            boolean equal;
+            if ( value == null || literal == null )
+                equal = value == literal;
+            else if ( value instanceof Number && literal instanceof Number )
+                equal = ((Number) value).doubleValue() == ((Number) literal).doubleValue();
+            else
+                equal = literal.equals(value instanceof Character ? value.toString() : value);
+            return equal != negate;
+        }
+    }
+
+    private static final class FelCondition implements Condition
+    {
+        private final String expression;
+
+        private FelCondition(String expression)
+        {
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean test(Frame frame)
+        {
+            return predicates.test(expression, frame.context);
+        }
+    }
+
+    private static final class Binding
+    {
+        private final boolean itemScope;
+        private final String root;
+        private final PropertyReader[] path;
+
+        private Binding(String name)
+        {
+            itemScope = name.startsWith(".");
+            String[] names = (itemScope ? name.substring(1) : name).split("\\.");
+
+            int skip = itemScope ? 0 : 1;
+            root = itemScope ? null : names[0];
+            path = new PropertyReader[names.length - skip];
+            for ( int i = 0; i < path.length; ++i ) path[i] = new PropertyReader(names[i + skip]);
+        }
+
+        private Object resolve(Frame frame)
+        {
+            Object value = itemScope ? frame.item : frame.lookup(root);
+            for ( int i = 0; i < path.length && value != null; ++i ) value = path[i].get(value);
+            return value;
+        }
+    }
+
+    // 去掉 start 之后的首尾空白, 返回是否还有内容
+    private static boolean strip(StringBuilder sb, int start)
+    {
+        int end = sb.length();
+        while ( end > start && Character.isWhitespace(sb.charAt(end - 1)) ) --end;
+        sb.setLength(end);
+
+        int i = start;
+        while ( i < end && Character.isWhitespace(sb.charAt(i)) ) ++i;
+        if ( i > start ) sb.delete(start, i);
+        return sb.length() > start;
+    }
+
+    private static boolean regionMatches(StringBuilder sb, int from, String text)
+    {
+        if ( text.length() == 0 || sb.length() - from < text.length() ) return false;
+        for ( int i = 0; i < text.length(); ++i )
+        {
+            if ( sb.charAt(from + i) != text.charAt(i) ) return false;
+        }
+        return true;
+    }
+
+    private static final class Compiler
+    {
+        private final String id;
+        private final Map<String, Element> elementMap;
+        private final List<String> including = new ArrayList<>();
+
+        private Compiler(String id, Map<String, Element> elementMap)
+        {
+            this.id = id;
+            this.elementMap = elementMap;
+        }
+
+        private Part[] compileContents(Element element)
+        {
+            List<Part> parts = new ArrayList<>();
+            for ( Node node : element.getContents() ) compile(node, parts);
+            return parts.toArray(new Part[0]);
+        }
+
+        private void compile(Node node, List<Part> parts)
+        {
+            if ( node instanceof XmlText )
+            {
+                add(parts, compileText(((XmlText) node).getText()));
+                return;
+            }
+            if ( !(node instanceof Element) ) return;
+
+            Element element = (Element) node;
+            switch ( element.getName() )
+            {
+                case "WHERE":
+                    parts.add(new Where(compileContents(element)));
+                    break;
+                case "TRIM":
+                    parts.add(new Trim(element.getAttributeByName("prefix"), element.getAttributeByName("suffix"),
+                        split(element.getAttributeByName("prefixOverrides")), split(element.getAttributeByName("suffixOverrides")),
+                        compileContents(element)));
+                    break;
+                case "IF":
+                    if ( element.hasAttribute("test") ) parts.add(new If(predicate(element), compileContents(element)));
+                    break;
+                case "CHOOSE":
+                    parts.add(compileChoose(element));
+                    break;
+                case "FOREACH":
+                    parts.add(compileForeach(element));
+                    break;
+                case "INCLUDE":
+                    compileInclude(element, parts);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported tag <" + element.getName() + "> in " + id);
+            }
+        }
+
+        private Part compileChoose(Element element)
+        {
+            List<Condition> tests = new ArrayList<>();
+            List<Part[]> whens = new ArrayList<>();
+            Part[] otherwise = new Part[0];
+
+            for ( Node node : element.getContents() )
+            {
+                if ( !(node instanceof Element) ) continue;
+                Element child = (Element) node;
+                if ( child.getName().equals("WHEN") && child.hasAttribute("test") )
+                {
+                    tests.add(predicate(child));
+                    whens.add(compileContents(child));
+                }
+                else if ( child.getName().equals("OTHERWISE") )
+                {
+                    otherwise = compileContents(child);
+                }
+            }
+            return new Choose(tests.toArray(new Condition[0]), whens.toArray(new Part[0][]), otherwise);
+        }
+
+        private Part compileForeach(Element element)
+        {
+            String collection = element.getAttributeByName("collections");
+            if ( collection == null ) collection = element.getAttributeByName("collection");
+            if ( collection == null ) collection = "list";
+
+            String separator = element.getAttributeByName("separator");
+            return new Foreach(collection, element.getAttributeByName("item"), separator == null ? "" : separator,
+                element.getAttributeByName("prefix"), element.getAttributeByName("suffix"), compileContents(element));
+        }
+
+        private void compileInclude(Element element, List<Part> parts)
+        {
+            String refId = element.getAttributeByName("refid");
+            Element ref = elementMap.get(refId);
+            if ( ref == null ) return;
+            if ( including.contains(refId) ) throw new IllegalArgumentException("Recursive include " + refId + " in " + id);
+
+            including.add(refId);
+            for ( Node node : ref.getContents() ) compile(node, parts);
+            including.remove(refId);
+        }
+
+        private Condition predicate(Element element)
+        {
+            String test = element.getAttributeByName("test");
+
+            Matcher matcher = COMPARE.matcher(test);
+            if ( matcher.matches() ) return new Compare(new Binding(matcher.group(1)), literal(matcher.group(3)), matcher.group(2).equals("!="));
+
+            return new FelCondition(test);
+        }
+
+        // 相邻的文本片段合并成一个, 渲染时只 append 一次
+        private static void add(List<Part> parts, Text text)
+        {
+            int last = parts.size() - 1;
+            if ( last >= 0 && parts.get(last) instanceof Text )
+                parts.set(last, ((Text) parts.get(last)).merge(text));
+            else
+                parts.add(text);
+        }
+
+        private static Text compileText(String text)
+        {
+            StringBuilder sql = new StringBuilder(text.length());
+            List<Binding> bindings = new ArrayList<>(4);
+
+            int index = 0;
+            while ( index < text.length() )
+            {
+                int open = text.indexOf('{', index);
+                int close = open < 0 ? -1 : text.indexOf('}', open);
+                if ( close < 0 )
+                {
+                    sql.append(text, index, text.length());
+                    break;
+                }
+
+                int end = open > index && text.charAt(open - 1) == '#' ? open - 1 : open;
+                sql.append(text, index, end).append('?');
+                bindings.add(new Binding(text.substring(open + 1, close).trim()));
+                index = close + 1;
+            }
+            return new Text(sql.toString(), bindings.toArray(new Binding[0]));
+        }
+
+        private static Object literal(String text)
+        {
+            if ( text.equals("null") ) return null;
+            if ( text.equals("true") || text.equals("false") ) return Boolean.valueOf(text);
+            if ( text.charAt(0) == '\'' || text.charAt(0) == '"' ) return text.substring(1, text.length() - 1);
+            return text.indexOf('.') < 0 ? (Object) Long.valueOf(text) : (Object) Double.valueOf(text);
+        }
+
+        private static String[] split(String overrides)
+        {
+            if ( overrides == null || overrides.length() == 0 ) return new String[0];
+            return overrides.split("\\|");
+        }
+    }
+}
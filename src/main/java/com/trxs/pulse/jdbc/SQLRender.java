@@ -1,10 +1,6 @@
 package com.trxs.pulse.jdbc;
 
 import com.esotericsoftware.reflectasm.MethodAccess;
-import com.fel.Expression;
-import com.fel.FelEngine;
-import com.fel.FelEngineImpl;
-import com.fel.context.FelContext;
 import com.trxs.commons.util.ObjectStack;
 import com.trxs.commons.util.TextFormatTools;
 import com.trxs.commons.xml.Element;
@@ -27,7 +23,6 @@ public class SQLRender
 {
     protected static Logger logger = LoggerFactory.getLogger(SQLRender.class );
     private static MethodAccess access;
-    private static FelEngine engine;
     private static Unsafe unsafe = getUnsafe();
     private static long valueOffset = -1;
 
@@ -36,11 +31,11 @@ public class SQLRender
     private ObjectStack<StringBuilder> builderPool = new ObjectStack(256);
 
     protected final Map<String, Element> elementMap = new HashMap<>();
+    protected final Map<String, SQLPlan> planMap = new HashMap<>();
 
     static
     {
         access = MethodAccess.get(SQLRender.class);
-        engine = new FelEngineImpl();
         try
         {
             Field field = ArrayList.class.getDeclaredField("elementData");
@@ -63,9 +58,27 @@ public class SQLRender
         {
             if ( node.getId().length() > 0 ) elementMap.put(node.getId(), (Element) node);
         });
+
+        // 每个带 id 的语句在加载时编译成渲染计划, render 不再遍历 Element 树
+        elementMap.forEach( (id, element) -> planMap.put(id, SQLPlan.compile(element, elementMap)) );
     }
 
     public SQLAction render(final String id, final Map<String, Object> context )
+    {
+        SQLPlan plan = planMap.get(id);
+        if ( plan == null ) throw new IllegalArgumentException("SQL template " + id + " not found!");
+        return plan.render(context);
+    }
+
+    public SQLPlan getPlan(final String id)
+    {
+        return planMap.get(id);
+    }
+
+    /**
+     * 逐节点解释执行模板, 编译前的渲染方式, 保留作对照
+     */
+    public SQLAction interpret(final String id, final Map<String, Object> context )
     {
 
         Element element = elementMap.get(id);
@@ -249,21 +262,12 @@ public class SQLRender
         builderPool.push(sb);
     }
 
-    private Map<String, Expression> expressionMap = new HashMap<>();
+    private PredicateCache predicateCache = PredicateCache.getInstance();
 
+    // 直接对调用方的参数求值, 不再复制到共享的 FelContext
     private Object eval(Map<String, Object> context, String expression)
     {
-        final FelContext ctx = engine.getContext();
-        context.forEach( (key,value) -> ctx.set(key,value) );
-        Expression compile = expressionMap.get(expression);
-        if ( compile == null )
-        {
-            compile = engine.compile(expression, null);
-            expressionMap.put(expression,compile);
-        }
-
-        Object result = compile.eval(ctx);
-        return result;
+        return predicateCache.test(expression, context);
     }
 
     private void skipToSpace(StringBuilder sb)
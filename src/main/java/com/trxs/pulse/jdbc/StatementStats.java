@@ -0,0 +1,144 @@
+package com.trxs.pulse.jdbc;
+
+import com.trxs.commons.util.LatencyHistogram;
+import com.trxs.sql.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按语句指纹统计执行次数、耗时分布、影响行数和出错次数
+ *
+ * 指纹由 Tokenizer.fingerprint 生成, 常量不同的语句归为同一项; 指纹数量有上限, 超出后的新语句记在 OTHER 项下
+ */
+public final class StatementStats
+{
+    public static final String OTHER = "<other>";
+
+    private static final StatementStats instance = new StatementStats(1024);
+
+    private final ConcurrentHashMap<String, Stat> statMap = new ConcurrentHashMap<>(256);
+    private final ConcurrentHashMap<String, String> fingerprintMap = new ConcurrentHashMap<>(256);
+    private final int maxSize;
+
+    public StatementStats(int maxSize)
+    {
+        if ( maxSize <= 0 ) throw new IllegalArgumentException("maxSize must be positive!");
+        this.maxSize = maxSize;
+    }
+
+    public static StatementStats getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * @param nanos 执行耗时
+     * @param rows  影响或返回的行数, 未知时传 -1
+     */
+    public void record(String sql, long nanos, long rows, boolean error)
+    {
+        String fingerprint = sql == null ? OTHER : fingerprintOf(sql);
+        Stat stat = statMap.get(fingerprint);
+        if ( stat == null )
+        {
+            // OTHER 项也占一个位置
+            if ( statMap.size() >= maxSize - 1 ) fingerprint = OTHER;
+            stat = statMap.computeIfAbsent(fingerprint, key -> new Stat(key, sql));
+        }
+        stat.record(nanos, rows, error);
+    }
+
+    public String fingerprintOf(String sql)
+    {
+        String fingerprint = fingerprintMap.get(sql);
+        if ( fingerprint != null ) return fingerprint;
+
+        // 拼接了常量的语句文本各不相同, 只缓存前 maxSize * 4 条
+        fingerprint = new Tokenizer().fingerprint(sql);
+        if ( fingerprintMap.size() < maxSize * 4 ) fingerprintMap.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    public int size()
+    {
+        return statMap.size();
+    }
+
+    public void reset()
+    {
+        statMap.clear();
+    }
+
+    public Map<String, Object> get(String fingerprint)
+    {
+        Stat stat = statMap.get(fingerprint);
+        return stat == null ? null : stat.snapshot();
+    }
+
+    /**
+     * @param top  按累计耗时取前 top 项
+     */
+    public List<Map<String, Object>> snapshot(int top)
+    {
+        List<Stat> stats = new ArrayList<>(statMap.values());
+        stats.sort(Comparator.comparingLong((Stat stat) -> stat.totalNanos.sum()).reversed());
+
+        List<Map<String, Object>> result = new ArrayList<>(Math.min(top, stats.size()));
+        for ( int i = 0; i < stats.size() && i < top; ++i ) result.add(stats.get(i).snapshot());
+        return result;
+    }
+
+    private static final class Stat
+    {
+        private final String fingerprint;
+        private final String sample;
+        private final LatencyHistogram latency;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private Stat(String fingerprint, String sample)
+        {
+            this.fingerprint = fingerprint;
+            this.sample = sample;
+            this.latency = new LatencyHistogram(fingerprint);
+        }
+
+        private void record(long nanos, long affected, boolean error)
+        {
+            calls.increment();
+            if ( error ) errors.increment();
+            if ( affected > 0 ) rows.add(affected);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            latency.record(nanos / 1_000_000L);
+        }
+
+        // 直方图按毫秒分桶, 平均值和最大值用纳秒累计后换算为微秒
+        private Map<String, Object> snapshot()
+        {
+            long count = calls.sum(), total = totalNanos.sum();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("fingerprint", fingerprint);
+            result.put("sample", sample);
+            result.put("calls", count);
+            result.put("errors", errors.sum());
+            result.put("rows", rows.sum());
+            result.put("totalMillis", total / 1_000_000L);
+            result.put("meanMicros", count == 0 ? 0 : total / count / 1000L);
+            result.put("maxMicros", maxNanos.get() / 1000L);
+            result.put("latency", latency.snapshot());
+            return result;
+        }
+    }
+}
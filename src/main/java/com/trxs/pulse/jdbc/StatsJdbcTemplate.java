@@ -0,0 +1,100 @@
+package com.trxs.pulse.jdbc;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.core.StatementCallback;
+
+import java.util.Collection;
+
+/**
+ * 记录语句统计的 JdbcTemplate: query / update / batchUpdate 最终都经过两个 execute 方法, 在这里计时并按语句指纹汇总
+ *
+ * 行数取自返回值: update 的影响行数、batchUpdate 各批之和、query 返回的 List 大小; 用 RowCallbackHandler 等回调读取的查询行数未知
+ */
+public class StatsJdbcTemplate extends JdbcTemplate
+{
+    private final StatementStats stats;
+
+    public StatsJdbcTemplate(JdbcTemplate source, StatementStats stats)
+    {
+        super(source.getDataSource());
+        setExceptionTranslator(source.getExceptionTranslator());
+        setIgnoreWarnings(source.isIgnoreWarnings());
+        setFetchSize(source.getFetchSize());
+        setMaxRows(source.getMaxRows());
+        setQueryTimeout(source.getQueryTimeout());
+        setSkipResultsProcessing(source.isSkipResultsProcessing());
+        setSkipUndeclaredResults(source.isSkipUndeclaredResults());
+        setResultsMapCaseInsensitive(source.isResultsMapCaseInsensitive());
+        this.stats = stats;
+    }
+
+    public static JdbcTemplate wrap(JdbcTemplate jdbcTemplate)
+    {
+        if ( jdbcTemplate == null || jdbcTemplate instanceof StatsJdbcTemplate ) return jdbcTemplate;
+        return new StatsJdbcTemplate(jdbcTemplate, StatementStats.getInstance());
+    }
+
+    public StatementStats getStats()
+    {
+        return stats;
+    }
+
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) throws DataAccessException
+    {
+        String sql = psc instanceof SqlProvider ? ((SqlProvider) psc).getSql() : null;
+        long t0 = System.nanoTime();
+        try
+        {
+            T result = super.execute(psc, action);
+            stats.record(sql, System.nanoTime() - t0, rowsOf(result), false);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            stats.record(sql, System.nanoTime() - t0, -1, true);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> T execute(StatementCallback<T> action) throws DataAccessException
+    {
+        String sql = action instanceof SqlProvider ? ((SqlProvider) action).getSql() : null;
+        long t0 = System.nanoTime();
+        try
+        {
+            T result = super.execute(action);
+            stats.record(sql, System.nanoTime() - t0, rowsOf(result), false);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            stats.record(sql, System.nanoTime() - t0, -1, true);
+            throw e;
+        }
+    }
+
+    private static long rowsOf(Object result)
+    {
+        if ( result instanceof Integer ) return (Integer) result;
+        if ( result instanceof Collection ) return ((Collection<?>) result).size();
+        if ( result instanceof int[] )
+        {
+            long rows = 0;
+            for ( int count : (int[]) result ) if ( count > 0 ) rows += count;
+            return rows;
+        }
+        if ( result instanceof int[][] )
+        {
+            long rows = 0;
+            for ( int[] counts : (int[][]) result ) for ( int count : counts ) if ( count > 0 ) rows += count;
+            return rows;
+        }
+        return -1;
+    }
+}
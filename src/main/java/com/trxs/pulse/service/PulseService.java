@@ -1,11 +1,15 @@
 package com.trxs.pulse.service;
 
+import com.trxs.pulse.data.TaskJob;
 import com.trxs.pulse.jdbc.BaseService;
 import com.trxs.pulse.jdbc.Record;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 @Service
 public class PulseService extends BaseService
@@ -35,4 +39,22 @@ public class PulseService extends BaseService
 
         return;
     }
+
+    /**
+     * 批量写入 p_tasks, 一次调用可以排期成千上万个任务
+     *
+     * @param tasks 任务的 jobType, jobId 与 expectTime(plan_time)
+     * @return 写入的记录, id 为生成的主键
+     */
+    public List<Record> scheduleTasks(List<TaskJob> tasks)
+    {
+        List<Record> records = new ArrayList<>(tasks.size());
+        for ( TaskJob task : tasks )
+        {
+            records.add(Record.newInstance("p_tasks").setField("jobType", task.getJobType()).setField("jobId", task.getJobId())
+                .setField("state", 0).setField("planTime", task.getExpectTime()));
+        }
+        saveAll(records);
+        return records;
+    }
 }
@@ -3,6 +3,9 @@ package com.trxs.sql;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 public class Tokenizer
 {
     private static Logger logger = LoggerFactory.getLogger(Tokenizer.class );
@@ -47,13 +50,13 @@ public class Tokenizer
 
     public boolean isSpace(char ch)
     {
-        if ( ch > spaceChecker.length ) return false;
+        if ( ch >= spaceChecker.length ) return false;
         return spaceChecker[ch] == 1;
     }
 
     public boolean isSeparator(char ch)
     {
-        if ( ch > separatorChecker.length ) return false;
+        if ( ch >= separatorChecker.length ) return false;
         return separatorChecker[ch] == 1;
     }
 
@@ -127,9 +130,10 @@ public class Tokenizer
     {
         if ( index < 0 ) return -1;
 
-        while (index < chars.length) if ( separatorChecker[chars[index]] != 1 ) ++index; else return index;
+        while (index < chars.length) if ( !isSeparator(chars[index]) ) ++index; else return index;
 
-        int result = index-1;
+        // 文本末尾的标识符, 结束位置是文本长度
+        int result = index;
         index = -1;
         return result;
     }
@@ -149,6 +153,11 @@ public class Tokenizer
     private int peek()
     {
         if ( index < 0 ) return -1;
+        if ( index >= chars.length )
+        {
+            index = -1;
+            return -1;
+        }
 
         int result = chars[index];
         char ch = (char) result;
@@ -193,6 +202,130 @@ public class Tokenizer
         return textBuilder.toString();
     }
 
+    /**
+     * 语句指纹: 数字和字符串常量替换为 ?, IN 列表和多行 VALUES 合并为一项, 关键字大写, 空白压缩为一个空格
+     *
+     * 只有常量不同的语句得到相同的指纹, 例如 "select * from t where id in (1, 2)" -> "SELECT * FROM t WHERE id IN ( ? )"
+     */
+    public String fingerprint(String text)
+    {
+        StringBuilder builder = new StringBuilder(text.length());
+        load(text);
+
+        Token token;
+        int next;
+        while ( (next = peek()) >= 0 && (token = advance()) != null && token.getType() != TokenType.EOF )
+        {
+            String word = token.getText();
+            if ( token.getType() == TokenType.STRING && next != '`' && next != '{' )
+            {
+                skipEscapedQuotes((char) next, word);
+                word = "?";
+            }
+            else if ( token.getType() == TokenType.STRING && next == '`' )
+                word = "`" + word + "`";
+            else if ( token.getType() == TokenType.MARKER && isNumber(word) )
+                word = "?";
+            else if ( token.getType() == TokenType.KEY || isKeyword(word) )
+                word = word.toUpperCase();
+            else if ( word.endsWith(";") )
+                word = word.substring(0, word.length() - 1);
+
+            if ( word.isEmpty() ) continue;
+            if ( builder.length() > 0 ) builder.append(' ');
+            builder.append(word);
+        }
+
+        // ( ?, ?, ? ) -> ( ? ), ( ? ), ( ? ) -> ( ? )
+        return builder.toString().replaceAll("\\( \\?( , \\?)+ \\)", "( ? )").replaceAll("\\( \\? \\)( , \\( \\? \\))+", "( ? )");
+    }
+
+    // 常量中转义的引号: 'it''s' 或 'it\'s', advance 在第一个引号处就结束了, 这里跳到常量真正的结尾
+    private void skipEscapedQuotes(char quote, String text)
+    {
+        while ( index > 0 )
+        {
+            int slashes = 0;
+            for ( int i = text.length() - 1; i >= 0 && text.charAt(i) == '\\'; --i ) ++slashes;
+
+            boolean escaped = slashes % 2 == 1;
+            if ( !escaped && (index >= chars.length || chars[index] != quote) ) return;
+            if ( !escaped ) ++index;
+
+            int beginIndex = index;
+            int endIndex = skipToChar(quote);
+            if ( index < 0 ) return;
+            text = new String(chars, beginIndex, endIndex - beginIndex);
+        }
+    }
+
+    private static final String[] FINGERPRINT_KEYS = { "IN", "AND", "OR", "NOT", "NULL", "IS", "JOIN", "LEFT", "RIGHT", "INNER", "ON", "INTO", "VALUES", "VALUE", "SET", "HAVING", "OFFSET", "DESC", "ASC", "BETWEEN", "LIKE", "UNION", "DISTINCT", "COUNT" };
+
+    private static boolean isKeyword(String word)
+    {
+        for ( String key : FINGERPRINT_KEYS ) if ( key.equalsIgnoreCase(word) ) return true;
+        return false;
+    }
+
+    // 以数字开头, 或 .5 这样的小数
+    private static boolean isNumber(String word)
+    {
+        if ( word.isEmpty() ) return false;
+        char ch = word.charAt(0);
+        return Character.isDigit(ch) || ch == '.' && word.length() > 1 && Character.isDigit(word.charAt(1));
+    }
+
+    /**
+     * 找出语句读写的表: FROM / JOIN / INTO / UPDATE 之后的表名, 以及 FROM 后逗号分隔的表
+     *
+     * @return 小写、去掉库名和反引号的表名
+     */
+    public Set<String> tables(String text)
+    {
+        Set<String> tables = new LinkedHashSet<>(4);
+        boolean expectTable = false, fromList = false;
+        String previous = "";
+        load(text);
+
+        Token token;
+        while ( (token = advance()) != null && token.getType() != TokenType.EOF )
+        {
+            String word = token.getText(), before = previous;
+            previous = word;
+            if ( token.getType() == TokenType.SEPARATOR )
+            {
+                if ( word.equals(",") && fromList ) expectTable = true;
+                else if ( word.equals(")") ) fromList = expectTable = false;
+                else expectTable = false;
+                continue;
+            }
+
+            if ( expectTable && token.getType() != TokenType.KEY )
+            {
+                String table = word.endsWith(";") ? word.substring(0, word.length() - 1) : word;
+                int dot = table.lastIndexOf('.');
+                if ( dot >= 0 ) table = table.substring(dot + 1);
+                if ( table.length() > 0 ) tables.add(table.toLowerCase());
+                expectTable = false;
+                continue;
+            }
+
+            switch ( word.toUpperCase() )
+            {
+                case "FROM":   expectTable = fromList = true; break;
+                case "JOIN":
+                case "INTO":   expectTable = true; fromList = false; break;
+                // ON DUPLICATE KEY UPDATE 之后是列名
+                case "UPDATE": expectTable = !before.equalsIgnoreCase("KEY"); fromList = false; break;
+                case "WHERE": case "GROUP": case "ORDER": case "LIMIT": case "HAVING": case "ON": case "USING":
+                case "SET": case "VALUES": case "VALUE": case "UNION": case "SELECT":
+                    expectTable = fromList = false; break;
+                default:       expectTable = false;
+            }
+        }
+        return tables;
+    }
+
     public void test()
     {
     }
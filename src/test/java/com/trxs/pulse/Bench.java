@@ -0,0 +1,24 @@
+package com.trxs.pulse;
+
+import org.junit.Assume;
+
+/**
+ * 计时循环、堆占用对比这类基准测试只输出数字, 耗时长且受机器负载和 GC 影响
+ * 默认跳过, mvn test -Pbench 或 -Dpulse.bench=true 时执行
+ */
+final class Bench
+{
+    private Bench()
+    {
+    }
+
+    static boolean enabled()
+    {
+        return Boolean.getBoolean("pulse.bench");
+    }
+
+    static void assumeEnabled()
+    {
+        Assume.assumeTrue("benchmark skipped, run with -Pbench", enabled());
+    }
+}
@@ -0,0 +1,135 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.cluster.ClusterMembership;
+import com.trxs.pulse.cluster.ConsistentHashRing;
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.MisfirePolicy;
+import com.trxs.pulse.data.TaskJob;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterMembershipTests
+{
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:cluster;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_instances");
+        jdbcTemplate.execute("CREATE TABLE p_instances ( host_name VARCHAR(64) NOT NULL PRIMARY KEY, last_access_time DATETIME NULL )");
+    }
+
+    @Test
+    public void testRingBalance()
+    {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a:81", "b:81", "c:81"), 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for ( int id = 1; id <= 300_000; ++id ) counts.merge(ring.ownerOf(id), 1, Integer::sum);
+
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue("unbalanced " + counts, Math.abs(count - 100_000) < 15_000));
+
+        // 去掉一个实例, 只有它负责的 id 会迁移
+        ConsistentHashRing smaller = new ConsistentHashRing(Arrays.asList("a:81", "b:81"), 160);
+        for ( int id = 1; id <= 10_000; ++id )
+        {
+            if ( !"c:81".equals(ring.ownerOf(id)) ) assertEquals(ring.ownerOf(id), smaller.ownerOf(id));
+        }
+    }
+
+    @Test
+    public void testExclusiveOwnershipAndRebalance()
+    {
+        long now = System.currentTimeMillis();
+        ClusterMembership a = new ClusterMembership(jdbcTemplate, "a:81", 1000, 5000, 160);
+        ClusterMembership b = new ClusterMembership(jdbcTemplate, "b:81", 1000, 5000, 160);
+
+        a.heartbeat(now);
+        b.heartbeat(now);
+        a.heartbeat(now);
+
+        assertEquals(2, a.getRing().getMembers().size());
+        for ( int id = 1; id <= 10_000; ++id ) assertTrue(a.owns(id) ^ b.owns(id));
+
+        // b 停止心跳, 超时后 a 接管全部 id
+        a.heartbeat(now + 6000);
+        assertEquals(Arrays.asList("a:81"), a.getRing().getMembers());
+        for ( int id = 1; id <= 10_000; ++id ) assertTrue(a.owns(id));
+
+        a.leave();
+        assertFalse(a.owns(1));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_instances", Integer.class).intValue());
+    }
+
+    // 关闭时删除自身的行, 其余实例下一次心跳就接管全部 id; 之后不再写回心跳
+    @Test
+    public void testShutdownLeaves() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        ClusterMembership a = new ClusterMembership(jdbcTemplate, "a:81", 1000, 5000, 160);
+        ClusterMembership b = new ClusterMembership(jdbcTemplate, "b:81", 1000, 5000, 160);
+        a.heartbeat(now);
+        b.heartbeat(now);
+
+        Thread heartbeat = new Thread(a::heartbeatRunnable);
+        heartbeat.start();
+        a.shutdown();
+        heartbeat.join(5000);
+        assertFalse(heartbeat.isAlive());
+
+        assertFalse(a.isActive());
+        a.heartbeat(now);
+        assertEquals(Arrays.asList("b:81"), jdbcTemplate.queryForList("SELECT host_name FROM p_instances", String.class));
+
+        b.heartbeat(now);
+        assertEquals(Arrays.asList("b:81"), b.getRing().getMembers());
+        for ( int id = 1; id <= 1000; ++id ) assertTrue(b.owns(id));
+    }
+
+    // 心跳中断期间 cron 不触发, 只推进到下一次; 心跳恢复后照常触发
+    @Test
+    public void testCronFencedWhileInactive()
+    {
+        ClusterMembership a = new ClusterMembership(jdbcTemplate, "a:81", 1000, 5000, 160);
+        TimerServer timerServer = new TimerServer();
+        ReflectionTestUtils.setField(timerServer, "clusterMembership", a);
+        timerServer.init();
+        List<TaskJob> dispatched = new ArrayList<>();
+        timerServer.registerHandler(0, dispatched::add);
+
+        long now = System.currentTimeMillis();
+        a.heartbeat(now - 20_000);
+        assertFalse(a.isActive());
+
+        CronJob cronJob = new CronJob(7, "* * * * * ?", 0, 107, MisfirePolicy.FIRE_ALL_MISSED);
+        cronJob.setExpectTime(new Date(now - 1000));
+        timerServer.addJobs(Collections.singletonList(cronJob));
+        timerServer.scanTimerMessageQueue(now);
+        assertEquals(0, dispatched.size());
+        assertEquals(1L, timerServer.getMisfireStats().get("cronFenced"));
+        assertTrue(timerServer.containsJob(-7));
+        assertTrue(cronJob.getExpectTime().getTime() > now);
+
+        a.heartbeat(System.currentTimeMillis());
+        timerServer.scanTimerMessageQueue(cronJob.getExpectTime().getTime());
+        assertEquals(1, dispatched.size());
+        assertEquals(-7, dispatched.get(0).getId().intValue());
+    }
+}
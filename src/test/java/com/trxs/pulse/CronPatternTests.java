@@ -0,0 +1,111 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.data.CronExpression;
+import com.trxs.pulse.data.CronPattern;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CronPatternTests
+{
+    private static Logger logger = LoggerFactory.getLogger(CronPatternTests.class);
+
+    private static final String[] expressions =
+    {
+        "0/5 * 16-23 3,4 3 ? *",
+        "0 30 2 L * ? *",
+        "10,20 0 0/6 * * 1-5 2019-2020",
+        "* * * * 2 ? 2020",
+        "0 0 12 * * L",
+        "0 15 10 1-7 * 1",
+    };
+
+    @Test
+    public void testMatches()
+    {
+        CronPattern pattern = CronPattern.compile("0/5 * 16-23 3,4 3 ? *");
+        assertTrue(pattern.matches(new DateTime(2019, 3, 3, 16, 0, 5)));
+        assertFalse(pattern.matches(new DateTime(2019, 3, 3, 16, 0, 6)));
+        assertFalse(pattern.matches(new DateTime(2019, 3, 5, 16, 0, 5)));
+
+        CronPattern last = CronPattern.compile("0 0 0 L * ?");
+        assertTrue(last.matches(new DateTime(2020, 2, 29, 0, 0, 0)));
+        assertFalse(last.matches(new DateTime(2019, 2, 28, 0, 0, 1)));
+        assertTrue(last.matches(new DateTime(2019, 2, 28, 0, 0, 0)));
+    }
+
+    @Test
+    public void testNextFireTimeAgreesWithScan()
+    {
+        long begin = new DateTime(2019, 2, 25, 0, 0, 0).getMillis();
+        long end   = new DateTime(2019, 3, 12, 0, 0, 0).getMillis();
+
+        for ( String expression : expressions )
+        {
+            CronPattern pattern = CronPattern.compile(expression);
+            long next = pattern.nextFireTime(begin - 1000);
+            for ( long t = begin; t < end; t += 1000 )
+            {
+                if ( !pattern.matches(t) ) continue;
+                assertEquals(expression + " @ " + new DateTime(t), t, next);
+                next = pattern.nextFireTime(t);
+            }
+            assertTrue(expression, next < 0 || next >= end);
+        }
+    }
+
+    @Test
+    public void testNextFireTimeOutOfYears()
+    {
+        CronPattern pattern = CronPattern.compile("0 0 0 1 1 ? 2019");
+        assertEquals(new DateTime(2019, 1, 1, 0, 0, 0).getMillis(), pattern.nextFireTime(new DateTime(2018, 6, 1, 0, 0, 0).getMillis()));
+        assertEquals(-1, pattern.nextFireTime(new DateTime(2019, 1, 1, 0, 0, 0).getMillis()));
+    }
+
+    // 不同文本的表达式再多, 缓存也不超过上限; 相同文本仍返回缓存的 pattern
+    @Test
+    public void testCacheIsBounded()
+    {
+        Map<?, ?> cache = (Map<?, ?>) ReflectionTestUtils.getField(CronPattern.class, "patternCache");
+        for ( int i = 0; i < 10_000; ++i ) CronPattern.compile(i % 60 + " " + i / 60 % 60 + " " + i / 3600 + " * * ?");
+        assertTrue("cache size " + cache.size(), cache.size() <= 4096);
+
+        CronPattern pattern = CronPattern.compile("0 0/7 * * * ?");
+        assertTrue(pattern == CronPattern.compile("0 0/7 * * * ?"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalField()
+    {
+        CronPattern.compile("61 * * * * ?");
+    }
+
+    @Test
+    public void benchmark()
+    {
+        DateTime now = new DateTime(2019, 3, 3, 0, 0, 0);
+        CronExpression cronExpression = new CronExpression("0/5 * 16-23 3,4 3 ? *");
+
+        int count = 0;
+        long t0 = System.currentTimeMillis();
+        DateTime t = now;
+        for ( int i = 0; i < 86400; ++i, t = t.plusSeconds(1) ) if ( cronExpression.checkTime(t) ) ++count;
+        long t1 = System.currentTimeMillis();
+
+        int jumps = 0;
+        long end = now.plusDays(1).getMillis();
+        for ( long next = cronExpression.nextFireTime(now.getMillis() - 1000); next >= 0 && next < end; next = cronExpression.nextFireTime(next) ) ++jumps;
+        long t2 = System.currentTimeMillis();
+
+        assertEquals(count, jumps);
+        logger.info("fires:{} scan 86400 seconds:{}ms nextFireTime:{}ms", count, t1 - t0, t2 - t1);
+    }
+}
@@ -0,0 +1,170 @@
+package com.trxs.pulse;
+
+import com.fel.Expression;
+import com.fel.FelEngine;
+import com.fel.FelEngineImpl;
+import com.fel.compile.AsmCompiler;
+import com.fel.compile.AstSourceGenerator;
+import com.fel.compile.CompileService;
+import com.fel.compile.FelCompiler16;
+import com.fel.compile.SourceGeneratorImpl;
+import com.fel.context.FelContext;
+import com.fel.function.CommonFunction;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FelAsmCompilerTests
+{
+    private static Logger logger = LoggerFactory.getLogger(FelAsmCompilerTests.class);
+
+    private static final String[] EXPRESSIONS =
+    {
+        "a * 3 + b > c", "(a + b) * 2 - c / 4", "a / 2", "a % 3 == 1 || b > 100", "-a + 5", "l * 2 + a", "d / 2 + a",
+        "d > 1.5 && a < 10", "!(a == b)", "!flag && a != 7", "name == 'zeng'", "name != null", "a == 7.0", "l >= 3000000",
+        "foo.size + 1", "foo.name == 'Zeng'", "1 + 2 * 3"
+    };
+
+    // SourceGeneratorImpl 生成的三元表达式不能编译, 只和解释执行比较
+    private static final String[] INTERPRETED = { "flag ? a : b", "flag ? a : d", "a < b ? name : 'none'", "!flag ? 1 : a * 2" };
+
+    private static FelEngine engine(CompileService service)
+    {
+        FelEngine fel = new FelEngineImpl();
+        fel.setCompiler(service);
+
+        FelContext ctx = fel.getContext();
+        Foo foo = new Foo();
+        foo.setName("Zeng");
+        foo.setSize(6);
+        ctx.set("a", 7);
+        ctx.set("b", 11);
+        ctx.set("c", 30);
+        ctx.set("l", 3_000_000_001L);
+        ctx.set("d", 2.5);
+        ctx.set("flag", true);
+        ctx.set("name", "zeng");
+        ctx.set("foo", foo);
+        return fel;
+    }
+
+    // 与javac生成的表达式结果一致
+    @Test
+    public void sameAsJavac()
+    {
+        FelEngine asm = engine(new CompileService(new AstSourceGenerator(), new AsmCompiler()));
+        FelEngine javac = engine(new CompileService(new SourceGeneratorImpl(), new FelCompiler16<>()));
+
+        for ( String exp : EXPRESSIONS )
+        {
+            Object expected = javac.compile(exp, javac.getContext()).eval(javac.getContext());
+            Object actual = asm.compile(exp, asm.getContext()).eval(asm.getContext());
+            assertEquals(exp, expected, actual);
+        }
+
+        for ( String exp : INTERPRETED ) assertEquals(exp, asm.eval(exp, asm.getContext()), asm.compile(exp, asm.getContext()).eval(asm.getContext()));
+    }
+
+    // 变量类型与编译时不同时退回解释执行
+    @Test
+    public void typeMiss()
+    {
+        FelEngine asm = engine(new CompileService(new AstSourceGenerator(), new AsmCompiler()));
+        FelContext ctx = asm.getContext();
+        Expression expression = asm.compile("a * 3 + b", ctx);
+        assertEquals(32, expression.eval(ctx));
+
+        ctx.set("a", 7.5);
+        assertEquals(33.5, expression.eval(ctx));
+        ctx.set("a", 7);
+        assertEquals(32, expression.eval(ctx));
+    }
+
+    // 编译时为 Integer 的变量求值时为 null, 与解释执行结果一致
+    @Test
+    public void nullVars()
+    {
+        FelEngine asm = engine(new CompileService(new AstSourceGenerator(), new AsmCompiler()));
+        FelContext ctx = asm.getContext();
+        Expression sum = asm.compile("a + b > 3", ctx);
+        Expression isNull = asm.compile("a == null", ctx);
+        assertEquals(Boolean.TRUE, sum.eval(ctx));
+        assertEquals(Boolean.FALSE, isNull.eval(ctx));
+
+        ctx.set("a", null);
+        assertEquals(asm.parse("a + b > 3").eval(ctx), sum.eval(ctx));
+        assertEquals(Boolean.TRUE, isNull.eval(ctx));
+    }
+
+    // 表达式本身抛出的 ClassCastException 照常抛出, 函数只调用一次
+    @Test
+    public void exceptionNotRetried()
+    {
+        AtomicBoolean armed = new AtomicBoolean();
+        AtomicInteger calls = new AtomicInteger();
+        FelEngine asm = engine(new CompileService(new AstSourceGenerator(), new AsmCompiler()));
+        asm.addFun(new CommonFunction()
+        {
+            @Override
+            public String getName()
+            {
+                return "boom";
+            }
+
+            @Override
+            public Object call(Object[] arguments)
+            {
+                if ( !armed.get() ) return 1;
+                calls.incrementAndGet();
+                throw new ClassCastException("boom");
+            }
+        });
+        FelContext ctx = asm.getContext();
+        Expression expression = asm.compile("a > 3 && boom() == 1", ctx);
+        armed.set(true);
+        try
+        {
+            expression.eval(ctx);
+            fail("expected ClassCastException");
+        }
+        catch (ClassCastException e)
+        {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    // 编译 10000 个不同的表达式比较耗时; javac 每个要十几毫秒, 默认只编译 500 个, -Dfel.bench.javac=10000 编译全部
+    @Test
+    public void compileSpeed()
+    {
+        Bench.assumeEnabled();
+        int count = 10_000, javacCount = Integer.getInteger("fel.bench.javac", 500);
+        FelEngine asm = engine(new CompileService(new AstSourceGenerator(), new AsmCompiler()));
+        FelEngine javac = engine(new CompileService(new SourceGeneratorImpl(), new FelCompiler16<>()));
+        for ( int i = 0; i < 100; ++i )
+        {
+            asm.compile("a * " + i + " + b > c", asm.getContext());
+            javac.compile("a * " + i + " + b > c", javac.getContext());
+        }
+
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) asm.compile("a * " + i + " + b > c - " + (i % 7), asm.getContext());
+        long t1 = System.nanoTime();
+        for ( int i = 0; i < javacCount; ++i ) javac.compile("a * " + i + " + b > c - " + (i % 7), javac.getContext());
+        long t2 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) asm.parse("a * " + i + " + b > c - " + (i % 7));
+        long t3 = System.nanoTime();
+
+        Expression expression = asm.compile("a * 9999 + b > c - 3", asm.getContext());
+        assertEquals(Boolean.TRUE, expression.eval(asm.getContext()));
+        logger.info("asm: {} expressions in {} ms ({} us each, parsing {} us), javac: {} expressions in {} ms ({} us each)", count, (t1 - t0) / 1_000_000, (t1 - t0) / count / 1000,
+            (t3 - t2) / count / 1000, javacCount, (t2 - t1) / 1_000_000, (t2 - t1) / javacCount / 1000);
+    }
+}
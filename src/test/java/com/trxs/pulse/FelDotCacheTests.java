@@ -0,0 +1,118 @@
+package com.trxs.pulse;
+
+import com.fel.FelEngine;
+import com.fel.FelEngineImpl;
+import com.fel.context.FelContext;
+import com.fel.context.MapContext;
+import com.fel.function.operator.Dot;
+import com.fel.parser.FelNode;
+import com.fel.security.SecurityMgr;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FelDotCacheTests
+{
+    private static Logger logger = LoggerFactory.getLogger(FelDotCacheTests.class);
+
+    public static class Bar extends Foo
+    {
+        @Override
+        public String getName()
+        {
+            return "bar:" + super.getName();
+        }
+
+        public static String upper(String text)
+        {
+            return text.toUpperCase();
+        }
+    }
+
+    private static Foo foo(Foo foo, String name, int size)
+    {
+        foo.setName(name);
+        foo.setSize(size);
+        return foo;
+    }
+
+    // 同一调用点上接收者类型变化时结果正确, 安全检查每个方法只做一次
+    @Test
+    public void polymorphic()
+    {
+        AtomicInteger checks = new AtomicInteger();
+        FelEngine fel = new FelEngineImpl();
+        fel.setSecurityMgr(m ->
+        {
+            checks.incrementAndGet();
+            return !m.getName().equals("getClass");
+        });
+
+        FelNode node = fel.parse("question.name");
+        FelContext ctx = new MapContext();
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", "map");
+
+        Object[] receivers = { foo(new Foo(), "foo", 1), foo(new Bar(), "zeng", 2), map };
+        Object[] expected = { "foo", "bar:zeng", "map" };
+        for ( int round = 0; round < 3; ++round )
+        {
+            for ( int i = 0; i < receivers.length; ++i )
+            {
+                ctx.set("question", receivers[i]);
+                assertEquals(expected[i], node.eval(ctx));
+            }
+        }
+        // Foo.getName, Bar.getName, HashMap.get
+        assertEquals(3, checks.get());
+
+        ctx.set("bar", Bar.class);
+        assertEquals("ABC", fel.eval("bar.upper('abc')", ctx));
+
+        try
+        {
+            fel.eval("question.class", ctx);
+            fail("expected SecurityException");
+        }
+        catch (SecurityException e)
+        {
+            // 禁止的方法每次调用都拒绝
+        }
+    }
+
+    // 解释执行 question.size > 1 && question.name != null, 比较有无调用点缓存的耗时
+    @Test
+    public void speed()
+    {
+        Bench.assumeEnabled();
+        FelEngine fel = new FelEngineImpl();
+        FelContext ctx = new MapContext();
+        ctx.set("question", foo(new Foo(), "foo", 6));
+        FelNode node = fel.parse("question.size > 1 && question.name != null");
+
+        // 每次求值前交替更换安全管理器, 调用点缓存失效, 相当于原来每次查找方法并做安全检查
+        Dot dot = (Dot) fel.getFunMgr().getFun(Dot.DOT);
+        SecurityMgr[] managers = { m -> true, m -> true };
+
+        int count = 200_000;
+        for ( int i = 0; i < count / 10; ++i ) node.eval(ctx);
+
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) assertEquals(Boolean.TRUE, node.eval(ctx));
+        long t1 = System.nanoTime();
+        for ( int i = 0; i < count; ++i )
+        {
+            dot.setSecurityMgr(managers[i & 1]);
+            assertEquals(Boolean.TRUE, node.eval(ctx));
+        }
+        long t2 = System.nanoTime();
+        logger.info("cached: {} ns/eval, lookup every time: {} ns/eval", (t1 - t0) / count, (t2 - t1) / count);
+    }
+}
@@ -0,0 +1,111 @@
+package com.trxs.pulse;
+
+import com.fel.Expression;
+import com.fel.FelEngineImpl;
+import com.fel.compile.AsmCompiler;
+import com.fel.compile.AstSourceGenerator;
+import com.fel.compile.CompileService;
+import com.fel.compile.ExpressionCache;
+import com.fel.context.FelContext;
+import com.fel.context.MapContext;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FelExpressionCacheTests
+{
+    private static FelEngineImpl engine(int cacheSize)
+    {
+        FelEngineImpl fel = new FelEngineImpl();
+        fel.setCompiler(new CompileService(new AstSourceGenerator(), new AsmCompiler()));
+        fel.setCache(new ExpressionCache(cacheSize));
+        return fel;
+    }
+
+    // 同一表达式和变量类型复用编译结果, 类型不同时重新编译
+    @Test
+    public void variants()
+    {
+        FelEngineImpl fel = engine(16);
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+        ctx.set("b", 11);
+
+        Expression first = fel.compile("a * 3 + b", ctx);
+        assertSame(first, fel.compile("a * 3 + b", ctx));
+        assertEquals(32, first.eval(ctx));
+
+        ctx.set("a", 7.5);
+        Expression second = fel.compile("a * 3 + b", ctx);
+        assertNotSame(first, second);
+        assertEquals(33.5, second.eval(ctx));
+
+        // MapContext 中没有变量索引, 和 ArrayCtx 分开保存
+        FelContext map = new MapContext();
+        map.set("a", 7.5);
+        map.set("b", 11);
+        assertEquals(33.5, fel.compile("a * 3 + b", map).eval(map));
+
+        assertEquals(1, fel.getCache().size());
+        assertEquals(3L, fel.getCache().snapshot().get("misses"));
+        assertEquals(1L, fel.getCache().snapshot().get("hits"));
+    }
+
+    // 同时编译同一表达式只编译一次
+    @Test
+    public void concurrentCompile() throws Exception
+    {
+        FelEngineImpl fel = engine(16);
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Callable<Expression>> tasks = new ArrayList<>();
+            for ( int i = 0; i < 32; ++i ) tasks.add(() -> fel.compile("a * a - 1", ctx));
+            List<Future<Expression>> futures = executor.invokeAll(tasks);
+            Expression expression = futures.get(0).get();
+            for ( Future<Expression> future : futures ) assertSame(expression, future.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertEquals(1L, fel.getCache().snapshot().get("misses"));
+    }
+
+    // 淘汰后同一批次的类随类加载器卸载
+    @Test
+    public void evictAndUnload() throws Exception
+    {
+        FelEngineImpl fel = engine(32);
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+
+        Expression first = fel.compile("a + 0", ctx);
+        WeakReference<ClassLoader> loader = new WeakReference<>(first.getClass().getClassLoader());
+        first = null;
+
+        for ( int i = 1; i < 300; ++i ) assertEquals(7 + i, fel.compile("a + " + i, ctx).eval(ctx));
+        assertEquals(true, fel.getCache().size() <= 32);
+
+        for ( int i = 0; i < 10 && loader.get() != null; ++i )
+        {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull(loader.get());
+    }
+}
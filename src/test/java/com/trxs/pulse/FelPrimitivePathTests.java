@@ -0,0 +1,170 @@
+package com.trxs.pulse;
+
+import com.fel.Expression;
+import com.fel.FelEngine;
+import com.fel.FelEngineImpl;
+import com.fel.compile.AsmCompiler;
+import com.fel.compile.AstSourceGenerator;
+import com.fel.compile.CompileService;
+import com.fel.compile.FelCompiler16;
+import com.fel.compile.SourceGeneratorImpl;
+import com.fel.context.FelContext;
+import com.fel.function.CommonFunction;
+import com.fel.parser.FelNode;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FelPrimitivePathTests
+{
+    private static Logger logger = LoggerFactory.getLogger(FelPrimitivePathTests.class);
+
+    private static final String PREDICATE = "a * 3 + b > c";
+
+    // 解释执行的 int / double 快速路径与原来按 double 计算的结果一致
+    @Test
+    public void interpret()
+    {
+        FelEngine fel = new FelEngineImpl();
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+        ctx.set("b", 11);
+        ctx.set("c", 30);
+        ctx.set("d", 1.5);
+        ctx.set("big", 123456789);
+        ctx.set("s", "x");
+
+        assertEquals(32, fel.eval("a * 3 + b", ctx));
+        assertEquals(-4, fel.eval("a - b", ctx));
+        assertEquals(10_000_000_000L, fel.eval("100000 * a * 0 + 100000 * 100000", ctx));
+        // 超出 double 精确范围时与按 double 计算的结果相同
+        assertEquals((long) (123456789d * 987654321d), fel.eval("big * 987654321", ctx));
+        assertEquals(3.5, fel.eval("a / 2", ctx));
+        assertEquals(2, fel.eval("6 / 3 + a * 0", ctx));
+        assertEquals(-1, fel.eval("(0 - a) % 3", ctx));
+        assertEquals(Double.NaN, fel.eval("a % 0", ctx));
+        assertEquals(8.5, fel.eval("a + d", ctx));
+        assertEquals(3, fel.eval("d + d", ctx));
+        assertEquals("x7", fel.eval("s + a", ctx));
+        assertEquals("7x", fel.eval("a + s", ctx));
+
+        assertEquals(Boolean.TRUE, fel.eval(PREDICATE, ctx));
+        assertEquals(Boolean.TRUE, fel.eval("a < a + d", ctx));
+        assertEquals(Boolean.TRUE, fel.eval("a <= 7.0 && a >= 7", ctx));
+        assertEquals(Boolean.TRUE, fel.eval("a == 7.0", ctx));
+        assertEquals(Boolean.FALSE, fel.eval("a != 7.0", ctx));
+    }
+
+    // javac 生成的代码在变量类型改变时退回解释执行
+    @Test
+    public void typeMiss()
+    {
+        FelEngine fel = new FelEngineImpl();
+        fel.setCompiler(new CompileService(new SourceGeneratorImpl(), new FelCompiler16<>()));
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+        ctx.set("b", 11);
+
+        Expression expression = fel.compile("a * 3 + b", ctx);
+        assertEquals(32, expression.eval(ctx));
+        ctx.set("a", 7.5);
+        assertEquals(33.5, expression.eval(ctx));
+        ctx.set("a", 7);
+        assertEquals(32, expression.eval(ctx));
+    }
+
+    // 表达式本身抛出的 ClassCastException 照常抛出, 不重新解释执行
+    @Test
+    public void typeMissOnlyForVars()
+    {
+        AtomicBoolean armed = new AtomicBoolean();
+        AtomicInteger calls = new AtomicInteger();
+        FelEngine fel = new FelEngineImpl();
+        fel.setCompiler(new CompileService(new SourceGeneratorImpl(), new FelCompiler16<>()));
+        fel.addFun(new CommonFunction()
+        {
+            @Override
+            public String getName()
+            {
+                return "boom";
+            }
+
+            @Override
+            public Object call(Object[] arguments)
+            {
+                // 编译时推断返回类型也会调用, 编译完成后才抛出异常
+                if ( !armed.get() ) return 1;
+                calls.incrementAndGet();
+                throw new ClassCastException("boom");
+            }
+        });
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+
+        Expression expression = fel.compile("a + boom()", ctx);
+        armed.set(true);
+        try
+        {
+            expression.eval(ctx);
+            fail("expected ClassCastException");
+        }
+        catch (ClassCastException e)
+        {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * 编译后的表达式默认求值 1000 万次(-Dfel.bench.evals=100000000 为 1 亿次), 解释执行为其 1/10
+     * Long 变量走不到快速路径, 作为原来通用路径的对照
+     */
+    @Test
+    public void predicateSpeed()
+    {
+        Bench.assumeEnabled();
+        int evals = Integer.getInteger("fel.bench.evals", 10_000_000);
+
+        FelEngine fel = new FelEngineImpl();
+        FelContext ctx = fel.getContext();
+        ctx.set("a", 7);
+        ctx.set("b", 11);
+        ctx.set("c", 30);
+        FelEngine generic = new FelEngineImpl();
+        FelContext longCtx = generic.getContext();
+        longCtx.set("a", 7L);
+        longCtx.set("b", 11L);
+        longCtx.set("c", 30L);
+
+        FelNode node = fel.parse(PREDICATE);
+        FelNode genericNode = generic.parse(PREDICATE);
+        Expression asm = new CompileService(new AstSourceGenerator(), new AsmCompiler()).compile(ctx, fel.parse(PREDICATE), PREDICATE);
+        Expression javac = new CompileService(new SourceGeneratorImpl(), new FelCompiler16<>()).compile(ctx, fel.parse(PREDICATE), PREDICATE);
+
+        long interpreted = time(node, ctx, evals / 10);
+        long interpretedGeneric = time(genericNode, longCtx, evals / 10);
+        long compiledAsm = time(asm, ctx, evals);
+        long compiledJavac = time(javac, ctx, evals);
+        logger.info("{}: interpret {} ns/eval (generic path {} ns/eval), asm {} ns/eval, javac {} ns/eval", PREDICATE,
+            String.format("%.1f", interpreted / (evals / 10.0)), String.format("%.1f", interpretedGeneric / (evals / 10.0)),
+            String.format("%.2f", compiledAsm / (double) evals), String.format("%.2f", compiledJavac / (double) evals));
+    }
+
+    private static long time(Expression expression, FelContext ctx, int count)
+    {
+        for ( int i = 0; i < Math.min(count, 200_000); ++i ) expression.eval(ctx);
+
+        int hits = 0;
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) if ( expression.eval(ctx) == Boolean.TRUE ) ++hits;
+        long elapsed = System.nanoTime() - t0;
+        assertEquals(count, hits);
+        return elapsed;
+    }
+}
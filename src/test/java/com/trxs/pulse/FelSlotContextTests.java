@@ -0,0 +1,166 @@
+package com.trxs.pulse;
+
+import com.fel.Expression;
+import com.fel.FelEngine;
+import com.fel.FelEngineImpl;
+import com.fel.compile.AsmCompiler;
+import com.fel.compile.AstSourceGenerator;
+import com.fel.compile.CompileService;
+import com.fel.compile.FelCompiler16;
+import com.fel.compile.SourceGeneratorImpl;
+import com.fel.context.ArrayCtx;
+import com.fel.context.ArrayCtxImpl;
+import com.fel.context.FelContext;
+import com.fel.context.FrameCtx;
+import com.fel.context.MapContext;
+import com.fel.context.Slots;
+import com.fel.context.Var;
+import com.fel.parser.FelNode;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FelSlotContextTests
+{
+    private static Logger logger = LoggerFactory.getLogger(FelSlotContextTests.class);
+
+    private static final String PREDICATE = "a * 3 + b > c";
+
+    // 复用 frame 求值, 解释执行和两种编译方式结果一致
+    @Test
+    public void frame()
+    {
+        FelEngine fel = new FelEngineImpl();
+        FelNode node = fel.parse(PREDICATE);
+        Slots slots = Slots.of(node);
+        assertEquals(3, slots.size());
+        assertEquals(2, slots.indexOf("c"));
+
+        FrameCtx ctx = new FrameCtx(slots, new Object[]{ 7, 11, 30 });
+        Expression asm = new CompileService(new AstSourceGenerator(), new AsmCompiler()).compile(ctx, fel.parse(PREDICATE), PREDICATE);
+        Expression javac = new CompileService(new SourceGeneratorImpl(), new FelCompiler16<>()).compile(ctx, fel.parse(PREDICATE), PREDICATE);
+
+        Object[] frame = slots.newFrame();
+        ctx.frame(frame);
+        for ( int a = 0; a < 10; ++a )
+        {
+            frame[0] = a;
+            frame[1] = 11;
+            frame[2] = 30;
+            Boolean expected = a * 3 + 11 > 30;
+            assertEquals(expected, node.eval(ctx));
+            assertEquals(expected, asm.eval(ctx));
+            assertEquals(expected, javac.eval(ctx));
+        }
+
+        // 同一语法树换成布局不同的上下文
+        FrameCtx other = new FrameCtx(Slots.of("c", "b", "a"), new Object[]{ 30, 11, 7 });
+        assertEquals(Boolean.TRUE, node.eval(other));
+        ArrayCtxImpl array = new ArrayCtxImpl();
+        array.set("x", 0);
+        array.set("c", 30);
+        array.set("a", 1);
+        array.set("b", 2);
+        assertEquals(Boolean.FALSE, node.eval(array));
+        array.set("a", 7);
+        array.set("b", 11);
+        assertEquals(Boolean.TRUE, node.eval(array));
+        MapContext map = new MapContext();
+        map.set("a", 7);
+        map.set("b", 11);
+        map.set("c", 30);
+        assertEquals(Boolean.TRUE, node.eval(map));
+
+        // 没有分配槽位的变量读取为 null
+        assertEquals(null, ctx.get("d"));
+    }
+
+    // 语法树缓存的变量索引不引用求值时的上下文
+    @Test
+    public void noContextRetention() throws Exception
+    {
+        FelNode node = new FelEngineImpl().parse(PREDICATE);
+        ArrayCtxImpl array = new ArrayCtxImpl();
+        array.set("a", 7);
+        array.set("b", 11);
+        array.set("c", 30);
+        ArrayCtx custom = withoutLayout(array);
+        assertEquals(Boolean.TRUE, node.eval(array));
+        assertEquals(Boolean.TRUE, node.eval(custom));
+
+        WeakReference<Object> arrayRef = new WeakReference<>(array);
+        WeakReference<Object> customRef = new WeakReference<>(custom);
+        array = null;
+        custom = null;
+        for ( int i = 0; i < 10 && (arrayRef.get() != null || customRef.get() != null); ++i )
+        {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull(arrayRef.get());
+        assertNull(customRef.get());
+        assertEquals(3, Slots.of(node).size());
+    }
+
+    // 没有覆盖 layout() 的 ArrayCtx 实现
+    private static ArrayCtx withoutLayout(ArrayCtxImpl values)
+    {
+        return new ArrayCtx()
+        {
+            @Override public Object get(int i) { return values.get(i); }
+            @Override public int getIndex(String name) { return values.getIndex(name); }
+            @Override public Object get(String name) { return values.get(name); }
+            @Override public void set(String name, Object value) { values.set(name, value); }
+            @Override public Var getVar(String name) { return values.getVar(name); }
+            @Override public void setVar(Var var) { values.setVar(var); }
+        };
+    }
+
+    // 三种上下文每次设置参数后解释执行的耗时
+    @Test
+    public void speed()
+    {
+        Bench.assumeEnabled();
+        int count = 2_000_000;
+        FelEngine fel = new FelEngineImpl();
+        FelNode node = fel.parse(PREDICATE);
+
+        FrameCtx frame = Slots.of(node).newContext();
+        ArrayCtxImpl array = new ArrayCtxImpl();
+        MapContext map = new MapContext();
+
+        long[] elapsed = new long[3];
+        // 取第二轮, 三种上下文都已经过 JIT
+        for ( int round = 0; round < 2; ++round )
+        {
+            elapsed[2] = time(node, count, map, (ctx, i) -> { ctx.set("a", i & 7); ctx.set("b", 11); ctx.set("c", 30); });
+            elapsed[1] = time(node, count, array, (ctx, i) -> { ctx.set("a", i & 7); ctx.set("b", 11); ctx.set("c", 30); });
+            elapsed[0] = time(node, count, frame, (ctx, i) -> { frame.set(0, i & 7); frame.set(1, 11); frame.set(2, 30); });
+        }
+        logger.info("{}: FrameCtx {} ns/eval, ArrayCtxImpl {} ns/eval, MapContext {} ns/eval", PREDICATE, elapsed[0] / count, elapsed[1] / count, elapsed[2] / count);
+    }
+
+    private interface Setter
+    {
+        void set(FelContext ctx, int i);
+    }
+
+    private static long time(FelNode node, int count, FelContext ctx, Setter setter)
+    {
+        int hits = 0;
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i )
+        {
+            setter.set(ctx, i);
+            if ( node.eval(ctx) == Boolean.TRUE ) ++hits;
+        }
+        long elapsed = System.nanoTime() - t0;
+        assertEquals(count / 8, hits);
+        return elapsed;
+    }
+}
@@ -0,0 +1,224 @@
+package com.trxs.pulse;
+
+import com.sun.net.httpserver.HttpServer;
+import com.trxs.commons.net.HttpClientFactory;
+import com.trxs.pulse.data.TaskJob;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.trxs.commons.util.LangUtils.SLEEP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpJobExecutorTests
+{
+    private static final int JOBS = 200;
+
+    private JdbcTemplate jdbcTemplate;
+    private HttpServer server;
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final Map<String, String> requests = new ConcurrentHashMap<>();
+
+    @Before
+    public void setup() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(java.util.concurrent.Executors.newFixedThreadPool(32));
+        server.createContext("/", exchange ->
+        {
+            int c = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(c, Math::max);
+            SLEEP(10);
+            concurrent.decrementAndGet();
+
+            String request = exchange.getRequestMethod() + " " + exchange.getRequestHeaders().getFirst("X-Pulse-Token") + " " + readBody(exchange.getRequestBody());
+            requests.put(exchange.getRequestURI().getPath(), request);
+
+            byte[] body = ("ok " + exchange.getRequestURI().getPath()).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try ( OutputStream out = exchange.getResponseBody() ) { out.write(body); }
+        });
+        server.start();
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:http;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_domains");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_http_jobs");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_http_job_responses");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_tasks");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_parameters");
+        jdbcTemplate.execute("CREATE TABLE p_tasks ( id INT AUTO_INCREMENT PRIMARY KEY, job_type TINYINT NOT NULL, job_id INT NULL, state TINYINT NULL, plan_time DATETIME NULL )");
+        jdbcTemplate.execute("CREATE TABLE p_domains ( id INT AUTO_INCREMENT PRIMARY KEY, domain VARCHAR(64) NOT NULL, reference INT NOT NULL, status TINYINT NULL )");
+        jdbcTemplate.execute("CREATE TABLE p_http_jobs ( id INT AUTO_INCREMENT PRIMARY KEY, subsystem INT NULL, title VARCHAR(64) NULL, protocol TINYINT DEFAULT 0, host_id INT NULL, method TINYINT NULL, create_time DATETIME NULL, url VARCHAR(1024) NULL )");
+        jdbcTemplate.execute("CREATE TABLE p_parameters ( id INT PRIMARY KEY, headers VARCHAR(1024) NULL, text_body VARCHAR(1024) NULL )");
+        jdbcTemplate.execute("CREATE TABLE p_http_job_responses ( id INT PRIMARY KEY NOT NULL, create_time DATETIME NOT NULL, content VARCHAR(1024) NULL )");
+
+        jdbcTemplate.update("INSERT INTO p_domains ( id, domain, reference ) VALUES ( 1, ?, 0 )", "127.0.0.1:" + server.getAddress().getPort());
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> tasks = new ArrayList<>();
+        for ( int i = 1; i <= JOBS; ++i )
+        {
+            rows.add(new Object[]{ i, "/job/" + i });
+            tasks.add(new Object[]{ 1000 + i, i });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO p_http_jobs ( id, host_id, method, url ) VALUES ( ?, 1, 2, ? )", rows);
+        jdbcTemplate.batchUpdate("INSERT INTO p_tasks ( id, job_type, job_id, state ) VALUES ( ?, 0, ?, 1 )", tasks);
+    }
+
+    @After
+    public void teardown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testHostConcurrencyLimit()
+    {
+        CloseableHttpAsyncClient httpClient = HttpClientFactory.getInstance().getHttpAsyncClientPool().getAsyncHttpClient();
+        if ( !httpClient.isRunning() ) httpClient.start();
+
+        StateJournal journal = new StateJournal(jdbcTemplate, 64, 200, 10_000);
+        HttpJobExecutor executor = new HttpJobExecutor(jdbcTemplate, new TimerServer(), journal, httpClient, 1000, 100, 10_000, 64);
+        executor.setHostLimit(1, 4);
+
+        for ( int i = 1; i <= JOBS; ++i ) assertTrue(executor.submit(new TaskJob(1000 + i, 0, i, new Date())));
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ( responseCount() < JOBS && System.currentTimeMillis() < deadline )
+        {
+            if ( executor.dispatchOnce() + journal.flush() == 0 ) SLEEP(5);
+        }
+
+        assertEquals(JOBS, responseCount());
+        assertTrue("max concurrent " + maxConcurrent.get(), maxConcurrent.get() <= 4);
+        assertEquals("200 ok /job/7", jdbcTemplate.queryForObject("SELECT content FROM p_http_job_responses WHERE id = 7", String.class));
+        assertEquals((long) JOBS, executor.snapshot().get("completed"));
+
+        journal.shutdown();
+        assertEquals(JOBS, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 3", Integer.class).intValue());
+    }
+
+    // 已被其它实例认领(state 2)的任务不会再发出; 状态日志积压时不发新请求
+    @Test
+    public void testClaimBeforeSend()
+    {
+        CloseableHttpAsyncClient httpClient = HttpClientFactory.getInstance().getHttpAsyncClientPool().getAsyncHttpClient();
+        if ( !httpClient.isRunning() ) httpClient.start();
+
+        jdbcTemplate.update("UPDATE p_tasks SET state = 2 WHERE id <= 1010");
+        StateJournal journal = new StateJournal(jdbcTemplate, 64, 200, 1);
+        HttpJobExecutor executor = new HttpJobExecutor(jdbcTemplate, new TimerServer(), journal, httpClient, 1000, 100, 10_000, 64);
+        for ( int i = 1; i <= JOBS; ++i ) assertTrue(executor.submit(new TaskJob(1000 + i, 0, i, new Date())));
+
+        journal.record(1, StateJournal.DONE);
+        for ( int i = 0; i < 5; ++i ) executor.dispatchOnce();
+        assertEquals(0, executor.snapshot().get("inFlight"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 2 AND id > 1010", Integer.class).intValue());
+        journal.flush();
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ( responseCount() < JOBS - 10 && System.currentTimeMillis() < deadline )
+        {
+            if ( executor.dispatchOnce() == 0 ) { journal.flush(); SLEEP(5); }
+        }
+        journal.shutdown();
+
+        assertEquals(JOBS - 10, responseCount());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_http_job_responses WHERE id <= 10", Integer.class).intValue());
+        assertEquals(JOBS - 10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 3", Integer.class).intValue());
+    }
+
+    // 排队数在发出前不减少, 主机变慢时超过上限的任务交回 TimerServer
+    @Test
+    public void testQueueBound()
+    {
+        CloseableHttpAsyncClient httpClient = HttpClientFactory.getInstance().getHttpAsyncClientPool().getAsyncHttpClient();
+        if ( !httpClient.isRunning() ) httpClient.start();
+
+        TimerServer timerServer = new TimerServer();
+        StateJournal journal = new StateJournal(jdbcTemplate, 64, 200, 10_000);
+        HttpJobExecutor executor = new HttpJobExecutor(jdbcTemplate, timerServer, journal, httpClient, 1000, 100, 50, 64);
+        executor.setHostLimit(1, 1);
+
+        for ( int i = 1; i <= 50; ++i ) assertTrue(executor.submit(new TaskJob(1000 + i, 0, i, new Date())));
+        assertFalse(executor.submit(new TaskJob(1051, 0, 51, new Date())));
+
+        // 50 个任务进入主机队列, 只发出 1 个
+        executor.dispatchOnce();
+        assertEquals(49, executor.snapshot().get("queued"));
+        assertTrue(executor.submit(new TaskJob(1052, 0, 52, new Date())));
+        assertFalse(executor.submit(new TaskJob(1053, 0, 53, new Date())));
+        assertEquals(Arrays.asList(1051, 1053), timerServer.takeHandedBack());
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ( (int) executor.snapshot().get("queued") + (int) executor.snapshot().get("inFlight") > 0 && System.currentTimeMillis() < deadline )
+        {
+            if ( executor.dispatchOnce() == 0 ) SLEEP(5);
+        }
+        journal.shutdown();
+        assertEquals(51, responseCount());
+    }
+
+    // POST/PUT 带上 p_parameters 里的请求头和正文, 没有参数的任务照常发出
+    @Test
+    public void testParameters()
+    {
+        CloseableHttpAsyncClient httpClient = HttpClientFactory.getInstance().getHttpAsyncClientPool().getAsyncHttpClient();
+        if ( !httpClient.isRunning() ) httpClient.start();
+
+        jdbcTemplate.update("UPDATE p_http_jobs SET method = 0 WHERE id = 1");
+        jdbcTemplate.update("UPDATE p_http_jobs SET method = 1 WHERE id = 2");
+        jdbcTemplate.update("INSERT INTO p_parameters ( id, headers, text_body ) VALUES ( 1, ?, ? )", "{\"X-Pulse-Token\":\"t1\",\"Content-Type\":\"application/json\"}", "{\"order\":1}");
+        jdbcTemplate.update("INSERT INTO p_parameters ( id, headers, text_body ) VALUES ( 2, NULL, ? )", "名称=值");
+
+        StateJournal journal = new StateJournal(jdbcTemplate, 64, 200, 10_000);
+        HttpJobExecutor executor = new HttpJobExecutor(jdbcTemplate, new TimerServer(), journal, httpClient, 1000, 100, 10_000, 64);
+        for ( int i = 1; i <= 3; ++i ) assertTrue(executor.submit(new TaskJob(1000 + i, 0, i, new Date())));
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ( responseCount() < 3 && System.currentTimeMillis() < deadline )
+        {
+            if ( executor.dispatchOnce() + journal.flush() == 0 ) SLEEP(5);
+        }
+        journal.shutdown();
+
+        assertEquals("POST t1 {\"order\":1}", requests.get("/job/1"));
+        assertEquals("PUT null 名称=值", requests.get("/job/2"));
+        assertEquals("GET null ", requests.get("/job/3"));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 3", Integer.class).intValue());
+    }
+
+    private static String readBody(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        for ( int n; (n = in.read(buffer)) > 0; ) out.write(buffer, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private int responseCount()
+    {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_http_job_responses", Integer.class);
+    }
+}
@@ -0,0 +1,171 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.data.TimerJob;
+import com.trxs.pulse.engine.JobWal;
+import com.trxs.pulse.engine.ScheduleEngine;
+import com.trxs.pulse.engine.TimingWheelEngine;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JobWalTests
+{
+    private static Logger logger = LoggerFactory.getLogger(JobWalTests.class);
+
+    private static final long START = 1_571_356_800_000L;
+
+    private File dir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        dir = Files.createTempDirectory("pulse-wal").toFile();
+        dir.deleteOnExit();
+    }
+
+    private static File[] segments(File dir)
+    {
+        return dir.listFiles((d, name) -> name.endsWith(".wal"));
+    }
+
+    @Test
+    public void testReplayAfterCheckpointAndCompaction() throws IOException
+    {
+        ScheduleEngine engine = new TimingWheelEngine(START, 1024);
+        JobWal wal = new JobWal(dir, 64 * 1024);
+        assertEquals(0, wal.replay().size());
+        wal.checkpoint(engine);
+
+        for ( int id = 1; id <= 10_000; ++id )
+        {
+            TaskJob job = new TaskJob(id, 0, id * 10, new Date(START + id * 1000L));
+            engine.schedule(job);
+            wal.schedule(job);
+        }
+        CronJob cronJob = new CronJob(7, "0 0/5 * * * ?");
+        cronJob.next(START);
+        engine.schedule(cronJob);
+        wal.schedule(cronJob);
+
+        for ( int id = 1; id <= 10_000; id += 2 )
+        {
+            engine.cancel(id);
+            wal.cancel(id);
+        }
+        engine.expire(START + 100_000, wal::fire);
+        int before = segments(dir).length;
+        assertTrue("segments rolled", before > 1);
+
+        // 检查点之后更早的段被删除
+        wal.checkpoint(engine);
+        assertTrue(segments(dir).length < before);
+
+        TaskJob late = new TaskJob(20_000, 1, 3, new Date(START + 5_000_000));
+        wal.schedule(late);
+        wal.close();
+
+        Map<Integer, TimerJob> jobs = new JobWal(dir, 64 * 1024).replay();
+        assertEquals(engine.size() + 1, jobs.size());
+        // cron 任务回放后由 TimerServer 按当前时间重新计算 expectTime
+        engine.forEach(job -> { if ( job instanceof TaskJob ) assertEquals(job.getExpectTime(), jobs.get(job.getId()).getExpectTime()); });
+
+        TaskJob replayed = (TaskJob) jobs.get(20_000);
+        assertEquals(1, replayed.getJobType());
+        assertEquals(3, replayed.getJobId());
+        assertEquals("0 0/5 * * * ?", ((CronJob) jobs.get(-7)).getPattern().getText());
+    }
+
+    // 最后一次触发后没有后续时间的 cron 任务记一条取消, 重启后不再恢复
+    @Test
+    public void testFinishedCronIsCancelled()
+    {
+        long now = System.currentTimeMillis();
+        TimerServer timerServer = new TimerServer("wheel", dir.getAbsolutePath());
+        timerServer.init();
+        CronJob cronJob = new CronJob(5, "0 0 0 1 1 ? 1970");
+        cronJob.setExpectTime(new Date(now - 60_000));
+        timerServer.addJobs(Collections.singletonList(cronJob));
+        timerServer.scanTimerMessageQueue(now);
+        assertFalse(timerServer.containsJob(-5));
+        timerServer.shutdown();
+
+        TimerServer restarted = new TimerServer("wheel", dir.getAbsolutePath());
+        restarted.init();
+        try
+        {
+            assertFalse(restarted.containsJob(-5));
+        }
+        finally
+        {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException
+    {
+        ScheduleEngine engine = new TimingWheelEngine(START, 16);
+        JobWal wal = new JobWal(dir, 64 * 1024);
+        wal.replay();
+        wal.checkpoint(engine);
+        for ( int id = 1; id <= 100; ++id ) wal.schedule(new TaskJob(id, 0, id, new Date(START)));
+        wal.close();
+
+        // 模拟写最后一条记录时进程退出: 破坏它的最后一个字节
+        File segment = segments(dir)[0];
+        try ( RandomAccessFile file = new RandomAccessFile(segment, "rw") )
+        {
+            long offset = 0;
+            while ( true )
+            {
+                file.seek(offset);
+                int length = file.readInt();
+                if ( length == 0 ) break;
+                offset += 8 + length;
+            }
+            file.seek(offset - 1);
+            file.write(0x7F);
+        }
+
+        assertEquals(99, new JobWal(dir, 64 * 1024).replay().size());
+    }
+
+    /**
+     * 回放速度, 默认 1M, -Dpulse.bench.wal=5000000 可以测 5M
+     */
+    @Test
+    public void benchmark() throws IOException
+    {
+        Bench.assumeEnabled();
+        int count = Integer.getInteger("pulse.bench.wal", 1_000_000);
+        JobWal wal = new JobWal(dir, 64 * 1024 * 1024);
+        wal.replay();
+        wal.checkpoint(new TimingWheelEngine(START, 16));
+
+        long t0 = System.nanoTime();
+        for ( int id = 1; id <= count; ++id ) wal.schedule(new TaskJob(id, 0, id, new Date(START + id)));
+        wal.close();
+        long t1 = System.nanoTime();
+
+        Map<Integer, TimerJob> jobs = new JobWal(dir, 64 * 1024 * 1024).replay();
+        long t2 = System.nanoTime();
+
+        assertEquals(count, jobs.size());
+        logger.info("wal count:{} append:{}ms replay:{}ms", count, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000);
+    }
+}
@@ -0,0 +1,141 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.jdbc.BaseService;
+import com.trxs.pulse.jdbc.KeysetCursor;
+import com.trxs.pulse.jdbc.PageBean;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KeysetPageTests
+{
+    private static Logger logger = LoggerFactory.getLogger(KeysetPageTests.class);
+
+    private static final int ROWS = 200_000;
+    private static final String SELECT = "SELECT id, plan_time FROM p_page_tasks WHERE state = ?";
+    private static final String COUNT = "SELECT COUNT(*) FROM p_page_tasks WHERE state = ?";
+
+    private static final RowMapper<Integer> ID_MAPPER = (rs, i) -> rs.getInt(1);
+
+    private static JdbcTemplate template;
+    private static BaseService service;
+
+    @BeforeClass
+    public static void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:keyset;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        template = new JdbcTemplate(dataSource);
+        template.execute("DROP TABLE IF EXISTS p_page_tasks");
+        template.execute("CREATE TABLE p_page_tasks ( id INT PRIMARY KEY, state INT NOT NULL, plan_time DATETIME NOT NULL )");
+        template.execute("CREATE INDEX idx_page_plan ON p_page_tasks ( plan_time, id )");
+        // 每 4 行共用一个 plan_time, 排序列必须带上 id 才唯一
+        template.execute("INSERT INTO p_page_tasks SELECT X, 0, DATEADD('SECOND', X / 4, TIMESTAMP '2019-10-18 00:00:00') FROM SYSTEM_RANGE(1, " + ROWS + ")");
+
+        service = new BaseService()
+        {
+            {
+                jdbcTemplate = template;
+            }
+        };
+    }
+
+    @Test
+    public void walkPages()
+    {
+        int expected = 1, pages = 0;
+        String cursor = null;
+        do
+        {
+            PageBean<Integer> page = service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, cursor, 7000, "plan_time", "id");
+            for ( Integer id : page.getElements() ) assertEquals(expected++, id.intValue());
+            assertEquals(-1, page.getTotalSize());
+            cursor = page.getNextCursor();
+            ++pages;
+        }
+        while ( cursor != null );
+
+        assertEquals(ROWS + 1, expected);
+        assertEquals((ROWS + 6999) / 7000, pages);
+
+        // 倒序
+        PageBean<Integer> first = service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, null, 3, "plan_time DESC", "id DESC");
+        assertArrayEquals(new Object[]{ ROWS, ROWS - 1, ROWS - 2 }, first.getElements().toArray());
+        PageBean<Integer> second = service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, first.getNextCursor(), 3, "plan_time DESC", "id DESC");
+        assertArrayEquals(new Object[]{ ROWS - 3, ROWS - 4, ROWS - 5 }, second.getElements().toArray());
+    }
+
+    @Test
+    public void cursorToken()
+    {
+        KeysetCursor keyset = new KeysetCursor("plan_time", "id");
+        Object[] keys = { Timestamp.valueOf("2019-10-18 00:00:01.123456789"), 42 };
+        assertArrayEquals(keys, keyset.decode(keyset.encode(keys)));
+
+        try
+        {
+            new KeysetCursor("id").decode(keyset.encode(keys));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return;
+        }
+        throw new AssertionError("expected IllegalArgumentException");
+    }
+
+    @Test
+    public void cachedCount()
+    {
+        PageBean<Integer> page = service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, COUNT, new Object[]{ 0 }, null, 10, "id");
+        assertEquals(ROWS, page.getTotalSize());
+        assertEquals(ROWS / 10, page.getTotalPage());
+
+        // 缓存有效期内不会再次统计
+        template.update("INSERT INTO p_page_tasks VALUES ( ?, 0, NOW() )", ROWS + 1);
+        page = service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, COUNT, new Object[]{ 0 }, page.getNextCursor(), 10, "id");
+        assertEquals(ROWS, page.getTotalSize());
+        assertEquals(11, page.getElements().get(0).intValue());
+        template.update("DELETE FROM p_page_tasks WHERE id = ?", ROWS + 1);
+
+        PageBean<Integer> offsetPage = service.queryDataForPage("SELECT id FROM p_page_tasks WHERE state = ? ORDER BY id", new Object[]{ 0 }, ID_MAPPER, COUNT, new Object[]{ 0 }, 3, 10);
+        assertEquals(10, offsetPage.getElements().size());
+        assertEquals(21, offsetPage.getElements().get(0).intValue());
+    }
+
+    // 预热后比较第 1 页与第 10000 页的耗时, 另测一次 offset 分页作对照
+    @Test
+    public void deepPage()
+    {
+        Bench.assumeEnabled();
+        KeysetCursor keyset = new KeysetCursor("plan_time", "id");
+        String deep = keyset.encode(new Object[]{ template.queryForObject("SELECT plan_time FROM p_page_tasks WHERE id = ?", Timestamp.class, 10_000 * 10), 10_000 * 10 });
+        int loops = 2000;
+
+        for ( int i = 0; i < loops; ++i )
+        {
+            service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, null, 10, "plan_time", "id");
+            service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, deep, 10, "plan_time", "id");
+        }
+
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < loops; ++i ) service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, null, 10, "plan_time", "id");
+        long t1 = System.nanoTime();
+        PageBean<Integer> page = null;
+        for ( int i = 0; i < loops; ++i ) page = service.queryDataForPage(SELECT, new Object[]{ 0 }, ID_MAPPER, null, null, deep, 10, "plan_time", "id");
+        long t2 = System.nanoTime();
+        for ( int i = 0; i < 20; ++i ) service.queryDataForPage(SELECT + " ORDER BY plan_time, id", new Object[]{ 0 }, ID_MAPPER, COUNT, new Object[]{ 0 }, 10_001, 10);
+        long t3 = System.nanoTime();
+
+        assertEquals(100_001, page.getElements().get(0).intValue());
+        logger.info("keyset page 1: {} us, keyset page 10001: {} us, offset page 10001: {} us", (t1 - t0) / loops / 1000, (t2 - t1) / loops / 1000, (t3 - t2) / 20 / 1000);
+    }
+}
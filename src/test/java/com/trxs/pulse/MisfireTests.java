@@ -0,0 +1,160 @@
+package com.trxs.pulse;
+
+import com.trxs.commons.util.TokenBucket;
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.MisfirePolicy;
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.data.TimerJob;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MisfireTests
+{
+    private TimerServer timerServer;
+    private final List<TaskJob> dispatched = new ArrayList<>();
+    private long now;
+
+    @Before
+    public void setup()
+    {
+        timerServer = new TimerServer();
+        timerServer.init();
+        timerServer.registerHandler(0, dispatched::add);
+        now = System.currentTimeMillis() / 10_000 * 10_000;
+    }
+
+    // 一分钟前就该触发的每 10 秒 cron 任务
+    private CronJob overdueCron(int id, MisfirePolicy policy)
+    {
+        CronJob cronJob = new CronJob(id, "0/10 * * * * ?", 0, 100 + id, policy);
+        cronJob.setExpectTime(new Date(now - 60_000));
+        timerServer.addJobs(Collections.singletonList(cronJob));
+        return cronJob;
+    }
+
+    @Test
+    public void testCronPolicies()
+    {
+        CronJob skip = overdueCron(1, MisfirePolicy.SKIP_TO_NEXT);
+        CronJob once = overdueCron(2, MisfirePolicy.FIRE_ONCE_NOW);
+        CronJob all  = overdueCron(3, MisfirePolicy.FIRE_ALL_MISSED);
+
+        long scanTime = System.currentTimeMillis();
+        timerServer.scanTimerMessageQueue(scanTime);
+
+        assertEquals(0, dispatched.stream().filter(job -> job.getJobId() == 101).count());
+        assertEquals(1, dispatched.stream().filter(job -> job.getJobId() == 102).count());
+        // now - 60s, now - 50s, ..., now: 7 次
+        assertTrue(dispatched.stream().filter(job -> job.getJobId() == 103).count() >= 7);
+
+        for ( CronJob cronJob : new CronJob[]{ skip, once, all } )
+        {
+            assertTrue(timerServer.containsJob(cronJob.getId()));
+            assertTrue(cronJob.getExpectTime().getTime() > scanTime - 1000);
+        }
+    }
+
+    @Test
+    public void testCatchUpIsThrottled()
+    {
+        List<TimerJob> jobs = new ArrayList<>();
+        for ( int id = 1; id <= 3000; ++id ) jobs.add(new TaskJob(id, 0, id, new Date(now - 3_600_000)));
+        timerServer.addJobs(jobs);
+
+        timerServer.scanTimerMessageQueue(System.currentTimeMillis());
+        assertEquals(1000, dispatched.size());
+        assertEquals(2000, timerServer.getMisfireStats().get("catchUpBacklog"));
+
+        // 补触发排队期间, 准时的任务也排在后面
+        TaskJob onTime = new TaskJob(5000, 0, 5000, new Date(System.currentTimeMillis()));
+        timerServer.addJobs(Collections.singletonList(onTime));
+        timerServer.scanTimerMessageQueue(System.currentTimeMillis() + 1000);
+        assertFalse(dispatched.contains(onTime));
+    }
+
+    // 补触发队列满了之后, 超出的任务交回 p_tasks
+    @Test
+    public void testBacklogIsBounded()
+    {
+        TimerServer bounded = new TimerServer();
+        ReflectionTestUtils.setField(bounded, "maxBacklog", 1500);
+        bounded.init();
+        bounded.registerHandler(0, dispatched::add);
+
+        List<TimerJob> jobs = new ArrayList<>();
+        for ( int id = 1; id <= 3000; ++id ) jobs.add(new TaskJob(id, 0, id, new Date(now - 3_600_000)));
+        bounded.addJobs(jobs);
+        bounded.scanTimerMessageQueue(System.currentTimeMillis());
+
+        assertEquals(1000, dispatched.size());
+        assertEquals(500, bounded.getMisfireStats().get("catchUpBacklog"));
+        assertEquals(1000, bounded.getCatchUpRoom());
+        assertEquals(1500, bounded.takeHandedBack().size());
+        assertEquals(1500L, bounded.getMisfireStats().get("catchUpDeferred"));
+    }
+
+    // 补触发在两次整秒之间按速率均匀发出, 不等下一个 tick 一次发一批
+    @Test
+    public void testCatchUpIsPaced() throws Exception
+    {
+        TimerServer paced = new TimerServer();
+        ReflectionTestUtils.setField(paced, "catchUpRate", 10.0);
+        ReflectionTestUtils.setField(paced, "catchUpBurst", 1.0);
+        paced.init();
+        List<Long> times = Collections.synchronizedList(new ArrayList<>());
+        paced.registerHandler(0, job -> times.add(System.nanoTime()));
+
+        List<TimerJob> jobs = new ArrayList<>();
+        for ( int id = 1; id <= 20; ++id ) jobs.add(new TaskJob(id, 0, id, new Date(now - 3_600_000)));
+        paced.addJobs(jobs);
+
+        paced.scanTimerMessageQueue(System.currentTimeMillis());
+        assertEquals(1, times.size());
+
+        Thread watcher = new Thread(paced::jobWatchProcLoop);
+        watcher.start();
+        Thread.sleep(1500);
+        paced.shutdown();
+        watcher.join(5000);
+
+        // 之后没有新的 tick, 1.5 秒内仍按 100ms 间隔发出
+        assertTrue("dispatched " + times.size(), times.size() >= 12 && times.size() <= 17);
+        for ( int i = 1; i < times.size(); ++i )
+        {
+            long gap = TimeUnit.NANOSECONDS.toMillis(times.get(i) - times.get(i - 1));
+            assertTrue("gap " + gap, gap >= 80 && gap <= 250);
+        }
+    }
+
+    @Test
+    public void testTokenBucket()
+    {
+        TokenBucket bucket = new TokenBucket(100, 10);
+        long t = System.currentTimeMillis() + 1000;
+
+        int acquired = 0;
+        while ( bucket.tryAcquire(t) ) ++acquired;
+        assertEquals(10, acquired);
+
+        assertFalse(bucket.tryAcquire(t + 5));
+        assertTrue(bucket.tryAcquire(t + 10));
+        assertEquals(10, (int) bucket.available(t + 60_000));
+
+        TokenBucket slow = new TokenBucket(10, 1);
+        assertTrue(slow.tryAcquire(t));
+        assertEquals(100, slow.waitMillis(t));
+        assertEquals(40, slow.waitMillis(t + 60));
+        assertEquals(0, slow.waitMillis(t + 100));
+    }
+}
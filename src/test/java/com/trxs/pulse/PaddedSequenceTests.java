@@ -0,0 +1,63 @@
+package com.trxs.pulse;
+
+import com.trxs.commons.util.LatencyHistogram;
+import com.trxs.commons.util.PaddedSequence;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.trxs.commons.util.LangUtils.SLEEP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PaddedSequenceTests
+{
+    @Test
+    public void testHandoff() throws InterruptedException
+    {
+        PaddedSequence sequence = new PaddedSequence(0);
+        long[] seen = new long[1];
+
+        Thread reader = new Thread(() ->
+        {
+            long last = 0;
+            while ( last < 1000 ) last = sequence.waitFor(last, TimeUnit.SECONDS.toNanos(1));
+            seen[0] = last;
+        });
+        reader.start();
+
+        for ( long i = 1; i <= 1000; ++i ) sequence.publish(i);
+        reader.join(5000);
+
+        assertEquals(1000, seen[0]);
+    }
+
+    @Test
+    public void testWaitTimeoutAndWakeup()
+    {
+        PaddedSequence sequence = new PaddedSequence(7);
+
+        long t0 = System.nanoTime();
+        assertEquals(7, sequence.waitFor(7, TimeUnit.MILLISECONDS.toNanos(50)));
+        assertTrue(System.nanoTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        new Thread(() -> { SLEEP(20); sequence.wakeup(); }).start();
+        t0 = System.nanoTime();
+        assertEquals(7, sequence.waitFor(7, TimeUnit.SECONDS.toNanos(10)));
+        assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testHistogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for ( int i = 0; i < 990; ++i ) histogram.record(3);
+        for ( int i = 0; i < 10; ++i ) histogram.record(700);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(5, histogram.percentile(99));
+        assertEquals(1000, histogram.percentile(99.9));
+        assertEquals(700, histogram.getMax());
+    }
+}
@@ -0,0 +1,120 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.jdbc.PredicateCache;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PredicateCacheTests
+{
+    private static Logger logger = LoggerFactory.getLogger(PredicateCacheTests.class);
+
+    @Test
+    public void mapAndBean()
+    {
+        PredicateCache cache = new PredicateCache(16);
+
+        Map<String, Object> question = new HashMap<>();
+        question.put("type", 3);
+        Map<String, Object> context = new HashMap<>();
+        context.put("question", question);
+        context.put("qiStatus", 2);
+
+        assertTrue(cache.test("question.type != null && qiStatus > 1", context));
+        question.remove("type");
+        assertFalse(cache.test("question.type != null && qiStatus > 1", context));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        // 顶层变量类型不同, 单独编译一份
+        SsgAccountBaseLog bean = new SsgAccountBaseLog("a", "b", "c", "d");
+        assertTrue(cache.test("baiduAccount == 'a' && mark != null", bean));
+        assertFalse(cache.test("baiduAccount == 'x' && mark != null", bean));
+        assertEquals(3, cache.getMisses());
+
+        context.put("question", null);
+        assertFalse(cache.test("question == null && qiStatus < 1", context));
+    }
+
+    @Test
+    public void bounded()
+    {
+        PredicateCache cache = new PredicateCache(4);
+        Map<String, Object> context = new HashMap<>();
+        context.put("id", 5);
+
+        for ( int i = 0; i < 10; ++i ) assertEquals(i == 5, cache.test("id == " + i, context));
+        assertEquals(4, cache.size());
+        assertEquals(6L, cache.snapshot().get("evictions"));
+    }
+
+    // 淘汰最久未使用的表达式, 经常使用的一直命中
+    @Test
+    public void leastRecentlyUsed()
+    {
+        PredicateCache cache = new PredicateCache(4);
+        Map<String, Object> context = new HashMap<>();
+        context.put("id", 5);
+
+        for ( int i = 0; i < 100; ++i )
+        {
+            assertEquals(true, cache.test("id == 5", context));
+            assertEquals(false, cache.test("id == " + (100 + i), context));
+        }
+        assertEquals(101L, cache.getMisses());
+        assertEquals(99L, cache.getHits());
+    }
+
+    // 多个线程使用各自的参数同时求值, 结果不能串
+    @Test
+    public void concurrent() throws Exception
+    {
+        PredicateCache cache = new PredicateCache(16);
+        String expression = "id > limit && name != null";
+
+        int threads = 8, rounds = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for ( int t = 0; t < threads; ++t )
+        {
+            final int seed = t;
+            futures.add(executor.submit(() ->
+            {
+                int wrong = 0;
+                Map<String, Object> context = new HashMap<>();
+                context.put("name", "n" + seed);
+                for ( int i = 0; i < rounds; ++i )
+                {
+                    context.put("id", i);
+                    context.put("limit", seed * 1000);
+                    if ( cache.test(expression, context) != (i > seed * 1000) ) ++wrong;
+                }
+                return wrong;
+            }));
+        }
+
+        int wrong = 0;
+        for ( Future<Integer> future : futures ) wrong += future.get();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        long t1 = System.nanoTime();
+
+        assertEquals(0, wrong);
+        assertEquals(1, cache.getMisses());
+        logger.info("{} threads x {} evals: {}ms, {}", threads, rounds, (t1 - t0) / 1_000_000, cache.snapshot());
+    }
+}
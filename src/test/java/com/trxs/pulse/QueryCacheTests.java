@@ -0,0 +1,136 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.jdbc.BaseService;
+import com.trxs.pulse.jdbc.QueryCache;
+import com.trxs.pulse.jdbc.SQLProvider;
+import com.trxs.sql.Tokenizer;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryCacheTests
+{
+    private static final Map<String, String> SQL = new HashMap<>();
+    static
+    {
+        SQL.put("getDomain", "SELECT domain FROM p_cache_domains WHERE id = ?");
+        SQL.put("getSubsystem", "SELECT subsystem FROM p_cache_domains WHERE id = ?");
+        SQL.put("getSecret", "SELECT s.secret_key FROM p_cache_subsystems s JOIN p_cache_domains d ON d.subsystem = s.id WHERE d.id = ?");
+        SQL.put("renameDomain", "UPDATE p_cache_domains SET domain = ? WHERE id = ?");
+        SQL.put("touchParameters", "UPDATE p_cache_parameters SET body = ? WHERE id = ?");
+    }
+
+    private BaseService service;
+    private QueryCache cache;
+
+    @Before
+    public void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:cache;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("DROP TABLE IF EXISTS p_cache_domains");
+        template.execute("DROP TABLE IF EXISTS p_cache_subsystems");
+        template.execute("DROP TABLE IF EXISTS p_cache_parameters");
+        template.execute("CREATE TABLE p_cache_domains ( id INT PRIMARY KEY, subsystem INT, domain VARCHAR(64) )");
+        template.execute("CREATE TABLE p_cache_subsystems ( id INT PRIMARY KEY, secret_key VARCHAR(64) )");
+        template.execute("CREATE TABLE p_cache_parameters ( id INT PRIMARY KEY, body VARCHAR(64) )");
+        template.execute("INSERT INTO p_cache_domains VALUES ( 1, 7, 'www.a.com' ), ( 2, 7, 'www.b.com' )");
+        template.execute("INSERT INTO p_cache_subsystems VALUES ( 7, 'k7' )");
+        template.execute("INSERT INTO p_cache_parameters VALUES ( 1, '{}' )");
+
+        cache = new QueryCache(16);
+        service = new BaseService()
+        {
+            {
+                jdbcTemplate = template;
+                queryCache = cache;
+                sqlProvider = new SQLProvider()
+                {
+                    @Override
+                    public String getSqlByKey(String key)
+                    {
+                        return SQL.get(key);
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void tables()
+    {
+        Tokenizer tokenizer = new Tokenizer();
+        assertEquals(set("p_http_jobs", "p_domains"), tokenizer.tables("SELECT j.id, d.domain FROM p_http_jobs j LEFT JOIN p_domains d ON d.id = j.host_id WHERE j.id IN ( 1, 2 )"));
+        assertEquals(set("p_tasks", "p_cron_tasks"), tokenizer.tables("select * from pulse.p_tasks t, `p_cron_tasks` c where t.job_id = c.id;"));
+        assertEquals(set("p_tasks"), tokenizer.tables("UPDATE p_tasks SET state = 2 WHERE id = ? AND state = 1"));
+        assertEquals(set("p_domains"), tokenizer.tables("INSERT INTO p_domains ( domain ) VALUES ( '中文' ) ON DUPLICATE KEY UPDATE domain = VALUES(domain)"));
+        assertEquals(set("p_tasks", "p_http_jobs"), tokenizer.tables("DELETE FROM p_tasks WHERE job_id IN ( SELECT id FROM p_http_jobs )"));
+    }
+
+    private static LinkedHashSet<String> set(String... tables)
+    {
+        return new LinkedHashSet<>(Arrays.asList(tables));
+    }
+
+    @Test
+    public void invalidateOnWrite()
+    {
+        assertEquals("www.a.com", service.cachedValueForObject("getDomain", String.class, 1));
+        assertEquals("www.a.com", service.cachedValueForObject("getDomain", String.class, 1));
+        assertEquals("k7", service.cachedValueForObject("getSecret", String.class, 1));
+        assertEquals("www.b.com", service.cachedValueForObject("getDomain", String.class, 2));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        // 写其它表不影响
+        service.update("touchParameters", "{\"a\":1}", 1);
+        assertEquals("k7", service.cachedValueForObject("getSecret", String.class, 1));
+        assertEquals(2, cache.getHits());
+
+        // 写 p_cache_domains 后, 单表和 join 查询都失效
+        service.update("renameDomain", "www.c.com", 1);
+        assertEquals("www.c.com", service.cachedValueForObject("getDomain", String.class, 1));
+        assertEquals("k7", service.cachedValueForObject("getSecret", String.class, 1));
+        assertEquals(5, cache.getMisses());
+
+        service.delRecordById("pCacheDomains", 2);
+        assertEquals("www.c.com", service.cachedValueForObject("getDomain", String.class, 1));
+        assertEquals(6, cache.getMisses());
+    }
+
+    // 同一语句和参数按不同类型读取时各自缓存
+    @Test
+    public void keyedByResultType()
+    {
+        Integer subsystem = service.cachedValueForObject("getSubsystem", Integer.class, 1);
+        Long longSubsystem = service.cachedValueForObject("getSubsystem", Long.class, 1);
+        String text = service.cachedValueForObject("getSubsystem", String.class, 1);
+        assertEquals(Integer.valueOf(7), subsystem);
+        assertEquals(Long.valueOf(7), longSubsystem);
+        assertEquals("7", text);
+        assertEquals(3, cache.getMisses());
+
+        assertEquals(Long.valueOf(7), service.cachedValueForObject("getSubsystem", Long.class, 1));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void sizeBound()
+    {
+        for ( int i = 0; i < 100; ++i ) cache.get("k", Integer.class, "SELECT 1", new Object[]{ i }, 60_000L, () -> 1);
+        assertEquals(16, cache.size());
+        assertEquals(84L, cache.snapshot().get("evictions"));
+
+        cache.get("ttl", Integer.class, "SELECT 1", null, 0L, () -> 1);
+        cache.get("ttl", Integer.class, "SELECT 1", null, 0L, () -> 1);
+        assertEquals(0L, cache.getHits());
+    }
+}
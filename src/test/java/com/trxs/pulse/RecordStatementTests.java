@@ -0,0 +1,152 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.jdbc.Record;
+import com.trxs.pulse.jdbc.SQLAction;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RecordStatementTests
+{
+    private static Logger logger = LoggerFactory.getLogger(RecordStatementTests.class);
+
+    private static final String TABLE = "p_bench_records";
+
+    private static final String[][] COLUMNS =
+    {
+        { "id", "java.lang.Integer" },         { "name", "java.lang.String" },       { "job_type", "java.lang.Integer" },
+        { "job_id", "java.lang.Integer" },     { "state", "java.lang.Integer" },     { "plan_time", "java.sql.Timestamp" },
+        { "host_name", "java.lang.String" },   { "retries", "java.lang.Integer" },   { "cost", "java.math.BigDecimal" },
+        { "remark", "java.lang.String" },      { "priority", "java.lang.Integer" },  { "owner_id", "java.lang.Long" },
+        { "create_time", "java.sql.Timestamp" }, { "update_time", "java.sql.Timestamp" }, { "status_text", "java.lang.String" }
+    };
+
+    @BeforeClass
+    public static void defineTable()
+    {
+        for ( int i = 0; i < COLUMNS.length; ++i )
+        {
+            Map<String, Object> meta = new HashMap<>();
+            meta.put("COLUMN_NAME", COLUMNS[i][0]);
+            meta.put("CLASS_NAME", COLUMNS[i][1]);
+            meta.put("ORDINAL_POSITION", i + 1);
+            Record.addField(TABLE, meta);
+        }
+    }
+
+    private static Record newRecord()
+    {
+        Timestamp now = new Timestamp(1_571_356_800_000L);
+        return Record.newInstance(TABLE)
+            .setField("id", 9).setField("name", "n").setField("jobType", 1).setField("jobId", 2).setField("state", 0)
+            .setField("planTime", now).setField("hostName", "h").setField("retries", 3).setField("cost", BigDecimal.ONE)
+            .setField("priority", 5).setField("ownerId", 7L).setField("createTime", now);
+    }
+
+    @Test
+    public void statements()
+    {
+        Record record = newRecord();
+
+        SQLAction insert = record.insertAction();
+        assertEquals("INSERT INTO p_bench_records ( id, name, job_type, job_id, state, plan_time, host_name, retries, cost, priority, owner_id, create_time ) VALUE ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? );", insert.getSqlText());
+        assertEquals(12, insert.getParameters().length);
+        assertEquals(7L, insert.getParameters()[10]);
+
+        record.nullFields("remark");
+        SQLAction modify = record.modifyAction();
+        assertEquals("UPDATE p_bench_records SET name = ?, job_type = ?, job_id = ?, state = ?, plan_time = ?, host_name = ?, retries = ?, cost = ?, remark = null, priority = ?, owner_id = ?, create_time = ? WHERE id = ?;", modify.getSqlText());
+        assertArrayEquals(new Object[]{ "n", 1, 2, 0, record.getField("planTime"), "h", 3, BigDecimal.ONE, 5, 7L, record.getField("createTime"), 9 }, modify.getParameters());
+
+        // 形状变化后生成新的语句, 原有形状不受影响
+        record.setField("name", null);
+        assertEquals(11, record.insertAction().getParameters().length);
+        assertEquals(false, record.insertAction().getSqlText().contains(" name"));
+        record.setField("name", "n");
+        assertEquals(insert.getSqlText(), record.insertAction().getSqlText());
+    }
+
+    @Test
+    public void slots()
+    {
+        Record record = Record.newInstance(TABLE);
+
+        // 字段名首字母大小写不敏感, 数值和时间按列类型转换
+        record.setField("JobType", 3L).setField("ownerId", 5).setField("cost", 2).setField("planTime", new java.util.Date(1000L));
+        assertEquals(3, record.getField("jobType"));
+        assertEquals(5L, record.getField("ownerId"));
+        assertEquals(new BigDecimal("2"), record.getField("cost"));
+        assertEquals(new Timestamp(1000L), record.getField("planTime"));
+
+        int index = record.indexOf("hostName");
+        record.setField(index, "h1");
+        assertEquals("h1", record.getField(index));
+        assertEquals(-1, record.indexOf("missing"));
+
+        // 不能转换的值被忽略
+        record.setField("retries", "x");
+        assertEquals(null, record.getField("retries"));
+        // 超出 int 范围的值同样被忽略
+        record.setField("jobType", 1L << 32);
+        assertEquals(3, record.getField("jobType"));
+    }
+
+    // 多个线程同时创建同一张表的 Record, 各自的字段值互不影响
+    @Test
+    public void concurrentCreate() throws Exception
+    {
+        int threads = 8, count = 20_000;
+        Thread[] workers = new Thread[threads];
+        int[] ids = new int[threads];
+        for ( int t = 0; t < threads; ++t )
+        {
+            final int seed = t;
+            workers[t] = new Thread(() ->
+            {
+                int sum = 0;
+                for ( int i = 0; i < count; ++i )
+                {
+                    Record record = Record.newInstance(TABLE).setField("id", seed).setField("name", "n");
+                    sum += (Integer) record.getField("id");
+                }
+                ids[seed] = sum;
+            });
+            workers[t].start();
+        }
+        for ( Thread worker : workers ) worker.join();
+
+        for ( int t = 0; t < threads; ++t ) assertEquals(t * count, ids[t]);
+    }
+
+    // 预热后测 save / modify 的 SQL 生成吞吐
+    @Test
+    public void benchmark()
+    {
+        Bench.assumeEnabled();
+        Record record = newRecord();
+        int warmup = 50_000, count = 500_000;
+
+        for ( int i = 0; i < warmup; ++i )
+        {
+            record.insertAction();
+            record.modifyAction();
+        }
+
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) record.insertAction();
+        long t1 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) record.modifyAction();
+        long t2 = System.nanoTime();
+
+        logger.info("15 columns insertAction: {} ops/s, modifyAction: {} ops/s", count * 1_000_000_000L / (t1 - t0), count * 1_000_000_000L / (t2 - t1));
+    }
+}
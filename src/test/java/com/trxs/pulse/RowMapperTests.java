@@ -0,0 +1,158 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.jdbc.CompiledRowMapper;
+import com.trxs.pulse.jdbc.ObjectRowMapper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class RowMapperTests
+{
+    private static Logger logger = LoggerFactory.getLogger(RowMapperTests.class);
+
+    // 基准测试映射 100 万行, 其余用例只用到前几行
+    private static final int ROWS = Bench.enabled() ? 1_000_000 : 1_000;
+    private static final String SELECT = "SELECT id, job_type, job_id, state, owner_id, plan_time, host_name, cost FROM p_rows";
+
+    private static JdbcTemplate jdbcTemplate;
+
+    public static class TaskRow
+    {
+        private int id;
+        private int jobType;
+        private Integer jobId;
+        private Integer state;
+        private long ownerId;
+        private Timestamp planTime;
+        private String hostName;
+        private BigDecimal cost;
+
+        public int getId() { return id; }
+        public void setId(int id) { this.id = id; }
+        public int getJobType() { return jobType; }
+        public void setJobType(int jobType) { this.jobType = jobType; }
+        public Integer getJobId() { return jobId; }
+        public void setJobId(Integer jobId) { this.jobId = jobId; }
+        public Integer getState() { return state; }
+        public void setState(Integer state) { this.state = state; }
+        public long getOwnerId() { return ownerId; }
+        public void setOwnerId(long ownerId) { this.ownerId = ownerId; }
+        public Timestamp getPlanTime() { return planTime; }
+        public void setPlanTime(Timestamp planTime) { this.planTime = planTime; }
+        public String getHostName() { return hostName; }
+        public void setHostName(String hostName) { this.hostName = hostName; }
+        public BigDecimal getCost() { return cost; }
+        public void setCost(BigDecimal cost) { this.cost = cost; }
+    }
+
+    @BeforeClass
+    public static void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:rows;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_rows");
+        jdbcTemplate.execute("CREATE TABLE p_rows ( id INT PRIMARY KEY, job_type TINYINT NOT NULL, job_id INT NULL, state INT NULL, owner_id BIGINT NOT NULL, plan_time DATETIME NULL, host_name VARCHAR(64) NULL, cost DECIMAL(10,2) NULL )");
+        jdbcTemplate.execute("INSERT INTO p_rows SELECT X, MOD(X, 3), CASE WHEN MOD(X, 10) = 0 THEN NULL ELSE X * 2 END, MOD(X, 5), X * 1000000000, TIMESTAMP '2019-10-18 00:00:00', 'host-' || MOD(X, 16), X / 100.0 FROM SYSTEM_RANGE(1, " + ROWS + ")");
+    }
+
+    @Test
+    public void mapRows()
+    {
+        List<TaskRow> rows = jdbcTemplate.query(SELECT + " WHERE id <= 10 ORDER BY id", new CompiledRowMapper<>("rows.top", TaskRow.class));
+
+        assertEquals(10, rows.size());
+        assertNotSame(rows.get(0), rows.get(1));
+        TaskRow row = rows.get(2);
+        assertEquals(3, row.getId());
+        assertEquals(0, row.getJobType());
+        assertEquals(Integer.valueOf(6), row.getJobId());
+        assertEquals(3_000_000_000L, row.getOwnerId());
+        assertEquals(Timestamp.valueOf("2019-10-18 00:00:00"), row.getPlanTime());
+        assertEquals("host-3", row.getHostName());
+        assertEquals(new BigDecimal("0.03"), row.getCost());
+        assertNull(rows.get(9).getJobId());
+
+        // 同一个 sqlKey 的列变化后重新生成计划
+        rows = jdbcTemplate.query("SELECT id, host_name FROM p_rows WHERE id = 5", new CompiledRowMapper<>("rows.top", TaskRow.class));
+        assertEquals(5, rows.get(0).getId());
+        assertEquals("host-5", rows.get(0).getHostName());
+        assertNull(rows.get(0).getPlanTime());
+    }
+
+    @Test
+    public void objectRows()
+    {
+        List<Object> rows = jdbcTemplate.query(SELECT + " WHERE id <= 2 ORDER BY id", new ObjectRowMapper("rows.objects"));
+        List<Object> again = jdbcTemplate.query(SELECT + " WHERE id <= 2 ORDER BY id", new ObjectRowMapper("rows.objects"));
+
+        // 每行都是新的 bean, 类只生成一次
+        assertNotSame(rows.get(0), rows.get(1));
+        assertEquals(rows.get(0).getClass(), again.get(1).getClass());
+        assertEquals("host-1", property(rows.get(0), "getHostName"));
+        assertEquals("host-2", property(rows.get(1), "getHostName"));
+        assertEquals(2_000_000_000L, property(again.get(1), "getOwnerId"));
+    }
+
+    private static Object property(Object bean, String getter)
+    {
+        try
+        {
+            return bean.getClass().getMethod(getter).invoke(bean);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long map(RowMapper<?> rowMapper)
+    {
+        long[] sum = { 0 };
+        int[] rowNum = { 0 };
+        jdbcTemplate.query(SELECT, (RowCallbackHandler) rs ->
+        {
+            Object row = rowMapper.mapRow(rs, rowNum[0]++);
+            sum[0] += row.hashCode() & 1;
+        });
+        return sum[0];
+    }
+
+    // 预热后比较 100 万行的映射耗时
+    @Test
+    public void benchmark()
+    {
+        Bench.assumeEnabled();
+        RowMapper<TaskRow> beanPropertyMapper = new BeanPropertyRowMapper<>(TaskRow.class);
+
+        for ( int i = 0; i < 2; ++i )
+        {
+            map(new CompiledRowMapper<>("rows.all", TaskRow.class));
+            map(new ObjectRowMapper("rows.all"));
+            map(beanPropertyMapper);
+        }
+
+        long t0 = System.nanoTime();
+        map(new CompiledRowMapper<>("rows.all", TaskRow.class));
+        long t1 = System.nanoTime();
+        map(new ObjectRowMapper("rows.all"));
+        long t2 = System.nanoTime();
+        map(beanPropertyMapper);
+        long t3 = System.nanoTime();
+
+        logger.info("map {} rows: compiled {} ms, object {} ms, BeanPropertyRowMapper {} ms", ROWS, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000);
+    }
+}
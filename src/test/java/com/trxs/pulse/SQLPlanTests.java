@@ -0,0 +1,122 @@
+package com.trxs.pulse;
+
+import com.trxs.commons.xml.Element;
+import com.trxs.pulse.jdbc.SQLAction;
+import com.trxs.pulse.jdbc.SQLRender;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.trxs.commons.xml.Analyser.readXmlBySource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SQLPlanTests
+{
+    private static Logger logger = LoggerFactory.getLogger(SQLPlanTests.class);
+
+    private static String normalize(String sql)
+    {
+        return sql.replaceAll("\\s+", " ").trim();
+    }
+
+    private static Map<String, Object> questionContext()
+    {
+        Map<String, Object> question = new HashMap<>();
+        question.put("type", 3);
+        question.put("orderNo", 5);
+        question.put("content", "abc");
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("question", question);
+        context.put("id", 7);
+        return context;
+    }
+
+    @Test
+    public void modifyQuestion()
+    {
+        SQLRender render = new SQLRender(readXmlBySource("/templates/pulse.xml"));
+        SQLAction action = render.render("modifyQuestion", questionContext());
+
+        assertEquals("UPDATE question SET type = ? AND order_no = ? AND content like concat(?, '%') WHERE id = ?", normalize(action.getSqlText()));
+        assertArrayEquals(new Object[]{ 3, 5, "abc", 7 }, action.getParameters());
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("question", new HashMap<>());
+        context.put("id", 1);
+        assertEquals("UPDATE question SET WHERE id = ?", normalize(render.render("modifyQuestion", context).getSqlText()));
+    }
+
+    @Test
+    public void dynamicTags()
+    {
+        SQLRender render = new SQLRender(readXmlBySource("/sql/pulse.xml"));
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("id", 9);
+        context.put("type", 2);
+        context.put("planType", 4);
+        SQLAction action = render.render("queryQualityInspectionWithPage", context);
+        assertEquals(true, normalize(action.getSqlText()).endsWith("FROM quality_inspection_tasks WHERE id = ? AND sp.plan_type = ?"));
+        assertArrayEquals(new Object[]{ 9, 4 }, action.getParameters());
+
+        context.clear();
+        context.put("id", 9);
+        context.put("qiStatus", 1);
+        context.put("qiUser", "u1");
+        action = render.render("syncQualityInspectionStatusByServiceLog", context);
+        assertEquals("UPDATE service_logs SET qi_user = ?, qi_status = ? WHERE id = ?", normalize(action.getSqlText()));
+        assertArrayEquals(new Object[]{ "u1", 1, 9 }, action.getParameters());
+
+        context.clear();
+        context.put("mark", "m");
+        context.put("list-1", Arrays.asList(new SsgAccountBaseLog("a1", "a2", "a3", "a4"), new SsgAccountBaseLog("b1", "b2", "b3", "b4")));
+        action = render.render("addSsgAccountBaseLogWithBatch", context);
+        assertEquals(true, normalize(action.getSqlText()).endsWith("VALUES ( ?, ?, ?, ?, now(), ?, 's sxxx ' ),( ?, ?, ?, ?, now(), ?, 's sxxx ' )"));
+        assertEquals(10, action.getParameters().length);
+        assertEquals("b1", action.getParameters()[5]);
+        assertEquals("m", action.getParameters()[9]);
+    }
+
+    // 预热后对比解释执行与渲染计划的吞吐和每次调用的分配量
+    @Test
+    public void benchmark()
+    {
+        Bench.assumeEnabled();
+        Element root = readXmlBySource("/templates/pulse.xml");
+        SQLRender render = new SQLRender(root);
+        Map<String, Object> context = questionContext();
+
+        int warmup = 20_000, count = 200_000;
+        for ( int i = 0; i < warmup; ++i )
+        {
+            render.interpret("modifyQuestion", context);
+            render.render("modifyQuestion", context);
+        }
+
+        long[] legacy = measure(() -> render.interpret("modifyQuestion", context), count);
+        long[] plan   = measure(() -> render.render("modifyQuestion", context), count);
+
+        logger.info("modifyQuestion interpret: {} ops/s, {} B/op", count * 1_000_000_000L / legacy[0], legacy[1] / count);
+        logger.info("modifyQuestion plan     : {} ops/s, {} B/op", count * 1_000_000_000L / plan[0], plan[1] / count);
+    }
+
+    // 返回 { 耗时(纳秒), 当前线程分配字节数 }
+    private static long[] measure(Runnable action, int count)
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = bean.getThreadAllocatedBytes(threadId);
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) action.run();
+        long t1 = System.nanoTime();
+        return new long[]{ t1 - t0, bean.getThreadAllocatedBytes(threadId) - bytes };
+    }
+}
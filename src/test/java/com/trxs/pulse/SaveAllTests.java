@@ -0,0 +1,138 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.jdbc.Record;
+import com.trxs.pulse.service.PulseService;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SaveAllTests
+{
+    private static Logger logger = LoggerFactory.getLogger(SaveAllTests.class);
+
+    private static final String[][] COLUMNS =
+    {
+        { "id", "java.lang.Integer" }, { "job_type", "java.lang.Integer" }, { "job_id", "java.lang.Integer" },
+        { "state", "java.lang.Integer" }, { "plan_time", "java.sql.Timestamp" }
+    };
+
+    private static JdbcTemplate template;
+    private static PulseService service;
+
+    @BeforeClass
+    public static void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:saveall;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        template = new JdbcTemplate(dataSource);
+        template.execute("DROP TABLE IF EXISTS p_tasks");
+        template.execute("CREATE TABLE p_tasks ( id INT AUTO_INCREMENT PRIMARY KEY, job_type TINYINT NOT NULL, job_id INT NULL, state TINYINT NULL, plan_time DATETIME NULL )");
+
+        for ( int i = 0; i < COLUMNS.length; ++i )
+        {
+            Map<String, Object> meta = new HashMap<>();
+            meta.put("COLUMN_NAME", COLUMNS[i][0]);
+            meta.put("CLASS_NAME", COLUMNS[i][1]);
+            meta.put("ORDINAL_POSITION", i + 1);
+            Record.addField("p_tasks", meta);
+        }
+
+        service = new PulseService()
+        {
+            {
+                jdbcTemplate = template;
+                insertBatchSize = 1000;
+            }
+        };
+    }
+
+    @Test
+    public void saveAll()
+    {
+        template.execute("DELETE FROM p_tasks");
+
+        // 两种形状: 有 job_id 和没有 job_id
+        List<Record> records = new ArrayList<>();
+        for ( int i = 0; i < 2500; ++i )
+        {
+            Record record = Record.newInstance("p_tasks").setField("jobType", 0).setField("state", 0).setField("planTime", new Timestamp(1_571_356_800_000L + i));
+            if ( i % 2 == 0 ) record.setField("jobId", i);
+            records.add(record);
+        }
+
+        assertEquals(2500, service.saveAll(records));
+        assertEquals(2500, template.queryForObject("SELECT COUNT(*) FROM p_tasks", Integer.class).intValue());
+
+        // 每条记录写回的 id 对应自己的那一行
+        for ( int i = 0; i < records.size(); i += 97 )
+        {
+            Record record = records.get(i);
+            Timestamp planTime = template.queryForObject("SELECT plan_time FROM p_tasks WHERE id = ?", Timestamp.class, record.getField("id"));
+            assertEquals(record.getField("planTime"), planTime);
+        }
+
+        // 已有 id 的记录不需要生成主键
+        List<Record> fixed = new ArrayList<>();
+        for ( int i = 0; i < 3; ++i ) fixed.add(Record.newInstance("p_tasks").setField("id", 100_000 + i).setField("jobType", 1));
+        assertEquals(3, service.saveAll(fixed));
+        assertEquals(3, template.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE job_type = 1", Integer.class).intValue());
+    }
+
+    // 超过 insertBatchSize 时分成多条语句, 自增主键按顺序写回
+    @Test
+    public void scheduleTasks()
+    {
+        template.execute("DELETE FROM p_tasks");
+        int count = 2_500;
+        List<Record> records = service.scheduleTasks(tasks(count));
+
+        assertEquals(count, records.size());
+        assertEquals(count - 1, (int) records.get(count - 1).getField("id") - (int) records.get(0).getField("id"));
+        assertEquals(count, template.queryForObject("SELECT COUNT(*) FROM p_tasks", Integer.class).intValue());
+    }
+
+    // 用一次较大的写入比较多行 insert 与每条语句一行
+    @Test
+    public void benchmark()
+    {
+        Bench.assumeEnabled();
+        template.execute("DELETE FROM p_tasks");
+        int count = 20_000;
+        List<TaskJob> tasks = tasks(count);
+
+        long t0 = System.nanoTime();
+        List<Record> records = service.scheduleTasks(tasks);
+        long t1 = System.nanoTime();
+        // 每条语句一行, 与逐行 save 的往返次数相同
+        PulseService rowByRow = new PulseService()
+        {
+            {
+                jdbcTemplate = template;
+                insertBatchSize = 1;
+            }
+        };
+        rowByRow.scheduleTasks(tasks.subList(0, 2000));
+        long t2 = System.nanoTime();
+
+        assertEquals(count, records.size());
+        logger.info("saveAll: {} rows/s, one row per statement: {} rows/s", count * 1_000_000_000L / (t1 - t0), 2000 * 1_000_000_000L / (t2 - t1));
+    }
+
+    private static List<TaskJob> tasks(int count)
+    {
+        List<TaskJob> tasks = new ArrayList<>(count);
+        for ( int i = 0; i < count; ++i ) tasks.add(new TaskJob(0, 0, i, new Timestamp(1_571_356_800_000L + i * 1000L)));
+        return tasks;
+    }
+}
@@ -0,0 +1,215 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.data.TimerJob;
+import com.trxs.pulse.engine.JobTable;
+import com.trxs.pulse.engine.PrimitiveWheelEngine;
+import com.trxs.pulse.engine.PriorityQueueEngine;
+import com.trxs.pulse.engine.ScheduleEngine;
+import com.trxs.pulse.engine.TimingWheelEngine;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduleEngineTests
+{
+    private static Logger logger = LoggerFactory.getLogger(ScheduleEngineTests.class);
+
+    private static final long START = 1_571_356_800_000L; // 2019-10-18 00:00:00 UTC
+
+    private static TimerJob newJob(int id, long expectTime)
+    {
+        TimerJob job = new TimerJob();
+        job.setId(id);
+        job.setExpectTime(new Date(expectTime));
+        return job;
+    }
+
+    @Test
+    public void testWheelFiresOnTime()
+    {
+        TimingWheelEngine engine = new TimingWheelEngine(START, 16);
+
+        long[] delays = { 1_000, 59_000, 61_500, 3_600_000, 86_399_000, 86_400_000L * 3, 86_400_000L * 400 };
+        for ( int i = 0; i < delays.length; ++i ) engine.schedule(newJob(i, START + delays[i]));
+
+        for ( int i = 0; i < delays.length; ++i )
+        {
+            final int id = i;
+            long expectTime = START + delays[i];
+            List<TimerJob> fired = new ArrayList<>();
+
+            engine.expire(expectTime - 1000, fired::add);
+            assertFalse("job " + id + " fired early", fired.stream().anyMatch(job -> job.getId() == id));
+
+            engine.expire(expectTime + 999, fired::add);
+            assertTrue("job " + id + " not fired", fired.stream().anyMatch(job -> job.getId() == id));
+            assertEquals(1, fired.size());
+        }
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    public void testWheelCancelAndReschedule()
+    {
+        TimingWheelEngine engine = new TimingWheelEngine(START, 16);
+
+        assertTrue(engine.schedule(newJob(1, START + 5_000)));
+        assertTrue(engine.schedule(newJob(2, START + 5_000)));
+        assertFalse(engine.schedule(newJob(2, START + 7_200_000)));
+
+        assertEquals(1, engine.cancel(1).getId().intValue());
+        assertNull(engine.cancel(1));
+
+        List<TimerJob> fired = new ArrayList<>();
+        engine.expire(START + 3_600_000, fired::add);
+        assertEquals(0, fired.size());
+
+        engine.expire(START + 7_200_000, fired::add);
+        assertEquals(1, fired.size());
+        assertEquals(2, fired.get(0).getId().intValue());
+    }
+
+    @Test
+    public void testEnginesAgree()
+    {
+        ScheduleEngine wheel = new TimingWheelEngine(START, 1024);
+        ScheduleEngine queue = new PriorityQueueEngine(1024);
+        ScheduleEngine primitive = new PrimitiveWheelEngine(START, 16);
+        Random random = new Random(7);
+
+        for ( int i = 0; i < 10_000; ++i )
+        {
+            long expectTime = START + random.nextInt(2 * 86_400) * 1000L;
+            wheel.schedule(newJob(i, expectTime));
+            queue.schedule(newJob(i, expectTime));
+            primitive.schedule(newJob(i, expectTime));
+        }
+        for ( int i = 0; i < 10_000; i += 7 )
+        {
+            wheel.cancel(i);
+            queue.cancel(i);
+            primitive.cancel(i);
+        }
+
+        for ( long t = START; t <= START + 2 * 86_400_000L; t += 60_000 )
+        {
+            int expected = queue.expire(t, job -> {});
+            assertEquals(expected, wheel.expire(t, job -> {}));
+            assertEquals(expected, primitive.expire(t, job -> {}));
+        }
+        assertEquals(0, wheel.size());
+        assertEquals(0, primitive.size());
+    }
+
+    @Test
+    public void testJobTableAgainstHashMap()
+    {
+        JobTable table = new JobTable(16);
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(11);
+
+        for ( int i = 0; i < 200_000; ++i )
+        {
+            int id = random.nextInt(5_000) - 2_500;
+            if ( random.nextInt(3) == 0 )
+            {
+                assertEquals(expected.remove(id) != null, table.remove(id) >= 0);
+            }
+            else
+            {
+                long expectTime = START + random.nextInt(1_000_000);
+                expected.put(id, expectTime);
+                table.put(new TaskJob(id, 0, id, new Date(expectTime)));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        expected.forEach((id, expectTime) ->
+        {
+            int slot = table.slotOf(id);
+            assertEquals(expectTime.longValue(), table.getExpectTime(slot));
+            assertEquals(id.intValue(), ((TaskJob) table.materialize(slot)).getJobId());
+        });
+    }
+
+    /**
+     * 1M 个待触发任务的堆占用对比: TimerJob 对象 + 时间轮 与 按列存储的时间轮
+     * 按 System.gc() 前后的已用堆估算, 只输出数字不做断言
+     */
+    @Test
+    public void footprint()
+    {
+        Bench.assumeEnabled();
+        int count = Integer.getInteger("pulse.bench.footprint", 1_000_000);
+        long object = retainedHeap(() -> new TimingWheelEngine(START, count), count);
+        long primitive = retainedHeap(() -> new PrimitiveWheelEngine(START, count), count);
+
+        logger.info("footprint count:{} wheel:{}MB ({}B/job) primitive:{}MB ({}B/job)", count, object >> 20, object / count, primitive >> 20, primitive / count);
+    }
+
+    private static long retainedHeap(Supplier<ScheduleEngine> supplier, int count)
+    {
+        long before = usedHeap();
+        ScheduleEngine engine = supplier.get();
+        for ( int i = 0; i < count; ++i ) engine.schedule(new TaskJob(i, 0, i, new Date(START + 1000 + (i % 86_400) * 1000L)));
+        long after = usedHeap();
+
+        assertEquals(count, engine.size());
+        return after - before;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 3; ++i ) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 吞吐对比, 跑 10k 与 1M, -Dpulse.bench.max=10000000 时追加 10M
+     */
+    @Test
+    public void benchmark()
+    {
+        Bench.assumeEnabled();
+        int max = Integer.getInteger("pulse.bench.max", 1_000_000);
+        for ( int count = 10_000; count <= max; count *= 100 )
+        {
+            bench(new PriorityQueueEngine(count), count);
+            bench(new TimingWheelEngine(START, count), count);
+            bench(new PrimitiveWheelEngine(START, count), count);
+        }
+    }
+
+    private void bench(ScheduleEngine engine, int count)
+    {
+        Random random = new Random(count);
+        long[] expectTimes = new long[count];
+        for ( int i = 0; i < count; ++i ) expectTimes[i] = START + 1000 + random.nextInt(86_400) * 1000L;
+
+        long t0 = System.nanoTime();
+        for ( int i = 0; i < count; ++i ) engine.schedule(newJob(i, expectTimes[i]));
+        long t1 = System.nanoTime();
+        for ( int i = 0; i < count; i += count / 1000 ) engine.cancel(i);
+        long t2 = System.nanoTime();
+        int[] fired = new int[1];
+        engine.expire(START + 86_401_000L, job -> ++fired[0]);
+        long t3 = System.nanoTime();
+
+        logger.info("{} count:{} schedule:{}ms cancel(1000):{}ms expire:{}ms fired:{}", engine.getName(), count, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000, fired[0]);
+    }
+}
@@ -0,0 +1,76 @@
+package com.trxs.pulse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StateJournalTests
+{
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:journal;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_tasks");
+        jdbcTemplate.execute("CREATE TABLE p_tasks ( id INT AUTO_INCREMENT PRIMARY KEY, job_type TINYINT NOT NULL, job_id INT NULL, state TINYINT NULL, plan_time DATETIME NULL )");
+
+        List<Object[]> rows = new ArrayList<>();
+        for ( int i = 1; i <= 1000; ++i ) rows.add(new Object[]{ i });
+        jdbcTemplate.batchUpdate("INSERT INTO p_tasks ( id, job_type, state ) VALUES ( ?, 0, 1 )", rows);
+    }
+
+    private int count(int state)
+    {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = ?", Integer.class, state);
+    }
+
+    @Test
+    public void testCoalesceAndFlush()
+    {
+        StateJournal journal = new StateJournal(jdbcTemplate, 100, 200, 10_000);
+
+        for ( int id = 1; id <= 1000; ++id )
+        {
+            journal.record(id, StateJournal.RUNNING);
+            // 结果可能先于"执行中"到达, 合并后只保留最大的状态
+            journal.record(id, id % 2 == 0 ? StateJournal.DONE : StateJournal.ERROR);
+            journal.record(id, StateJournal.RUNNING);
+        }
+        assertEquals(1000, journal.getPendingCount());
+
+        assertEquals(1000, journal.flush());
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(500, count(StateJournal.DONE));
+        assertEquals(500, count(StateJournal.ERROR));
+
+        // 已结束的任务不会被较小的状态覆盖
+        journal.record(2, StateJournal.RUNNING);
+        journal.shutdown();
+        assertEquals(500, count(StateJournal.DONE));
+    }
+
+    // 积压超过上限时 record 不阻塞, 由 isBackedUp 通知提交方
+    @Test
+    public void testBackedUp()
+    {
+        StateJournal journal = new StateJournal(jdbcTemplate, 100, 200, 10);
+
+        for ( int id = 1; id <= 100; ++id ) journal.record(id, StateJournal.DONE);
+        assertEquals(100, journal.getPendingCount());
+        assertTrue(journal.isBackedUp());
+
+        assertEquals(100, journal.flush());
+        assertFalse(journal.isBackedUp());
+        assertEquals(1L, journal.snapshot().get("backedUpTimes"));
+    }
+}
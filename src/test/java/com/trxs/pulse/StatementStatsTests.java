@@ -0,0 +1,143 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.config.StatementStatsConfig;
+import com.trxs.pulse.jdbc.BaseService;
+import com.trxs.pulse.jdbc.RowCursor;
+import com.trxs.pulse.jdbc.SQLProvider;
+import com.trxs.pulse.jdbc.StatementStats;
+import com.trxs.pulse.jdbc.StatsJdbcTemplate;
+import com.trxs.sql.Tokenizer;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatementStatsTests
+{
+    private static final String SELECT = "SELECT id FROM p_stat_tasks WHERE state = ?";
+
+    private JdbcTemplate template;
+    private StatementStats stats;
+    private BaseService service;
+
+    @Before
+    public void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:stats;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        template = new JdbcTemplate(dataSource);
+        template.execute("DROP TABLE IF EXISTS p_stat_tasks");
+        template.execute("CREATE TABLE p_stat_tasks ( id INT PRIMARY KEY, state INT NOT NULL )");
+        template.execute("INSERT INTO p_stat_tasks VALUES ( 1, 0 ), ( 2, 0 ), ( 3, 1 )");
+
+        stats = new StatementStats(16);
+        service = new BaseService()
+        {
+            {
+                jdbcTemplate = new StatsJdbcTemplate(template, stats);
+                // 直接把语句当作 sqlKey
+                sqlProvider = new SQLProvider()
+                {
+                    @Override
+                    public String getSqlByKey(String key)
+                    {
+                        return key;
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void fingerprint()
+    {
+        Tokenizer tokenizer = new Tokenizer();
+        assertEquals("SELECT * FROM t WHERE id IN ( ? )", tokenizer.fingerprint("select *  from t\n where id in (1, 2, 3)"));
+        assertEquals("SELECT * FROM t WHERE id IN ( ? )", tokenizer.fingerprint("SELECT * FROM t WHERE id IN (?)"));
+        assertEquals("UPDATE p_tasks SET state = ? , note = ? WHERE id = ?", tokenizer.fingerprint("update p_tasks set state = 2, note = 'it''s' where id = 17;"));
+        assertEquals("UPDATE p_tasks SET note = ? WHERE id = ?", tokenizer.fingerprint("UPDATE p_tasks SET note = 'a\\'b' WHERE id = 1"));
+        assertEquals("INSERT INTO `p_tasks` ( job_type , job_id ) VALUES ( ? )", tokenizer.fingerprint("INSERT INTO `p_tasks` ( job_type, job_id ) VALUES ( 0, 1 ), ( 0, 2 ), ( ?, ? )"));
+        assertEquals(tokenizer.fingerprint("SELECT a FROM t WHERE x > 1.5 LIMIT 10"), tokenizer.fingerprint("select a from t where x > .25 limit 20"));
+    }
+
+    @Test
+    public void record()
+    {
+        for ( int i = 0; i < 3; ++i ) service.query(SELECT, new Object[]{ 0 }, (rs, n) -> rs.getInt(1));
+        service.update("UPDATE p_stat_tasks SET state = 2 WHERE state = 0");
+        service.update("UPDATE p_stat_tasks SET state = 3 WHERE state = 1");
+        try
+        {
+            service.update("UPDATE p_stat_missing SET state = 1");
+            fail("expected DataAccessException");
+        }
+        catch (DataAccessException e)
+        {
+            // 出错的语句也计入
+        }
+
+        Map<String, Object> select = stats.get(stats.fingerprintOf(SELECT));
+        assertEquals(3L, select.get("calls"));
+        assertEquals(6L, select.get("rows"));
+
+        Map<String, Object> update = stats.get("UPDATE p_stat_tasks SET state = ? WHERE state = ?");
+        assertEquals(2L, update.get("calls"));
+        assertEquals(3L, update.get("rows"));
+        assertEquals(0L, update.get("errors"));
+
+        assertEquals(1L, stats.get("UPDATE p_stat_missing SET state = ?").get("errors"));
+
+        // 游标在关闭时记录读取的行数
+        try ( RowCursor<Integer> cursor = service.cursor("SELECT id FROM p_stat_tasks", null, (rs, n) -> rs.getInt(1)) )
+        {
+            while ( cursor.hasNext() ) cursor.next();
+        }
+        assertEquals(3L, stats.get("SELECT id FROM p_stat_tasks").get("rows"));
+
+        List<Map<String, Object>> top = stats.snapshot(2);
+        assertEquals(2, top.size());
+    }
+
+    @Test
+    public void sizeBound()
+    {
+        for ( int i = 0; i < 40; ++i ) stats.record("SELECT c" + i + " FROM t", 1000L, 1, false);
+        assertEquals(16, stats.size());
+        assertEquals(25L, stats.get(StatementStats.OTHER).get("calls"));
+    }
+
+    // 容器中的 JdbcTemplate 只包装一次, 直接注入它的组件执行的语句也有统计
+    @Test
+    public void sharedTemplate()
+    {
+        BeanPostProcessor processor = StatementStatsConfig.statsJdbcTemplatePostProcessor();
+        Object wrapped = processor.postProcessAfterInitialization(template, "jdbcTemplate");
+        assertTrue(wrapped instanceof StatsJdbcTemplate);
+        assertSame(wrapped, processor.postProcessAfterInitialization(wrapped, "jdbcTemplate"));
+        assertSame(service, processor.postProcessAfterInitialization(service, "baseService"));
+
+        template.execute("DROP TABLE IF EXISTS p_tasks");
+        template.execute("CREATE TABLE p_tasks ( id INT PRIMARY KEY, state TINYINT NULL )");
+        template.execute("INSERT INTO p_tasks VALUES ( 1, 2 ), ( 2, 2 )");
+
+        StatementStats shared = StatementStats.getInstance();
+        shared.reset();
+        StateJournal journal = new StateJournal((JdbcTemplate) wrapped, 100, 200, 1000);
+        journal.record(1, StateJournal.DONE);
+        journal.record(2, StateJournal.ERROR);
+        journal.flush();
+
+        Map<String, Object> update = shared.get(shared.fingerprintOf("UPDATE p_tasks SET state = ? WHERE id = ? AND state < ?"));
+        assertEquals(1L, update.get("calls"));
+        assertEquals(2L, update.get("rows"));
+    }
+}
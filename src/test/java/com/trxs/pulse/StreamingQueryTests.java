@@ -0,0 +1,94 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.jdbc.BaseService;
+import com.trxs.pulse.jdbc.RowCursor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingQueryTests
+{
+    private static final int ROWS = 200_000;
+    private static final String SELECT = "SELECT id, host_name FROM p_history WHERE id > ? ORDER BY id";
+
+    private static BaseService service;
+
+    private static final RowMapper<Integer> ID_MAPPER = (rs, i) -> rs.getInt(1);
+
+    @BeforeClass
+    public static void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:history;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("DROP TABLE IF EXISTS p_history");
+        template.execute("CREATE TABLE p_history ( id INT PRIMARY KEY, host_name VARCHAR(64) NULL )");
+        template.execute("INSERT INTO p_history SELECT X, 'host-' || MOD(X, 16) FROM SYSTEM_RANGE(1, " + ROWS + ")");
+
+        service = new BaseService()
+        {
+            {
+                jdbcTemplate = template;
+                fetchSize = 500;
+            }
+        };
+    }
+
+    @Test
+    public void readAll()
+    {
+        long sum = 0;
+        RowCursor<Integer> cursor = service.cursor(SELECT, new Object[]{ 0 }, ID_MAPPER);
+        while ( cursor.hasNext() ) sum += cursor.next();
+
+        // 读完后自动关闭
+        assertTrue(cursor.isClosed());
+        assertEquals(ROWS, cursor.getRowCount());
+        assertEquals((long) ROWS * (ROWS + 1) / 2, sum);
+    }
+
+    @Test
+    public void earlyStop()
+    {
+        RowCursor<Integer> cursor;
+        try ( Stream<Integer> stream = service.stream(SELECT, new Object[]{ 100 }, ID_MAPPER) )
+        {
+            assertEquals(Integer.valueOf(101), stream.findFirst().get());
+        }
+
+        int rows = service.forEach(SELECT, new Object[]{ 0 }, ID_MAPPER, id -> id < 1000);
+        assertEquals(1000, rows);
+
+        try ( RowCursor<Integer> opened = service.cursor(SELECT, new Object[]{ 0 }, ID_MAPPER) )
+        {
+            cursor = opened;
+            opened.next();
+            assertFalse(opened.isClosed());
+        }
+        assertTrue(cursor.isClosed());
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void mapperFailure()
+    {
+        RowCursor<Integer> cursor = service.cursor(SELECT, new Object[]{ 0 }, (rs, i) -> rs.getInt(3));
+        try
+        {
+            cursor.next();
+        }
+        catch (RuntimeException e)
+        {
+            assertTrue(cursor.isClosed());
+            return;
+        }
+        throw new AssertionError("expected a translated exception");
+    }
+}
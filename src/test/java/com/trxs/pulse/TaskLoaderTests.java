@@ -0,0 +1,234 @@
+package com.trxs.pulse;
+
+import com.trxs.pulse.cluster.ClusterMembership;
+import com.trxs.pulse.data.CronJob;
+import com.trxs.pulse.data.MisfirePolicy;
+import com.trxs.pulse.data.TaskJob;
+import com.trxs.pulse.engine.JobWal;
+import com.trxs.pulse.engine.TimingWheelEngine;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskLoaderTests
+{
+    private JdbcTemplate jdbcTemplate;
+    private long now;
+
+    @Before
+    public void setup()
+    {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:loader;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_tasks");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_instances");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS p_cron_tasks");
+        jdbcTemplate.execute("CREATE TABLE p_tasks ( id INT AUTO_INCREMENT PRIMARY KEY, job_type TINYINT NOT NULL, job_id INT NULL, state TINYINT NULL, plan_time DATETIME NULL )");
+        jdbcTemplate.execute("CREATE TABLE p_cron_tasks ( id INT PRIMARY KEY, job_type TINYINT NOT NULL, job_id INT NULL, cron_expression VARCHAR(64) NULL, misfire_policy TINYINT NULL, state TINYINT NULL )");
+        jdbcTemplate.execute("CREATE TABLE p_instances ( host_name VARCHAR(64) NOT NULL PRIMARY KEY, last_access_time DATETIME NULL )");
+
+        // 2000 行, 每秒一个, 其中 1 秒间隔内放两行以覆盖 plan_time 相同时按 id 翻页
+        now = System.currentTimeMillis() / 1000 * 1000;
+        List<Object[]> rows = new ArrayList<>();
+        for ( int i = 0; i < 2000; ++i ) rows.add(new Object[]{ 0, i, 0, new Timestamp(now - 10_000 + (i / 2) * 1000L) });
+        jdbcTemplate.batchUpdate("INSERT INTO p_tasks ( job_type, job_id, state, plan_time ) VALUES ( ?, ?, ?, ? )", rows);
+    }
+
+    private TimerServer newTimerServer()
+    {
+        TimerServer timerServer = new TimerServer();
+        timerServer.init();
+        return timerServer;
+    }
+
+    @Test
+    public void testLoadWindow()
+    {
+        ClusterMembership membership = new ClusterMembership(jdbcTemplate, "a:81", 1000, 60_000, 160);
+        membership.heartbeat(now);
+
+        TimerServer timerServer = newTimerServer();
+        TaskLoader loader = new TaskLoader(jdbcTemplate, timerServer, membership, 300_000, 64, 100_000);
+
+        // 窗口 [.., now + 300s] 内: plan_time = now - 10s + k 秒, k <= 310, 共 311 秒 * 2 行
+        assertEquals(622, loader.load(now));
+        assertEquals(622, timerServer.getPendingCount());
+        assertEquals(622, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 1", Integer.class).intValue());
+
+        assertEquals(0, loader.load(now));
+        assertEquals(20, loader.load(now + 10_000));
+    }
+
+    // 已错过触发时间的行最多加载补触发队列剩余的容量
+    @Test
+    public void testOverdueLimitedByCatchUpRoom()
+    {
+        ClusterMembership membership = new ClusterMembership(jdbcTemplate, "a:81", 1000, 60_000, 160);
+        membership.heartbeat(now);
+
+        TimerServer timerServer = new TimerServer();
+        ReflectionTestUtils.setField(timerServer, "maxBacklog", 4);
+        timerServer.init();
+        TaskLoader loader = new TaskLoader(jdbcTemplate, timerServer, membership, 300_000, 3, 100_000);
+
+        // plan_time < now - 5s 的 10 行只加载 4 行
+        assertEquals(622 - 10 + 4, loader.load(now));
+        assertEquals(6, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 0 AND plan_time < ?", Integer.class, new Timestamp(now - 5000)).intValue());
+    }
+
+    // 读出一页之后其它实例抢先加载了部分行, 这些行不进入调度引擎
+    @Test
+    public void testClaimSkipsTakenRows()
+    {
+        ClusterMembership membership = new ClusterMembership(jdbcTemplate, "a:81", 1000, 60_000, 160);
+        membership.heartbeat(now);
+
+        JdbcTemplate racing = new JdbcTemplate(jdbcTemplate.getDataSource())
+        {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs)
+            {
+                jdbcTemplate.update("UPDATE p_tasks SET state = 1 WHERE state = 0 AND id <= 10");
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        TimerServer timerServer = newTimerServer();
+        TaskLoader loader = new TaskLoader(racing, timerServer, membership, 300_000, 64, 100_000);
+
+        assertEquals(622 - 10, loader.load(now));
+        assertEquals(622 - 10, timerServer.getPendingCount());
+        for ( int id = 1; id <= 10; ++id ) assertFalse(timerServer.containsJob(id));
+    }
+
+    @Test
+    public void testMaxPendingAndOwnership()
+    {
+        ClusterMembership a = new ClusterMembership(jdbcTemplate, "a:81", 1000, 60_000, 160);
+        ClusterMembership b = new ClusterMembership(jdbcTemplate, "b:81", 1000, 60_000, 160);
+        a.heartbeat(now);
+        b.heartbeat(now);
+        a.heartbeat(now);
+
+        TimerServer serverA = newTimerServer();
+        TaskLoader loaderA = new TaskLoader(jdbcTemplate, serverA, a, 3_600_000, 100, 100_000);
+        int loadedA = loaderA.load(now);
+
+        TimerServer serverB = newTimerServer();
+        TaskLoader loaderB = new TaskLoader(jdbcTemplate, serverB, b, 3_600_000, 100, 300);
+        int loadedB = loaderB.load(now);
+
+        assertEquals(300, loadedB);
+        assertEquals(300, serverB.getPendingCount());
+        assertEquals(2000, loadedA + loadedB + jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 0", Integer.class));
+    }
+
+    // 重新排期时新增、修改的行生效, 停用的行和日志中已不存在的任务被取消; 心跳成功之前不处理
+    @Test
+    public void testReloadCronTasks()
+    {
+        ClusterMembership membership = new ClusterMembership(jdbcTemplate, "a:81", 1000, 60_000, 160);
+        TimerServer timerServer = newTimerServer();
+        TaskLoader loader = new TaskLoader(jdbcTemplate, timerServer, membership, 300_000, 64, 100_000);
+
+        // 相当于从预写日志恢复的两个 cron 任务, 9 在表中已不存在
+        timerServer.scheduleCron(new CronJob(1, "0/10 * * * * ?", 0, 1, MisfirePolicy.FIRE_ONCE_NOW));
+        timerServer.scheduleCron(new CronJob(9, "0/10 * * * * ?", 0, 9, MisfirePolicy.FIRE_ONCE_NOW));
+        jdbcTemplate.update("INSERT INTO p_cron_tasks VALUES ( 1, 0, 1, '0/10 * * * * ?', 0, 1 ), ( 2, 0, 2, '0/10 * * * * ?', 0, 1 ), ( 3, 0, 3, '0/10 * * * * ?', 0, 1 )");
+
+        assertEquals(0, loader.loadCronTasks());
+        assertTrue(timerServer.containsJob(-9));
+
+        membership.heartbeat(System.currentTimeMillis());
+        assertEquals(2, loader.loadCronTasks());
+        assertEquals(set(1, 2, 3), cronTaskIds(timerServer));
+        assertEquals(0, loader.loadCronTasks());
+
+        jdbcTemplate.update("UPDATE p_cron_tasks SET cron_expression = '0 0/5 * * * ?' WHERE id = 2");
+        jdbcTemplate.update("UPDATE p_cron_tasks SET state = 0 WHERE id = 3");
+        jdbcTemplate.update("INSERT INTO p_cron_tasks VALUES ( 4, 0, 4, '0/10 * * * * ?', 0, 1 )");
+        assertEquals(2, loader.loadCronTasks());
+        assertEquals(set(1, 2, 4), cronTaskIds(timerServer));
+        assertEquals("0 0/5 * * * ?", timerServer.getCronJobs().stream().filter(job -> job.getCronTaskId() == 2).findFirst().get().getPattern().getText());
+
+        // 改成无效的表达式后不再触发
+        jdbcTemplate.update("UPDATE p_cron_tasks SET cron_expression = '0 0 0 30 2 ?' WHERE id = 4");
+        assertEquals(0, loader.loadCronTasks());
+        assertEquals(set(1, 2), cronTaskIds(timerServer));
+    }
+
+    private static Set<Integer> cronTaskIds(TimerServer timerServer)
+    {
+        return timerServer.getCronJobs().stream().map(CronJob::getCronTaskId).collect(Collectors.toSet());
+    }
+
+    private static Set<Integer> set(Integer... ids)
+    {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    // 预写日志回放的任务按 p_tasks.state 和归属确认后才放回调度引擎
+    @Test
+    public void testReconcileWal() throws Exception
+    {
+        File dir = Files.createTempDirectory("pulse-wal").toFile();
+        dir.deleteOnExit();
+        JobWal wal = new JobWal(dir, 64 * 1024);
+        wal.replay();
+        wal.checkpoint(new TimingWheelEngine(now, 16));
+        for ( int id = 1; id <= 30; ++id ) wal.schedule(new TaskJob(id, 0, id, new Date(now - 60_000)));
+        wal.close();
+
+        // 1-20 仍在等待执行, 21-25 停机期间已被恢复为 state=0, 26-30 已由其它实例执行
+        jdbcTemplate.update("UPDATE p_tasks SET state = 1 WHERE id <= 20");
+        jdbcTemplate.update("UPDATE p_tasks SET state = 3 WHERE id > 25 AND id <= 30");
+
+        ClusterMembership a = new ClusterMembership(jdbcTemplate, "a:81", 1000, 60_000, 160);
+        ClusterMembership b = new ClusterMembership(jdbcTemplate, "b:81", 1000, 60_000, 160);
+        TimerServer timerServer = new TimerServer("wheel", dir.getAbsolutePath());
+        timerServer.init();
+        TaskLoader loader = new TaskLoader(jdbcTemplate, timerServer, a, 300_000, 8, 100_000);
+        try
+        {
+            assertEquals(0, timerServer.getPendingCount());
+            // 心跳成功之前不确认归属
+            assertEquals(0, loader.reconcile());
+
+            b.heartbeat(System.currentTimeMillis());
+            a.heartbeat(System.currentTimeMillis());
+            int owned = 0;
+            for ( int id = 1; id <= 20; ++id ) if ( a.owns(id) ) ++owned;
+            assertEquals(owned, loader.reconcile());
+            assertEquals(owned, timerServer.getPendingCount());
+            assertFalse(timerServer.hasRecoveredJobs());
+
+            assertEquals(owned, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 1", Integer.class).intValue());
+            assertEquals(5, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM p_tasks WHERE state = 3", Integer.class).intValue());
+        }
+        finally
+        {
+            timerServer.shutdown();
+        }
+
+        // 相对路径不启用预写日志
+        TimerServer relative = new TimerServer("wheel", "wal");
+        relative.init();
+        assertFalse(relative.hasRecoveredJobs());
+    }
+}